@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures finding the next page in the Link header of a paged Gitlab response, which is done for every page of every
+ * collection retrieved during a decoration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefaultLinkHeaderReaderBenchmark {
+
+    private static final String BASE_URL = "https://gitlab.example.com/api/v4/projects/123/merge_requests/45/discussions?id=123&noteable_id=45&per_page=100";
+
+    @Param({"first", "middle", "last"})
+    private String page;
+
+    private String linkHeader;
+    private DefaultLinkHeaderReader linkHeaderReader;
+
+    @Setup
+    public void setUp() {
+        String first = "<" + BASE_URL + "&page=1>; rel=\"first\"";
+        String last = "<" + BASE_URL + "&page=20>; rel=\"last\"";
+        switch (page) {
+            case "first":
+                linkHeader = "<" + BASE_URL + "&page=2>; rel=\"next\", " + first + ", " + last;
+                break;
+            case "middle":
+                linkHeader = "<" + BASE_URL + "&page=9>; rel=\"prev\", <" + BASE_URL + "&page=11>; rel=\"next\", " + first + ", " + last;
+                break;
+            default:
+                linkHeader = "<" + BASE_URL + "&page=19>; rel=\"prev\", " + first + ", " + last;
+                break;
+        }
+        linkHeaderReader = new DefaultLinkHeaderReader();
+    }
+
+    @Benchmark
+    public Optional<String> findNextLink() {
+        return linkHeaderReader.findNextLink(linkHeader);
+    }
+
+}
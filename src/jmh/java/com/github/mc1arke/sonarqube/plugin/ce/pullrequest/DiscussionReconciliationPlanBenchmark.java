@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.core.issue.DefaultIssue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reconciling the discussions on a long-lived pull request against the issues from the latest analysis. Half
+ * of the existing discussions refer to issues that are still open, with the other half referring to issues that have
+ * since been fixed, so every branch of the plan is exercised.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiscussionReconciliationPlanBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    private List<DiscussionReconciliationPlan.ExistingDiscussion<Integer, String>> existingDiscussions;
+    private List<PostAnalysisIssueVisitor.ComponentIssue> openIssues;
+
+    @Setup
+    public void setUp() {
+        openIssues = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            DefaultIssue issue = new DefaultIssue()
+                    .setKey("issue-" + i)
+                    .setLine(i + 1);
+            openIssues.add(new PostAnalysisIssueVisitor.ComponentIssue(null, new PostAnalysisIssueVisitor.LightIssue(issue)));
+        }
+
+        existingDiscussions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            // odd discussions refer to issues beyond the open range, so will be resolved
+            String issueKey = "issue-" + (i % 2 == 0 ? i : size + i);
+            existingDiscussions.add(new DiscussionReconciliationPlan.ExistingDiscussion<>(i, List.of("note"),
+                    new DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier("project", issueKey), false, i % 4 == 1));
+        }
+    }
+
+    @Benchmark
+    public DiscussionReconciliationPlan<Integer, String> createPlan() {
+        return DiscussionReconciliationPlan.create(existingDiscussions, openIssues, Optional.empty());
+    }
+
+}
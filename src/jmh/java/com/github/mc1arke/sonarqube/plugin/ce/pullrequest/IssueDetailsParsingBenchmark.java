@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading the SonarQube issue references back out of the notes on a pull request, which happens for every
+ * note on every decoration. Most notes are issue comments, with a summary comment and a note from another user mixed in
+ * so the dashboard link and the no-match paths are also covered. The legacy label variant covers decorators that also
+ * accept the link label used by earlier versions, which have to keep scanning notes that don't contain a current link.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IssueDetailsParsingBenchmark {
+
+    private static final NoteIssueLinkParser LEGACY_LABEL_PARSER = new NoteIssueLinkParser(DiscussionAwarePullRequestDecorator.VIEW_IN_SONARQUBE_LABEL, "See in SonarQube");
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    private List<String> noteContents;
+
+    @Setup
+    public void setUp() {
+        noteContents = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (i % 50 == 0) {
+                noteContents.add("### Quality Gate passed\n\n#### Issues\n* 3 New Issues\n\n**Project ID:** project\n\n"
+                        + "[View in SonarQube](https://sonarqube.example.com/dashboard?id=project&pullRequest=123)");
+            } else if (i % 10 == 0) {
+                noteContents.add("I don't think this applies here, the value is checked by the caller.");
+            } else {
+                noteContents.add("**Type:** CODE_SMELL ![CODE_SMELL](https://sonarqube.example.com/static/communityBranchPlugin/checks/IssueType/code_smell.svg)\n\n"
+                        + "**Severity:** MAJOR ![MAJOR](https://sonarqube.example.com/static/communityBranchPlugin/checks/Severity/major.svg)\n\n"
+                        + "**Message:** Remove this unused import 'java.util.List'.\n\n"
+                        + "**Duration (min):** 2\n\n"
+                        + "[View in SonarQube](https://sonarqube.example.com/project/issues?id=project&pullRequest=123&issues=AY-issue-" + i + "&open=AY-issue-" + i + ")");
+            }
+        }
+    }
+
+    @Benchmark
+    public int parseIssueDetails() {
+        return countIssueLinks(DiscussionAwarePullRequestDecorator.NOTE_ISSUE_LINK_PARSER);
+    }
+
+    @Benchmark
+    public int parseIssueDetailsWithLegacyLabel() {
+        return countIssueLinks(LEGACY_LABEL_PARSER);
+    }
+
+    private int countIssueLinks(NoteIssueLinkParser parser) {
+        int found = 0;
+        for (String noteContent : noteContents) {
+            if (parser.parse(noteContent).isPresent()) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+}
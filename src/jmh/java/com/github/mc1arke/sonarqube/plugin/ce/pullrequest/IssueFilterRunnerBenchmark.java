@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.filter.IssueFilterRunner;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.filter.TypeExclusionFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.issue.impact.Severity;
+import org.sonar.api.issue.impact.SoftwareQuality;
+import org.sonar.api.rules.RuleType;
+import org.sonar.core.issue.DefaultIssue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ordering the issues from an analysis for reporting, both when every issue is reported and when only the
+ * highest ranked issues are, and with one filter applied so the filtering cost is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IssueFilterRunnerBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    @Param({"0", "50"})
+    private int maxAmountOfIssues;
+
+    private List<PostAnalysisIssueVisitor.ComponentIssue> issues;
+    private IssueFilterRunner issueFilterRunner;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1234);
+        Severity[] severities = Severity.values();
+        RuleType[] types = RuleType.values();
+        issues = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            DefaultIssue issue = new DefaultIssue()
+                    .setKey("issue-" + i)
+                    .setLine(i + 1)
+                    .setType(types[random.nextInt(types.length)])
+                    .addImpact(SoftwareQuality.MAINTAINABILITY, severities[random.nextInt(severities.length)]);
+            issues.add(new PostAnalysisIssueVisitor.ComponentIssue(null, new PostAnalysisIssueVisitor.LightIssue(issue)));
+        }
+
+        issueFilterRunner = new IssueFilterRunner(List.of(new TypeExclusionFilter("SECURITY_HOTSPOT")), maxAmountOfIssues);
+    }
+
+    @Benchmark
+    public List<PostAnalysisIssueVisitor.ComponentIssue> filterIssues() {
+        return issueFilterRunner.filterIssues(issues);
+    }
+
+}
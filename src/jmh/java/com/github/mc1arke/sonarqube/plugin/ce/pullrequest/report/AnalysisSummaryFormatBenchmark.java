@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report;
+
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.MarkdownFormatterFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rendering the summary comment to Markdown, both for a passed Quality Gate and for failed Quality Gates with
+ * an increasing number of failed conditions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalysisSummaryFormatBenchmark {
+
+    @Param({"0", "10", "1000"})
+    private int failedConditions;
+
+    private AnalysisSummary analysisSummary;
+    private MarkdownFormatterFactory formatterFactory;
+
+    @Setup
+    public void setUp() {
+        List<String> conditions = new ArrayList<>(failedConditions);
+        for (int i = 0; i < failedConditions; i++) {
+            conditions.add("80.00% Coverage on New Code (is less than " + i + ".00%)");
+        }
+
+        String baseUrl = "https://sonarqube.example.com";
+        analysisSummary = AnalysisSummary.builder()
+                .withProjectKey("project")
+                .withSummaryImageUrl(baseUrl + "/static/communityBranchPlugin/common/icon.png")
+                .withStatusDescription(failedConditions == 0 ? "Passed" : "Failed")
+                .withStatusImageUrl(baseUrl + "/static/communityBranchPlugin/checks/QualityGateBadge/passed-16px.png")
+                .withFailedQualityGateConditions(conditions)
+                .withDashboardUrl(baseUrl + "/dashboard?id=project&pullRequest=123")
+                .withNewCoverage(BigDecimal.valueOf(81.5))
+                .withCoverage(new AnalysisSummary.UrlIconMetric<>(baseUrl + "/coverage", baseUrl + "/coverage.png", BigDecimal.valueOf(75.25)))
+                .withNewDuplications(BigDecimal.valueOf(1.2))
+                .withDuplications(new AnalysisSummary.UrlIconMetric<>(baseUrl + "/duplications", baseUrl + "/duplications.png", BigDecimal.valueOf(3.4)))
+                .withNewIssues(new AnalysisSummary.UrlIconMetric<>(baseUrl + "/issues", baseUrl + "/issues.png", 12L))
+                .withFixedIssues(new AnalysisSummary.UrlIconMetric<>(baseUrl + "/fixed", baseUrl + "/fixed.png", 3))
+                .withAcceptedIssues(new AnalysisSummary.UrlIconMetric<>(baseUrl + "/accepted", baseUrl + "/accepted.png", 1))
+                .withSecurityHotspots(new AnalysisSummary.UrlIconMetric<>(baseUrl + "/hotspots", baseUrl + "/hotspots.png", 0))
+                .build();
+        formatterFactory = new MarkdownFormatterFactory();
+    }
+
+    @Benchmark
+    public String format() {
+        return analysisSummary.format(formatterFactory);
+    }
+
+}
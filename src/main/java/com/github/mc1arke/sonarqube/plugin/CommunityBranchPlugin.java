@@ -28,13 +28,24 @@ import org.sonar.api.rule.Severity;
 import org.sonar.core.config.PurgeConstants;
 import org.sonar.core.extension.CoreExtension;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AuthenticatedUserCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.PooledHttpClientProvider;
+import com.github.mc1arke.sonarqube.plugin.almclient.RateLimitScheduler;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.DefaultAzureDevopsClientFactory;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketCloudTokenCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketServerCapabilityCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.DefaultBitbucketClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.HttpClientBuilderFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.GithubClientFactory;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.GithubInstallationTokenCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.DefaultGitlabClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.DefaultLinkHeaderReader;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.GitlabResponseCache;
 import com.github.mc1arke.sonarqube.plugin.ce.CommunityReportAnalysisComponentProvider;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AlmHostBulkheads;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.BoundedSubmissionExecutor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PullRequestDecorationExecutor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.github.GithubSummaryCommentCache;
 import com.github.mc1arke.sonarqube.plugin.scanner.BranchConfigurationFactory;
 import com.github.mc1arke.sonarqube.plugin.scanner.CommunityBranchConfigurationLoader;
 import com.github.mc1arke.sonarqube.plugin.scanner.CommunityBranchParamsValidator;
@@ -82,6 +93,10 @@ public class CommunityBranchPlugin implements Plugin, CoreExtension {
     public static final String PR_FILTER_TYPE_EXCLUSION = "com.github.mc1arke.sonarqube.plugin.branch.filter.type.exclusions";
     public static final String PR_FILTER_SEVERITY_EXCLUSION = "com.github.mc1arke.sonarqube.plugin.branch.filter.severity.exclusions";
     public static final String PR_FILTER_MAXAMOUNT = "com.github.mc1arke.sonarqube.plugin.branch.filter.maxamount";
+    public static final String PR_GITLAB_SUBMISSION_PARALLELISM = "com.github.mc1arke.sonarqube.plugin.branch.pullrequest.gitlab.submission.parallelism";
+    public static final String PR_AZUREDEVOPS_SUBMISSION_PARALLELISM = "com.github.mc1arke.sonarqube.plugin.branch.pullrequest.azuredevops.submission.parallelism";
+    public static final String PR_BITBUCKET_SUBMISSION_PARALLELISM = "com.github.mc1arke.sonarqube.plugin.branch.pullrequest.bitbucket.submission.parallelism";
+    public static final String PR_GITHUB_ANNOTATION_LIMIT = "com.github.mc1arke.sonarqube.plugin.branch.pullrequest.github.annotation.limit";
 
     @Override
     public String getName() {
@@ -91,7 +106,10 @@ public class CommunityBranchPlugin implements Plugin, CoreExtension {
     @Override
     public void load(CoreExtension.Context context) {
         if (SonarQubeSide.COMPUTE_ENGINE == context.getRuntime().getSonarQubeSide()) {
-            context.addExtensions(CommunityReportAnalysisComponentProvider.class);
+            context.addExtensions(CommunityReportAnalysisComponentProvider.class, RateLimitScheduler.class, PooledHttpClientProvider.class,
+                                  GithubInstallationTokenCache.class, BitbucketCloudTokenCache.class, GitlabResponseCache.class,
+                                  PullRequestDecorationExecutor.class, BoundedSubmissionExecutor.class, AlmHostBulkheads.class,
+                                  GithubSummaryCommentCache.class, AuthenticatedUserCache.class, BitbucketServerCapabilityCache.class);
         } else if (SonarQubeSide.SERVER == context.getRuntime().getSonarQubeSide()) {
             context.addExtensions(CommunityBranchFeatureExtension.class, CommunityBranchSupportDelegate.class,
                                   DeleteBindingAction.class,
@@ -107,12 +125,21 @@ public class CommunityBranchPlugin implements Plugin, CoreExtension {
                     PullRequestWs.class,
 
                     GithubValidator.class,
+                    RateLimitScheduler.class,
+                    PooledHttpClientProvider.class,
+                    GithubInstallationTokenCache.class,
                     GithubClientFactory.class,
                     DefaultLinkHeaderReader.class,
                     HttpClientBuilderFactory.class,
+                    BitbucketCloudTokenCache.class,
+                    // only needed to construct the client factory: validation probes the server rather than using the cache
+                    BitbucketServerCapabilityCache.class,
                     DefaultBitbucketClientFactory.class,
                     BitbucketValidator.class,
                     GitlabValidator.class,
+                    GitlabResponseCache.class,
+                    // only needed to construct the client factories: validation doesn't look up the authenticated user
+                    AuthenticatedUserCache.class,
                     DefaultGitlabClientFactory.class,
                     DefaultAzureDevopsClientFactory.class,
                     AzureDevopsValidator.class,
@@ -218,8 +245,50 @@ public class CommunityBranchPlugin implements Plugin, CoreExtension {
                     .type(PropertyType.INTEGER)
                     .build();
 
+            PropertyDefinition gitlabSubmissionParallelismProperty = PropertyDefinition
+                    .builder(PR_GITLAB_SUBMISSION_PARALLELISM)
+                    .category(getName())
+                    .subCategory("GitLab only")
+                    .onConfigScopes(ConfigScope.PROJECT)
+                    .name("Comment submission parallelism")
+                    .description("Maximum number of comments, resolutions and deletions sent to Gitlab concurrently, must be > 0 (Gitlab only).")
+                    .type(PropertyType.INTEGER)
+                    .defaultValue(String.valueOf(4))
+                    .build();
+            PropertyDefinition azureDevopsSubmissionParallelismProperty = PropertyDefinition
+                    .builder(PR_AZUREDEVOPS_SUBMISSION_PARALLELISM)
+                    .category(getName())
+                    .subCategory("Azure DevOps only")
+                    .onConfigScopes(ConfigScope.PROJECT)
+                    .name("Comment submission parallelism")
+                    .description("Maximum number of comments, resolutions and deletions sent to Azure DevOps concurrently, must be > 0 (Azure DevOps only).")
+                    .type(PropertyType.INTEGER)
+                    .defaultValue(String.valueOf(4))
+                    .build();
+
+            PropertyDefinition bitbucketSubmissionParallelismProperty = PropertyDefinition
+                    .builder(PR_BITBUCKET_SUBMISSION_PARALLELISM)
+                    .category(getName())
+                    .subCategory("Bitbucket only")
+                    .onConfigScopes(ConfigScope.PROJECT)
+                    .name("Annotation submission parallelism")
+                    .description("Maximum number of annotation uploads sent to Bitbucket concurrently, must be > 0 (Bitbucket only).")
+                    .type(PropertyType.INTEGER)
+                    .defaultValue(String.valueOf(4))
+                    .build();
+            PropertyDefinition githubAnnotationLimitProperty = PropertyDefinition
+                    .builder(PR_GITHUB_ANNOTATION_LIMIT)
+                    .category(getName())
+                    .subCategory("GitHub only")
+                    .onConfigScopes(ConfigScope.PROJECT)
+                    .name("Check run annotation limit")
+                    .description("Maximum number of issues annotated on the check run, must be >= 0. All issues are annotated if not set (GitHub only).")
+                    .type(PropertyType.INTEGER)
+                    .build();
+
             context.addExtensions(editSummaryProperty, publishCiStatusProperty, typeFilterProperty,
-                    severityFilterProperty, maxFilterProperty);
+                    severityFilterProperty, maxFilterProperty, gitlabSubmissionParallelismProperty,
+                    azureDevopsSubmissionParallelismProperty, bitbucketSubmissionParallelismProperty, githubAnnotationLimitProperty);
         }
     }
 
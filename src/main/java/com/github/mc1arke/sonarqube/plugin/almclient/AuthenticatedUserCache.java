@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.server.ServerSide;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Retains the details of the user each ALM credential authenticates as, so that every decoration doesn't need to ask
+ * the ALM who the configured token belongs to before it can identify its own comments. Entries are keyed on the API
+ * URL and a fingerprint of the token rather than the token itself, so changing either in the ALM settings results in
+ * the user being retrieved again, and are otherwise only re-used for the configured time-to-live.
+ */
+@ServerSide
+@ComputeEngineSide
+public class AuthenticatedUserCache implements Startable {
+
+    public static final String TIME_TO_LIVE = "com.github.mc1arke.sonarqube.plugin.almclient.authenticatedUser.cacheTtlMinutes";
+
+    private static final int DEFAULT_TIME_TO_LIVE = 60;
+
+    private final Clock clock;
+    private final Duration timeToLive;
+    private final RefreshingCache<UserKey, CachedUser> cache;
+
+    @Autowired
+    public AuthenticatedUserCache(Configuration configuration) {
+        this(Clock.systemUTC(), Duration.ofMinutes(configuration.getInt(TIME_TO_LIVE).orElse(DEFAULT_TIME_TO_LIVE)));
+    }
+
+    AuthenticatedUserCache(Clock clock, Duration timeToLive) {
+        if (timeToLive.isNegative()) {
+            throw new IllegalArgumentException(TIME_TO_LIVE + " must not be negative");
+        }
+        this.clock = clock;
+        this.timeToLive = timeToLive;
+        // users are only ever loaded on the calling thread: a refresh ahead period of zero never triggers a background load
+        this.cache = new RefreshingCache<>("Authenticated ALM user", clock, CachedUser::getExpiry, Duration.ZERO,
+                Duration.ZERO, Runnable::run);
+    }
+
+    /**
+     * Retrieves the user the given token authenticates as, only calling the loader if no user is cached for that token
+     * or the cached user has outlived the time-to-live.
+     *
+     * @param apiUrl the URL of the ALM API the token is used against
+     * @param authToken the token, or the authorization value derived from it, the client authenticates with
+     * @param type the type the ALM client represents the user as
+     * @param userLoader the mechanism for retrieving the user from the ALM
+     * @return the user the token authenticates as
+     * @throws IOException if the user was not cached and could not be retrieved
+     */
+    public <T> T getUser(String apiUrl, String authToken, Class<T> type, RefreshingCache.Loader<T> userLoader) throws IOException {
+        Object user = cache.get(new UserKey(apiUrl, fingerprint(authToken), type),
+                () -> new CachedUser(userLoader.load(), clock.instant().plus(timeToLive))).getUser();
+        return type.cast(user);
+    }
+
+    /**
+     * Removes any user cached for the given token, such as when the ALM has rejected the token.
+     */
+    public void invalidate(String apiUrl, String authToken, Class<?> type) {
+        cache.invalidate(new UserKey(apiUrl, fingerprint(authToken), type));
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    @Override
+    public void start() {
+        // nothing to do, users are retrieved on first use
+    }
+
+    @Override
+    public void stop() {
+        cache.invalidateAll();
+    }
+
+    private static String fingerprint(String authToken) {
+        return DigestUtils.sha256Hex(String.valueOf(authToken));
+    }
+
+    private static final class UserKey {
+
+        private final String apiUrl;
+        private final String tokenFingerprint;
+        private final Class<?> type;
+
+        private UserKey(String apiUrl, String tokenFingerprint, Class<?> type) {
+            this.apiUrl = apiUrl;
+            this.tokenFingerprint = tokenFingerprint;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            UserKey userKey = (UserKey) o;
+            return Objects.equals(apiUrl, userKey.apiUrl) && Objects.equals(tokenFingerprint, userKey.tokenFingerprint) && Objects.equals(type, userKey.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(apiUrl, tokenFingerprint, type);
+        }
+    }
+
+    private static final class CachedUser {
+
+        private final Object user;
+        private final Instant expiry;
+
+        private CachedUser(Object user, Instant expiry) {
+            this.user = user;
+            this.expiry = expiry;
+        }
+
+        Object getUser() {
+            return user;
+        }
+
+        Instant getExpiry() {
+            return expiry;
+        }
+    }
+}
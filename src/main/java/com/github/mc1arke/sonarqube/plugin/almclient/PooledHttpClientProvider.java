@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.http.Header;
+import org.apache.http.HttpMessage;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpCoreContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.server.ServerSide;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Holds a pooled {@link CloseableHttpClient} for each ALM host so that connections are kept alive and re-used across
+ * API calls and decorations, rather than a new TCP/TLS connection being negotiated for every request. The clients
+ * returned by this provider are owned by it and must not be closed by callers; closing the response returned from each
+ * request is enough to return the connection to the pool.
+ */
+@ServerSide
+@ComputeEngineSide
+public class PooledHttpClientProvider implements Startable {
+
+    public static final String MAX_CONNECTIONS_PER_ROUTE = "com.github.mc1arke.sonarqube.plugin.almclient.http.maxConnectionsPerRoute";
+    public static final String IDLE_CONNECTION_TIMEOUT = "com.github.mc1arke.sonarqube.plugin.almclient.http.idleConnectionTimeoutSeconds";
+
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+    private static final int DEFAULT_IDLE_CONNECTION_TIMEOUT = 60;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledHttpClientProvider.class);
+
+    private final Map<String, CloseableHttpClient> httpClients = new ConcurrentHashMap<>();
+    private final Function<String, CloseableHttpClient> httpClientCreator;
+
+    @Autowired
+    public PooledHttpClientProvider(Configuration configuration, RateLimitScheduler rateLimitScheduler) {
+        this(configuration.getInt(MAX_CONNECTIONS_PER_ROUTE).orElse(DEFAULT_MAX_CONNECTIONS_PER_ROUTE),
+                configuration.getInt(IDLE_CONNECTION_TIMEOUT).orElse(DEFAULT_IDLE_CONNECTION_TIMEOUT), rateLimitScheduler);
+    }
+
+    private PooledHttpClientProvider(int maxConnectionsPerRoute, int idleConnectionTimeout, RateLimitScheduler rateLimitScheduler) {
+        this(host -> createHttpClient(host, maxConnectionsPerRoute, idleConnectionTimeout, rateLimitScheduler));
+        if (maxConnectionsPerRoute < 1) {
+            throw new IllegalArgumentException(MAX_CONNECTIONS_PER_ROUTE + " must be greater than 0");
+        }
+        if (idleConnectionTimeout < 1) {
+            throw new IllegalArgumentException(IDLE_CONNECTION_TIMEOUT + " must be greater than 0");
+        }
+    }
+
+    PooledHttpClientProvider(Function<String, CloseableHttpClient> httpClientCreator) {
+        this.httpClientCreator = httpClientCreator;
+    }
+
+    /**
+     * Retrieves the shared client for the host the given URL points to, creating the client and its connection pool
+     * if this is the first request against that host.
+     *
+     * @param baseUrl the URL of the ALM (or its API) the client will be used to call
+     * @return a pooled client which must not be closed by the caller
+     */
+    public CloseableHttpClient getHttpClient(String baseUrl) {
+        return httpClients.computeIfAbsent(createPoolKey(baseUrl), httpClientCreator);
+    }
+
+    @Override
+    public void start() {
+        // clients are created lazily as each ALM is first contacted
+    }
+
+    @Override
+    public void stop() {
+        List<String> hosts = new ArrayList<>(httpClients.keySet());
+        for (String host : hosts) {
+            CloseableHttpClient httpClient = httpClients.remove(host);
+            if (null == httpClient) {
+                continue;
+            }
+            try {
+                httpClient.close();
+            } catch (IOException ex) {
+                LOGGER.warn("Could not close HTTP connection pool for {}", host, ex);
+            }
+        }
+    }
+
+    private static String createPoolKey(String baseUrl) {
+        URI uri = URI.create(baseUrl);
+        if (null == uri.getScheme() || null == uri.getHost()) {
+            throw new IllegalArgumentException("URL must be absolute: " + baseUrl);
+        }
+        String scheme = uri.getScheme().toLowerCase(Locale.ENGLISH);
+        int port = uri.getPort();
+        if (port < 0) {
+            port = "https".equals(scheme) ? 443 : 80;
+        }
+        return scheme + "://" + uri.getHost().toLowerCase(Locale.ENGLISH) + ":" + port;
+    }
+
+    private static CloseableHttpClient createHttpClient(String host, int maxConnectionsPerRoute, int idleConnectionTimeout,
+                                                        RateLimitScheduler rateLimitScheduler) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSystemSocketFactory())
+                .build());
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setMaxTotal(maxConnectionsPerRoute);
+
+        return HttpClients.custom()
+                .useSystemProperties()
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleConnectionTimeout, TimeUnit.SECONDS)
+                .addInterceptorLast((HttpRequestInterceptor) (request, context) -> rateLimitScheduler.acquire(host,
+                        RateLimitScheduler.findCredential(headerLookup(request))))
+                .addInterceptorFirst((HttpResponseInterceptor) (response, context) -> rateLimitScheduler.update(host,
+                        RateLimitScheduler.findCredential(headerLookup(HttpCoreContext.adapt(context).getRequest())),
+                        headerLookup(response)))
+                .build();
+    }
+
+    private static UnaryOperator<String> headerLookup(HttpMessage message) {
+        return name -> Optional.ofNullable(message.getFirstHeader(name))
+                .map(Header::getValue)
+                .orElse(null);
+    }
+
+}
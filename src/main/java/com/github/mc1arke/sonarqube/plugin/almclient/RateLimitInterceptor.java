@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * Paces requests made through an OkHttp client using the shared {@link RateLimitScheduler}, and records the rate limit
+ * details from each response against the host it came from and the credential the request was sent with. This needs
+ * to be registered as a network interceptor so it sees the credential added by any authenticating interceptor.
+ */
+public class RateLimitInterceptor implements Interceptor {
+
+    private final RateLimitScheduler rateLimitScheduler;
+
+    public RateLimitInterceptor(RateLimitScheduler rateLimitScheduler) {
+        this.rateLimitScheduler = rateLimitScheduler;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        HttpUrl url = request.url();
+        String host = url.scheme() + "://" + url.host() + ":" + url.port();
+        String credential = RateLimitScheduler.findCredential(request::header);
+        rateLimitScheduler.acquire(host, credential);
+        Response response = chain.proceed(request);
+        rateLimitScheduler.update(host, credential, response::header);
+        return response;
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.server.ServerSide;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Tracks the request budget each ALM host reports through its rate limit response headers, and delays requests to a
+ * host before the budget is exhausted rather than letting decorations fail once the ALM starts rejecting requests.
+ * Github, Gitlab, Azure DevOps and Bitbucket all report their budget through either the {@code X-RateLimit-*} or the
+ * {@code RateLimit-*} headers. The ALMs allocate these budgets to each credential, so a budget is tracked against the
+ * host and a fingerprint of the credential the request was authenticated with, and requests using one token are never
+ * paced on the budget reported for another. Any {@code Retry-After} header holds back every request to that host until
+ * the given time, whichever credential it is sent with.
+ * <p>
+ * Requests are admitted freely whilst the remaining budget is healthy. Once less than a tenth of the limit remains, the
+ * remaining budget is shared out evenly until the limit resets, with each request being given the next free slot.
+ * Delays longer than a minute are not waited out, since holding a decoration for that long is worse than letting the
+ * request fail as it would have without any scheduling.
+ */
+@ServerSide
+@ComputeEngineSide
+public class RateLimitScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RateLimitScheduler.class);
+
+    private static final double LOW_BUDGET_RATIO = 0.1;
+    private static final Duration MAXIMUM_DELAY = Duration.ofMinutes(1);
+    // reset headers with values below this are a number of seconds from now rather than an epoch second
+    private static final long EPOCH_SECONDS_THRESHOLD = 1_000_000_000L;
+    private static final List<String> CREDENTIAL_HEADERS = List.of("Authorization", "PRIVATE-TOKEN");
+
+    private final Clock clock;
+    private final Sleeper sleeper;
+    private final Map<BudgetKey, CredentialBudget> budgets = new ConcurrentHashMap<>();
+    private final Map<String, Instant> blocks = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RateLimitScheduler() {
+        this(Clock.systemUTC(), duration -> Thread.sleep(duration.toMillis()));
+    }
+
+    RateLimitScheduler(Clock clock, Sleeper sleeper) {
+        this.clock = clock;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * Finds the credential a request is authenticated with from the request's headers.
+     *
+     * @param requestHeaders a lookup of the request header values, returning null for any header not present
+     * @return the value of the header holding the credential, or null if the request is unauthenticated
+     */
+    public static String findCredential(UnaryOperator<String> requestHeaders) {
+        return CREDENTIAL_HEADERS.stream()
+                .map(requestHeaders)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Blocks until a request can be sent to the given host without exceeding its known rate limit.
+     *
+     * @param host the host the request will be sent to, in {@code scheme://host:port} format
+     * @param credential the credential the request is authenticated with, or null if it is unauthenticated
+     * @throws InterruptedIOException if the thread is interrupted whilst waiting
+     */
+    public void acquire(String host, String credential) throws InterruptedIOException {
+        Instant now = clock.instant();
+        Instant blockedUntil = blocks.get(host);
+        CredentialBudget budget = budgets.get(new BudgetKey(host, credential));
+        Duration delay;
+        if (null != blockedUntil && now.isBefore(blockedUntil)) {
+            delay = Duration.between(now, blockedUntil);
+        } else if (null != budget) {
+            delay = budget.admit(now);
+        } else {
+            return;
+        }
+        if (delay.isZero() || delay.isNegative()) {
+            return;
+        }
+        if (delay.compareTo(MAXIMUM_DELAY) > 0) {
+            LOGGER.atWarn().setMessage("Rate limit for {} will not allow further requests until {}, sending request anyway")
+                    .addArgument(host)
+                    .addArgument(() -> now.plus(delay))
+                    .log();
+            return;
+        }
+
+        LOGGER.atInfo().setMessage("Delaying request to {} by {}ms to stay within its rate limit ({})")
+                .addArgument(host)
+                .addArgument(delay::toMillis)
+                .addArgument(() -> describe(budget, blockedUntil))
+                .log();
+        try {
+            sleeper.sleep(delay);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException exception = new InterruptedIOException("Interrupted whilst waiting for rate limit of " + host);
+            exception.initCause(ex);
+            throw exception;
+        }
+    }
+
+    /**
+     * Records the rate limit details the host returned in a response.
+     *
+     * @param host the host the response was received from, in {@code scheme://host:port} format
+     * @param credential the credential the request was authenticated with, or null if it was unauthenticated
+     * @param headers a lookup of the response header values, returning null for any header not present
+     */
+    public void update(String host, String credential, UnaryOperator<String> headers) {
+        Optional<Long> remaining = parseLong(headers, "X-RateLimit-Remaining", "RateLimit-Remaining");
+        Optional<Long> limit = parseLong(headers, "X-RateLimit-Limit", "RateLimit-Limit");
+        Optional<Long> reset = parseLong(headers, "X-RateLimit-Reset", "RateLimit-Reset");
+        Optional<Instant> retryAfter = Optional.ofNullable(headers.apply("Retry-After")).flatMap(this::parseRetryAfter);
+        if (remaining.isEmpty() && retryAfter.isEmpty()) {
+            return;
+        }
+
+        Instant now = clock.instant();
+        retryAfter.ifPresent(until -> blocks.merge(host, until, (current, updated) -> updated.isAfter(current) ? updated : current));
+        BudgetKey budgetKey = new BudgetKey(host, credential);
+        remaining.ifPresent(value -> budgets.computeIfAbsent(budgetKey, k -> new CredentialBudget())
+                .update(value, limit.orElse(null), reset.map(resetValue -> toInstant(resetValue, now)).orElse(null)));
+
+        LOGGER.atDebug().setMessage("Rate limit for {}: {}")
+                .addArgument(host)
+                .addArgument(() -> describe(budgets.get(budgetKey), blocks.get(host)))
+                .log();
+    }
+
+    /**
+     * @return the budget last reported to the given credential by the host, along with any block the host has placed
+     *         on every request, or empty if the host has reported neither
+     */
+    public Optional<RateLimitBudget> getBudget(String host, String credential) {
+        Instant blockedUntil = blocks.get(host);
+        CredentialBudget budget = budgets.get(new BudgetKey(host, credential));
+        if (null == budget) {
+            return Optional.ofNullable(blockedUntil).map(until -> new RateLimitBudget(null, null, null, until));
+        }
+        return Optional.of(budget.snapshot(blockedUntil));
+    }
+
+    private static String describe(CredentialBudget budget, Instant blockedUntil) {
+        return null == budget ? String.format(Locale.ENGLISH, "blocked until %s", blockedUntil) : budget.describe(blockedUntil);
+    }
+
+    private Optional<Instant> parseRetryAfter(String value) {
+        String trimmedValue = value.trim();
+        try {
+            return Optional.of(clock.instant().plusSeconds(Long.parseLong(trimmedValue)));
+        } catch (NumberFormatException ex) {
+            try {
+                return Optional.of(ZonedDateTime.parse(trimmedValue, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+            } catch (DateTimeException ex2) {
+                LOGGER.debug("Could not parse Retry-After header value '{}'", value);
+                return Optional.empty();
+            }
+        }
+    }
+
+    private static Optional<Long> parseLong(UnaryOperator<String> headers, String... headerNames) {
+        for (String headerName : headerNames) {
+            String value = headers.apply(headerName);
+            if (null == value) {
+                continue;
+            }
+            try {
+                return Optional.of(Long.parseLong(value.trim()));
+            } catch (NumberFormatException ex) {
+                LOGGER.debug("Could not parse {} header value '{}'", headerName, value);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Instant toInstant(long reset, Instant now) {
+        return reset < EPOCH_SECONDS_THRESHOLD ? now.plusSeconds(reset) : Instant.ofEpochSecond(reset);
+    }
+
+    @FunctionalInterface
+    interface Sleeper {
+
+        void sleep(Duration duration) throws InterruptedException;
+
+    }
+
+    /**
+     * The rate limit budget a host last reported for a credential. Any value the host has not reported is empty.
+     */
+    public static final class RateLimitBudget {
+
+        private final Long limit;
+        private final Long remaining;
+        private final Instant resetAt;
+        private final Instant blockedUntil;
+
+        private RateLimitBudget(Long limit, Long remaining, Instant resetAt, Instant blockedUntil) {
+            this.limit = limit;
+            this.remaining = remaining;
+            this.resetAt = resetAt;
+            this.blockedUntil = blockedUntil;
+        }
+
+        public Optional<Long> getLimit() {
+            return Optional.ofNullable(limit);
+        }
+
+        public Optional<Long> getRemaining() {
+            return Optional.ofNullable(remaining);
+        }
+
+        public Optional<Instant> getResetAt() {
+            return Optional.ofNullable(resetAt);
+        }
+
+        public Optional<Instant> getBlockedUntil() {
+            return Optional.ofNullable(blockedUntil);
+        }
+    }
+
+    private static final class BudgetKey {
+
+        private final String host;
+        private final String credentialFingerprint;
+
+        private BudgetKey(String host, String credential) {
+            this.host = host;
+            // only a digest of the credential is held so tokens aren't retained for the lifetime of the scheduler
+            this.credentialFingerprint = null == credential ? null : DigestUtils.sha256Hex(credential);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            BudgetKey budgetKey = (BudgetKey) o;
+            return Objects.equals(host, budgetKey.host) && Objects.equals(credentialFingerprint, budgetKey.credentialFingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, credentialFingerprint);
+        }
+    }
+
+    private static final class CredentialBudget {
+
+        private Long limit;
+        private Long remaining;
+        private Instant resetAt;
+        private Instant nextAdmission;
+
+        synchronized void update(long remaining, Long limit, Instant resetAt) {
+            this.remaining = remaining;
+            this.limit = limit;
+            this.resetAt = resetAt;
+        }
+
+        synchronized Duration admit(Instant now) {
+            if (null == remaining || null == resetAt || !now.isBefore(resetAt)) {
+                return Duration.ZERO;
+            }
+            if (remaining <= 0) {
+                return Duration.between(now, resetAt);
+            }
+
+            long lowBudget = null == limit ? 1 : Math.max(1, (long) (limit * LOW_BUDGET_RATIO));
+            if (remaining > lowBudget) {
+                remaining--;
+                return Duration.ZERO;
+            }
+
+            // share the remaining requests evenly over the time left until the budget resets
+            Duration interval = Duration.between(now, resetAt).dividedBy(remaining);
+            Instant admission = null == nextAdmission || nextAdmission.isBefore(now) ? now : nextAdmission;
+            nextAdmission = admission.plus(interval);
+            remaining--;
+            return Duration.between(now, admission);
+        }
+
+        synchronized RateLimitBudget snapshot(Instant blockedUntil) {
+            return new RateLimitBudget(limit, remaining, resetAt, blockedUntil);
+        }
+
+        synchronized String describe(Instant blockedUntil) {
+            return String.format(Locale.ENGLISH, "%s of %s requests remaining, resets at %s, blocked until %s",
+                    remaining, limit, resetAt, blockedUntil);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A cache of values that expire at a known point in time, such as access tokens. Values are handed out until they are
+ * within {@code minimumValidity} of expiring, with a single background reload being started once a value is within
+ * {@code refreshAhead} of its expiry so that callers rarely need to wait on a reload. Concurrent requests for a value
+ * that is missing or too close to expiry share the same load rather than each calling the remote service.
+ *
+ * @param <K> the type of key values are cached against
+ * @param <V> the type of value being cached
+ */
+public class RefreshingCache<K, V> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshingCache.class);
+
+    private final String name;
+    private final Clock clock;
+    private final Function<V, Instant> expiryExtractor;
+    private final Duration refreshAhead;
+    private final Duration minimumValidity;
+    private final Executor refreshExecutor;
+
+    private final ConcurrentMap<K, CachedValue<V>> values = new ConcurrentHashMap<>();
+    private final ConcurrentMap<K, CompletableFuture<V>> loads = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public RefreshingCache(String name, Clock clock, Function<V, Instant> expiryExtractor, Duration refreshAhead,
+                           Duration minimumValidity, Executor refreshExecutor) {
+        if (refreshAhead.compareTo(minimumValidity) < 0) {
+            throw new IllegalArgumentException("Refresh ahead period must not be shorter than minimum validity period");
+        }
+        this.name = name;
+        this.clock = clock;
+        this.expiryExtractor = expiryExtractor;
+        this.refreshAhead = refreshAhead;
+        this.minimumValidity = minimumValidity;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Retrieves the cached value for the given key, using the loader to retrieve a new value if nothing is cached or
+     * the cached value is too close to expiry to be used.
+     *
+     * @param key the key the value is cached against
+     * @param loader the mechanism for retrieving a new value if one is required. This may be invoked on a background
+     *               thread if the value is being refreshed ahead of its expiry
+     * @return a value that is valid for at least the configured minimum validity period
+     * @throws IOException if the loader failed to retrieve a value
+     */
+    public V get(K key, Loader<V> loader) throws IOException {
+        Instant now = clock.instant();
+        CachedValue<V> cachedValue = values.get(key);
+        if (null != cachedValue && now.isBefore(cachedValue.getExpiry().minus(minimumValidity))) {
+            hits.increment();
+            if (!now.isBefore(cachedValue.getExpiry().minus(refreshAhead))) {
+                refreshInBackground(key, loader);
+            }
+            return cachedValue.getValue();
+        }
+
+        misses.increment();
+        return await(load(key, loader));
+    }
+
+    /**
+     * Retrieves the cached value for the given key without loading a value if nothing is cached or the cached value is
+     * too close to expiry to be used. No background refresh is started, and the request isn't counted as a hit or miss.
+     */
+    public Optional<V> getIfPresent(K key) {
+        Instant now = clock.instant();
+        return Optional.ofNullable(values.get(key))
+                .filter(cachedValue -> now.isBefore(cachedValue.getExpiry().minus(minimumValidity)))
+                .map(CachedValue::getValue);
+    }
+
+    /**
+     * Removes any cached value for the given key, such as when the remote service has rejected the value before its
+     * expected expiry.
+     */
+    public void invalidate(K key) {
+        values.remove(key);
+    }
+
+    public void invalidateAll() {
+        values.clear();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    private void refreshInBackground(K key, Loader<V> loader) {
+        if (loads.containsKey(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                refreshes.increment();
+                load(key, loader);
+            });
+        } catch (RejectedExecutionException ex) {
+            LOGGER.debug("Could not schedule background refresh of {} cache", name, ex);
+        }
+    }
+
+    private CompletableFuture<V> load(K key, Loader<V> loader) {
+        CompletableFuture<V> load = new CompletableFuture<>();
+        CompletableFuture<V> existingLoad = loads.putIfAbsent(key, load);
+        if (null != existingLoad) {
+            return existingLoad;
+        }
+
+        try {
+            V value = loader.load();
+            values.put(key, new CachedValue<>(value, expiryExtractor.apply(value)));
+            load.complete(value);
+        } catch (Throwable ex) {
+            // anything the loader throws, including an Error, has to be handed to the callers sharing this load, or
+            // they would wait on it indefinitely
+            failures.increment();
+            LOGGER.atDebug().setMessage("Could not load value for {} cache").addArgument(name).setCause(ex).log();
+            load.completeExceptionally(ex);
+        } finally {
+            loads.remove(key, load);
+        }
+
+        LOGGER.atDebug().setMessage("{} cache statistics - hits: {}, misses: {}, background refreshes: {}, failures: {}")
+                .addArgument(name)
+                .addArgument(hits::sum)
+                .addArgument(misses::sum)
+                .addArgument(refreshes::sum)
+                .addArgument(failures::sum)
+                .log();
+
+        return load;
+    }
+
+    private static <V> V await(CompletableFuture<V> load) throws IOException {
+        try {
+            return load.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Loader<V> {
+
+        V load() throws IOException;
+
+    }
+
+    private static final class CachedValue<V> {
+
+        private final V value;
+        private final Instant expiry;
+
+        private CachedValue(V value, Instant expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+
+        V getValue() {
+            return value;
+        }
+
+        Instant getExpiry() {
+            return expiry;
+        }
+    }
+}
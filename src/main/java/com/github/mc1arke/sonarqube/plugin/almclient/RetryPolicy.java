@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.http.NoHttpResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Retries ALM requests that failed for transient reasons, such as the ALM being briefly overloaded or a gateway in
+ * front of it timing out, so a single failed request doesn't abort the whole decoration. Each retry waits for an
+ * exponentially increasing, jittered delay so that decorations retrying against the same ALM don't all send their
+ * requests again at the same moment.
+ * <p>
+ * Idempotent requests are retried for any transient failure. Requests that create something on the ALM are only
+ * repeated where the ALM can't have acted on the original request, unless the caller provides a way of looking up
+ * whether the original request succeeded, in which case the lookup is performed before the request is sent again and
+ * any match returned instead.
+ * <p>
+ * Each policy holds a budget of retries shared by every request made with it, so a policy should be created for each
+ * decoration to stop an ALM that is failing most requests multiplying the number of calls a decoration makes.
+ */
+public class RetryPolicy {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryPolicy.class);
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final int DEFAULT_RETRY_BUDGET = 10;
+    private static final Duration DEFAULT_BASE_DELAY = Duration.ofMillis(500);
+    private static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(10);
+
+    private static final Set<Integer> TRANSIENT_STATUS_CODES = Set.of(429, 502, 503, 504);
+    // responses where the ALM has turned the request away without acting on it, so even a create can be sent again
+    private static final Set<Integer> UNPROCESSED_STATUS_CODES = Set.of(429, 503);
+
+    private final int maxAttempts;
+    private final Duration baseDelay;
+    private final Duration maxDelay;
+    private final Sleeper sleeper;
+    private final DoubleSupplier jitter;
+    private final AtomicInteger remainingBudget;
+
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_RETRY_BUDGET, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    public RetryPolicy(int maxAttempts, int retryBudget, Duration baseDelay, Duration maxDelay) {
+        this(maxAttempts, retryBudget, baseDelay, maxDelay, duration -> Thread.sleep(duration.toMillis()),
+                () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    RetryPolicy(int maxAttempts, int retryBudget, Duration baseDelay, Duration maxDelay, Sleeper sleeper, DoubleSupplier jitter) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Maximum attempts must be at least 1");
+        }
+        if (retryBudget < 0) {
+            throw new IllegalArgumentException("Retry budget must not be negative");
+        }
+        this.maxAttempts = maxAttempts;
+        this.remainingBudget = new AtomicInteger(retryBudget);
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.sleeper = sleeper;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Marks the failure raised for an unexpected response status as transient if the status indicates the request may
+     * succeed if sent again, so the failure is retried when thrown from a request made through this policy.
+     *
+     * @param statusCode the status code returned by the ALM
+     * @param failure the exception raised for the response
+     * @return the exception to throw from the request attempt
+     */
+    public static RuntimeException classify(int statusCode, RuntimeException failure) {
+        if (isTransientStatus(statusCode)) {
+            return new TransientFailure(statusCode, failure);
+        }
+        return failure;
+    }
+
+    /**
+     * Whether a response with the given status will be retried when its failure is passed through
+     * {@link #classify(int, RuntimeException)}, allowing callers to log the failure less severely.
+     *
+     * @param statusCode the status code returned by the ALM
+     * @return true if the status indicates the request may succeed if sent again
+     */
+    public static boolean isTransientStatus(int statusCode) {
+        return TRANSIENT_STATUS_CODES.contains(statusCode);
+    }
+
+    /**
+     * Performs a request that has the same effect however many times it is sent, such as a read, update or delete.
+     */
+    public <T> T execute(String operation, Attempt<T> attempt) throws IOException {
+        return execute(operation, attempt, true, null);
+    }
+
+    /**
+     * Performs a request that creates something on the ALM. Where the request fails in a way that leaves it unclear
+     * whether the ALM acted on it, the lookup is used to find what the request would have created before the request
+     * is sent again.
+     *
+     * @param operation a description of the request for logging
+     * @param attempt the request
+     * @param existingResult a lookup for the result of an earlier attempt that the ALM acted on despite it failing
+     * @return the result of the request, or of the lookup if it found an earlier attempt had succeeded
+     */
+    public <T> T executeCreate(String operation, Attempt<T> attempt, Lookup<T> existingResult) throws IOException {
+        return execute(operation, attempt, false, existingResult);
+    }
+
+    public int getRemainingBudget() {
+        return remainingBudget.get();
+    }
+
+    private <T> T execute(String operation, Attempt<T> attempt, boolean idempotent, Lookup<T> existingResult) throws IOException {
+        int attemptNumber = 1;
+        while (true) {
+            Exception failure;
+            boolean unprocessed;
+            try {
+                return attempt.run();
+            } catch (TransientFailure ex) {
+                failure = ex;
+                unprocessed = UNPROCESSED_STATUS_CODES.contains(ex.getStatusCode());
+            } catch (IOException ex) {
+                if (!isTransient(ex)) {
+                    throw ex;
+                }
+                failure = ex;
+                unprocessed = ex instanceof ConnectException;
+            }
+
+            boolean checkForExistingResult = !idempotent && !unprocessed;
+            if ((checkForExistingResult && null == existingResult) || attemptNumber >= maxAttempts || !consumeBudget(operation)) {
+                throw propagate(failure);
+            }
+
+            Duration delay = calculateDelay(attemptNumber);
+            LOGGER.atDebug().setMessage("{} failed on attempt {} of {}. Retrying in {}ms")
+                    .addArgument(operation)
+                    .addArgument(attemptNumber)
+                    .addArgument(maxAttempts)
+                    .addArgument(delay::toMillis)
+                    .setCause(failure)
+                    .log();
+            try {
+                sleeper.sleep(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw propagate(failure);
+            }
+
+            if (checkForExistingResult) {
+                Optional<T> existing = existingResult.find();
+                if (existing.isPresent()) {
+                    LOGGER.debug("{} had been processed despite failing, so is not being sent again", operation);
+                    return existing.get();
+                }
+            }
+            attemptNumber++;
+        }
+    }
+
+    private boolean consumeBudget(String operation) {
+        if (remainingBudget.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+            return true;
+        }
+        LOGGER.warn("Not retrying {} since the retry budget for this decoration has been used", operation);
+        return false;
+    }
+
+    private Duration calculateDelay(int attemptNumber) {
+        // equal jitter: half the exponential delay is always waited, with a random share of the other half on top
+        long exponentialDelay = Math.min(maxDelay.toMillis(), baseDelay.toMillis() << Math.min(attemptNumber - 1, 20));
+        long halfDelay = exponentialDelay / 2;
+        return Duration.ofMillis(halfDelay + (long) (jitter.getAsDouble() * (exponentialDelay - halfDelay)));
+    }
+
+    private static boolean isTransient(IOException ex) {
+        // only failures to reach the ALM or get a reply from it are retried: anything else, such as a response that
+        // couldn't be parsed or an SSL failure, won't go any better if the request is sent again
+        return !Thread.currentThread().isInterrupted() && (ex instanceof ConnectException
+                || ex instanceof SocketTimeoutException || ex instanceof NoHttpResponseException);
+    }
+
+    private static IOException propagate(Exception failure) {
+        if (failure instanceof TransientFailure) {
+            throw ((TransientFailure) failure).getFailure();
+        }
+        return (IOException) failure;
+    }
+
+    @FunctionalInterface
+    public interface Attempt<T> {
+
+        T run() throws IOException;
+
+    }
+
+    @FunctionalInterface
+    public interface Lookup<T> {
+
+        Optional<T> find() throws IOException;
+
+    }
+
+    @FunctionalInterface
+    interface Sleeper {
+
+        void sleep(Duration duration) throws InterruptedException;
+
+    }
+
+    private static final class TransientFailure extends RuntimeException {
+
+        private final int statusCode;
+        private final RuntimeException failure;
+
+        private TransientFailure(int statusCode, RuntimeException failure) {
+            super(failure.getMessage(), failure, false, false);
+            this.statusCode = statusCode;
+            this.failure = failure;
+        }
+
+        int getStatusCode() {
+            return statusCode;
+        }
+
+        RuntimeException getFailure() {
+            return failure;
+        }
+    }
+}
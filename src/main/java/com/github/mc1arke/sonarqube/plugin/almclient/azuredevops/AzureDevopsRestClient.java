@@ -19,6 +19,10 @@
 package com.github.mc1arke.sonarqube.plugin.almclient.azuredevops;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.AuthenticatedUserCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.RetryPolicy;
+import com.github.mc1arke.sonarqube.plugin.almclient.UnexpectedStatusException;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Comment;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CommentThread;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CommentThreadResponse;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Commit;
@@ -32,6 +36,9 @@ import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Repositor
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.UpdateCommentThreadStatusRequest;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.enums.CommentThreadStatus;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
@@ -46,7 +53,9 @@ import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class AzureDevopsRestClient implements AzureDevopsClient {
 
@@ -58,13 +67,18 @@ public class AzureDevopsRestClient implements AzureDevopsClient {
     private final String apiUrl;
     private final ObjectMapper objectMapper;
     private final Supplier<CloseableHttpClient> httpClientFactory;
+    private final RetryPolicy retryPolicy;
+    private final AuthenticatedUserCache authenticatedUserCache;
 
-    AzureDevopsRestClient(String apiUrl, String authToken, ObjectMapper objectMapper, Supplier<CloseableHttpClient> httpClientFactory) {
+    AzureDevopsRestClient(String apiUrl, String authToken, ObjectMapper objectMapper, Supplier<CloseableHttpClient> httpClientFactory,
+                          RetryPolicy retryPolicy, AuthenticatedUserCache authenticatedUserCache) {
         super();
         this.apiUrl = apiUrl;
         this.authToken = authToken;
         this.objectMapper = objectMapper;
         this.httpClientFactory = httpClientFactory;
+        this.retryPolicy = retryPolicy;
+        this.authenticatedUserCache = authenticatedUserCache;
     }
 
     @Override
@@ -88,13 +102,20 @@ public class AzureDevopsRestClient implements AzureDevopsClient {
     @Override
     public CommentThread createThread(String projectId, String repositoryName, int pullRequestId, CreateCommentThreadRequest thread) throws IOException {
         String url = String.format("%s/%s/_apis/git/repositories/%s/pullRequests/%s/threads?api-version=%s", apiUrl, encode(projectId), encode(repositoryName), pullRequestId, API_VERSION);
-        return execute(url, "post", objectMapper.writeValueAsString(thread), CommentThread.class);
+        List<String> commentContents = thread.getComments().stream().map(CreateCommentRequest::getContent).collect(Collectors.toList());
+        return create(url, objectMapper.writeValueAsString(thread), CommentThread.class,
+                () -> findThread(projectId, repositoryName, pullRequestId, existingThread -> commentContents.equals(existingThread.getComments().stream()
+                        .map(Comment::getContent)
+                        .collect(Collectors.toList()))));
     }
 
     @Override
     public void addCommentToThread(String projectId, String repositoryName, int pullRequestId, int threadId, CreateCommentRequest comment) throws IOException {
         String url = String.format("%s/%s/_apis/git/repositories/%s/pullRequests/%s/threads/%s/comments?api-version=%s", apiUrl, encode(projectId), encode(repositoryName), pullRequestId, threadId, API_VERSION);
-        execute(url, "post", objectMapper.writeValueAsString(comment), null);
+        this.<CommentThread>create(url, objectMapper.writeValueAsString(comment), null,
+                () -> findThread(projectId, repositoryName, pullRequestId, thread -> thread.getId() == threadId && thread.getComments().stream()
+                        .map(Comment::getContent)
+                        .anyMatch(comment.getContent()::equals)));
     }
 
     @Override
@@ -127,11 +148,36 @@ public class AzureDevopsRestClient implements AzureDevopsClient {
     @Override
     public ConnectionData getConnectionData() throws IOException {
         String url = String.format("%s/_apis/ConnectionData?api-version=%s", apiUrl, API_VERSION_PREVIEW);
-        return Objects.requireNonNull(execute(url, "get", null, ConnectionData.class));
+        return authenticatedUserCache.getUser(apiUrl, authToken, ConnectionData.class,
+                () -> Objects.requireNonNull(execute(url, "get", null, ConnectionData.class)));
     }
 
 
+    private Optional<CommentThread> findThread(String projectId, String repositoryName, int pullRequestId, Predicate<CommentThread> matcher) throws IOException {
+        return retrieveThreads(projectId, repositoryName, pullRequestId).stream()
+                .filter(matcher)
+                .findFirst();
+    }
+
+    /**
+     * Performs a request that has the same effect however many times it is sent. Status submissions are included
+     * since Azure Devops only shows the latest status for each context.
+     */
     private <T> T execute(String url, String method, String content, Class<T> type) throws IOException {
+        HttpUriRequest request = createRequest(url, method, content, type);
+        return retryPolicy.execute(describe(request), () -> executeRequest(request, type));
+    }
+
+    /**
+     * Performs a request that creates a thread or comment, using the lookup to check whether an attempt Azure Devops
+     * failed to respond to had created it before sending the request again, since a duplicate would otherwise be added.
+     */
+    private <T> T create(String url, String content, Class<T> type, RetryPolicy.Lookup<T> existingEntity) throws IOException {
+        HttpUriRequest request = createRequest(url, "post", content, type);
+        return retryPolicy.executeCreate(describe(request), () -> executeRequest(request, type), existingEntity);
+    }
+
+    private HttpUriRequest createRequest(String url, String method, String content, Class<?> type) {
         RequestBuilder requestBuilder = RequestBuilder.create(method)
                 .setUri(url)
                 .addHeader("Authorization", "Basic " + authToken)
@@ -139,16 +185,31 @@ public class AzureDevopsRestClient implements AzureDevopsClient {
 
         Optional.ofNullable(content).ifPresent(body -> requestBuilder.setEntity(new StringEntity(body, StandardCharsets.UTF_8)));
         Optional.ofNullable(type).ifPresent(responseType -> requestBuilder.addHeader("Accept", ContentType.APPLICATION_JSON.getMimeType()));
+        return requestBuilder.build();
+    }
 
-        try (CloseableHttpClient httpClient = httpClientFactory.get()) {
-            HttpResponse httpResponse = httpClient.execute(requestBuilder.build());
-
-            validateResponse(httpResponse);
-
-            if (null == type) {
-                return null;
+    private <T> T executeRequest(HttpUriRequest request, Class<T> type) throws IOException {
+        CloseableHttpClient httpClient = httpClientFactory.get();
+        try (CloseableHttpResponse httpResponse = httpClient.execute(request)) {
+            try {
+                try {
+                    validateResponse(httpResponse);
+                } catch (IllegalStateException ex) {
+                    int statusCode = httpResponse.getStatusLine().getStatusCode();
+                    if (statusCode == HttpStatus.SC_UNAUTHORIZED || statusCode == HttpStatus.SC_FORBIDDEN) {
+                        // the token may have been revoked or replaced, so the user it authenticated as is looked up again next time
+                        authenticatedUserCache.invalidate(apiUrl, authToken, ConnectionData.class);
+                    }
+                    throw RetryPolicy.classify(statusCode, ex);
+                }
+
+                if (null == type) {
+                    return null;
+                }
+                return objectMapper.readValue(EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8), type);
+            } finally {
+                EntityUtils.consumeQuietly(httpResponse.getEntity());
             }
-            return objectMapper.readValue(EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8), type);
         }
     }
 
@@ -172,7 +233,12 @@ public class AzureDevopsRestClient implements AzureDevopsClient {
                 .log();
 
 
-        throw new IllegalStateException("An unexpected response code was returned from the Azure Devops API - Expected: 200, Got: " + httpResponse.getStatusLine().getStatusCode());
+        throw new UnexpectedStatusException("An unexpected response code was returned from the Azure Devops API - Expected: 200, Got: " + httpResponse.getStatusLine().getStatusCode(),
+                httpResponse.getStatusLine().getStatusCode());
+    }
+
+    private static String describe(HttpUriRequest request) {
+        return "Azure Devops " + request.getMethod() + " " + request.getURI();
     }
 
     private static String encode(String input) {
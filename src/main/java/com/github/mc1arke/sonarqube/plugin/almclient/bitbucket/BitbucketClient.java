@@ -92,6 +92,17 @@ public interface BitbucketClient {
      */
     boolean supportsCodeInsights();
 
+    /**
+     * Determines if the used bitbucket endpoint supports the code insights feature by asking the endpoint, rather than
+     * relying on anything retained from an earlier check, so a change to the endpoint is reported straight away when
+     * validating its configuration.
+     *
+     * @return boolean
+     */
+    default boolean probeCodeInsightsSupport() {
+        return supportsCodeInsights();
+    }
+
     /**
      * <p>
      *     Returns the annotation upload limit consisting of two different objects:
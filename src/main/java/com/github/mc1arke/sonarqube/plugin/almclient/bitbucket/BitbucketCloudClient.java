@@ -71,7 +71,7 @@ class BitbucketCloudClient implements BitbucketClient {
         this.bitbucketConfiguration = bitbucketConfiguration;
     }
 
-    static String negotiateBearerToken(String clientId, String clientSecret, ObjectMapper objectMapper, OkHttpClient okHttpClient) {
+    static AuthToken negotiateBearerToken(String clientId, String clientSecret, ObjectMapper objectMapper, OkHttpClient okHttpClient) {
         Request request = new Request.Builder()
                 .header("Authorization", "Basic " + Base64.getEncoder().encodeToString((clientId + ":" + clientSecret).getBytes(StandardCharsets.UTF_8)))
                 .url("https://bitbucket.org/site/oauth2/access_token")
@@ -79,9 +79,8 @@ class BitbucketCloudClient implements BitbucketClient {
                 .build();
 
         try (Response response = okHttpClient.newCall(request).execute()) {
-            BitbucketCloudClient.AuthToken authToken = objectMapper.readValue(
+            return objectMapper.readValue(
                     Optional.ofNullable(response.body()).orElseThrow(() -> new IllegalStateException("No response returned by Bitbucket Oauth")).string(), BitbucketCloudClient.AuthToken.class);
-            return authToken.getAccessToken();
         } catch (IOException ex) {
             throw new IllegalStateException("Could not retrieve bearer token", ex);
         }
@@ -239,16 +238,26 @@ class BitbucketCloudClient implements BitbucketClient {
         }
     }
 
-    private static class AuthToken {
+    static class AuthToken {
 
         private final String accessToken;
+        private final Long expiresIn;
 
-        AuthToken(@JsonProperty("access_token") String accessToken) {
+        AuthToken(@JsonProperty("access_token") String accessToken, @JsonProperty("expires_in") Long expiresIn) {
             this.accessToken = accessToken;
+            this.expiresIn = expiresIn;
         }
 
         String getAccessToken() {
             return accessToken;
         }
+
+        /**
+         * @return the number of seconds, from the point the token was issued, that Bitbucket will accept the token for,
+         * or null if Bitbucket did not report an expiry
+         */
+        Long getExpiresIn() {
+            return expiresIn;
+        }
     }
 }
@@ -19,6 +19,8 @@
 package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
 
 public class BitbucketCloudException extends RuntimeException {
+    public static final int TOO_MANY_REQUESTS = 429;
+
     private final int code;
     private final String error;
 
@@ -31,6 +33,14 @@ public class BitbucketCloudException extends RuntimeException {
         return this.code == code;
     }
 
+    /**
+     * Whether the request was rejected because Bitbucket was overloaded or failed to process it, rather than because
+     * of a problem with the request, so sending the same request again later may succeed.
+     */
+    public boolean isRetryable() {
+        return code == TOO_MANY_REQUESTS || code >= 500;
+    }
+
     @Override
     public String getMessage() {
         return "HTTP Status Code: " + code + "; Message:" + error;
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.server.ServerSide;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.RefreshingCache;
+
+/**
+ * Retains Bitbucket Cloud OAuth bearer tokens between analyses so that each decoration doesn't need to perform the
+ * client credentials exchange against Bitbucket before it can start. Tokens are held against the OAuth consumer's
+ * client ID and secret, so a token negotiated with a secret that has since been changed isn't handed out, re-used until shortly before the {@code expires_in} period Bitbucket returned with them elapses, and
+ * refreshed in the background as they approach that point.
+ */
+@ServerSide
+@ComputeEngineSide
+public class BitbucketCloudTokenCache implements Startable {
+
+    private static final Duration REFRESH_AHEAD = Duration.ofMinutes(15);
+    private static final Duration MINIMUM_VALIDITY = Duration.ofMinutes(5);
+
+    private final Clock clock;
+    private final ExecutorService refreshExecutor;
+    private final RefreshingCache<TokenKey, BearerToken> cache;
+
+    @Autowired
+    public BitbucketCloudTokenCache() {
+        this(Clock.systemUTC(), Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bitbucket-cloud-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    BitbucketCloudTokenCache(Clock clock, ExecutorService refreshExecutor) {
+        this.clock = clock;
+        this.refreshExecutor = refreshExecutor;
+        this.cache = new RefreshingCache<>("Bitbucket Cloud bearer token", clock, BearerToken::getExpiry,
+                REFRESH_AHEAD, MINIMUM_VALIDITY, refreshExecutor);
+    }
+
+    /**
+     * Retrieves a bearer token for the given OAuth consumer, only calling the loader if no token is cached or the
+     * cached token is too close to expiry.
+     *
+     * @param clientId the client ID of the OAuth consumer the token is issued to
+     * @param clientSecret the secret the OAuth consumer authenticates with
+     * @param tokenLoader the mechanism for negotiating a new bearer token
+     * @return the bearer token value
+     * @throws IOException if a new token was required but could not be negotiated
+     */
+    String getToken(String clientId, String clientSecret, RefreshingCache.Loader<BitbucketCloudClient.AuthToken> tokenLoader) throws IOException {
+        return cache.get(new TokenKey(clientId, clientSecret), () -> {
+            // the expiry is measured from before the token is requested so network latency can't extend its lifetime
+            Instant requestTime = clock.instant();
+            return createBearerToken(tokenLoader.load(), requestTime);
+        }).getToken();
+    }
+
+    void invalidate(String clientId, String clientSecret) {
+        cache.invalidate(new TokenKey(clientId, clientSecret));
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    @Override
+    public void start() {
+        // nothing to do, tokens are retrieved on first use
+    }
+
+    @Override
+    public void stop() {
+        refreshExecutor.shutdownNow();
+        cache.invalidateAll();
+    }
+
+    private static BearerToken createBearerToken(BitbucketCloudClient.AuthToken authToken, Instant requestTime) {
+        // a token without an expiry is treated as only being valid for this use, rather than being retained
+        Instant expiry = Optional.ofNullable(authToken.getExpiresIn())
+                .map(requestTime::plusSeconds)
+                .orElseGet(() -> requestTime.plus(MINIMUM_VALIDITY));
+        return new BearerToken(authToken.getAccessToken(), expiry);
+    }
+
+    private static final class TokenKey {
+
+        private final String clientId;
+        private final String clientSecretHash;
+
+        private TokenKey(String clientId, String clientSecret) {
+            this.clientId = clientId;
+            this.clientSecretHash = DigestUtils.sha256Hex(String.valueOf(clientSecret));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            TokenKey tokenKey = (TokenKey) o;
+            return Objects.equals(clientId, tokenKey.clientId) && Objects.equals(clientSecretHash, tokenKey.clientSecretHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(clientId, clientSecretHash);
+        }
+    }
+
+    private static final class BearerToken {
+
+        private final String token;
+        private final Instant expiry;
+
+        private BearerToken(String token, Instant expiry) {
+            this.token = token;
+            this.expiry = expiry;
+        }
+
+        String getToken() {
+            return token;
+        }
+
+        Instant getExpiry() {
+            return expiry;
+        }
+    }
+}
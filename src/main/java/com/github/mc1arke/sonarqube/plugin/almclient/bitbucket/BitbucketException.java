@@ -25,6 +25,7 @@ import java.util.stream.Collectors;
 
 public class BitbucketException extends RuntimeException {
     public static final int PAYLOAD_TOO_LARGE = 413;
+    public static final int TOO_MANY_REQUESTS = 429;
 
     private final int code;
     private final ErrorResponse errors;
@@ -38,6 +39,14 @@ public class BitbucketException extends RuntimeException {
         return this.code == code;
     }
 
+    /**
+     * Whether the request was rejected because Bitbucket was overloaded or failed to process it, rather than because
+     * of a problem with the request, so sending the same request again later may succeed.
+     */
+    public boolean isRetryable() {
+        return code == TOO_MANY_REQUESTS || code >= 500;
+    }
+
     @Override
     public String getMessage() {
         return Optional.ofNullable(errors)
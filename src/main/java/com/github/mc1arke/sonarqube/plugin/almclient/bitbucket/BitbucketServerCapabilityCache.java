@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.server.ServerSide;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.RefreshingCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.AnnotationUploadLimit;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.ServerProperties;
+
+/**
+ * Retains what each Bitbucket Server instance is capable of between analyses so that each decoration doesn't need to
+ * request the server's application properties to find out whether it supports Code Insights. Capabilities are held
+ * against the server URL for a day, and refreshed in the background as they approach that point. Servers that don't
+ * support Code Insights are checked again sooner so an upgrade is picked up without waiting a full day, and callers
+ * invalidate the capabilities for a server that rejects a request they implied it would accept.
+ */
+@ServerSide
+@ComputeEngineSide
+public class BitbucketServerCapabilityCache implements Startable {
+
+    private static final Duration VALIDITY = Duration.ofHours(24);
+    private static final Duration UNSUPPORTED_VALIDITY = Duration.ofHours(2);
+    private static final Duration REFRESH_AHEAD = Duration.ofHours(1);
+
+    // Bitbucket Server doesn't expose its Code Insights limits over REST, so these are the documented defaults
+    static final AnnotationUploadLimit CODE_INSIGHTS_UPLOAD_LIMIT = new AnnotationUploadLimit(1000, 1000);
+
+    private final Clock clock;
+    private final ExecutorService refreshExecutor;
+    private final RefreshingCache<String, ServerCapabilities> cache;
+
+    @Autowired
+    public BitbucketServerCapabilityCache() {
+        this(Clock.systemUTC(), Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bitbucket-server-capability-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    BitbucketServerCapabilityCache(Clock clock, ExecutorService refreshExecutor) {
+        this.clock = clock;
+        this.refreshExecutor = refreshExecutor;
+        this.cache = new RefreshingCache<>("Bitbucket Server capability", clock, ServerCapabilities::getExpiry,
+                REFRESH_AHEAD, Duration.ZERO, refreshExecutor);
+    }
+
+    /**
+     * Retrieves the capabilities of the Bitbucket Server at the given URL, only calling the loader if nothing is
+     * cached for the server or the cached capabilities have expired.
+     *
+     * @param serverUrl the base URL of the Bitbucket Server
+     * @param propertiesLoader the mechanism for retrieving the server's application properties
+     * @return the capabilities of the server
+     * @throws IOException if the capabilities were not cached and the server's properties could not be retrieved
+     */
+    ServerCapabilities getCapabilities(String serverUrl, RefreshingCache.Loader<ServerProperties> propertiesLoader) throws IOException {
+        return cache.get(createKey(serverUrl), () -> createCapabilities(propertiesLoader.load()));
+    }
+
+    /**
+     * Retrieves the capabilities of the Bitbucket Server at the given URL if they're already cached, without
+     * contacting the server.
+     */
+    Optional<ServerCapabilities> getCachedCapabilities(String serverUrl) {
+        return cache.getIfPresent(createKey(serverUrl));
+    }
+
+    void invalidate(String serverUrl) {
+        cache.invalidate(createKey(serverUrl));
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    @Override
+    public void start() {
+        // nothing to do, capabilities are retrieved on first use
+    }
+
+    @Override
+    public void stop() {
+        refreshExecutor.shutdownNow();
+        cache.invalidateAll();
+    }
+
+    private ServerCapabilities createCapabilities(ServerProperties serverProperties) {
+        boolean codeInsightsSupported = serverProperties.hasCodeInsightsApi();
+        Instant expiry = clock.instant().plus(codeInsightsSupported ? VALIDITY : UNSUPPORTED_VALIDITY);
+        return new ServerCapabilities(serverProperties.getVersion(), codeInsightsSupported, CODE_INSIGHTS_UPLOAD_LIMIT, expiry);
+    }
+
+    private static String createKey(String serverUrl) {
+        String key = serverUrl.toLowerCase(Locale.ENGLISH);
+        while (key.endsWith("/")) {
+            key = key.substring(0, key.length() - 1);
+        }
+        return key;
+    }
+
+    static final class ServerCapabilities {
+
+        private final String version;
+        private final boolean codeInsightsSupported;
+        private final AnnotationUploadLimit annotationUploadLimit;
+        private final Instant expiry;
+
+        private ServerCapabilities(String version, boolean codeInsightsSupported, AnnotationUploadLimit annotationUploadLimit, Instant expiry) {
+            this.version = version;
+            this.codeInsightsSupported = codeInsightsSupported;
+            this.annotationUploadLimit = annotationUploadLimit;
+            this.expiry = expiry;
+        }
+
+        String getVersion() {
+            return version;
+        }
+
+        boolean isCodeInsightsSupported() {
+            return codeInsightsSupported;
+        }
+
+        AnnotationUploadLimit getAnnotationUploadLimit() {
+            return annotationUploadLimit;
+        }
+
+        Instant getExpiry() {
+            return expiry;
+        }
+    }
+}
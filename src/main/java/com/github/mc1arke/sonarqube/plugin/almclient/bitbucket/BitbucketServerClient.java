@@ -18,7 +18,9 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.RetryPolicy;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.AnnotationUploadLimit;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.BuildStatus;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.CodeInsightsAnnotation;
@@ -42,8 +44,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.time.Instant;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -60,11 +64,16 @@ class BitbucketServerClient implements BitbucketClient {
     private final BitbucketServerConfiguration config;
     private final ObjectMapper objectMapper;
     private final OkHttpClient okHttpClient;
+    private final RetryPolicy retryPolicy;
+    private final BitbucketServerCapabilityCache capabilityCache;
 
-    BitbucketServerClient(BitbucketServerConfiguration config, ObjectMapper objectMapper, OkHttpClient okHttpClient) {
+    BitbucketServerClient(BitbucketServerConfiguration config, ObjectMapper objectMapper, OkHttpClient okHttpClient, RetryPolicy retryPolicy,
+                          BitbucketServerCapabilityCache capabilityCache) {
         this.config = config;
         this.objectMapper = objectMapper;
         this.okHttpClient = okHttpClient;
+        this.retryPolicy = retryPolicy;
+        this.capabilityCache = capabilityCache;
     }
 
     @Override
@@ -98,9 +107,7 @@ class BitbucketServerClient implements BitbucketClient {
                 .delete()
                 .url(format("%s/rest/insights/1.0/projects/%s/repos/%s/commits/%s/reports/%s/annotations", config.getUrl(), config.getProject(), config.getRepository(), commit, reportKey))
                 .build();
-        try (Response response = okHttpClient.newCall(req).execute()) {
-            validate(response);
-        }
+        executeCodeInsights(req);
     }
 
     @Override
@@ -116,6 +123,8 @@ class BitbucketServerClient implements BitbucketClient {
                 .build();
         try (Response response = okHttpClient.newCall(req).execute()) {
             validate(response);
+        } catch (BitbucketException ex) {
+            throw invalidateCapabilitiesIfApiMissing(ex);
         }
     }
 
@@ -131,37 +140,47 @@ class BitbucketServerClient implements BitbucketClient {
                 .put(RequestBody.create(body, APPLICATION_JSON_MEDIA_TYPE))
                 .url(format("%s/rest/insights/1.0/projects/%s/repos/%s/commits/%s/reports/%s", config.getUrl(), config.getProject(), config.getRepository(), commit, reportKey))
                 .build();
+        executeCodeInsights(req);
+    }
 
-        try (Response response = okHttpClient.newCall(req).execute()) {
-            validate(response);
+    @Override
+    public boolean supportsCodeInsights() {
+        try {
+            BitbucketServerCapabilityCache.ServerCapabilities server = capabilityCache.getCapabilities(config.getUrl(), this::getServerProperties);
+            return reportCodeInsightsSupport(server.getVersion(), server.isCodeInsightsSupported());
+        } catch (IOException e) {
+            LOGGER.error("Could not determine Bitbucket Server version", e);
+            return false;
         }
     }
 
     @Override
-    public boolean supportsCodeInsights() {
+    public boolean probeCodeInsightsSupport() {
         try {
-            ServerProperties server = getServerProperties();
-            LOGGER.atDebug()
-                    .setMessage("Your Bitbucket Server installation is version {}")
-                    .addArgument(server::getVersion)
-                    .log();
-            if (server.hasCodeInsightsApi()) {
-                return true;
-            } else {
-                LOGGER.atInfo().setMessage("Bitbucket Server version is to old. {} is the minimum version that supports Code Insights")
-                        .addArgument(ServerProperties.CODE_INSIGHT_VERSION)
-                        .log();
-            }
+            ServerProperties serverProperties = getServerProperties();
+            return reportCodeInsightsSupport(serverProperties.getVersion(), serverProperties.hasCodeInsightsApi());
         } catch (IOException e) {
             LOGGER.error("Could not determine Bitbucket Server version", e);
             return false;
         }
-        return false;
+    }
+
+    private static boolean reportCodeInsightsSupport(String version, boolean codeInsightsSupported) {
+        LOGGER.debug("Your Bitbucket Server installation is version {}", version);
+        if (!codeInsightsSupported) {
+            LOGGER.atInfo().setMessage("Bitbucket Server version is to old. {} is the minimum version that supports Code Insights")
+                    .addArgument(ServerProperties.CODE_INSIGHT_VERSION)
+                    .log();
+        }
+        return codeInsightsSupported;
     }
 
     @Override
     public AnnotationUploadLimit getAnnotationUploadLimit() {
-        return new AnnotationUploadLimit(1000, 1000);
+        // the capabilities are cached by the Code Insights check that precedes any upload
+        return capabilityCache.getCachedCapabilities(config.getUrl())
+                .map(BitbucketServerCapabilityCache.ServerCapabilities::getAnnotationUploadLimit)
+                .orElse(BitbucketServerCapabilityCache.CODE_INSIGHTS_UPLOAD_LIMIT);
     }
 
     @Override
@@ -170,14 +189,10 @@ class BitbucketServerClient implements BitbucketClient {
                 .get()
                 .url(format("%s/rest/api/1.0/projects/%s/repos/%s", config.getUrl(), config.getProject(), config.getRepository()))
                 .build();
-        try (Response response = okHttpClient.newCall(req).execute()) {
-            validate(response);
-
-            return objectMapper.reader().forType(Repository.class)
-                    .readValue(Optional.ofNullable(response.body())
-                            .orElseThrow(() -> new IllegalStateException("No response body from BitBucket"))
-                            .string());
-        }
+        return execute(req, response -> objectMapper.reader().forType(Repository.class)
+                .readValue(Optional.ofNullable(response.body())
+                        .orElseThrow(() -> new IllegalStateException("No response body from BitBucket"))
+                        .string()));
     }
 
     @Override
@@ -186,10 +201,8 @@ class BitbucketServerClient implements BitbucketClient {
                 .post(RequestBody.create(objectMapper.writeValueAsString(buildStatus), APPLICATION_JSON_MEDIA_TYPE))
                 .url(format("%s/rest/api/1.0/projects/%s/repos/%s/commits/%s/builds", config.getUrl(), config.getProject(), config.getRepository(), commitSha))
                 .build();
-
-        try (Response response = okHttpClient.newCall(req).execute()) {
-            validate(response);
-        }
+        // build statuses are keyed, so submitting the same status again replaces it rather than adding another
+        execute(req, response -> null);
     }
 
     public ServerProperties getServerProperties() throws IOException {
@@ -197,13 +210,65 @@ class BitbucketServerClient implements BitbucketClient {
                 .get()
                 .url(format("%s/rest/api/1.0/application-properties", config.getUrl()))
                 .build();
-        try (Response response = okHttpClient.newCall(req).execute()) {
-            validate(response);
+        return execute(req, response -> objectMapper.reader().forType(ServerProperties.class)
+                .readValue(Optional.ofNullable(response.body())
+                        .orElseThrow(() -> new IllegalStateException("No response body from BitBucket"))
+                        .string()));
+    }
+
+    /**
+     * Performs a request that has the same effect however many times it is sent, retrying it if Bitbucket fails to
+     * process it for a transient reason. Annotation uploads aren't sent through here since each upload adds to the
+     * annotations already on the report, and the decorator handles retrying those.
+     */
+    private <T> T execute(Request req, ResponseReader<T> responseReader) throws IOException {
+        return retryPolicy.execute("Bitbucket " + req.method() + " " + req.url(), () -> {
+            try (Response response = okHttpClient.newCall(req).execute()) {
+                try {
+                    validate(response);
+                } catch (BitbucketException ex) {
+                    throw RetryPolicy.classify(response.code(), ex);
+                }
+                return responseReader.read(response);
+            }
+        });
+    }
+
+    /**
+     * Performs an idempotent Code Insights request, discarding the cached capabilities for the server if the request
+     * wasn't found and the server's properties show it has changed since they were cached, such as after the server
+     * has been replaced with an older version.
+     */
+    private void executeCodeInsights(Request req) throws IOException {
+        try {
+            execute(req, response -> null);
+        } catch (BitbucketException ex) {
+            throw invalidateCapabilitiesIfApiMissing(ex);
+        }
+    }
 
-            return objectMapper.reader().forType(ServerProperties.class)
-                    .readValue(Optional.ofNullable(response.body())
-                            .orElseThrow(() -> new IllegalStateException("No response body from BitBucket"))
-                            .string());
+    private BitbucketException invalidateCapabilitiesIfApiMissing(BitbucketException ex) {
+        // a missing repository, commit or report is also reported as not found, so the server is checked before
+        // discarding what is known about it
+        if (ex.isError(HttpURLConnection.HTTP_NOT_FOUND) && haveCapabilitiesChanged()) {
+            LOGGER.debug("Bitbucket Server at {} has changed since its capabilities were cached. Discarding cached server capabilities", config.getUrl());
+            capabilityCache.invalidate(config.getUrl());
+        }
+        return ex;
+    }
+
+    private boolean haveCapabilitiesChanged() {
+        Optional<BitbucketServerCapabilityCache.ServerCapabilities> cachedCapabilities = capabilityCache.getCachedCapabilities(config.getUrl());
+        if (cachedCapabilities.isEmpty()) {
+            return false;
+        }
+        try {
+            ServerProperties serverProperties = getServerProperties();
+            return serverProperties.hasCodeInsightsApi() != cachedCapabilities.get().isCodeInsightsSupported()
+                    || !Objects.equals(serverProperties.getVersion(), cachedCapabilities.get().getVersion());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Could not retrieve Bitbucket Server properties. Retaining cached server capabilities", e);
+            return false;
         }
     }
 
@@ -211,10 +276,34 @@ class BitbucketServerClient implements BitbucketClient {
         if (!response.isSuccessful()) {
             ErrorResponse errors = null;
             if (response.body() != null) {
-                errors = objectMapper.reader().forType(ErrorResponse.class)
-                        .readValue(response.body().string());
+                errors = readErrors(response.code(), response.body().string());
             }
             throw new BitbucketException(response.code(), errors);
         }
     }
+
+    private ErrorResponse readErrors(int code, String body) {
+        if (body.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.reader().forType(ErrorResponse.class).readValue(body);
+        } catch (JsonProcessingException ex) {
+            // proxies and load balancers in front of Bitbucket return their own error pages, typically for the
+            // gateway errors that are worth retrying, so the status is still reported even without Bitbucket's errors
+            LOGGER.atDebug().setMessage("Could not parse Bitbucket error response for status {}: {}")
+                    .addArgument(code)
+                    .addArgument(body)
+                    .setCause(ex)
+                    .log();
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+
+        T read(Response response) throws IOException;
+
+    }
 }
@@ -22,10 +22,16 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
+import com.github.mc1arke.sonarqube.plugin.almclient.RateLimitInterceptor;
+import com.github.mc1arke.sonarqube.plugin.almclient.RateLimitScheduler;
+import com.github.mc1arke.sonarqube.plugin.almclient.RefreshingCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.RetryPolicy;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.BitbucketConfiguration;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.BitbucketServerConfiguration;
+import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.Response;
 import okhttp3.logging.HttpLoggingInterceptor;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -37,6 +43,8 @@ import org.sonar.db.alm.setting.ALM;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
+import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.util.Optional;
 
 import static java.lang.String.format;
@@ -49,10 +57,18 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
 
     private final HttpClientBuilderFactory httpClientBuilderFactory;
     private final Settings settings;
+    private final BitbucketCloudTokenCache bitbucketCloudTokenCache;
+    private final RateLimitScheduler rateLimitScheduler;
+    private final BitbucketServerCapabilityCache bitbucketServerCapabilityCache;
 
-    public DefaultBitbucketClientFactory(Settings settings, HttpClientBuilderFactory httpClientBuilderFactory) {
+    public DefaultBitbucketClientFactory(Settings settings, HttpClientBuilderFactory httpClientBuilderFactory,
+                                         BitbucketCloudTokenCache bitbucketCloudTokenCache, RateLimitScheduler rateLimitScheduler,
+                                         BitbucketServerCapabilityCache bitbucketServerCapabilityCache) {
         this.httpClientBuilderFactory = httpClientBuilderFactory;
         this.settings = settings;
+        this.bitbucketCloudTokenCache = bitbucketCloudTokenCache;
+        this.rateLimitScheduler = rateLimitScheduler;
+        this.bitbucketServerCapabilityCache = bitbucketServerCapabilityCache;
     }
 
     @Override
@@ -61,7 +77,7 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
                 .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "ALM Repo must be set in configuration"));
 
         ObjectMapper objectMapper = createObjectMapper();
-        OkHttpClient.Builder clientBuilder = createBaseClientBuilder(httpClientBuilderFactory);
+        OkHttpClient.Builder clientBuilder = createBaseClientBuilder(httpClientBuilderFactory, rateLimitScheduler);
 
         if (almSettingDto.getAlm() == ALM.BITBUCKET_CLOUD) {
             String appId = Optional.ofNullable(StringUtils.trimToNull(almSettingDto.getAppId()))
@@ -70,8 +86,22 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
                     .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "Client ID must be set in configuration"));
             String clientSecret = Optional.ofNullable(StringUtils.trimToNull(almSettingDto.getDecryptedClientSecret(settings.getEncryption())))
                     .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "Client Secret must be set in configuration"));
-            String bearerToken = BitbucketCloudClient.negotiateBearerToken(clientId, clientSecret, objectMapper, clientBuilder.build());
-            return new BitbucketCloudClient(objectMapper, createAuthorisingClient(clientBuilder, bearerToken), new BitbucketConfiguration(appId, almRepo));
+            OkHttpClient tokenClient = clientBuilder.build();
+            RefreshingCache.Loader<BitbucketCloudClient.AuthToken> tokenLoader = () -> BitbucketCloudClient.negotiateBearerToken(clientId, clientSecret, objectMapper, tokenClient);
+            // retrieve the token up-front so invalid credentials are reported before any decoration is attempted
+            getBearerToken(clientId, clientSecret, tokenLoader);
+            OkHttpClient client = clientBuilder.addInterceptor(chain -> {
+                Response response = proceedWithBearerToken(chain, getBearerToken(clientId, clientSecret, tokenLoader));
+                if (response.code() != HttpURLConnection.HTTP_UNAUTHORIZED) {
+                    return response;
+                }
+                // the token may have been revoked before its reported expiry, so discard it and retry once with a new one
+                LOGGER.debug("Bitbucket Cloud rejected cached bearer token for client {}. Negotiating a new token", clientId);
+                response.close();
+                bitbucketCloudTokenCache.invalidate(clientId, clientSecret);
+                return proceedWithBearerToken(chain, getBearerToken(clientId, clientSecret, tokenLoader));
+            }).build();
+            return new BitbucketCloudClient(objectMapper, client, new BitbucketConfiguration(appId, almRepo));
         } else {
             String almSlug = Optional.ofNullable(StringUtils.trimToNull(projectAlmSettingDto.getAlmSlug()))
                     .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "ALM slug must be set in configuration"));
@@ -79,7 +109,8 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
                     .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "URL must be set in configuration"));
             String personalAccessToken = Optional.ofNullable(StringUtils.trimToNull(almSettingDto.getDecryptedPersonalAccessToken(settings.getEncryption())))
                     .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "Personal access token must be set in configuration"));
-            return new BitbucketServerClient(new BitbucketServerConfiguration(almRepo, almSlug, url), objectMapper, createAuthorisingClient(clientBuilder, personalAccessToken));
+            return new BitbucketServerClient(new BitbucketServerConfiguration(almRepo, almSlug, url), objectMapper, createAuthorisingClient(clientBuilder, personalAccessToken), new RetryPolicy(),
+                    bitbucketServerCapabilityCache);
         }
     }
 
@@ -90,19 +121,31 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
                 .findAndRegisterModules();
     }
 
-    private static OkHttpClient.Builder createBaseClientBuilder(HttpClientBuilderFactory httpClientBuilderFactory) {
+    private static OkHttpClient.Builder createBaseClientBuilder(HttpClientBuilderFactory httpClientBuilderFactory, RateLimitScheduler rateLimitScheduler) {
         HttpLoggingInterceptor httpLoggingInterceptor = new HttpLoggingInterceptor(LOGGER::debug);
         httpLoggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-        return httpClientBuilderFactory.createClientBuilder().addInterceptor(httpLoggingInterceptor);
+        return httpClientBuilderFactory.createClientBuilder()
+                .addNetworkInterceptor(new RateLimitInterceptor(rateLimitScheduler))
+                .addInterceptor(httpLoggingInterceptor);
+    }
+
+    private String getBearerToken(String clientId, String clientSecret, RefreshingCache.Loader<BitbucketCloudClient.AuthToken> tokenLoader) {
+        try {
+            return bitbucketCloudTokenCache.getToken(clientId, clientSecret, tokenLoader);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not retrieve bearer token", ex);
+        }
     }
 
     private static OkHttpClient createAuthorisingClient(OkHttpClient.Builder clientBuilder, String bearerToken) {
-        return clientBuilder.addInterceptor(chain -> {
-                    Request newRequest = chain.request().newBuilder()
-                            .addHeader("Authorization", format("Bearer %s", bearerToken))
-                            .addHeader("Accept", "application/json")
-                            .build();
-                    return chain.proceed(newRequest);
-                }).build();
+        return clientBuilder.addInterceptor(chain -> proceedWithBearerToken(chain, bearerToken)).build();
+    }
+
+    private static Response proceedWithBearerToken(Interceptor.Chain chain, String bearerToken) throws IOException {
+        Request newRequest = chain.request().newBuilder()
+                .addHeader("Authorization", format("Bearer %s", bearerToken))
+                .addHeader("Accept", "application/json")
+                .build();
+        return chain.proceed(newRequest);
     }
 }
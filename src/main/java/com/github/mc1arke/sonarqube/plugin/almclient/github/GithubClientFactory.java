@@ -20,6 +20,7 @@ package com.github.mc1arke.sonarqube.plugin.almclient.github;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.net.HttpURLConnection;
 import java.security.PrivateKey;
 import java.time.Clock;
 import java.time.Instant;
@@ -43,10 +44,13 @@ import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
+import com.github.mc1arke.sonarqube.plugin.almclient.RateLimitInterceptor;
+import com.github.mc1arke.sonarqube.plugin.almclient.RateLimitScheduler;
 
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.impl.DefaultJwtBuilder;
 import okhttp3.OkHttpClient;
+import okhttp3.Response;
 
 @ServerSide
 @ComputeEngineSide
@@ -54,37 +58,53 @@ public class GithubClientFactory {
 
     private final Clock clock;
     private final Settings settings;
+    private final GithubInstallationTokenCache installationTokenCache;
     private final Supplier<GitHubBuilder> gitHubBuilderSupplier;
+    private final OkHttpClient httpClient;
 
     @Autowired
-    public GithubClientFactory(Clock clock, Settings settings) {
-        this(clock, settings, GitHubBuilder::new);
+    public GithubClientFactory(Clock clock, Settings settings, GithubInstallationTokenCache installationTokenCache, RateLimitScheduler rateLimitScheduler) {
+        this(clock, settings, installationTokenCache, rateLimitScheduler, GitHubBuilder::new);
     }
 
-    GithubClientFactory(Clock clock, Settings settings, Supplier<GitHubBuilder> gitHubBuilderSupplier) {
+    GithubClientFactory(Clock clock, Settings settings, GithubInstallationTokenCache installationTokenCache, RateLimitScheduler rateLimitScheduler, Supplier<GitHubBuilder> gitHubBuilderSupplier) {
         this.clock = clock;
         this.settings = settings;
+        this.installationTokenCache = installationTokenCache;
         this.gitHubBuilderSupplier = gitHubBuilderSupplier;
+        this.httpClient = new OkHttpClient.Builder()
+                .addNetworkInterceptor(new RateLimitInterceptor(rateLimitScheduler))
+                .build();
     }
 
     public GitHub createClient(AlmSettingDto almSettingDto, ProjectAlmSettingDto projectAlmSettingDto) throws IOException {
-            GHAppInstallationToken repositoryAuthenticationToken = authenticate(projectAlmSettingDto, almSettingDto);
+            String apiUrl = Optional.ofNullable(almSettingDto.getUrl()).orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "No URL has been set for Github connections"));
+            String apiPrivateKey = Optional.ofNullable(almSettingDto.getDecryptedPrivateKey(settings.getEncryption())).orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "No private key has been set for Github connections"));
+            String projectPath = Optional.ofNullable(projectAlmSettingDto.getAlmRepo()).orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "No repository name has been set for Github connections"));
+            String appId = Optional.ofNullable(almSettingDto.getAppId()).orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "No App ID has been set for Github connections"));
+
+            String repositoryAuthenticationToken = authenticate(apiUrl, appId, apiPrivateKey, projectPath);
+            OkHttpClient installationHttpClient = httpClient.newBuilder()
+                .addInterceptor(chain -> {
+                    Response response = chain.proceed(chain.request());
+                    if (response.code() == HttpURLConnection.HTTP_UNAUTHORIZED) {
+                        // the installation token has been revoked, so the next client needs to be given a new one
+                        installationTokenCache.invalidate(apiUrl, appId, apiPrivateKey, projectPath);
+                    }
+                    return response;
+                })
+                .build();
 
             return gitHubBuilderSupplier.get()
-                .withConnector(new OkHttpGitHubConnector(new OkHttpClient()))
-                .withEndpoint(almSettingDto.getUrl())
-                .withAppInstallationToken(repositoryAuthenticationToken.getToken())
+                .withConnector(new OkHttpGitHubConnector(installationHttpClient))
+                .withEndpoint(apiUrl)
+                .withAppInstallationToken(repositoryAuthenticationToken)
                 .build();
     }
 
-    private GHAppInstallationToken authenticate(ProjectAlmSettingDto projectAlmSettingDto, AlmSettingDto almSettingDto) {
-        String apiUrl = Optional.ofNullable(almSettingDto.getUrl()).orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "No URL has been set for Github connections"));
-        String apiPrivateKey = Optional.ofNullable(almSettingDto.getDecryptedPrivateKey(settings.getEncryption())).orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "No private key has been set for Github connections"));
-        String projectPath = Optional.ofNullable(projectAlmSettingDto.getAlmRepo()).orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "No repository name has been set for Github connections"));
-        String appId = Optional.ofNullable(almSettingDto.getAppId()).orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "No App ID has been set for Github connections"));
-
+    private String authenticate(String apiUrl, String appId, String apiPrivateKey, String projectPath) {
         try {
-            return getInstallationToken(apiUrl, appId, apiPrivateKey, projectPath);
+            return installationTokenCache.getToken(apiUrl, appId, apiPrivateKey, projectPath, () -> getInstallationToken(apiUrl, appId, apiPrivateKey, projectPath));
         } catch (IOException ex) {
             throw new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "Could not create Github client - " + ex.getMessage(), ex);
         }
@@ -104,7 +124,7 @@ public class GithubClientFactory {
         String repo = projectPath.split("/")[1];
         GitHub github = gitHubBuilderSupplier.get()
             .withEndpoint(apiUrl)
-            .withConnector(new OkHttpGitHubConnector(new OkHttpClient()))
+            .withConnector(new OkHttpGitHubConnector(httpClient))
             .withJwtToken(jwtToken)
             .build();
 
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.github;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.kohsuke.github.GHAppInstallationToken;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.server.ServerSide;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.RefreshingCache;
+
+/**
+ * Retains Github App installation tokens between analyses so that each decoration doesn't need to sign a new JWT and
+ * make the app, installation and token requests against Github before it can start. Tokens are re-used until shortly
+ * before Github reports they expire, and are refreshed in the background as they approach that point. A token is only
+ * shared between requests using the same private key, so rotating the key for an App stops any token created with the
+ * previous key being handed out.
+ */
+@ServerSide
+@ComputeEngineSide
+public class GithubInstallationTokenCache implements Startable {
+
+    private static final Duration REFRESH_AHEAD = Duration.ofMinutes(15);
+    private static final Duration MINIMUM_VALIDITY = Duration.ofMinutes(5);
+
+    private final Clock clock;
+    private final ExecutorService refreshExecutor;
+    private final RefreshingCache<TokenKey, InstallationToken> cache;
+
+    @Autowired
+    public GithubInstallationTokenCache() {
+        this(Clock.systemUTC(), Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "github-installation-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    GithubInstallationTokenCache(Clock clock, ExecutorService refreshExecutor) {
+        this.clock = clock;
+        this.refreshExecutor = refreshExecutor;
+        this.cache = new RefreshingCache<>("Github installation token", clock, InstallationToken::getExpiry,
+                REFRESH_AHEAD, MINIMUM_VALIDITY, refreshExecutor);
+    }
+
+    /**
+     * Retrieves a token for the Github App installation covering the given repository, only calling the loader if no
+     * token is cached or the cached token is too close to expiry.
+     *
+     * @param apiUrl the URL of the Github API the installation belongs to
+     * @param appId the ID of the Github App
+     * @param privateKey the private key the App authenticates with
+     * @param repository the repository, in {@code owner/repo} format, the token needs to access
+     * @param tokenLoader the mechanism for creating a new installation token
+     * @return the installation token value
+     * @throws IOException if a new token was required but could not be created
+     */
+    public String getToken(String apiUrl, String appId, String privateKey, String repository, RefreshingCache.Loader<GHAppInstallationToken> tokenLoader) throws IOException {
+        return cache.get(new TokenKey(apiUrl, appId, privateKey, repository), () -> createInstallationToken(tokenLoader.load())).getToken();
+    }
+
+    public void invalidate(String apiUrl, String appId, String privateKey, String repository) {
+        cache.invalidate(new TokenKey(apiUrl, appId, privateKey, repository));
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    @Override
+    public void start() {
+        // nothing to do, tokens are retrieved on first use
+    }
+
+    @Override
+    public void stop() {
+        refreshExecutor.shutdownNow();
+        cache.invalidateAll();
+    }
+
+    private InstallationToken createInstallationToken(GHAppInstallationToken installationToken) throws IOException {
+        // a token without an expiry is treated as only being valid for this use, rather than being retained
+        Instant expiry = Optional.ofNullable(installationToken.getExpiresAt())
+                .map(Date::toInstant)
+                .orElseGet(() -> clock.instant().plus(MINIMUM_VALIDITY));
+        return new InstallationToken(installationToken.getToken(), expiry);
+    }
+
+    private static final class TokenKey {
+
+        private final String apiUrl;
+        private final String appId;
+        private final String privateKeyHash;
+        private final String repository;
+
+        private TokenKey(String apiUrl, String appId, String privateKey, String repository) {
+            this.apiUrl = apiUrl;
+            this.appId = appId;
+            // only a digest of the key is held so the key itself isn't retained in memory for the lifetime of the token
+            this.privateKeyHash = DigestUtils.sha256Hex(String.valueOf(privateKey));
+            this.repository = repository;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            TokenKey tokenKey = (TokenKey) o;
+            return Objects.equals(apiUrl, tokenKey.apiUrl) && Objects.equals(appId, tokenKey.appId)
+                    && Objects.equals(privateKeyHash, tokenKey.privateKeyHash) && Objects.equals(repository, tokenKey.repository);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(apiUrl, appId, privateKeyHash, repository);
+        }
+    }
+
+    private static final class InstallationToken {
+
+        private final String token;
+        private final Instant expiry;
+
+        private InstallationToken(String token, Instant expiry) {
+            this.token = token;
+            this.expiry = expiry;
+        }
+
+        String getToken() {
+            return token;
+        }
+
+        Instant getExpiry() {
+            return expiry;
+        }
+    }
+}
@@ -21,9 +21,11 @@ package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
+import com.github.mc1arke.sonarqube.plugin.almclient.AuthenticatedUserCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.PooledHttpClientProvider;
+import com.github.mc1arke.sonarqube.plugin.almclient.RetryPolicy;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.http.impl.client.HttpClients;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.config.internal.Settings;
 import org.sonar.api.server.ServerSide;
@@ -39,11 +41,18 @@ public class DefaultGitlabClientFactory implements GitlabClientFactory {
     private final ObjectMapper objectMapper;
     private final LinkHeaderReader linkHeaderReader;
     private final Settings settings;
+    private final PooledHttpClientProvider httpClientProvider;
+    private final GitlabResponseCache responseCache;
+    private final AuthenticatedUserCache authenticatedUserCache;
 
-    public DefaultGitlabClientFactory(LinkHeaderReader linkHeaderReader, Settings settings) {
+    public DefaultGitlabClientFactory(LinkHeaderReader linkHeaderReader, Settings settings, PooledHttpClientProvider httpClientProvider, GitlabResponseCache responseCache,
+                                      AuthenticatedUserCache authenticatedUserCache) {
         super();
         this.linkHeaderReader = linkHeaderReader;
         this.settings = settings;
+        this.httpClientProvider = httpClientProvider;
+        this.responseCache = responseCache;
+        this.authenticatedUserCache = authenticatedUserCache;
         this.objectMapper = new ObjectMapper()
                 .configure(DeserializationFeature.ACCEPT_EMPTY_ARRAY_AS_NULL_OBJECT, true)
                 .configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true)
@@ -56,6 +65,6 @@ public class DefaultGitlabClientFactory implements GitlabClientFactory {
                 .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "ALM URL must be specified"));
         String apiToken = almSettingDto.getDecryptedPersonalAccessToken(settings.getEncryption());
 
-        return new GitlabRestClient(apiURL, apiToken, linkHeaderReader, objectMapper, HttpClients::createSystem);
+        return new GitlabRestClient(apiURL, apiToken, linkHeaderReader, objectMapper, () -> httpClientProvider.getHttpClient(apiURL), responseCache, new RetryPolicy(), authenticatedUserCache);
     }
 }
@@ -35,7 +35,7 @@ public interface GitlabClient {
 
     MergeRequest getMergeRequest(String projectId, long mergeRequestIid) throws IOException;
 
-    List<Commit> getMergeRequestCommits(long projectId, long mergeRequestIid) throws IOException;
+    List<Commit> getMergeRequestCommits(long projectId, long mergeRequestIid, String headSha) throws IOException;
 
     List<Discussion> getMergeRequestDiscussions(long projectId, long mergeRequestIid) throws IOException;
 
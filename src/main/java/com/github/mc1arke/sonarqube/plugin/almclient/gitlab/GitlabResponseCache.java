@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Commit;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.server.ServerSide;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Retains the results of Gitlab requests between analyses so that re-analysing a merge request that has not changed
+ * doesn't need to download its discussions and commits again. Pages of paginated responses are held with the
+ * {@code ETag} Gitlab returned for them so they can be re-validated with a conditional request, and the commits in a
+ * merge request are held against the SHA of its head commit, since that list can't change without the head changing.
+ * <p>
+ * Pages are held as the raw response body rather than the entities read from it, since a page of discussions holds
+ * the full content of every note and the deserialised form takes several times the memory. The page cache is bounded
+ * by the total size of the bodies it holds and the commit cache by the number of merge requests, with the least
+ * recently used entries being discarded first from both.
+ */
+@ServerSide
+@ComputeEngineSide
+public class GitlabResponseCache {
+
+    private static final long MAX_CACHED_PAGE_BYTES = 32L * 1024 * 1024;
+    private static final int MAX_CACHED_COMMIT_LISTS = 500;
+
+    private final long maxCachedPageBytes;
+    // guarded by synchronizing on the map, along with the total size of the pages held in it
+    private final Map<String, CachedPage> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<CommitsKey, List<Commit>> commits;
+    private long cachedPageBytes;
+
+    public GitlabResponseCache() {
+        this(MAX_CACHED_PAGE_BYTES, MAX_CACHED_COMMIT_LISTS);
+    }
+
+    GitlabResponseCache(long maxCachedPageBytes, int maxCachedCommitLists) {
+        this.maxCachedPageBytes = maxCachedPageBytes;
+        this.commits = createLeastRecentlyUsedMap(maxCachedCommitLists);
+    }
+
+    Optional<CachedPage> getPage(String url) {
+        synchronized (pages) {
+            return Optional.ofNullable(pages.get(url));
+        }
+    }
+
+    void putPage(String url, String etag, byte[] content, String nextUrl) {
+        CachedPage page = new CachedPage(etag, content, nextUrl);
+        synchronized (pages) {
+            Optional.ofNullable(pages.remove(url)).ifPresent(previous -> cachedPageBytes -= previous.getWeight());
+            if (page.getWeight() > maxCachedPageBytes) {
+                return;
+            }
+            pages.put(url, page);
+            cachedPageBytes += page.getWeight();
+            Iterator<CachedPage> leastRecentlyUsed = pages.values().iterator();
+            while (cachedPageBytes > maxCachedPageBytes) {
+                cachedPageBytes -= leastRecentlyUsed.next().getWeight();
+                leastRecentlyUsed.remove();
+            }
+        }
+    }
+
+    long getMaxCachedPageBytes() {
+        return maxCachedPageBytes;
+    }
+
+    long getCachedPageBytes() {
+        synchronized (pages) {
+            return cachedPageBytes;
+        }
+    }
+
+    Optional<List<Commit>> getCommits(String apiUrl, long projectId, long mergeRequestIid, String headSha) {
+        return Optional.ofNullable(commits.get(new CommitsKey(apiUrl, projectId, mergeRequestIid, headSha)));
+    }
+
+    void putCommits(String apiUrl, long projectId, long mergeRequestIid, String headSha, List<Commit> mergeRequestCommits) {
+        commits.put(new CommitsKey(apiUrl, projectId, mergeRequestIid, headSha), Collections.unmodifiableList(new ArrayList<>(mergeRequestCommits)));
+    }
+
+    private static <K, V> Map<K, V> createLeastRecentlyUsedMap(int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    static final class CachedPage {
+
+        private final String etag;
+        private final byte[] content;
+        private final String nextUrl;
+
+        private CachedPage(String etag, byte[] content, String nextUrl) {
+            this.etag = etag;
+            this.content = content;
+            this.nextUrl = nextUrl;
+        }
+
+        String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return the body of the response the page was read from, which must not be modified
+         */
+        byte[] getContent() {
+            return content;
+        }
+
+        String getNextUrl() {
+            return nextUrl;
+        }
+
+        private long getWeight() {
+            return content.length;
+        }
+    }
+
+    private static final class CommitsKey {
+
+        private final String apiUrl;
+        private final long projectId;
+        private final long mergeRequestIid;
+        private final String headSha;
+
+        private CommitsKey(String apiUrl, long projectId, long mergeRequestIid, String headSha) {
+            this.apiUrl = apiUrl;
+            this.projectId = projectId;
+            this.mergeRequestIid = mergeRequestIid;
+            this.headSha = headSha;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CommitsKey that = (CommitsKey) o;
+            return projectId == that.projectId && mergeRequestIid == that.mergeRequestIid && Objects.equals(apiUrl, that.apiUrl) && Objects.equals(headSha, that.headSha);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(apiUrl, projectId, mergeRequestIid, headSha);
+        }
+    }
+}
@@ -18,18 +18,26 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.AuthenticatedUserCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.RetryPolicy;
+import com.github.mc1arke.sonarqube.plugin.almclient.UnexpectedStatusException;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Commit;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.CommitNote;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Discussion;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.MergeRequest;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.MergeRequestNote;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Note;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.PipelineStatus;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Project;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.User;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
@@ -41,34 +49,57 @@ import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 class GitlabRestClient implements GitlabClient {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GitlabRestClient.class);
+    private static final int PAGE_SIZE = 100;
 
     private final String baseGitlabApiUrl;
     private final String authToken;
     private final ObjectMapper objectMapper;
     private final LinkHeaderReader linkHeaderReader;
     private final Supplier<CloseableHttpClient> httpClientFactory;
+    private final GitlabResponseCache responseCache;
+    private final RetryPolicy retryPolicy;
+    private final AuthenticatedUserCache authenticatedUserCache;
 
-    GitlabRestClient(String baseGitlabApiUrl, String authToken, LinkHeaderReader linkHeaderReader, ObjectMapper objectMapper, Supplier<CloseableHttpClient> httpClientFactory) {
+    GitlabRestClient(String baseGitlabApiUrl, String authToken, LinkHeaderReader linkHeaderReader, ObjectMapper objectMapper,
+                     Supplier<CloseableHttpClient> httpClientFactory, GitlabResponseCache responseCache, RetryPolicy retryPolicy,
+                     AuthenticatedUserCache authenticatedUserCache) {
         this.baseGitlabApiUrl = baseGitlabApiUrl;
         this.authToken = authToken;
         this.linkHeaderReader = linkHeaderReader;
         this.objectMapper = objectMapper;
         this.httpClientFactory = httpClientFactory;
+        this.responseCache = responseCache;
+        this.retryPolicy = retryPolicy;
+        this.authenticatedUserCache = authenticatedUserCache;
     }
 
     @Override
@@ -78,17 +109,29 @@ class GitlabRestClient implements GitlabClient {
 
     @Override
     public User getCurrentUser() throws IOException {
-        return entity(new HttpGet(String.format("%s/user", baseGitlabApiUrl)), User.class);
+        return authenticatedUserCache.getUser(baseGitlabApiUrl, authToken, User.class,
+                () -> entity(new HttpGet(String.format("%s/user", baseGitlabApiUrl)), User.class));
     }
 
     @Override
-    public List<Commit> getMergeRequestCommits(long projectId, long mergeRequestIid) throws IOException {
-        return entities(new HttpGet(String.format("%s/projects/%s/merge_requests/%s/commits", baseGitlabApiUrl, projectId, mergeRequestIid)), Commit.class);
+    public List<Commit> getMergeRequestCommits(long projectId, long mergeRequestIid, String headSha) throws IOException {
+        Optional<List<Commit>> cachedCommits = Optional.ofNullable(headSha)
+                .flatMap(sha -> responseCache.getCommits(baseGitlabApiUrl, projectId, mergeRequestIid, sha));
+        if (cachedCommits.isPresent()) {
+            LOGGER.debug("Using cached commits for merge request {} at {}", mergeRequestIid, headSha);
+            return cachedCommits.get();
+        }
+
+        List<Commit> commits = entities(String.format("%s/projects/%s/merge_requests/%s/commits", baseGitlabApiUrl, projectId, mergeRequestIid), Commit.class);
+        if (null != headSha) {
+            responseCache.putCommits(baseGitlabApiUrl, projectId, mergeRequestIid, headSha, commits);
+        }
+        return commits;
     }
 
     @Override
     public List<Discussion> getMergeRequestDiscussions(long projectId, long mergeRequestIid) throws IOException {
-        return entities(new HttpGet(String.format("%s/projects/%s/merge_requests/%s/discussions", baseGitlabApiUrl, projectId, mergeRequestIid)), Discussion.class);
+        return entities(String.format("%s/projects/%s/merge_requests/%s/discussions", baseGitlabApiUrl, projectId, mergeRequestIid), Discussion.class);
     }
 
     @Override
@@ -114,7 +157,12 @@ class GitlabRestClient implements GitlabClient {
         HttpPost httpPost = new HttpPost(targetUrl);
         httpPost.addHeader("Content-type", ContentType.APPLICATION_FORM_URLENCODED.getMimeType());
         httpPost.setEntity(new UrlEncodedFormEntity(requestContent, StandardCharsets.UTF_8));
-        return entity(httpPost, Discussion.class, httpResponse -> validateResponse(httpResponse, 201, "Discussion successfully created"));
+        return createEntity(httpPost, Discussion.class, httpResponse -> validateResponse(httpResponse, 201, "Discussion successfully created"),
+                () -> findDiscussion(projectId, mergeRequestIid, discussion -> discussion.getNotes().stream()
+                        .findFirst()
+                        .map(Note::getBody)
+                        .filter(mergeRequestNote.getContent()::equals)
+                        .isPresent()));
     }
 
     @Override
@@ -123,7 +171,10 @@ class GitlabRestClient implements GitlabClient {
 
         HttpPost httpPost = new HttpPost(targetUrl);
         httpPost.setEntity(new UrlEncodedFormEntity(Collections.singletonList(new BasicNameValuePair("body", noteContent)), StandardCharsets.UTF_8));
-        entity(httpPost, null, httpResponse -> validateResponse(httpResponse, 201, "Commit discussions note added"));
+        this.<Discussion>createEntity(httpPost, null, httpResponse -> validateResponse(httpResponse, 201, "Commit discussions note added"),
+                () -> findDiscussion(projectId, mergeRequestIid, discussion -> discussionId.equals(discussion.getId()) && discussion.getNotes().stream()
+                        .map(Note::getBody)
+                        .anyMatch(noteContent::equals)));
     }
 
     @Override
@@ -187,42 +238,88 @@ class GitlabRestClient implements GitlabClient {
 
     private <X> X entity(HttpRequestBase httpRequest, Class<X> type, Consumer<HttpResponse> responseValidator) throws IOException {
         httpRequest.addHeader("PRIVATE-TOKEN", authToken);
+        return retryPolicy.execute(describe(httpRequest), () -> executeRequest(httpRequest, type, responseValidator));
+    }
 
-        try (CloseableHttpClient httpClient = httpClientFactory.get()) {
-            HttpResponse httpResponse = httpClient.execute(httpRequest);
-
-            responseValidator.accept(httpResponse);
+    /**
+     * Performs a request that creates a note or discussion, using the lookup to check whether an attempt Gitlab failed
+     * to respond to had created it before sending the request again, since Gitlab would otherwise add a duplicate.
+     */
+    private <X> X createEntity(HttpRequestBase httpRequest, Class<X> type, Consumer<HttpResponse> responseValidator,
+                               RetryPolicy.Lookup<X> existingEntity) throws IOException {
+        httpRequest.addHeader("PRIVATE-TOKEN", authToken);
+        return retryPolicy.executeCreate(describe(httpRequest), () -> executeRequest(httpRequest, type, responseValidator), existingEntity);
+    }
 
-            if (null == type) {
-                return null;
+    private <X> X executeRequest(HttpRequestBase httpRequest, Class<X> type, Consumer<HttpResponse> responseValidator) throws IOException {
+        CloseableHttpClient httpClient = httpClientFactory.get();
+        try (CloseableHttpResponse httpResponse = httpClient.execute(httpRequest)) {
+            try {
+                validate(httpResponse, responseValidator);
+
+                if (null == type) {
+                    return null;
+                }
+                return objectMapper.readValue(EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8), type);
+            } finally {
+                EntityUtils.consumeQuietly(httpResponse.getEntity());
             }
-            return objectMapper.readValue(EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8), type);
         }
     }
 
-    private <X> List<X> entities(HttpGet httpRequest, Class<X> type) throws IOException {
-        return entities(httpRequest, type, httpResponse -> validateResponse(httpResponse, 200, null));
+    private Optional<Discussion> findDiscussion(long projectId, long mergeRequestIid, Predicate<Discussion> matcher) throws IOException {
+        try (Stream<Discussion> discussions = streamEntities(String.format("%s/projects/%s/merge_requests/%s/discussions", baseGitlabApiUrl, projectId, mergeRequestIid), Discussion.class)) {
+            return discussions.filter(matcher).findFirst();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
     }
 
-    private <X> List<X> entities(HttpGet httpRequest, Class<X> type, Consumer<HttpResponse> responseValidator) throws IOException {
-        httpRequest.addHeader("PRIVATE-TOKEN", authToken);
+    private <X> List<X> entities(String url, Class<X> type) throws IOException {
+        try (Stream<X> entities = streamEntities(url, type)) {
+            return entities.collect(Collectors.toList());
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
 
-        try (CloseableHttpClient httpClient = httpClientFactory.get()) {
-            HttpResponse httpResponse = httpClient.execute(httpRequest);
+    /**
+     * Lazily retrieves every entity from a paginated Gitlab endpoint, following the {@code Link} header Gitlab returns
+     * for both offset and keyset pagination. Each page is only requested when it is reached, with only one page's
+     * response being held open at a time. Closing the stream before all entities have been consumed stops any further
+     * pages from being requested. Pages Gitlab returned an {@code ETag} for are read into memory so they can be held in
+     * the response cache, as long as they fit within it, and are re-requested conditionally on later analyses, with the
+     * cached page being re-used if Gitlab reports it is unchanged. Any other page is deserialised directly from the
+     * response stream.
+     *
+     * @param url the URL of the endpoint, which may already contain query parameters
+     * @param type the type of entity returned by the endpoint
+     * @return a stream of entities which must be closed after use
+     */
+    private <X> Stream<X> streamEntities(String url, Class<X> type) {
+        PagingIterator<X> pagingIterator = new PagingIterator<>(withPageSize(url), type);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pagingIterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(pagingIterator::close);
+    }
 
-            responseValidator.accept(httpResponse);
+    private static String withPageSize(String url) {
+        return url + (url.contains("?") ? "&" : "?") + "per_page=" + PAGE_SIZE;
+    }
 
-            List<X> entities = new ArrayList<>(objectMapper.readValue(EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8),
-                    objectMapper.getTypeFactory().constructCollectionType(List.class, type)));
+    private static String describe(HttpRequestBase httpRequest) {
+        return "Gitlab " + httpRequest.getMethod() + " " + httpRequest.getURI();
+    }
 
-            Optional<String> nextURL = Optional.ofNullable(httpResponse.getFirstHeader("Link"))
-                    .map(NameValuePair::getValue)
-                    .flatMap(linkHeaderReader::findNextLink);
-            if (nextURL.isPresent()) {
-                entities.addAll(entities(new HttpGet(nextURL.get()), type, responseValidator));
+    private void validate(HttpResponse httpResponse, Consumer<HttpResponse> responseValidator) {
+        try {
+            responseValidator.accept(httpResponse);
+        } catch (IllegalStateException ex) {
+            int statusCode = httpResponse.getStatusLine().getStatusCode();
+            if (statusCode == HttpStatus.SC_UNAUTHORIZED || statusCode == HttpStatus.SC_FORBIDDEN) {
+                // the token may have been revoked or replaced, so the user it authenticated as is looked up again next time
+                authenticatedUserCache.invalidate(baseGitlabApiUrl, authToken, User.class);
             }
-
-            return entities;
+            throw RetryPolicy.classify(statusCode, ex);
         }
     }
 
@@ -231,7 +328,9 @@ class GitlabRestClient implements GitlabClient {
             LOGGER.atDebug().setMessage(() -> Optional.ofNullable(successLogMessage).map(v -> v + System.lineSeparator()).orElse("") + httpResponse).log();
             return;
         }
-        LOGGER.atError().setMessage("Gitlab response status did not match expected value. Expected: {}{}{}{}{}")
+        // failures that are going to be retried are only worth reporting if the retries also fail
+        Level level = RetryPolicy.isTransientStatus(httpResponse.getStatusLine().getStatusCode()) ? Level.DEBUG : Level.ERROR;
+        LOGGER.atLevel(level).setMessage("Gitlab response status did not match expected value. Expected: {}{}{}{}{}")
                 .addArgument(expectedStatus)
                 .addArgument(System::lineSeparator)
                 .addArgument(httpResponse)
@@ -246,8 +345,128 @@ class GitlabRestClient implements GitlabClient {
                 }).orElse(""))
                 .log();
 
-        throw new IllegalStateException("An unexpected response code was returned from the Gitlab API - Expected: " + expectedStatus + ", Got: " + httpResponse.getStatusLine().getStatusCode());
+        throw new UnexpectedStatusException("An unexpected response code was returned from the Gitlab API - Expected: " + expectedStatus + ", Got: " + httpResponse.getStatusLine().getStatusCode(),
+                httpResponse.getStatusLine().getStatusCode());
+
+    }
+
+    private final class PagingIterator<X> implements Iterator<X>, Closeable {
+
+        private final Class<X> type;
+        private String nextUrl;
+        private CloseableHttpResponse currentResponse;
+        private MappingIterator<X> currentPage;
+
+        private PagingIterator(String url, Class<X> type) {
+            this.nextUrl = url;
+            this.type = type;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (null == currentPage || !currentPage.hasNextValue()) {
+                    // the current response is released before the next page is requested so pagination never holds more than one pooled connection
+                    close();
+                    if (null == nextUrl) {
+                        return false;
+                    }
+                    openPage(nextUrl);
+                }
+                return true;
+            } catch (IOException ex) {
+                close();
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public X next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return currentPage.nextValue();
+            } catch (IOException ex) {
+                close();
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void close() {
+            currentPage = null;
+            if (null == currentResponse) {
+                return;
+            }
+            EntityUtils.consumeQuietly(currentResponse.getEntity());
+            try {
+                currentResponse.close();
+            } catch (IOException ex) {
+                LOGGER.debug("Could not release Gitlab response", ex);
+            }
+            currentResponse = null;
+        }
+
+        private void openPage(String url) throws IOException {
+            Optional<GitlabResponseCache.CachedPage> cachedPage = responseCache.getPage(url);
+
+            HttpGet httpRequest = new HttpGet(url);
+            httpRequest.addHeader("PRIVATE-TOKEN", authToken);
+            cachedPage.ifPresent(page -> httpRequest.addHeader("If-None-Match", page.getEtag()));
+
+            retryPolicy.execute(describe(httpRequest), () -> {
+                // releases the response from any failed attempt before the page is requested again
+                close();
+                currentResponse = httpClientFactory.get().execute(httpRequest);
+                if (cachedPage.isPresent() && currentResponse.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                    LOGGER.debug("Gitlab page unchanged since previous request: {}", url);
+                    nextUrl = cachedPage.get().getNextUrl();
+                    currentPage = readPage(cachedPage.get().getContent());
+                    return null;
+                }
+                validate(currentResponse, response -> validateResponse(response, 200, null));
+                processPage(url);
+                return null;
+            });
+        }
+
+        private void processPage(String url) throws IOException {
+            nextUrl = Optional.ofNullable(currentResponse.getFirstHeader("Link"))
+                    .map(NameValuePair::getValue)
+                    .flatMap(linkHeaderReader::findNextLink)
+                    .orElse(null);
 
+            HttpEntity entity = currentResponse.getEntity();
+            if (null == entity) {
+                currentPage = MappingIterator.emptyIterator();
+                return;
+            }
+
+            Optional<String> etag = Optional.ofNullable(currentResponse.getFirstHeader("ETag")).map(NameValuePair::getValue);
+            long maxCachedPageBytes = responseCache.getMaxCachedPageBytes();
+            if (etag.isEmpty() || entity.getContentLength() > maxCachedPageBytes) {
+                currentPage = objectMapper.readerFor(type).readValues(entity.getContent());
+                return;
+            }
+
+            // the length isn't known up-front for a chunked response, so only as much as the cache could hold is read
+            InputStream body = entity.getContent();
+            byte[] content = body.readNBytes((int) Math.min(maxCachedPageBytes + 1, Integer.MAX_VALUE));
+            if (content.length > maxCachedPageBytes) {
+                currentPage = objectMapper.readerFor(type).readValues(new SequenceInputStream(new ByteArrayInputStream(content), body));
+                return;
+            }
+            responseCache.putPage(url, etag.get(), content, nextUrl);
+            currentPage = readPage(content);
+        }
+
+        private MappingIterator<X> readPage(byte[] content) throws IOException {
+            if (content.length == 0) {
+                return MappingIterator.emptyIterator();
+            }
+            return objectMapper.readerFor(type).readValues(content);
+        }
     }
 
 }
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
+import com.github.mc1arke.sonarqube.plugin.almclient.UnexpectedStatusException;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketCloudException;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketException;
+import org.apache.http.NoHttpResponseException;
+import org.kohsuke.github.HttpException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+import org.sonar.db.alm.setting.AlmSettingDto;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Isolates decorations for each ALM host so that a slow or failing ALM can only tie up a limited share of the Compute
+ * Engine. Each host has a bulkhead allowing a fixed number of decorations to run at once, with a bounded number of
+ * further decorations waiting for a free slot, and a circuit breaker which stops decorations being attempted against
+ * the host once a run of decorations have either failed or taken longer than the slow decoration threshold. Only
+ * failures that show the host is unhealthy - timeouts, connection failures, and overloaded or server error responses -
+ * count towards opening the circuit, so a project with an invalid configuration or a request the ALM rejects can't
+ * stop decorations against the host for every other project. Once the
+ * circuit has been open for the configured period, a single decoration is let through to check whether the host has
+ * recovered before the circuit is closed again.
+ * <p>
+ * Decorations that are turned away by a full bulkhead or an open circuit fail fast with a
+ * {@link DecorationDeferredException} rather than waiting on the ALM.
+ */
+@ComputeEngineSide
+public class AlmHostBulkheads {
+
+    public static final String MAX_CONCURRENT = "com.github.mc1arke.sonarqube.plugin.branch.pullrequest.decoration.host.maxConcurrent";
+    public static final String QUEUE_CAPACITY = "com.github.mc1arke.sonarqube.plugin.branch.pullrequest.decoration.host.queueCapacity";
+    public static final String FAILURE_THRESHOLD = "com.github.mc1arke.sonarqube.plugin.branch.pullrequest.decoration.host.failureThreshold";
+    public static final String SLOW_DECORATION_THRESHOLD = "com.github.mc1arke.sonarqube.plugin.branch.pullrequest.decoration.host.slowDecorationThresholdSeconds";
+    public static final String OPEN_DURATION = "com.github.mc1arke.sonarqube.plugin.branch.pullrequest.decoration.host.circuitOpenSeconds";
+
+    private static final int DEFAULT_MAX_CONCURRENT = 2;
+    private static final int DEFAULT_QUEUE_CAPACITY = 5;
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final int DEFAULT_SLOW_DECORATION_THRESHOLD = 60;
+    private static final int DEFAULT_OPEN_DURATION = 120;
+    private static final Duration QUEUE_TIMEOUT = Duration.ofMinutes(2);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlmHostBulkheads.class);
+
+    private final int maxConcurrent;
+    private final int queueCapacity;
+    private final int failureThreshold;
+    private final Duration slowDecorationThreshold;
+    private final Duration openDuration;
+    private final Duration queueTimeout;
+    private final Clock clock;
+
+    private final Map<String, HostBulkhead> bulkheads = new ConcurrentHashMap<>();
+    private final LongAdder deferredDecorations = new LongAdder();
+    private final LongAdder circuitOpenings = new LongAdder();
+
+    @Autowired
+    public AlmHostBulkheads(Configuration configuration) {
+        this(configuration.getInt(MAX_CONCURRENT).orElse(DEFAULT_MAX_CONCURRENT),
+                configuration.getInt(QUEUE_CAPACITY).orElse(DEFAULT_QUEUE_CAPACITY),
+                configuration.getInt(FAILURE_THRESHOLD).orElse(DEFAULT_FAILURE_THRESHOLD),
+                Duration.ofSeconds(configuration.getInt(SLOW_DECORATION_THRESHOLD).orElse(DEFAULT_SLOW_DECORATION_THRESHOLD)),
+                Duration.ofSeconds(configuration.getInt(OPEN_DURATION).orElse(DEFAULT_OPEN_DURATION)),
+                QUEUE_TIMEOUT, Clock.systemUTC());
+    }
+
+    AlmHostBulkheads(int maxConcurrent, int queueCapacity, int failureThreshold, Duration slowDecorationThreshold,
+                     Duration openDuration, Duration queueTimeout, Clock clock) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException(MAX_CONCURRENT + " must be greater than 0");
+        }
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException(QUEUE_CAPACITY + " must not be negative");
+        }
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException(FAILURE_THRESHOLD + " must be greater than 0");
+        }
+        if (slowDecorationThreshold.isNegative() || slowDecorationThreshold.isZero()) {
+            throw new IllegalArgumentException(SLOW_DECORATION_THRESHOLD + " must be greater than 0");
+        }
+        if (openDuration.isNegative()) {
+            throw new IllegalArgumentException(OPEN_DURATION + " must not be negative");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.queueCapacity = queueCapacity;
+        this.failureThreshold = failureThreshold;
+        this.slowDecorationThreshold = slowDecorationThreshold;
+        this.openDuration = openDuration;
+        this.queueTimeout = queueTimeout;
+        this.clock = clock;
+    }
+
+    /**
+     * Runs the decoration within the bulkhead of the host the ALM setting points to, waiting for a free slot if the
+     * host is already running its maximum number of decorations.
+     *
+     * @param almSettingDto the ALM the decoration is being performed against
+     * @param decoration the decoration to run
+     * @throws DecorationDeferredException if the host's circuit is open, or too many decorations are already waiting
+     * on the host
+     */
+    public void run(AlmSettingDto almSettingDto, Runnable decoration) {
+        String host = createHostKey(almSettingDto);
+        bulkheads.computeIfAbsent(host, HostBulkhead::new).run(decoration);
+    }
+
+    public long getDeferredCount() {
+        return deferredDecorations.sum();
+    }
+
+    public long getCircuitOpenCount() {
+        return circuitOpenings.sum();
+    }
+
+    /**
+     * @return whether decorations against the host the ALM setting points to are currently being turned away
+     */
+    public boolean isCircuitOpen(AlmSettingDto almSettingDto) {
+        return Optional.ofNullable(bulkheads.get(createHostKey(almSettingDto)))
+                .map(bulkhead -> bulkhead.isOpen(clock.instant()))
+                .orElse(false);
+    }
+
+    private static String createHostKey(AlmSettingDto almSettingDto) {
+        // Bitbucket Cloud settings don't hold a URL since they always point to the same service
+        String url = Optional.ofNullable(almSettingDto.getUrl())
+                .map(String::trim)
+                .filter(value -> !value.isEmpty())
+                .orElseGet(() -> almSettingDto.getAlm().name());
+        return url.toLowerCase(Locale.ENGLISH).replaceAll("/+$", "");
+    }
+
+    /**
+     * @return whether the failure, or any of its causes, shows the host couldn't be reached or couldn't process requests
+     */
+    static boolean isHostFailure(Throwable failure) {
+        Throwable current = failure;
+        while (null != current) {
+            if (current instanceof InvalidConfigurationException) {
+                return false;
+            }
+            if (current instanceof ConnectException || current instanceof SocketTimeoutException
+                    || current instanceof NoHttpResponseException) {
+                return true;
+            }
+            if (current instanceof BitbucketException) {
+                return ((BitbucketException) current).isRetryable();
+            }
+            if (current instanceof BitbucketCloudException) {
+                return ((BitbucketCloudException) current).isRetryable();
+            }
+            if (current instanceof UnexpectedStatusException) {
+                return isHostFailureStatus(((UnexpectedStatusException) current).getStatusCode());
+            }
+            if (current instanceof HttpException) {
+                return isHostFailureStatus(((HttpException) current).getResponseCode());
+            }
+            current = current.getCause() == current ? null : current.getCause();
+        }
+        return false;
+    }
+
+    private static boolean isHostFailureStatus(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    private DecorationDeferredException defer(String message, Duration retryAfter) {
+        deferredDecorations.increment();
+        LOGGER.atDebug().setMessage("ALM host bulkhead statistics - deferred decorations: {}, circuit openings: {}")
+                .addArgument(deferredDecorations::sum)
+                .addArgument(circuitOpenings::sum)
+                .log();
+        return new DecorationDeferredException(message, retryAfter);
+    }
+
+    private enum CircuitState {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final class HostBulkhead {
+
+        private final String host;
+        private final Semaphore permits;
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        // circuit state is guarded by synchronizing on the bulkhead
+        private CircuitState state = CircuitState.CLOSED;
+        private int consecutiveFailures;
+        private Instant openUntil = Instant.MIN;
+        private boolean trialInProgress;
+
+        private HostBulkhead(String host) {
+            this.host = host;
+            this.permits = new Semaphore(maxConcurrent, true);
+        }
+
+        void run(Runnable decoration) {
+            boolean trial = admit(clock.instant());
+            boolean acquired = false;
+            try {
+                acquirePermit();
+                acquired = true;
+                Instant start = clock.instant();
+                try {
+                    decoration.run();
+                } catch (RuntimeException ex) {
+                    if (isHostFailure(ex)) {
+                        recordOutcome(false, trial);
+                        trial = false;
+                    }
+                    // any other failure says nothing about the host, so leaves the circuit as it was, releasing the
+                    // trial for the next decoration if this was one
+                    throw ex;
+                }
+                Duration duration = Duration.between(start, clock.instant());
+                if (duration.compareTo(slowDecorationThreshold) > 0) {
+                    LOGGER.warn("Decoration against {} took {} seconds, which is longer than the slow decoration threshold of {} seconds",
+                            host, duration.toSeconds(), slowDecorationThreshold.toSeconds());
+                    recordOutcome(false, trial);
+                } else {
+                    recordOutcome(true, trial);
+                }
+                trial = false;
+            } finally {
+                if (acquired) {
+                    permits.release();
+                }
+                if (trial) {
+                    releaseTrial();
+                }
+            }
+        }
+
+        /**
+         * @return whether this decoration is the trial decoration checking whether the host has recovered
+         */
+        private synchronized boolean admit(Instant now) {
+            if (state == CircuitState.OPEN) {
+                if (now.isBefore(openUntil)) {
+                    throw defer("Decorations against " + host + " are suspended until " + openUntil + " after repeated failures",
+                            Duration.between(now, openUntil));
+                }
+                state = CircuitState.HALF_OPEN;
+            }
+            if (state == CircuitState.HALF_OPEN) {
+                if (trialInProgress) {
+                    throw defer("Decorations against " + host + " are suspended whilst checking whether it has recovered",
+                            Duration.ZERO);
+                }
+                trialInProgress = true;
+                return true;
+            }
+            return false;
+        }
+
+        private void acquirePermit() {
+            if (permits.tryAcquire()) {
+                return;
+            }
+            if (waiting.incrementAndGet() > queueCapacity) {
+                waiting.decrementAndGet();
+                throw defer("Too many decorations are already waiting on " + host, Duration.ZERO);
+            }
+            try {
+                if (!permits.tryAcquire(queueTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    throw defer("Timed out waiting for a free decoration slot for " + host, Duration.ZERO);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw defer("Interrupted whilst waiting for a free decoration slot for " + host, Duration.ZERO);
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+
+        private synchronized void recordOutcome(boolean successful, boolean trial) {
+            if (trial) {
+                trialInProgress = false;
+            }
+            if (successful) {
+                consecutiveFailures = 0;
+                if (trial && state == CircuitState.HALF_OPEN) {
+                    state = CircuitState.CLOSED;
+                    LOGGER.info("Decorations against {} have recovered and are no longer being deferred", host);
+                }
+                return;
+            }
+
+            consecutiveFailures++;
+            if ((trial && state == CircuitState.HALF_OPEN) || (state == CircuitState.CLOSED && consecutiveFailures >= failureThreshold)) {
+                state = CircuitState.OPEN;
+                openUntil = clock.instant().plus(openDuration);
+                circuitOpenings.increment();
+                LOGGER.warn("Deferring decorations against {} for {} seconds after {} consecutive failed or slow decorations",
+                        host, openDuration.toSeconds(), consecutiveFailures);
+            }
+        }
+
+        private synchronized void releaseTrial() {
+            trialInProgress = false;
+        }
+
+        private synchronized boolean isOpen(Instant now) {
+            return state == CircuitState.OPEN && now.isBefore(openUntil);
+        }
+    }
+}
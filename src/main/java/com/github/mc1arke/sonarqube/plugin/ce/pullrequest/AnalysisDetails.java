@@ -21,6 +21,7 @@ package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -28,25 +29,40 @@ import org.sonar.api.ce.posttask.Analysis;
 import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
 import org.sonar.api.ce.posttask.Project;
 import org.sonar.api.ce.posttask.QualityGate;
-import org.sonar.api.issue.IssueStatus;
 import org.sonar.ce.task.projectanalysis.component.Component;
 
 public class AnalysisDetails {
 
     private final String pullRequestId;
     private final String commitId;
-    private final List<PostAnalysisIssueVisitor.ComponentIssue> issues;
+    private final CollectedIssues issues;
     private final QualityGate qualityGate;
     private final PostProjectAnalysisTask.ProjectAnalysis projectAnalysis;
+    private final DecorationReport decorationReport;
 
     AnalysisDetails(String pullRequestId, String commitId, List<PostAnalysisIssueVisitor.ComponentIssue> issues,
                     QualityGate qualityGate, PostProjectAnalysisTask.ProjectAnalysis projectAnalysis) {
+        this(pullRequestId, commitId, CollectedIssues.of(issues), qualityGate, projectAnalysis);
+    }
+
+    AnalysisDetails(String pullRequestId, String commitId, CollectedIssues issues,
+                    QualityGate qualityGate, PostProjectAnalysisTask.ProjectAnalysis projectAnalysis) {
+        this(pullRequestId, commitId, issues, qualityGate, projectAnalysis, null);
+    }
+
+    private AnalysisDetails(String pullRequestId, String commitId, CollectedIssues issues, QualityGate qualityGate,
+                            PostProjectAnalysisTask.ProjectAnalysis projectAnalysis, DecorationReport decorationReport) {
         super();
         this.pullRequestId = pullRequestId;
         this.commitId = commitId;
         this.issues = issues;
         this.qualityGate = qualityGate;
         this.projectAnalysis = projectAnalysis;
+        this.decorationReport = decorationReport;
+    }
+
+    AnalysisDetails withDecorationReport(DecorationReport decorationReport) {
+        return new AnalysisDetails(pullRequestId, commitId, issues, qualityGate, projectAnalysis, decorationReport);
     }
 
     public String getPullRequestId() {
@@ -88,16 +104,27 @@ public class AnalysisDetails {
     }
 
     public List<PostAnalysisIssueVisitor.ComponentIssue> getIssues() {
-        return issues;
+        return issues.getIssues();
     }
 
     public List<PostAnalysisIssueVisitor.ComponentIssue> getScmReportableIssues() {
-        return getIssues().stream()
-                .filter(i -> i.getComponent().getReportAttributes().getScmPath().isPresent())
-                .filter(i -> i.getComponent().getType() == Component.Type.FILE)
-                .filter(i -> i.getIssue().resolution() == null)
-                .filter(i -> i.getIssue().issueStatus() == IssueStatus.OPEN)
-                .collect(Collectors.toList());
+        return issues.getScmReportableIssues();
+    }
+
+    public Map<Component, List<PostAnalysisIssueVisitor.ComponentIssue>> getScmReportableIssuesByComponent() {
+        return issues.getScmReportableIssuesByComponent();
+    }
+
+    public long getOpenIssueCount() {
+        return issues.getOpenIssueCount();
+    }
+
+    /**
+     * @return the details read from the Compute Engine task ahead of the decoration, which decorators should use in place
+     * of the task's repositories where present since the decoration may run after the task has finished
+     */
+    public Optional<DecorationReport> getDecorationReport() {
+        return Optional.ofNullable(decorationReport);
     }
 
     public Optional<QualityGate.Condition> findQualityGateCondition(String metricKey) {
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Submits batches of independent ALM calls (new comments, resolutions, deletions) with at most a fixed number of
+ * calls from each batch in flight, so the time taken to decorate a pull request scales with the ALM's latency divided
+ * by the parallelism rather than with the number of comments being placed.
+ * <p>
+ * Every decoration shares one pool of daemon threads, so the number of threads calling ALMs is bounded however many
+ * decorations are running, with threads that have been idle for a minute being released. Batches submitted once the
+ * pool has been stopped are run on the calling thread.
+ */
+@ComputeEngineSide
+public class BoundedSubmissionExecutor implements Startable {
+
+    private static final int DEFAULT_MAX_THREADS = 16;
+    private static final long IDLE_TIMEOUT_SECONDS = 60;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final ThreadFactory THREAD_FACTORY = runnable -> {
+        Thread thread = new Thread(runnable, "pull-request-decoration-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    };
+
+    private final ThreadPoolExecutor executorService;
+
+    @Autowired
+    public BoundedSubmissionExecutor() {
+        this(DEFAULT_MAX_THREADS);
+    }
+
+    BoundedSubmissionExecutor(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("Maximum threads must be at least 1");
+        }
+        this.executorService = new ThreadPoolExecutor(maxThreads, maxThreads, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), THREAD_FACTORY);
+        this.executorService.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void start() {
+        // nothing to do, threads are created as submissions are made
+    }
+
+    @Override
+    public void stop() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Performs the given action against every item, waiting for all actions to complete before returning. Every item
+     * is attempted even if an earlier one fails, after which the failure from the first item (in submission order) is
+     * thrown, with the failures from any subsequent items attached as suppressed exceptions.
+     *
+     * @param parallelism the maximum number of items to perform the action on at the same time
+     * @param items the items to perform the action on
+     * @param action the action to perform, which must be safe to call from multiple threads concurrently
+     */
+    public <T> void submitAll(int parallelism, List<T> items, Consumer<T> action) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        List<RuntimeException> failures = new ArrayList<>();
+        if (parallelism == 1 || items.size() < 2) {
+            for (T item : items) {
+                try {
+                    action.accept(item);
+                } catch (RuntimeException ex) {
+                    failures.add(ex);
+                }
+            }
+        } else {
+            Semaphore permits = new Semaphore(parallelism);
+            List<Future<?>> submissions = new ArrayList<>(items.size());
+            for (T item : items) {
+                acquire(permits, submissions);
+                FutureTask<?> submission = new FutureTask<>(() -> {
+                    try {
+                        action.accept(item);
+                    } finally {
+                        permits.release();
+                    }
+                }, null);
+                submissions.add(submission);
+                try {
+                    executorService.execute(submission);
+                } catch (RejectedExecutionException ex) {
+                    submission.run();
+                }
+            }
+            for (Future<?> submission : submissions) {
+                awaitSubmission(submission, failures);
+            }
+        }
+
+        if (failures.isEmpty()) {
+            return;
+        }
+        RuntimeException failure = failures.get(0);
+        failures.stream().skip(1).forEach(failure::addSuppressed);
+        throw failure;
+    }
+
+    private static void acquire(Semaphore permits, List<Future<?>> submissions) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException ex) {
+            submissions.forEach(submission -> submission.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted whilst waiting for submissions to the ALM to complete", ex);
+        }
+    }
+
+    private static void awaitSubmission(Future<?> submission, List<RuntimeException> failures) {
+        try {
+            submission.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted whilst waiting for submissions to the ALM to complete", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                failures.add((RuntimeException) cause);
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                failures.add(new IllegalStateException("Could not complete submission to the ALM", cause));
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sonar.api.issue.IssueStatus;
+import org.sonar.ce.task.projectanalysis.component.Component;
+
+/**
+ * The issues collected during an analysis, grouped as they're collected into the sets the decorators work with so the
+ * full set of issues doesn't need to be re-scanned each time a decorator or the report generator needs a subset of it.
+ */
+public final class CollectedIssues {
+
+    private final List<PostAnalysisIssueVisitor.ComponentIssue> issues;
+    private final List<PostAnalysisIssueVisitor.ComponentIssue> scmReportableIssues;
+    private final Map<Component, List<PostAnalysisIssueVisitor.ComponentIssue>> scmReportableIssuesByComponent;
+    private final long openIssueCount;
+
+    private CollectedIssues(Builder builder) {
+        this.issues = Collections.unmodifiableList(builder.issues);
+        this.scmReportableIssues = Collections.unmodifiableList(builder.scmReportableIssues);
+        this.scmReportableIssuesByComponent = Collections.unmodifiableMap(builder.scmReportableIssuesByComponent);
+        this.openIssueCount = builder.openIssueCount;
+    }
+
+    public static CollectedIssues of(List<PostAnalysisIssueVisitor.ComponentIssue> issues) {
+        Builder builder = new Builder();
+        issues.forEach(builder::add);
+        return builder.build();
+    }
+
+    public List<PostAnalysisIssueVisitor.ComponentIssue> getIssues() {
+        return issues;
+    }
+
+    /**
+     * @return the open issues on files that are under source control, so could be commented on in the pull request
+     */
+    public List<PostAnalysisIssueVisitor.ComponentIssue> getScmReportableIssues() {
+        return scmReportableIssues;
+    }
+
+    /**
+     * @return the {@link #getScmReportableIssues() SCM reportable issues} grouped by the file they were raised against,
+     * in the order each file was first seen
+     */
+    public Map<Component, List<PostAnalysisIssueVisitor.ComponentIssue>> getScmReportableIssuesByComponent() {
+        return scmReportableIssuesByComponent;
+    }
+
+    public long getOpenIssueCount() {
+        return openIssueCount;
+    }
+
+    static final class Builder {
+
+        private final List<PostAnalysisIssueVisitor.ComponentIssue> issues = new ArrayList<>();
+        private final List<PostAnalysisIssueVisitor.ComponentIssue> scmReportableIssues = new ArrayList<>();
+        private final Map<Component, List<PostAnalysisIssueVisitor.ComponentIssue>> scmReportableIssuesByComponent = new LinkedHashMap<>();
+        private long openIssueCount;
+
+        Builder add(PostAnalysisIssueVisitor.ComponentIssue componentIssue) {
+            issues.add(componentIssue);
+            if (componentIssue.getIssue().issueStatus() != IssueStatus.OPEN) {
+                return this;
+            }
+            openIssueCount++;
+
+            if (componentIssue.getIssue().resolution() == null && componentIssue.getScmPath().isPresent()) {
+                scmReportableIssues.add(componentIssue);
+                scmReportableIssuesByComponent.computeIfAbsent(componentIssue.getComponent(), k -> new ArrayList<>()).add(componentIssue);
+            }
+            return this;
+        }
+
+        List<PostAnalysisIssueVisitor.ComponentIssue> getIssues() {
+            return Collections.unmodifiableList(issues);
+        }
+
+        CollectedIssues build() {
+            return new CollectedIssues(this);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a decoration has not been attempted because the ALM it targets is already saturated or is currently
+ * considered unhealthy, so the decoration should be tried again later rather than being treated as having failed
+ * against the ALM.
+ */
+public class DecorationDeferredException extends IllegalStateException {
+
+    private final transient Duration retryAfter;
+
+    DecorationDeferredException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return how long to wait before the ALM is likely to accept the decoration, or {@link Duration#ZERO} if unknown
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
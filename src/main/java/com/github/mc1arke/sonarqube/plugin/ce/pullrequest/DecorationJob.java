@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.filter.IssueFilterRunner;
+import org.sonar.db.alm.setting.AlmSettingDto;
+import org.sonar.db.alm.setting.ProjectAlmSettingDto;
+
+import java.util.function.Consumer;
+
+/**
+ * Everything needed to decorate a pull request with the results of a single analysis, captured when the analysis
+ * completes so the decoration can be performed independently of the Compute Engine task that produced it.
+ */
+final class DecorationJob {
+
+    private final PullRequestBuildStatusDecorator decorator;
+    private final AnalysisDetails analysisDetails;
+    private final AlmSettingDto almSettingDto;
+    private final ProjectAlmSettingDto projectAlmSettingDto;
+    private final IssueFilterRunner issueFilterRunner;
+    private final Consumer<DecorationResult> resultHandler;
+    private final AlmHostBulkheads almHostBulkheads;
+
+    DecorationJob(PullRequestBuildStatusDecorator decorator, AnalysisDetails analysisDetails, AlmSettingDto almSettingDto,
+                  ProjectAlmSettingDto projectAlmSettingDto, IssueFilterRunner issueFilterRunner,
+                  Consumer<DecorationResult> resultHandler, AlmHostBulkheads almHostBulkheads) {
+        this.decorator = decorator;
+        this.analysisDetails = analysisDetails;
+        this.almSettingDto = almSettingDto;
+        this.projectAlmSettingDto = projectAlmSettingDto;
+        this.issueFilterRunner = issueFilterRunner;
+        this.resultHandler = resultHandler;
+        this.almHostBulkheads = almHostBulkheads;
+    }
+
+    AnalysisDetails getAnalysisDetails() {
+        return analysisDetails;
+    }
+
+    /**
+     * @throws DecorationDeferredException if the ALM is too busy or unhealthy for the decoration to be attempted now
+     */
+    void run() {
+        almHostBulkheads.run(almSettingDto, () -> {
+            DecorationResult decorationResult = decorator.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto, issueFilterRunner);
+            resultHandler.accept(decorationResult);
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "pull request " + analysisDetails.getPullRequestId() + " at commit " + analysisDetails.getCommitSha();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisSummary;
+import org.sonar.ce.task.projectanalysis.component.Component;
+import org.sonar.ce.task.projectanalysis.scm.ScmInfo;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The parts of a decoration that are read from the Compute Engine task's measure and SCM repositories, captured on the
+ * analysis thread so a decoration that runs after the task has finished doesn't read from repositories that have been
+ * discarded along with the task's report.
+ */
+public final class DecorationReport {
+
+    private final AnalysisSummary analysisSummary;
+    private final Map<Component, ScmInfo> scmInfo;
+
+    /**
+     * @param analysisSummary the summary of the analysis
+     * @param scmInfo the SCM details for each component with issues that could be reported against a line, with
+     *                components that have no SCM details being left out
+     */
+    public DecorationReport(AnalysisSummary analysisSummary, Map<Component, ScmInfo> scmInfo) {
+        this.analysisSummary = analysisSummary;
+        this.scmInfo = Map.copyOf(scmInfo);
+    }
+
+    public AnalysisSummary getAnalysisSummary() {
+        return analysisSummary;
+    }
+
+    public Optional<ScmInfo> getScmInfo(Component component) {
+        return Optional.ofNullable(scmInfo.get(component));
+    }
+}
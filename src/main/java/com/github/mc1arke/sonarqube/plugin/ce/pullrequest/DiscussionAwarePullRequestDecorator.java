@@ -20,34 +20,32 @@ package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
 
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.filter.IssueFilterRunner;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.filter.IssueFilterRunner.NoFilterIssueFilterRunner;
-import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSummary;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.FormatterFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisSummary;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
-import org.apache.http.NameValuePair;
-import org.apache.http.client.utils.URLEncodedUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.ce.task.projectanalysis.component.Component;
 import org.sonar.ce.task.projectanalysis.scm.Changeset;
+import org.sonar.ce.task.projectanalysis.scm.ScmInfo;
 import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.StringReader;
-import java.net.URI;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> implements PullRequestBuildStatusDecorator {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiscussionAwarePullRequestDecorator.class);
+
     private static final String RESOLVED_ISSUE_NEEDING_CLOSED_MESSAGE =
             "This issue no longer exists in SonarQube, but due to other comments being present in this discussion, the discussion is not being being closed automatically. " +
                     "Please manually resolve this discussion once the other comments have been reviewed.";
@@ -55,17 +53,24 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
             "This summary note is outdated, but due to other comments being present in this discussion, the discussion is not being being removed. " +
                     "Please manually resolve this discussion once the other comments have been reviewed.";
 
-    private static final String VIEW_IN_SONARQUBE_LABEL = "View in SonarQube";
-    private static final Pattern NOTE_MARKDOWN_VIEW_LINK_PATTERN = Pattern.compile("^\\[" + VIEW_IN_SONARQUBE_LABEL + "]\\((.*?)\\)$");
-    private static final String DECORATOR_SUMMARY_COMMENT = "decorator-summary-comment";
+    protected static final String VIEW_IN_SONARQUBE_LABEL = "View in SonarQube";
+    static final NoteIssueLinkParser NOTE_ISSUE_LINK_PARSER = new NoteIssueLinkParser(VIEW_IN_SONARQUBE_LABEL);
+    private static final String DECORATOR_SUMMARY_COMMENT = NoteMarker.SUMMARY_NOTE_KEY;
+
+    protected static final int DEFAULT_SUBMISSION_PARALLELISM = 4;
 
     private final ScmInfoRepository scmInfoRepository;
     private final ReportGenerator reportGenerator;
+    private final FormatterFactory formatterFactory;
+    private final BoundedSubmissionExecutor submissionExecutor;
 
-    protected DiscussionAwarePullRequestDecorator(ScmInfoRepository scmInfoRepository, ReportGenerator reportGenerator) {
+    protected DiscussionAwarePullRequestDecorator(ScmInfoRepository scmInfoRepository, ReportGenerator reportGenerator,
+                                                  FormatterFactory formatterFactory, BoundedSubmissionExecutor submissionExecutor) {
         super();
         this.scmInfoRepository = scmInfoRepository;
         this.reportGenerator = reportGenerator;
+        this.formatterFactory = formatterFactory;
+        this.submissionExecutor = submissionExecutor;
     }
 
     @Override
@@ -79,45 +84,71 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
     public DecorationResult decorateQualityGateStatus(AnalysisDetails analysis, AlmSettingDto almSettingDto,
             ProjectAlmSettingDto projectAlmSettingDto, IssueFilterRunner issueFilterRunner) {
         C client = createClient(almSettingDto, projectAlmSettingDto);
-        
+        int submissionParallelism = Math.max(1, getSubmissionParallelism(analysis));
+
         P pullRequest = getPullRequest(client, almSettingDto, projectAlmSettingDto, analysis);
         U user = getCurrentUser(client);
         List<PostAnalysisIssueVisitor.ComponentIssue> openSonarqubeIssues =
                 issueFilterRunner.filterIssues(analysis.getScmReportableIssues());
 
-        List<Triple<D, N, Optional<ProjectIssueIdentifier>>> currentProjectSonarqubeComments = findSonarqubeComments(client,
-                pullRequest,
+        DiscussionSnapshot<D, N> discussionSnapshot = DiscussionSnapshot.load(getDiscussions(client, pullRequest),
+                discussion -> getNotesForDiscussion(client, discussion),
+                note -> getNoteContent(client, note),
+                note -> parseIssueDetails(client, note));
+
+        List<Triple<D, N, Optional<ProjectIssueIdentifier>>> currentProjectSonarqubeComments = findSonarqubeComments(discussionSnapshot,
                 user)
                 .stream()
                 .filter(comment -> !projectAlmSettingDto.getMonorepo() || isCommentFromCurrentProject(comment, analysis.getAnalysisProjectKey()))
                 .collect(Collectors.toList());
 
-        List<String> commentKeysForOpenComments = closeOldDiscussionsAndExtractRemainingKeys(client,
-                user,
-                currentProjectSonarqubeComments,
+        AnalysisSummary analysisSummary = analysis.getDecorationReport()
+                .map(DecorationReport::getAnalysisSummary)
+                .orElseGet(() -> reportGenerator.createAnalysisSummary(analysis));
+        String summaryContent = analysisSummary.format(formatterFactory);
+        List<DiscussionReconciliationPlan.ExistingDiscussion<D, N>> existingDiscussions = findExistingDiscussions(discussionSnapshot, user, currentProjectSonarqubeComments);
+        // the summary may have been resolved by a passing quality gate, but is still the one to compare against and edit
+        Optional<DiscussionReconciliationPlan.ExistingDiscussion<D, N>> existingSummaryDiscussion = existingDiscussions.stream()
+                .filter(discussion -> discussion.getIdentifier().isSummary())
+                .findFirst();
+        boolean summaryUnchanged = existingSummaryDiscussion
+                .filter(summaryDiscussion -> isContentUnchanged(discussionSnapshot, summaryDiscussion, summaryContent))
+                .isPresent();
+        Optional<D> retainedSummaryDiscussion = existingSummaryDiscussion
+                .filter(summaryDiscussion -> summaryUnchanged || isEditSummaryNoteEnabled(analysis))
+                .map(DiscussionReconciliationPlan.ExistingDiscussion::getDiscussion);
+
+        DiscussionReconciliationPlan<D, N> reconciliationPlan = DiscussionReconciliationPlan.create(existingDiscussions,
                 openSonarqubeIssues,
-                pullRequest,
-                isEditSummaryNoteEnabled(analysis));
+                retainedSummaryDiscussion);
+
+        submissionExecutor.submitAll(submissionParallelism, reconciliationPlan.getDiscussionActions(), action -> executeDiscussionAction(client, pullRequest, action));
 
         List<String> commitIds = getCommitIdsForPullRequest(client, pullRequest);
-        List<Pair<PostAnalysisIssueVisitor.ComponentIssue, String>> uncommentedIssues = findIssuesWithoutComments(openSonarqubeIssues,
-                commentKeysForOpenComments)
+        Function<Component, Optional<ScmInfo>> scmInfoLookup = analysis.getDecorationReport()
+                .<Function<Component, Optional<ScmInfo>>>map(report -> report::getScmInfo)
+                .orElse(scmInfoRepository::getScmInfo);
+        List<Pair<PostAnalysisIssueVisitor.ComponentIssue, String>> uncommentedIssues = reconciliationPlan.getIssuesToComment()
                 .stream()
                 .map(DiscussionAwarePullRequestDecorator::loadScmPathsForIssues)
                 .filter(Optional::isPresent)
                 .map(Optional::get)
-                .filter(issue -> isIssueFromCommitInCurrentRequest(issue.getLeft(), commitIds, scmInfoRepository))
+                .filter(issue -> isIssueFromCommitInCurrentRequest(issue.getLeft(), commitIds, scmInfoLookup))
                 .collect(Collectors.toList());
 
-        uncommentedIssues.forEach(issue -> submitCommitNoteForIssue(client,
+        submissionExecutor.submitAll(submissionParallelism, uncommentedIssues, issue -> submitCommitNoteForIssue(client,
                 pullRequest,
                 issue.getLeft(),
                 issue.getRight(),
                 analysis,
-                reportGenerator.createAnalysisIssueSummary(issue.getLeft(), analysis)));
+                NoteMarker.addMarker(analysis.getAnalysisProjectKey(), issue.getLeft().getIssue().key(),
+                        reportGenerator.createAnalysisIssueSummary(issue.getLeft(), analysis).format(formatterFactory))));
 
-        AnalysisSummary analysisSummary = reportGenerator.createAnalysisSummary(analysis);
-        editExistingOrSubmitSummaryNote(client, pullRequest, currentProjectSonarqubeComments, analysis, analysisSummary);
+        if (summaryUnchanged) {
+            LOGGER.atDebug().setMessage("Summary note for {} is unchanged, so is not being updated").addArgument(analysis::getAnalysisProjectKey).log();
+        } else {
+            editExistingOrSubmitSummaryNote(client, pullRequest, retainedSummaryDiscussion, analysis, summaryContent);
+        }
         submitPipelineStatus(client, pullRequest, analysis, analysisSummary);
 
         DecorationResult.Builder builder = DecorationResult.builder();
@@ -125,24 +156,37 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
         return builder.build();
     }
 
-    private void editExistingOrSubmitSummaryNote(C client, P pullRequest,
-                List<Triple<D, N, Optional<ProjectIssueIdentifier>>> currentProjectSonarqubeComments,
-                AnalysisDetails analysis, AnalysisSummary analysisSummary) {
-        Optional<Triple<D, N, Optional<ProjectIssueIdentifier>>> existingSummaryNote = currentProjectSonarqubeComments.stream()
-                .filter(discussion -> isSummaryNote(discussion.getRight()))
-                .findFirst();
-
-        if (isEditSummaryNoteEnabled(analysis) && existingSummaryNote.isPresent()) {
-            editSummaryNote(client, pullRequest, existingSummaryNote.get().getLeft(), analysis, analysisSummary);
+    private void editExistingOrSubmitSummaryNote(C client, P pullRequest, Optional<D> existingSummaryDiscussion,
+                AnalysisDetails analysis, String summaryContent) {
+        String summaryNote = NoteMarker.addMarker(analysis.getAnalysisProjectKey(), DECORATOR_SUMMARY_COMMENT, summaryContent);
+        if (isEditSummaryNoteEnabled(analysis) && existingSummaryDiscussion.isPresent()) {
+            editSummaryNote(client, pullRequest, existingSummaryDiscussion.get(), analysis, summaryNote);
         } else {
-            submitSummaryNote(client, pullRequest, analysis, analysisSummary);
+            submitSummaryNote(client, pullRequest, analysis, summaryNote);
         }
     }
 
-    private boolean isSummaryNote(Optional<ProjectIssueIdentifier> projectIssueIdentifier) {
-        return projectIssueIdentifier
-                .map(ProjectIssueIdentifier::isSummary)
-                .orElse(false);
+    /**
+     * Checks whether an existing note already shows the given content, using the hash from the note's marker where it
+     * has one, or otherwise the hash of the note content, so an unchanged note can be kept rather than being re-written.
+     */
+    private static <D, N> boolean isContentUnchanged(DiscussionSnapshot<D, N> discussionSnapshot, DiscussionReconciliationPlan.ExistingDiscussion<D, N> existingDiscussion,
+                                                     String content) {
+        Optional<String> existingContentHash = existingDiscussion.getIdentifier().getContentHash()
+                .or(() -> existingDiscussion.getNotes().stream()
+                        .findFirst()
+                        .map(discussionSnapshot::getNoteContent)
+                        .map(NoteMarker::hash));
+        return existingContentHash.filter(NoteMarker.hash(content)::equals).isPresent();
+    }
+
+    /**
+     * The maximum number of comments, resolutions and deletions that should be sent to the ALM concurrently whilst
+     * decorating this analysis. Implementations must be able to handle their note submission, resolve and delete
+     * methods being called from multiple threads when this returns a value greater than 1.
+     */
+    protected int getSubmissionParallelism(AnalysisDetails analysis) {
+        return 1;
     }
 
     protected abstract C createClient(AlmSettingDto almSettingDto, ProjectAlmSettingDto projectAlmSettingDto);
@@ -158,7 +202,7 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
     protected abstract void submitPipelineStatus(C client, P pullRequest, AnalysisDetails analysis, AnalysisSummary analysisSummary);
 
     protected abstract void submitCommitNoteForIssue(C client, P pullRequest, PostAnalysisIssueVisitor.ComponentIssue issue, String filePath,
-                                                     AnalysisDetails analysis, AnalysisIssueSummary analysisIssueSummary);
+                                                     AnalysisDetails analysis, String issueNote);
 
     protected abstract String getNoteContent(C client, N note);
 
@@ -174,22 +218,14 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
 
     protected abstract void deleteDiscussion(C client, D discussion, P pullRequest, List<N> notesForDiscussion);
 
-    protected abstract void submitSummaryNote(C client, P pullRequest, AnalysisDetails analysis, AnalysisSummary analysisSummary);
+    protected abstract void submitSummaryNote(C client, P pullRequest, AnalysisDetails analysis, String summaryNote);
 
-    protected abstract void editSummaryNote(C client, P pullRequest, D discussion, AnalysisDetails analysis, AnalysisSummary analysisSummary);
+    protected abstract void editSummaryNote(C client, P pullRequest, D discussion, AnalysisDetails analysis, String summaryNote);
 
     protected abstract List<D> getDiscussions(C client, P pullRequest);
 
     protected abstract boolean isNoteFromCurrentUser(N note, U user);
 
-    private static List<PostAnalysisIssueVisitor.ComponentIssue> findIssuesWithoutComments(List<PostAnalysisIssueVisitor.ComponentIssue> openSonarqubeIssues,
-                                                                                           List<String> openGitlabIssueIdentifiers) {
-        return openSonarqubeIssues.stream()
-                .filter(issue -> !openGitlabIssueIdentifiers.contains(issue.getIssue().key()))
-                .filter(issue -> issue.getIssue().getLine() != null)
-                .collect(Collectors.toList());
-    }
-
     private static Optional<Pair<PostAnalysisIssueVisitor.ComponentIssue, String>> loadScmPathsForIssues(PostAnalysisIssueVisitor.ComponentIssue componentIssue) {
         return Optional.of(componentIssue)
                 .map(issue -> new ImmutablePair<>(issue, issue.getScmPath()))
@@ -197,9 +233,10 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
                 .map(pair -> new ImmutablePair<>(pair.getLeft(), pair.getRight().get()));
     }
 
-    private static boolean isIssueFromCommitInCurrentRequest(PostAnalysisIssueVisitor.ComponentIssue componentIssue, List<String> commitIds, ScmInfoRepository scmInfoRepository) {
+    private static boolean isIssueFromCommitInCurrentRequest(PostAnalysisIssueVisitor.ComponentIssue componentIssue, List<String> commitIds,
+                                                             Function<Component, Optional<ScmInfo>> scmInfoLookup) {
         return Optional.of(componentIssue)
-                .map(issue -> new ImmutablePair<>(issue.getIssue(), scmInfoRepository.getScmInfo(issue.getComponent())))
+                .map(issue -> new ImmutablePair<>(issue.getIssue(), scmInfoLookup.apply(issue.getComponent())))
                 .filter(issuePair -> issuePair.getRight().isPresent())
                 .map(issuePair -> new ImmutablePair<>(issuePair.getLeft(), issuePair.getRight().get()))
                 .filter(issuePair -> null != issuePair.getLeft().getLine())
@@ -210,16 +247,13 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
                 .isPresent();
     }
 
-    private List<Triple<D, N, Optional<ProjectIssueIdentifier>>> findSonarqubeComments(C client, P pullRequest,
+    private List<Triple<D, N, Optional<ProjectIssueIdentifier>>> findSonarqubeComments(DiscussionSnapshot<D, N> discussionSnapshot,
                                                                                        U currentUser) {
-        return getDiscussions(client, pullRequest).stream()
-                .map(discussion -> {
-                    List<N> commentsForDiscussion = getNotesForDiscussion(client, discussion);
-                    return commentsForDiscussion.stream()
+        return discussionSnapshot.getDiscussions().stream()
+                .map(discussion -> discussionSnapshot.getNotes(discussion).stream()
                         .findFirst()
                         .filter(note -> isNoteFromCurrentUser(note, currentUser))
-                        .map(note -> new ImmutableTriple<>(discussion, note, parseIssueDetails(client, note)));
-                })
+                        .map(note -> new ImmutableTriple<>(discussion, note, discussionSnapshot.getIssueIdentifier(note))))
                 .filter(Optional::isPresent)
                 .map(Optional::get)
                 .collect(Collectors.toList());
@@ -232,135 +266,69 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
             .isPresent();
     }
 
-    private List<String> closeOldDiscussionsAndExtractRemainingKeys(C client, U currentUser,
-                                                                    List<Triple<D, N, Optional<ProjectIssueIdentifier>>> sonarqubeComments,
-                                                                    List<PostAnalysisIssueVisitor.ComponentIssue> openIssues,
-                                                                    P pullRequest,
-                                                                    boolean skipSummaryNote) {
-        List<String> openIssueKeys = openIssues.stream()
-                .map(issue -> issue.getIssue().key())
-                .collect(Collectors.toList());
-
-        List<String> remainingCommentKeys = new ArrayList<>();
-
+    private List<DiscussionReconciliationPlan.ExistingDiscussion<D, N>> findExistingDiscussions(DiscussionSnapshot<D, N> discussionSnapshot, U currentUser,
+                                                                                              List<Triple<D, N, Optional<ProjectIssueIdentifier>>> sonarqubeComments) {
+        List<DiscussionReconciliationPlan.ExistingDiscussion<D, N>> existingDiscussions = new ArrayList<>(sonarqubeComments.size());
         for (Triple<D, N, Optional<ProjectIssueIdentifier>> sonarqubeComment : sonarqubeComments) {
             Optional<ProjectIssueIdentifier> noteIdentifier = sonarqubeComment.getRight();
-            D discussion = sonarqubeComment.getLeft();
             if (noteIdentifier.isEmpty()) {
                 continue;
             }
 
-            if (skipSummaryNote && isSummaryNote(noteIdentifier)) {
-                continue;
-            }
-
-            if (isResolved(client, discussion, getNotesForDiscussion(client, discussion), currentUser)) {
-                continue;
-            }
-
-            String issueKey = noteIdentifier.get().getIssueKey();
-            if (DECORATOR_SUMMARY_COMMENT.equals(issueKey)) {
-                deleteOrPlaceFinalCommentOnDiscussion(client, currentUser, discussion, pullRequest);
-            } else if (!openIssueKeys.contains(issueKey)) {
-                resolveOrPlaceFinalCommentOnDiscussion(client, currentUser, discussion, pullRequest);
-            } else {
-                remainingCommentKeys.add(issueKey);
-            }
+            D discussion = sonarqubeComment.getLeft();
+            List<N> notesForDiscussion = discussionSnapshot.getNotes(discussion);
+            existingDiscussions.add(new DiscussionReconciliationPlan.ExistingDiscussion<>(discussion,
+                    notesForDiscussion,
+                    noteIdentifier.get(),
+                    isResolved(discussionSnapshot, discussion, notesForDiscussion, currentUser),
+                    hasNotesFromOtherUsers(notesForDiscussion, currentUser)));
         }
+        return existingDiscussions;
+    }
 
-        return remainingCommentKeys;
+    private void executeDiscussionAction(C client, P pullRequest, DiscussionReconciliationPlan.DiscussionAction<D, N> action) {
+        D discussion = action.getExistingDiscussion().getDiscussion();
+        switch (action.getActionType()) {
+            case RESOLVE:
+                resolveDiscussion(client, discussion, pullRequest);
+                break;
+            case DELETE:
+                deleteDiscussion(client, discussion, pullRequest, action.getExistingDiscussion().getNotes());
+                break;
+            case FINAL_COMMENT_ON_ISSUE:
+                addNoteToDiscussion(client, discussion, pullRequest, RESOLVED_ISSUE_NEEDING_CLOSED_MESSAGE);
+                break;
+            case FINAL_COMMENT_ON_SUMMARY:
+                addNoteToDiscussion(client, discussion, pullRequest, RESOLVED_SUMMARY_NEEDING_CLOSED_MESSAGE);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected discussion action: " + action.getActionType());
+        }
     }
 
-    private boolean isResolved(C client, D discussion, List<N> notesInDiscussion, U currentUser) {
+    private boolean isResolved(DiscussionSnapshot<D, N> discussionSnapshot, D discussion, List<N> notesInDiscussion, U currentUser) {
         return isClosed(discussion, notesInDiscussion) || notesInDiscussion.stream()
                 .filter(message -> isNoteFromCurrentUser(message, currentUser))
-                .map(message -> getNoteContent(client, message))
+                .map(discussionSnapshot::getNoteContent)
                 .anyMatch(content -> RESOLVED_ISSUE_NEEDING_CLOSED_MESSAGE.equals(content) || RESOLVED_SUMMARY_NEEDING_CLOSED_MESSAGE.equals(content));
     }
 
-    private void resolveOrPlaceFinalCommentOnDiscussion(C client, U currentUser, D discussion, P pullRequest) {
-        if (getNotesForDiscussion(client, discussion).stream()
+    private boolean hasNotesFromOtherUsers(List<N> notesInDiscussion, U currentUser) {
+        return notesInDiscussion.stream()
                 .filter(this::isUserNote)
-                .anyMatch(note -> !isNoteFromCurrentUser(note, currentUser))) {
-            addNoteToDiscussion(client, discussion, pullRequest, RESOLVED_ISSUE_NEEDING_CLOSED_MESSAGE);
-        } else {
-            resolveDiscussion(client, discussion, pullRequest);
-        }
-
-    }
-
-    private void deleteOrPlaceFinalCommentOnDiscussion(C client, U currentUser, D discussion, P pullRequest) {
-        List<N> notesForDiscussion = getNotesForDiscussion(client, discussion);
-        if (notesForDiscussion.stream()
-            .filter(this::isUserNote)
-            .anyMatch(note -> !isNoteFromCurrentUser(note, currentUser))) {
-            addNoteToDiscussion(client, discussion, pullRequest, RESOLVED_SUMMARY_NEEDING_CLOSED_MESSAGE);
-        } else {
-            deleteDiscussion(client, discussion, pullRequest, notesForDiscussion);
-        }
-
+                .anyMatch(note -> !isNoteFromCurrentUser(note, currentUser));
     }
 
     protected Optional<ProjectIssueIdentifier> parseIssueDetails(C client, N note) {
-        return parseIssueDetails(client, note, VIEW_IN_SONARQUBE_LABEL, NOTE_MARKDOWN_VIEW_LINK_PATTERN);
+        return getNoteIssueLinkParser().parse(getNoteContent(client, note));
     }
 
-    protected Optional<ProjectIssueIdentifier> parseIssueDetails(C client, N note, String label, Pattern pattern) {
-        String noteContent = getNoteContent(client, note);
-        if (noteContent == null) {
-            return Optional.empty();
-        }
-        try (BufferedReader reader = new BufferedReader(new StringReader(noteContent))) {
-            return reader.lines()
-                    .filter(line -> line.contains(label))
-                    .map(line -> parseIssueLineDetails(line, pattern))
-                    .filter(Optional::isPresent)
-                    .map(Optional::get)
-                    .findFirst();
-        } catch (IOException ex) {
-            throw new IllegalStateException("Could not parse details from note", ex);
-        }
-    }
-
-    private static Optional<ProjectIssueIdentifier> parseIssueLineDetails(String noteLine, Pattern pattern) {
-        Matcher identifierMatcher = pattern.matcher(noteLine);
-
-        if (identifierMatcher.matches()) {
-            return parseIssueIdFromUrl(identifierMatcher.group(1));
-        } else {
-            return Optional.empty();
-        }
-    }
-
-    private static Optional<ProjectIssueIdentifier> parseIssueIdFromUrl(String issueUrl) {
-        URI url = URI.create(issueUrl);
-        List<NameValuePair> parameters = URLEncodedUtils.parse(url, StandardCharsets.UTF_8);
-        Optional<String> optionalProjectId = parameters.stream()
-                .filter(parameter -> "id".equals(parameter.getName()))
-                .map(NameValuePair::getValue)
-                .findFirst();
-
-        if (optionalProjectId.isEmpty()) {
-            return Optional.empty();
-        }
-
-        String projectId = optionalProjectId.get();
-
-        if (url.getPath().endsWith("/dashboard")) {
-            return Optional.of(new ProjectIssueIdentifier(projectId, DECORATOR_SUMMARY_COMMENT));
-        } else if (url.getPath().endsWith("security_hotspots")) {
-            return parameters.stream()
-                    .filter(parameter -> "hotspots".equals(parameter.getName()))
-                    .map(NameValuePair::getValue)
-                    .findFirst()
-                    .map(issueId -> new ProjectIssueIdentifier(projectId, issueId));
-        } else {
-            return parameters.stream()
-                    .filter(parameter -> "issues".equals(parameter.getName()))
-                    .map(NameValuePair::getValue)
-                    .findFirst()
-                    .map(issueId -> new ProjectIssueIdentifier(projectId, issueId));
-        }
+    /**
+     * @return the parser for the SonarQube links in notes, which can be overridden where notes created by previous
+     * versions of a decorator used a different label for their link
+     */
+    protected NoteIssueLinkParser getNoteIssueLinkParser() {
+        return NOTE_ISSUE_LINK_PARSER;
     }
 
     private static boolean isCommentFromCurrentProject(Triple<?, ?, Optional<ProjectIssueIdentifier>> comment, String projectId) {
@@ -369,14 +337,18 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
 
     protected static class ProjectIssueIdentifier {
 
-        private static final String SUMMARY_NOTE_ISSUE_KEY = "decorator-summary-comment";
-
         private final String projectKey;
         private final String issueKey;
+        private final String contentHash;
 
-        private ProjectIssueIdentifier(String projectKey, String issueKey) {
+        ProjectIssueIdentifier(String projectKey, String issueKey) {
+            this(projectKey, issueKey, null);
+        }
+
+        ProjectIssueIdentifier(String projectKey, String issueKey, String contentHash) {
             this.projectKey = projectKey;
             this.issueKey = issueKey;
+            this.contentHash = contentHash;
         }
 
         public String getProjectKey() {
@@ -388,7 +360,15 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
         }
 
         public boolean isSummary() {
-            return SUMMARY_NOTE_ISSUE_KEY.equals(issueKey);
+            return NoteMarker.SUMMARY_NOTE_KEY.equals(issueKey);
+        }
+
+        /**
+         * @return the hash of the note content recorded in the note's marker, or empty if the note was identified from
+         * its link to SonarQube
+         */
+        public Optional<String> getContentHash() {
+            return Optional.ofNullable(contentHash);
         }
     }
 }
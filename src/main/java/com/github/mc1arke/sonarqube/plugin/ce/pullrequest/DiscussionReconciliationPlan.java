@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The set of changes required to bring the discussions on a pull request in line with the issues currently open in
+ * SonarQube. The plan is built in a single pass over the existing discussions and open issues, using hashed issue keys
+ * rather than list scans, so the cost grows linearly with the number of discussions and issues rather than with their
+ * product.
+ *
+ * @param <D> the type of discussion used by the ALM
+ * @param <N> the type of note used by the ALM
+ */
+final class DiscussionReconciliationPlan<D, N> {
+
+    private final List<PostAnalysisIssueVisitor.ComponentIssue> issuesToComment;
+    private final Set<String> keptIssueKeys;
+    private final List<DiscussionAction<D, N>> discussionActions;
+
+    private DiscussionReconciliationPlan(List<PostAnalysisIssueVisitor.ComponentIssue> issuesToComment, Set<String> keptIssueKeys,
+                                         List<DiscussionAction<D, N>> discussionActions) {
+        this.issuesToComment = Collections.unmodifiableList(issuesToComment);
+        this.keptIssueKeys = Collections.unmodifiableSet(keptIssueKeys);
+        this.discussionActions = Collections.unmodifiableList(discussionActions);
+    }
+
+    /**
+     * Works out which discussions should be kept, resolved, deleted or have a final comment placed on them, and which
+     * open issues do not yet have a discussion.
+     *
+     * @param existingDiscussions the discussions previously created by the decorator for this project, with any that
+     *                            have been resolved being left as they are
+     * @param openIssues the issues currently open in SonarQube
+     * @param retainedSummaryDiscussion the summary discussion, resolved or not, that will be kept or edited in place,
+     *                                  with any other unresolved summary discussions being removed
+     * @return the plan for reconciling the discussions with the open issues
+     */
+    static <D, N> DiscussionReconciliationPlan<D, N> create(List<ExistingDiscussion<D, N>> existingDiscussions,
+                                                            List<PostAnalysisIssueVisitor.ComponentIssue> openIssues,
+                                                            Optional<D> retainedSummaryDiscussion) {
+        Set<String> openIssueKeys = new HashSet<>(openIssues.size() * 2);
+        for (PostAnalysisIssueVisitor.ComponentIssue openIssue : openIssues) {
+            openIssueKeys.add(openIssue.getIssue().key());
+        }
+
+        Set<String> keptIssueKeys = new HashSet<>(existingDiscussions.size() * 2);
+        List<DiscussionAction<D, N>> discussionActions = new ArrayList<>();
+        for (ExistingDiscussion<D, N> existingDiscussion : existingDiscussions) {
+            DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier identifier = existingDiscussion.getIdentifier();
+            if (existingDiscussion.isResolved() || (identifier.isSummary()
+                    && retainedSummaryDiscussion.filter(existingDiscussion.getDiscussion()::equals).isPresent())) {
+                continue;
+            }
+
+            if (identifier.isSummary()) {
+                discussionActions.add(new DiscussionAction<>(existingDiscussion, existingDiscussion.hasNotesFromOtherUsers() ? ActionType.FINAL_COMMENT_ON_SUMMARY : ActionType.DELETE));
+            } else if (!openIssueKeys.contains(identifier.getIssueKey())) {
+                discussionActions.add(new DiscussionAction<>(existingDiscussion, existingDiscussion.hasNotesFromOtherUsers() ? ActionType.FINAL_COMMENT_ON_ISSUE : ActionType.RESOLVE));
+            } else {
+                keptIssueKeys.add(identifier.getIssueKey());
+            }
+        }
+
+        List<PostAnalysisIssueVisitor.ComponentIssue> issuesToComment = new ArrayList<>();
+        for (PostAnalysisIssueVisitor.ComponentIssue openIssue : openIssues) {
+            if (null != openIssue.getIssue().getLine() && !keptIssueKeys.contains(openIssue.getIssue().key())) {
+                issuesToComment.add(openIssue);
+            }
+        }
+
+        return new DiscussionReconciliationPlan<>(issuesToComment, keptIssueKeys, discussionActions);
+    }
+
+    /**
+     * @return the open issues that have a line number but no existing discussion, in the order SonarQube reported them
+     */
+    List<PostAnalysisIssueVisitor.ComponentIssue> getIssuesToComment() {
+        return issuesToComment;
+    }
+
+    /**
+     * @return the keys of issues that are still open and already have an unresolved discussion
+     */
+    Set<String> getKeptIssueKeys() {
+        return keptIssueKeys;
+    }
+
+    /**
+     * @return the discussions that need to be resolved, deleted, or commented on, in the order they were provided
+     */
+    List<DiscussionAction<D, N>> getDiscussionActions() {
+        return discussionActions;
+    }
+
+    enum ActionType {
+        /** The issue for the discussion has been fixed, and only the decorator has commented on it. */
+        RESOLVE,
+        /** The summary discussion is outdated, and only the decorator has commented on it. */
+        DELETE,
+        /** The issue for the discussion has been fixed, but other users have commented so it needs resolved manually. */
+        FINAL_COMMENT_ON_ISSUE,
+        /** The summary discussion is outdated, but other users have commented so it needs resolved manually. */
+        FINAL_COMMENT_ON_SUMMARY
+    }
+
+    static final class ExistingDiscussion<D, N> {
+
+        private final D discussion;
+        private final List<N> notes;
+        private final DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier identifier;
+        private final boolean resolved;
+        private final boolean notesFromOtherUsers;
+
+        ExistingDiscussion(D discussion, List<N> notes, DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier identifier,
+                           boolean resolved, boolean notesFromOtherUsers) {
+            this.discussion = discussion;
+            this.notes = notes;
+            this.identifier = identifier;
+            this.resolved = resolved;
+            this.notesFromOtherUsers = notesFromOtherUsers;
+        }
+
+        D getDiscussion() {
+            return discussion;
+        }
+
+        List<N> getNotes() {
+            return notes;
+        }
+
+        DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier getIdentifier() {
+            return identifier;
+        }
+
+        boolean isResolved() {
+            return resolved;
+        }
+
+        boolean hasNotesFromOtherUsers() {
+            return notesFromOtherUsers;
+        }
+    }
+
+    static final class DiscussionAction<D, N> {
+
+        private final ExistingDiscussion<D, N> existingDiscussion;
+        private final ActionType actionType;
+
+        private DiscussionAction(ExistingDiscussion<D, N> existingDiscussion, ActionType actionType) {
+            this.existingDiscussion = existingDiscussion;
+            this.actionType = actionType;
+        }
+
+        ExistingDiscussion<D, N> getExistingDiscussion() {
+            return existingDiscussion;
+        }
+
+        ActionType getActionType() {
+            return actionType;
+        }
+    }
+}
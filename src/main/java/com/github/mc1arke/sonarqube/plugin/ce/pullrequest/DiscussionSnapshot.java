@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * The discussions on a pull request, along with their notes, as they were when decoration started. The notes for each
+ * discussion are retrieved exactly once when the snapshot is loaded, and note content and the issue details parsed
+ * from it are retained after first use, so the reconciliation of discussions against issues can inspect them as often
+ * as it needs to without going back to the ALM.
+ *
+ * @param <D> the type of discussion used by the ALM
+ * @param <N> the type of note used by the ALM
+ */
+final class DiscussionSnapshot<D, N> {
+
+    private final List<D> discussions;
+    private final Map<D, List<N>> notesByDiscussion;
+    private final Map<N, Optional<String>> noteContents = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final Map<N, Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier>> issueIdentifiers = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final Function<N, String> noteContentLoader;
+    private final Function<N, Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier>> issueIdentifierParser;
+
+    private DiscussionSnapshot(List<D> discussions, Map<D, List<N>> notesByDiscussion, Function<N, String> noteContentLoader,
+                               Function<N, Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier>> issueIdentifierParser) {
+        this.discussions = Collections.unmodifiableList(discussions);
+        this.notesByDiscussion = notesByDiscussion;
+        this.noteContentLoader = noteContentLoader;
+        this.issueIdentifierParser = issueIdentifierParser;
+    }
+
+    /**
+     * Loads the notes for every discussion on the pull request.
+     *
+     * @param discussions the discussions retrieved from the ALM
+     * @param notesLoader the mechanism for retrieving the notes in a discussion
+     * @param noteContentLoader the mechanism for retrieving the content of a note
+     * @param issueIdentifierParser the mechanism for parsing the SonarQube issue details from a note
+     * @return a snapshot containing each discussion and its notes
+     */
+    static <D, N> DiscussionSnapshot<D, N> load(List<D> discussions, Function<D, List<N>> notesLoader,
+                                                Function<N, String> noteContentLoader,
+                                                Function<N, Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier>> issueIdentifierParser) {
+        Map<D, List<N>> notesByDiscussion = new IdentityHashMap<>(discussions.size());
+        for (D discussion : discussions) {
+            notesByDiscussion.put(discussion, Collections.unmodifiableList(notesLoader.apply(discussion)));
+        }
+        return new DiscussionSnapshot<>(discussions, notesByDiscussion, noteContentLoader, issueIdentifierParser);
+    }
+
+    List<D> getDiscussions() {
+        return discussions;
+    }
+
+    List<N> getNotes(D discussion) {
+        List<N> notes = notesByDiscussion.get(discussion);
+        if (null == notes) {
+            throw new IllegalArgumentException("Discussion is not part of this snapshot");
+        }
+        return notes;
+    }
+
+    String getNoteContent(N note) {
+        return noteContents.computeIfAbsent(note, key -> Optional.ofNullable(noteContentLoader.apply(key))).orElse(null);
+    }
+
+    Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier> getIssueIdentifier(N note) {
+        return issueIdentifiers.computeIfAbsent(note, issueIdentifierParser);
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * Finds the project and issue details in notes created by the decorators. Notes starting with a {@link NoteMarker}
+ * are identified from the marker alone, whilst notes created before markers were added are identified from the link
+ * to SonarQube the decorators add to each note. The note is scanned once, line by line, without splitting it into separate strings or building a
+ * {@link java.net.URI}, and only the parameter values that make up the returned identifier are copied out of it.
+ * <p>
+ * A line is only treated as a link if it consists solely of a Markdown link using one of the labels the parser was
+ * created with, i.e. {@code [label](url)}. Where a note contains links with more than one of the labels, the link
+ * using the earliest label given to the parser is used, so legacy labels can be listed after the current one and
+ * will only be used for notes that don't contain the current link.
+ */
+public final class NoteIssueLinkParser {
+
+    private static final String DASHBOARD_PATH_SUFFIX = "/dashboard";
+    private static final String SECURITY_HOTSPOTS_PATH_SUFFIX = "security_hotspots";
+    private static final String PROJECT_PARAMETER = "id";
+    private static final String ISSUES_PARAMETER = "issues";
+    private static final String HOTSPOTS_PARAMETER = "hotspots";
+
+    private final String[] linkPrefixes;
+
+    public NoteIssueLinkParser(String... labels) {
+        if (labels.length == 0) {
+            throw new IllegalArgumentException("At least one link label must be provided");
+        }
+        this.linkPrefixes = new String[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            this.linkPrefixes[i] = "[" + labels[i] + "](";
+        }
+    }
+
+    /**
+     * Parses the SonarQube project and issue details from the link in a note.
+     *
+     * @param noteContent the content of the note
+     * @return the details from the note's marker, or from the link with the most preferred label where the note
+     * doesn't have a marker, or empty if the note contains neither
+     */
+    public Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier> parse(String noteContent) {
+        if (null == noteContent) {
+            return Optional.empty();
+        }
+
+        if (noteContent.startsWith(NoteMarker.PREFIX)) {
+            Optional<NoteMarker> marker = NoteMarker.read(noteContent);
+            if (marker.isPresent()) {
+                return marker.map(value -> new DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier(value.getProjectKey(),
+                        value.getIssueKey(), value.getContentHash()));
+            }
+        }
+
+        DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier bestMatch = null;
+        int bestMatchLabel = linkPrefixes.length;
+        int length = noteContent.length();
+        int lineStart = 0;
+        while (lineStart <= length) {
+            int lineEnd = findLineEnd(noteContent, lineStart, length);
+            int label = findLinkLabel(noteContent, lineStart, lineEnd, bestMatchLabel);
+            if (label >= 0) {
+                DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier identifier =
+                        parseLink(noteContent, lineStart + linkPrefixes[label].length(), lineEnd - 1);
+                if (null != identifier) {
+                    if (label == 0) {
+                        return Optional.of(identifier);
+                    }
+                    bestMatch = identifier;
+                    bestMatchLabel = label;
+                }
+            }
+            lineStart = skipLineTerminator(noteContent, lineEnd, length);
+        }
+        return Optional.ofNullable(bestMatch);
+    }
+
+    private static int findLineEnd(String content, int lineStart, int length) {
+        for (int i = lineStart; i < length; i++) {
+            char character = content.charAt(i);
+            if (character == '\n' || character == '\r') {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private static int skipLineTerminator(String content, int lineEnd, int length) {
+        if (lineEnd >= length) {
+            return length + 1;
+        }
+        if (content.charAt(lineEnd) == '\r' && lineEnd + 1 < length && content.charAt(lineEnd + 1) == '\n') {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    /**
+     * @return the index of the first label, before {@code labelLimit}, that the line is a link for, or -1 if the line
+     * isn't a link using any of those labels
+     */
+    private int findLinkLabel(String content, int lineStart, int lineEnd, int labelLimit) {
+        if (lineEnd - lineStart < 2 || content.charAt(lineStart) != '[' || content.charAt(lineEnd - 1) != ')') {
+            return -1;
+        }
+        for (int i = 0; i < labelLimit; i++) {
+            String linkPrefix = linkPrefixes[i];
+            if (lineEnd - lineStart > linkPrefix.length() && content.startsWith(linkPrefix, lineStart)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier parseLink(String content, int urlStart, int urlEnd) {
+        int queryStart = -1;
+        int fragmentStart = urlEnd;
+        for (int i = urlStart; i < urlEnd; i++) {
+            char character = content.charAt(i);
+            if (character == '#') {
+                fragmentStart = i;
+                break;
+            } else if (character == '?' && queryStart < 0) {
+                queryStart = i + 1;
+            }
+        }
+        if (queryStart < 0) {
+            return null;
+        }
+
+        String projectKey = findParameter(content, queryStart, fragmentStart, PROJECT_PARAMETER);
+        if (null == projectKey) {
+            return null;
+        }
+
+        int pathStart = findPathStart(content, urlStart, queryStart - 1);
+        int pathEnd = queryStart - 1;
+        if (endsWith(content, pathStart, pathEnd, DASHBOARD_PATH_SUFFIX)) {
+            return new DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier(projectKey, NoteMarker.SUMMARY_NOTE_KEY);
+        }
+
+        String issueParameter = endsWith(content, pathStart, pathEnd, SECURITY_HOTSPOTS_PATH_SUFFIX) ? HOTSPOTS_PARAMETER : ISSUES_PARAMETER;
+        String issueKey = findParameter(content, queryStart, fragmentStart, issueParameter);
+        if (null == issueKey) {
+            return null;
+        }
+        return new DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier(projectKey, issueKey);
+    }
+
+    private static int findPathStart(String content, int urlStart, int urlEnd) {
+        int schemeEnd = content.indexOf("://", urlStart);
+        if (schemeEnd < 0 || schemeEnd >= urlEnd) {
+            return urlStart;
+        }
+        int authorityEnd = content.indexOf('/', schemeEnd + 3);
+        return authorityEnd < 0 || authorityEnd > urlEnd ? urlEnd : authorityEnd;
+    }
+
+    private static boolean endsWith(String content, int start, int end, String suffix) {
+        return end - start >= suffix.length() && content.startsWith(suffix, end - suffix.length());
+    }
+
+    /**
+     * Finds the value of the first parameter in the query with the given name. Parameters can be separated by either
+     * {@code &} or {@code ;}, and values are form-decoded, but only where they contain encoded characters.
+     *
+     * @return the decoded value, or null if the parameter isn't present, has no value, or has a value that can't be decoded
+     */
+    private static String findParameter(String content, int queryStart, int queryEnd, String name) {
+        int parameterStart = queryStart;
+        while (parameterStart < queryEnd) {
+            int parameterEnd = parameterStart;
+            int separator = -1;
+            boolean encoded = false;
+            while (parameterEnd < queryEnd) {
+                char character = content.charAt(parameterEnd);
+                if (character == '&' || character == ';') {
+                    break;
+                } else if (character == '=' && separator < 0) {
+                    separator = parameterEnd;
+                } else if (separator >= 0 && (character == '%' || character == '+')) {
+                    encoded = true;
+                }
+                parameterEnd++;
+            }
+
+            if (separator - parameterStart == name.length() && content.startsWith(name, parameterStart)) {
+                String value = content.substring(separator + 1, parameterEnd);
+                return encoded ? decode(value) : value;
+            }
+            parameterStart = parameterEnd + 1;
+        }
+        return null;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+
+/**
+ * A hidden marker placed on the first line of each note a decorator creates, holding the project and issue the note
+ * was created for, a hash of the content that follows the marker, and the version of the plugin that wrote it. The
+ * marker is a Markdown/HTML comment so isn't shown to users, and notes containing one can be recognised by checking
+ * the start of the note rather than scanning the full content for the link to SonarQube.
+ * <p>
+ * Values are URL encoded so that they can't contain the spaces separating each field, or terminate the comment early.
+ */
+public final class NoteMarker {
+
+    /**
+     * The issue key recorded in the marker of summary notes, which don't relate to a single issue.
+     */
+    public static final String SUMMARY_NOTE_KEY = "decorator-summary-comment";
+
+    static final String PREFIX = "<!-- sonarqube-community-branch-plugin ";
+    private static final String SUFFIX = " -->";
+
+    private static final String PROJECT_FIELD = "project=";
+    private static final String ISSUE_FIELD = "issue=";
+    private static final String HASH_FIELD = "hash=";
+    private static final String VERSION_FIELD = "version=";
+
+    private static final int HASH_BYTES = 8;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String PLUGIN_VERSION = Optional.ofNullable(NoteMarker.class.getPackage())
+            .map(Package::getImplementationVersion)
+            .orElse("unknown");
+
+    private final String projectKey;
+    private final String issueKey;
+    private final String contentHash;
+    private final String pluginVersion;
+
+    private NoteMarker(String projectKey, String issueKey, String contentHash, String pluginVersion) {
+        this.projectKey = projectKey;
+        this.issueKey = issueKey;
+        this.contentHash = contentHash;
+        this.pluginVersion = pluginVersion;
+    }
+
+    public String getProjectKey() {
+        return projectKey;
+    }
+
+    public String getIssueKey() {
+        return issueKey;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String getPluginVersion() {
+        return pluginVersion;
+    }
+
+    /**
+     * Prefixes the content of a note with a marker identifying the project and issue it was created for.
+     *
+     * @param projectKey the key of the SonarQube project the note belongs to
+     * @param issueKey the key of the issue the note is for, or the summary note key
+     * @param noteContent the content that users will see in the note
+     * @return the note content, preceded by a marker line
+     */
+    public static String addMarker(String projectKey, String issueKey, String noteContent) {
+        return PREFIX + PROJECT_FIELD + encode(projectKey)
+                + ' ' + ISSUE_FIELD + encode(issueKey)
+                + ' ' + HASH_FIELD + hash(noteContent)
+                + ' ' + VERSION_FIELD + encode(PLUGIN_VERSION)
+                + SUFFIX + '\n' + noteContent;
+    }
+
+    /**
+     * Reads the marker from the start of a note.
+     *
+     * @param noteContent the full content of the note, as retrieved from the ALM
+     * @return the marker, or empty if the note doesn't start with a valid marker
+     */
+    public static Optional<NoteMarker> read(String noteContent) {
+        if (null == noteContent || !noteContent.startsWith(PREFIX)) {
+            return Optional.empty();
+        }
+        int markerEnd = noteContent.indexOf(SUFFIX, PREFIX.length());
+        int lineEnd = noteContent.indexOf('\n', PREFIX.length());
+        if (markerEnd < 0 || (lineEnd >= 0 && lineEnd < markerEnd)) {
+            return Optional.empty();
+        }
+
+        String projectKey = null;
+        String issueKey = null;
+        String contentHash = null;
+        String pluginVersion = null;
+        int fieldStart = PREFIX.length();
+        while (fieldStart < markerEnd) {
+            int fieldEnd = noteContent.indexOf(' ', fieldStart);
+            if (fieldEnd < 0 || fieldEnd > markerEnd) {
+                fieldEnd = markerEnd;
+            }
+            String field = noteContent.substring(fieldStart, fieldEnd);
+            if (field.startsWith(PROJECT_FIELD)) {
+                projectKey = decode(field.substring(PROJECT_FIELD.length()));
+            } else if (field.startsWith(ISSUE_FIELD)) {
+                issueKey = decode(field.substring(ISSUE_FIELD.length()));
+            } else if (field.startsWith(HASH_FIELD)) {
+                contentHash = field.substring(HASH_FIELD.length());
+            } else if (field.startsWith(VERSION_FIELD)) {
+                pluginVersion = decode(field.substring(VERSION_FIELD.length()));
+            }
+            fieldStart = fieldEnd + 1;
+        }
+
+        if (null == projectKey || null == issueKey || null == contentHash) {
+            return Optional.empty();
+        }
+        return Optional.of(new NoteMarker(projectKey, issueKey, contentHash, pluginVersion));
+    }
+
+    /**
+     * Creates the hash recorded in a marker for the given note content, which can be compared against the hash in an
+     * existing note's marker to check whether its content needs to be updated.
+     */
+    public static String hash(String noteContent) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", ex);
+        }
+        byte[] digest = messageDigest.digest(noteContent.getBytes(StandardCharsets.UTF_8));
+        char[] hash = new char[HASH_BYTES * 2];
+        for (int i = 0; i < HASH_BYTES; i++) {
+            hash[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+            hash[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xF];
+        }
+        return new String(hash);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+}
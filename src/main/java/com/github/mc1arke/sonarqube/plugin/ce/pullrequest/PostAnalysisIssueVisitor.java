@@ -18,12 +18,14 @@
  */
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
 
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.UnaryOperator;
 
 import javax.annotation.CheckForNull;
 
@@ -32,22 +34,68 @@ import org.sonar.api.issue.impact.Severity;
 import org.sonar.api.issue.impact.SoftwareQuality;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rules.RuleType;
+import org.sonar.ce.task.projectanalysis.analysis.AnalysisMetadataHolder;
 import org.sonar.ce.task.projectanalysis.component.Component;
 import org.sonar.ce.task.projectanalysis.issue.IssueVisitor;
 import org.sonar.core.issue.DefaultIssue;
+import org.sonar.db.protobuf.DbCommons;
 import org.sonar.db.protobuf.DbIssues;
 
+/**
+ * Collects the issues a pull request decoration reports on. The visitor sees every issue in the project, and the
+ * collected issues are held until the Compute Engine task finishes, so only open issues on pull request analyses are
+ * retained, and each retained issue only holds the fields the decorators read. Rule keys and impacts repeat across most
+ * issues so a single instance of each distinct value is shared between all the issues that use it. Issues are grouped
+ * into the sets the decorators use as they are collected, which are available from {@link #getCollectedIssues()}.
+ */
 public class PostAnalysisIssueVisitor extends IssueVisitor {
 
-    private final List<ComponentIssue> collectedIssues = new ArrayList<>();
+    private final AnalysisMetadataHolder analysisMetadataHolder;
+    private final CollectedIssues.Builder collectedIssues = new CollectedIssues.Builder();
+    private final Map<RuleKey, RuleKey> ruleKeys = new HashMap<>();
+    private final Map<Map<SoftwareQuality, Severity>, Map<SoftwareQuality, Severity>> impacts = new HashMap<>();
+
+    public PostAnalysisIssueVisitor(AnalysisMetadataHolder analysisMetadataHolder) {
+        this.analysisMetadataHolder = analysisMetadataHolder;
+    }
 
     @Override
     public void onIssue(Component component, DefaultIssue defaultIssue) {
-        collectedIssues.add(new ComponentIssue(component, new LightIssue(defaultIssue)));
+        if (!analysisMetadataHolder.isPullRequest()) {
+            return;
+        }
+        IssueStatus issueStatus = defaultIssue.issueStatus();
+        if (issueStatus != IssueStatus.OPEN) {
+            return;
+        }
+        collectedIssues.add(new ComponentIssue(component, new LightIssue(defaultIssue, issueStatus, this::internRuleKey, this::internImpacts)));
     }
 
     public List<ComponentIssue> getIssues() {
-        return Collections.unmodifiableList(collectedIssues);
+        return collectedIssues.getIssues();
+    }
+
+    public CollectedIssues getCollectedIssues() {
+        return collectedIssues.build();
+    }
+
+    private RuleKey internRuleKey(RuleKey ruleKey) {
+        return null == ruleKey ? null : ruleKeys.computeIfAbsent(ruleKey, k -> k);
+    }
+
+    private Map<SoftwareQuality, Severity> internImpacts(Map<SoftwareQuality, Severity> issueImpacts) {
+        if (null == issueImpacts) {
+            return null;
+        }
+        Map<SoftwareQuality, Severity> interned = impacts.get(issueImpacts);
+        if (null == interned) {
+            // the issue's map may be modified after it's visited so a copy is retained rather than the original
+            Map<SoftwareQuality, Severity> copy = new EnumMap<>(SoftwareQuality.class);
+            copy.putAll(issueImpacts);
+            interned = Collections.unmodifiableMap(copy);
+            impacts.put(interned, interned);
+        }
+        return interned;
     }
 
     public static class ComponentIssue {
@@ -79,26 +127,36 @@ public class PostAnalysisIssueVisitor extends IssueVisitor {
 
     public static class LightIssue {
 
+        private static final int NO_LINE = 0;
+
         private final String key;
-        private final Integer line;
+        private final int line;
         private final String message;
         private final String resolution;
         private final IssueStatus status;
         private final Map<SoftwareQuality, Severity> impacts;
-        private final DbIssues.Locations locations;
+        private final DbCommons.TextRange textRange;
         private final RuleKey ruleKey;
         private final RuleType type;
 
         LightIssue(DefaultIssue issue) {
+            this(issue, issue.issueStatus(), ruleKey -> ruleKey, impacts -> impacts);
+        }
+
+        private LightIssue(DefaultIssue issue, IssueStatus status, UnaryOperator<RuleKey> ruleKeyInterner,
+                           UnaryOperator<Map<SoftwareQuality, Severity>> impactsInterner) {
             this.key = issue.key();
-            this.line = issue.getLine();
+            Integer issueLine = issue.getLine();
+            this.line = null == issueLine ? NO_LINE : issueLine;
             this.message = issue.getMessage();
 
             this.resolution = issue.resolution();
-            this.status = issue.issueStatus();
-            this.impacts = issue.impacts();
-            this.locations = issue.getLocations();
-            this.ruleKey = issue.getRuleKey();
+            this.status = status;
+            this.impacts = impactsInterner.apply(issue.impacts());
+            // only the primary location is reported on, so secondary locations and flows aren't retained
+            DbIssues.Locations locations = issue.getLocations();
+            this.textRange = null == locations ? null : locations.getTextRange();
+            this.ruleKey = ruleKeyInterner.apply(issue.getRuleKey());
 
             this.type = issue.type();
         }
@@ -109,7 +167,7 @@ public class PostAnalysisIssueVisitor extends IssueVisitor {
 
         @CheckForNull
         public Integer getLine() {
-            return line;
+            return line == NO_LINE ? null : line;
         }
 
         @CheckForNull
@@ -130,8 +188,9 @@ public class PostAnalysisIssueVisitor extends IssueVisitor {
             return impacts;
         }
 
-        public DbIssues.Locations getLocations() {
-            return locations;
+        @CheckForNull
+        public DbCommons.TextRange getTextRange() {
+            return textRange;
         }
 
         public RuleKey getRuleKey() {
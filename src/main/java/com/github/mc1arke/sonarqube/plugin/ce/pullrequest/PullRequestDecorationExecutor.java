@@ -0,0 +1,439 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs pull request decorations for the Compute Engine. By default each decoration is run on the thread that completed
+ * the analysis, but when asynchronous decoration is enabled the decoration is handed to a dedicated pool so the
+ * Compute Engine worker can move onto its next task without waiting for the ALM to respond. Failed asynchronous
+ * decorations are retried with an increasing delay, and if the number of outstanding decorations reaches the queue
+ * capacity then new decorations are run on the submitting thread, which slows the Compute Engine down to a rate the ALM
+ * can keep up with.
+ * <p>
+ * Asynchronous decorations are coalesced for each pull request: only one decoration of a pull request runs at a time,
+ * and at most one more waits behind it. If another analysis of the same pull request is submitted whilst a decoration
+ * is waiting, or a failed decoration is waiting to be retried, the older decoration is skipped since only the results
+ * of the newest commit will be shown on the pull request.
+ * <p>
+ * Decorations deferred by the {@link AlmHostBulkheads} because their ALM is saturated or unhealthy are retried no sooner
+ * than the ALM is expected to accept them again. Deferred decorations run on the analysis thread are skipped, leaving
+ * the next analysis of the pull request to decorate it.
+ */
+@ComputeEngineSide
+public class PullRequestDecorationExecutor implements Startable {
+
+    public static final String ASYNCHRONOUS = "com.github.mc1arke.sonarqube.plugin.branch.pullrequest.decoration.async.enabled";
+    public static final String THREADS = "com.github.mc1arke.sonarqube.plugin.branch.pullrequest.decoration.async.threads";
+    public static final String QUEUE_CAPACITY = "com.github.mc1arke.sonarqube.plugin.branch.pullrequest.decoration.async.queueCapacity";
+    public static final String MAX_ATTEMPTS = "com.github.mc1arke.sonarqube.plugin.branch.pullrequest.decoration.async.maxAttempts";
+
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_QUEUE_CAPACITY = 100;
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PullRequestDecorationExecutor.class);
+
+    private final boolean asynchronous;
+    private final int queueCapacity;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+    private final Clock clock;
+    private final ScheduledExecutorService executorService;
+
+    private final AtomicInteger outstandingJobs = new AtomicInteger();
+    private final AtomicInteger runningJobs = new AtomicInteger();
+    private final LongAdder completedJobs = new LongAdder();
+    private final LongAdder failedJobs = new LongAdder();
+    private final LongAdder retriedJobs = new LongAdder();
+    private final LongAdder rejectedJobs = new LongAdder();
+    private final LongAdder supersededJobs = new LongAdder();
+    private final LongAdder deferredJobs = new LongAdder();
+    private final LongAdder totalLatency = new LongAdder();
+    private final AtomicLong maxLatency = new AtomicLong();
+    // pull requests with a decoration scheduled or running, guarded by synchronizing on the map
+    private final Map<PullRequestKey, PullRequestDecorations> activePullRequests = new HashMap<>();
+
+    @Autowired
+    public PullRequestDecorationExecutor(Configuration configuration) {
+        this(configuration.getBoolean(ASYNCHRONOUS).orElse(false),
+                configuration.getInt(THREADS).orElse(DEFAULT_THREADS),
+                configuration.getInt(QUEUE_CAPACITY).orElse(DEFAULT_QUEUE_CAPACITY),
+                configuration.getInt(MAX_ATTEMPTS).orElse(DEFAULT_MAX_ATTEMPTS));
+    }
+
+    private PullRequestDecorationExecutor(boolean asynchronous, int threads, int queueCapacity, int maxAttempts) {
+        this(asynchronous, queueCapacity, maxAttempts, RETRY_DELAY, Clock.systemUTC(), createExecutorService(threads));
+    }
+
+    PullRequestDecorationExecutor(boolean asynchronous, int queueCapacity, int maxAttempts, Duration retryDelay, Clock clock,
+                                  ScheduledExecutorService executorService) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException(QUEUE_CAPACITY + " must be greater than 0");
+        }
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException(MAX_ATTEMPTS + " must be greater than 0");
+        }
+        this.asynchronous = asynchronous;
+        this.queueCapacity = queueCapacity;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.clock = clock;
+        this.executorService = executorService;
+    }
+
+    /**
+     * @return whether decorations are performed after {@link #execute(DecorationJob)} returns, in which case anything
+     * the decoration reads from the Compute Engine task must have been loaded before the job is submitted
+     */
+    boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    void execute(DecorationJob job) {
+        if (!asynchronous) {
+            runOnCallingThread(job);
+            return;
+        }
+
+        PullRequestKey pullRequestKey = new PullRequestKey(job.getAnalysisDetails());
+        PendingDecoration decoration = new PendingDecoration(job, clock.instant());
+        synchronized (activePullRequests) {
+            PullRequestDecorations pullRequestDecorations = activePullRequests.get(pullRequestKey);
+            if (null != pullRequestDecorations) {
+                // the pull request's next decoration is picked up once its current one finishes, so only replaces
+                // any decoration already waiting rather than adding to the queue
+                outstandingJobs.incrementAndGet();
+                LOGGER.debug("Queueing decoration of {} behind an earlier decoration of the same pull request", job);
+                pullRequestDecorations.replaceWaiting(decoration).ifPresent(this::supersede);
+                return;
+            }
+
+            if (outstandingJobs.get() < queueCapacity) {
+                outstandingJobs.incrementAndGet();
+                activePullRequests.put(pullRequestKey, new PullRequestDecorations());
+                LOGGER.debug("Queueing decoration of {}", job);
+                schedule(pullRequestKey, decoration, 1, Duration.ZERO);
+                return;
+            }
+        }
+
+        rejectedJobs.increment();
+        LOGGER.warn("Decoration queue is full with {} outstanding decorations. Decorating {} on the analysis thread", queueCapacity, job);
+        runOnCallingThread(job);
+    }
+
+    public int getQueueDepth() {
+        return Math.max(0, outstandingJobs.get() - runningJobs.get());
+    }
+
+    public int getRunningCount() {
+        return runningJobs.get();
+    }
+
+    public long getCompletedCount() {
+        return completedJobs.sum();
+    }
+
+    public long getFailedCount() {
+        return failedJobs.sum();
+    }
+
+    public long getRetryCount() {
+        return retriedJobs.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedJobs.sum();
+    }
+
+    public long getSupersededCount() {
+        return supersededJobs.sum();
+    }
+
+    public long getDeferredCount() {
+        return deferredJobs.sum();
+    }
+
+    public long getAverageLatencyMillis() {
+        long finishedJobs = completedJobs.sum() + failedJobs.sum();
+        return finishedJobs == 0 ? 0 : totalLatency.sum() / finishedJobs;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatency.get();
+    }
+
+    @Override
+    public void start() {
+        // threads are started as decorations are submitted
+    }
+
+    @Override
+    public void stop() {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("{} pull request decorations were still outstanding at shutdown and have been abandoned", outstandingJobs.get());
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void schedule(PullRequestKey pullRequestKey, PendingDecoration decoration, int attempt, Duration delay) {
+        try {
+            executorService.schedule(() -> attempt(pullRequestKey, decoration, attempt), delay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            LOGGER.warn("Could not queue decoration of {}", decoration.getJob(), ex);
+            finish(decoration.getSubmissionTime(), false);
+            startNext(pullRequestKey);
+        }
+    }
+
+    private void attempt(PullRequestKey pullRequestKey, PendingDecoration decoration, int attempt) {
+        if (attempt > 1 && hasWaitingDecoration(pullRequestKey)) {
+            supersede(decoration);
+            startNext(pullRequestKey);
+            return;
+        }
+
+        boolean retrying = false;
+        runningJobs.incrementAndGet();
+        try {
+            decoration.getJob().run();
+            finish(decoration.getSubmissionTime(), true);
+        } catch (DecorationDeferredException ex) {
+            deferredJobs.increment();
+            if (attempt < maxAttempts && !hasWaitingDecoration(pullRequestKey)) {
+                Duration retryAfter = ex.getRetryAfter();
+                Duration nextDelay = retryDelay.multipliedBy(attempt);
+                if (retryAfter.compareTo(nextDelay) > 0) {
+                    nextDelay = retryAfter;
+                }
+                retriedJobs.increment();
+                LOGGER.atInfo().setMessage("Decoration of {} has been deferred on attempt {} of {}: {}. Retrying in {} seconds")
+                        .addArgument(decoration::getJob)
+                        .addArgument(attempt)
+                        .addArgument(maxAttempts)
+                        .addArgument(ex::getMessage)
+                        .addArgument(nextDelay::toSeconds)
+                        .log();
+                schedule(pullRequestKey, decoration, attempt + 1, nextDelay);
+                retrying = true;
+            } else {
+                LOGGER.warn("Decoration of {} has been abandoned after being deferred on attempt {}: {}", decoration.getJob(), attempt, ex.getMessage());
+                finish(decoration.getSubmissionTime(), false);
+            }
+        } catch (RuntimeException ex) {
+            if (attempt < maxAttempts && !hasWaitingDecoration(pullRequestKey)) {
+                Duration nextDelay = retryDelay.multipliedBy(attempt);
+                retriedJobs.increment();
+                LOGGER.atWarn().setMessage("Decoration of {} failed on attempt {} of {}. Retrying in {} seconds")
+                        .addArgument(decoration::getJob)
+                        .addArgument(attempt)
+                        .addArgument(maxAttempts)
+                        .addArgument(nextDelay::toSeconds)
+                        .setCause(ex)
+                        .log();
+                schedule(pullRequestKey, decoration, attempt + 1, nextDelay);
+                retrying = true;
+            } else {
+                LOGGER.error("Decoration of {} failed after {} attempts", decoration.getJob(), attempt, ex);
+                finish(decoration.getSubmissionTime(), false);
+            }
+        } finally {
+            runningJobs.decrementAndGet();
+        }
+
+        if (!retrying) {
+            startNext(pullRequestKey);
+        }
+    }
+
+    private void runOnCallingThread(DecorationJob job) {
+        try {
+            job.run();
+        } catch (DecorationDeferredException ex) {
+            deferredJobs.increment();
+            LOGGER.warn("Skipping decoration of {}: {}", job, ex.getMessage());
+        }
+    }
+
+    private boolean hasWaitingDecoration(PullRequestKey pullRequestKey) {
+        synchronized (activePullRequests) {
+            PullRequestDecorations pullRequestDecorations = activePullRequests.get(pullRequestKey);
+            return null != pullRequestDecorations && pullRequestDecorations.hasWaiting();
+        }
+    }
+
+    private void startNext(PullRequestKey pullRequestKey) {
+        synchronized (activePullRequests) {
+            PullRequestDecorations pullRequestDecorations = activePullRequests.get(pullRequestKey);
+            if (null == pullRequestDecorations) {
+                return;
+            }
+            PendingDecoration next = pullRequestDecorations.takeWaiting();
+            if (null == next) {
+                activePullRequests.remove(pullRequestKey);
+            } else {
+                schedule(pullRequestKey, next, 1, Duration.ZERO);
+            }
+        }
+    }
+
+    private void supersede(PendingDecoration decoration) {
+        outstandingJobs.decrementAndGet();
+        supersededJobs.increment();
+        LOGGER.debug("Skipping decoration of {} since a newer analysis of the same pull request is waiting to be decorated", decoration.getJob());
+    }
+
+    private void finish(Instant submissionTime, boolean successful) {
+        outstandingJobs.decrementAndGet();
+        if (successful) {
+            completedJobs.increment();
+        } else {
+            failedJobs.increment();
+        }
+        long latency = Math.max(0, Duration.between(submissionTime, clock.instant()).toMillis());
+        totalLatency.add(latency);
+        maxLatency.accumulateAndGet(latency, Math::max);
+
+        LOGGER.atDebug().setMessage("Pull request decoration statistics - queued: {}, running: {}, completed: {}, failed: {}, retried: {}, superseded: {}, deferred: {}, run on analysis thread: {}, average latency: {}ms, max latency: {}ms")
+                .addArgument(this::getQueueDepth)
+                .addArgument(runningJobs::get)
+                .addArgument(completedJobs::sum)
+                .addArgument(failedJobs::sum)
+                .addArgument(retriedJobs::sum)
+                .addArgument(supersededJobs::sum)
+                .addArgument(deferredJobs::sum)
+                .addArgument(rejectedJobs::sum)
+                .addArgument(this::getAverageLatencyMillis)
+                .addArgument(maxLatency::get)
+                .log();
+    }
+
+    private static ScheduledExecutorService createExecutorService(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(THREADS + " must be greater than 0");
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ScheduledThreadPoolExecutor executorService = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "pull-request-decoration-async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // pending retries are abandoned on shutdown rather than holding up the Compute Engine stopping
+        executorService.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return executorService;
+    }
+
+    private static final class PullRequestKey {
+
+        private final String projectKey;
+        private final String pullRequestId;
+
+        private PullRequestKey(AnalysisDetails analysisDetails) {
+            this.projectKey = analysisDetails.getAnalysisProjectKey();
+            this.pullRequestId = analysisDetails.getPullRequestId();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            PullRequestKey that = (PullRequestKey) o;
+            return Objects.equals(projectKey, that.projectKey) && Objects.equals(pullRequestId, that.pullRequestId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(projectKey, pullRequestId);
+        }
+    }
+
+    private static final class PendingDecoration {
+
+        private final DecorationJob job;
+        private final Instant submissionTime;
+
+        private PendingDecoration(DecorationJob job, Instant submissionTime) {
+            this.job = job;
+            this.submissionTime = submissionTime;
+        }
+
+        DecorationJob getJob() {
+            return job;
+        }
+
+        Instant getSubmissionTime() {
+            return submissionTime;
+        }
+    }
+
+    private static final class PullRequestDecorations {
+
+        private PendingDecoration waiting;
+
+        Optional<PendingDecoration> replaceWaiting(PendingDecoration decoration) {
+            PendingDecoration replaced = waiting;
+            waiting = decoration;
+            return Optional.ofNullable(replaced);
+        }
+
+        boolean hasWaiting() {
+            return null != waiting;
+        }
+
+        PendingDecoration takeWaiting() {
+            PendingDecoration next = waiting;
+            waiting = null;
+            return next;
+        }
+    }
+}
@@ -22,12 +22,16 @@ import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.filter.IssueFilterRunn
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.filter.IssueFilterRunner.NoFilterIssueFilterRunner;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.filter.SeverityExclusionFilter;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.filter.TypeExclusionFilter;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.ce.posttask.Analysis;
 import org.sonar.api.ce.posttask.Branch;
 import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
 import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.ce.task.projectanalysis.component.Component;
+import org.sonar.ce.task.projectanalysis.scm.ScmInfo;
+import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.alm.setting.ALM;
@@ -38,7 +42,9 @@ import org.sonar.db.component.BranchDto;
 import org.sonar.db.protobuf.DbProjectBranches;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Predicate;
 
@@ -53,13 +59,23 @@ public class PullRequestPostAnalysisTask implements PostProjectAnalysisTask {
     private final List<PullRequestBuildStatusDecorator> pullRequestDecorators;
     private final PostAnalysisIssueVisitor postAnalysisIssueVisitor;
     private final DbClient dbClient;
+    private final PullRequestDecorationExecutor decorationExecutor;
+    private final ScmInfoRepository scmInfoRepository;
+    private final ReportGenerator reportGenerator;
+    private final AlmHostBulkheads almHostBulkheads;
 
     public PullRequestPostAnalysisTask(List<PullRequestBuildStatusDecorator> pullRequestDecorators,
-                                       PostAnalysisIssueVisitor postAnalysisIssueVisitor, DbClient dbClient) {
+                                       PostAnalysisIssueVisitor postAnalysisIssueVisitor, DbClient dbClient,
+                                       PullRequestDecorationExecutor decorationExecutor, ScmInfoRepository scmInfoRepository,
+                                       ReportGenerator reportGenerator, AlmHostBulkheads almHostBulkheads) {
         super();
         this.pullRequestDecorators = pullRequestDecorators;
         this.postAnalysisIssueVisitor = postAnalysisIssueVisitor;
         this.dbClient = dbClient;
+        this.decorationExecutor = decorationExecutor;
+        this.scmInfoRepository = scmInfoRepository;
+        this.reportGenerator = reportGenerator;
+        this.almHostBulkheads = almHostBulkheads;
     }
 
     @Override
@@ -139,18 +155,35 @@ public class PullRequestPostAnalysisTask implements PostProjectAnalysisTask {
 
         String commitId = revision.get();
 
-        AnalysisDetails analysisDetails =
+        AnalysisDetails taskAnalysisDetails =
                 new AnalysisDetails(optionalPullRequestId.get(), commitId,
-                                    postAnalysisIssueVisitor.getIssues(), qualityGate, projectAnalysis);
+                                    postAnalysisIssueVisitor.getCollectedIssues(), qualityGate, projectAnalysis);
+        AnalysisDetails analysisDetails = decorationExecutor.isAsynchronous()
+                ? taskAnalysisDetails.withDecorationReport(createDecorationReport(taskAnalysisDetails))
+                : taskAnalysisDetails;
 
         PullRequestBuildStatusDecorator pullRequestDecorator = optionalPullRequestDecorator.get();
 
         LOGGER.info("Using pull request decorator {}", pullRequestDecorator.getClass().getName());
-        DecorationResult decorationResult =
-                pullRequestDecorator.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto,
-                        getIssueFilterList(analysisDetails).orElse(new NoFilterIssueFilterRunner()));
+        DecorationJob decorationJob = new DecorationJob(pullRequestDecorator, analysisDetails, almSettingDto, projectAlmSettingDto,
+                getIssueFilterList(analysisDetails).orElse(new NoFilterIssueFilterRunner()),
+                decorationResult -> decorationResult.getPullRequestUrl().ifPresent(pullRequestUrl -> persistPullRequestUrl(pullRequestUrl, projectAnalysis, optionalPullRequestId.get())),
+                almHostBulkheads);
 
-        decorationResult.getPullRequestUrl().ifPresent(pullRequestUrl -> persistPullRequestUrl(pullRequestUrl, projectAnalysis, optionalPullRequestId.get()));
+        decorationExecutor.execute(decorationJob);
+    }
+
+    /**
+     * The measure and SCM repositories belong to the Compute Engine task and read from the scanner report, both of
+     * which are discarded once the task completes, so anything the decorators need from them has to be read before a
+     * decoration is handed off to be run after the task finishes.
+     */
+    private DecorationReport createDecorationReport(AnalysisDetails analysisDetails) {
+        Map<Component, ScmInfo> scmInfo = new HashMap<>();
+        for (Component component : analysisDetails.getScmReportableIssuesByComponent().keySet()) {
+            scmInfoRepository.getScmInfo(component).ifPresent(componentScmInfo -> scmInfo.put(component, componentScmInfo));
+        }
+        return new DecorationReport(reportGenerator.createAnalysisSummary(analysisDetails), scmInfo);
     }
 
     private Optional<IssueFilterRunner> getIssueFilterList(AnalysisDetails analysisDetails) {
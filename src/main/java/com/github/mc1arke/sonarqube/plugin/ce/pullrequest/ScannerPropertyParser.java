@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+
+/**
+ * Reads numeric settings the scanner forwarded for decoration, falling back to a default with a warning when a value
+ * can't be used rather than failing the whole decoration over a mistyped setting.
+ */
+public final class ScannerPropertyParser {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScannerPropertyParser.class);
+
+    private ScannerPropertyParser() {
+        super();
+    }
+
+    /**
+     * Reads the given scanner property as an integer.
+     *
+     * @param analysisDetails the analysis the property was forwarded with
+     * @param propertyName the name of the property
+     * @param defaultValue the value to use if the property is not set, is not an integer or is below the minimum
+     * @param minimumValue the lowest value that is accepted
+     * @return the configured value, or the default value if no usable value is configured
+     */
+    public static int getInt(AnalysisDetails analysisDetails, String propertyName, int defaultValue, int minimumValue) {
+        Optional<String> configuredValue = analysisDetails.getScannerProperty(propertyName).map(String::trim);
+        if (configuredValue.isEmpty()) {
+            return defaultValue;
+        }
+
+        int value;
+        try {
+            value = Integer.parseInt(configuredValue.get());
+        } catch (NumberFormatException ex) {
+            LOGGER.atWarn().setMessage("Value '{}' for {} is not an integer. Using default value of {}")
+                    .addArgument(configuredValue::get)
+                    .addArgument(propertyName)
+                    .addArgument(defaultValue)
+                    .log();
+            return defaultValue;
+        }
+
+        if (value < minimumValue) {
+            LOGGER.atWarn().setMessage("Value {} for {} must be at least {}. Using default value of {}")
+                    .addArgument(value)
+                    .addArgument(propertyName)
+                    .addArgument(minimumValue)
+                    .addArgument(defaultValue)
+                    .log();
+            return defaultValue;
+        }
+        return value;
+    }
+}
@@ -24,7 +24,6 @@ import java.net.URISyntaxException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang.StringUtils;
@@ -35,8 +34,9 @@ import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
 import org.sonar.db.alm.setting.ALM;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
-import org.sonar.db.protobuf.DbIssues;
+import org.sonar.db.protobuf.DbCommons;
 
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.AzureDevopsClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.AzureDevopsClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Comment;
@@ -53,27 +53,28 @@ import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.enums.Com
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.enums.CommentType;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.mappers.GitStatusStateMapper;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.BoundedSubmissionExecutor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DiscussionAwarePullRequestDecorator;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.NoteIssueLinkParser;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.ScannerPropertyParser;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PullRequestBuildStatusDecorator;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.MarkdownFormatterFactory;
-import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSummary;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisSummary;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator;
 
 public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestDecorator<AzureDevopsClient, PullRequest, String, CommentThread, Comment> implements PullRequestBuildStatusDecorator {
 
     private static final Logger logger = LoggerFactory.getLogger(AzureDevOpsPullRequestDecorator.class);
-    private static final Pattern NOTE_MARKDOWN_LEGACY_SEE_LINK_PATTERN = Pattern.compile("^\\[See in SonarQube]\\((.*?)\\)$");
+    private static final NoteIssueLinkParser NOTE_ISSUE_LINK_PARSER = new NoteIssueLinkParser(VIEW_IN_SONARQUBE_LABEL, "See in SonarQube");
     private final AzureDevopsClientFactory azureDevopsClientFactory;
-    private final MarkdownFormatterFactory markdownFormatterFactory;
 
     public AzureDevOpsPullRequestDecorator(ScmInfoRepository scmInfoRepository,
                                            AzureDevopsClientFactory azureDevopsClientFactory,
-                                           ReportGenerator reportGenerator, MarkdownFormatterFactory markdownFormatterFactory) {
-        super(scmInfoRepository, reportGenerator);
+                                           ReportGenerator reportGenerator, MarkdownFormatterFactory markdownFormatterFactory,
+                                           BoundedSubmissionExecutor submissionExecutor) {
+        super(scmInfoRepository, reportGenerator, markdownFormatterFactory, submissionExecutor);
         this.azureDevopsClientFactory = azureDevopsClientFactory;
-        this.markdownFormatterFactory = markdownFormatterFactory;
     }
 
     @Override
@@ -81,6 +82,11 @@ public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestD
         return Collections.singletonList(ALM.AZURE_DEVOPS);
     }
 
+    @Override
+    protected int getSubmissionParallelism(AnalysisDetails analysis) {
+        return ScannerPropertyParser.getInt(analysis, CommunityBranchPlugin.PR_AZUREDEVOPS_SUBMISSION_PARALLELISM, DEFAULT_SUBMISSION_PARALLELISM, 1);
+    }
+
     @Override
     protected AzureDevopsClient createClient(AlmSettingDto almSettingDto, ProjectAlmSettingDto projectAlmSettingDto) {
         return azureDevopsClientFactory.createClient(projectAlmSettingDto, almSettingDto);
@@ -155,18 +161,18 @@ public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestD
 
     @Override
     protected void submitCommitNoteForIssue(AzureDevopsClient client, PullRequest pullRequest, PostAnalysisIssueVisitor.ComponentIssue issue, String filePath,
-                                            AnalysisDetails analysis, AnalysisIssueSummary analysisIssueSummary) {
-        DbIssues.Locations location = issue.getIssue().getLocations();
+                                            AnalysisDetails analysis, String issueNote) {
+        DbCommons.TextRange textRange = issue.getIssue().getTextRange();
 
         try {
-            CreateCommentRequest comment = new CreateCommentRequest(analysisIssueSummary.format(markdownFormatterFactory));
+            CreateCommentRequest comment = new CreateCommentRequest(issueNote);
             CommentPosition fileStart = new CommentPosition(
-                    location.getTextRange().getEndLine(),
-                    location.getTextRange().getEndOffset() + 1
+                    textRange.getEndLine(),
+                    textRange.getEndOffset() + 1
             );
             CommentPosition fileEnd = new CommentPosition(
-                    location.getTextRange().getStartLine(),
-                    location.getTextRange().getStartOffset() + 1
+                    textRange.getStartLine(),
+                    textRange.getStartOffset() + 1
             );
             String file = filePath.startsWith("/") ? filePath : "/" + filePath;
             CommentThreadContext commentThreadContext = new CommentThreadContext(file, fileStart, fileEnd);
@@ -179,9 +185,9 @@ public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestD
 
 
     @Override
-    protected void submitSummaryNote(AzureDevopsClient client, PullRequest pullRequest, AnalysisDetails analysis, AnalysisSummary analysisSummary) {
+    protected void submitSummaryNote(AzureDevopsClient client, PullRequest pullRequest, AnalysisDetails analysis, String summaryNote) {
         try {
-            CreateCommentRequest comment = new CreateCommentRequest(analysisSummary.format(markdownFormatterFactory));
+            CreateCommentRequest comment = new CreateCommentRequest(summaryNote);
             CreateCommentThreadRequest commentThread = new CreateCommentThreadRequest(null, Collections.singletonList(comment), CommentThreadStatus.ACTIVE);
             CommentThread summaryComment = client.createThread(pullRequest.getRepository().getProject().getName(), pullRequest.getRepository().getName(), pullRequest.getId(), commentThread);
             if (analysis.getQualityGateStatus() == QualityGate.Status.OK) {
@@ -193,7 +199,7 @@ public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestD
     }
 
     @Override
-    protected void editSummaryNote(AzureDevopsClient client, PullRequest pullRequest, CommentThread discussion, AnalysisDetails analysis, AnalysisSummary analysisSummary) {
+    protected void editSummaryNote(AzureDevopsClient client, PullRequest pullRequest, CommentThread discussion, AnalysisDetails analysis, String summaryNote) {
         // not implemented
     }
 
@@ -260,12 +266,8 @@ public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestD
     }
 
     @Override
-    protected Optional<ProjectIssueIdentifier> parseIssueDetails(AzureDevopsClient client, Comment note) {
-        Optional<ProjectIssueIdentifier> issueIdentifier = super.parseIssueDetails(client, note);
-        if (issueIdentifier.isPresent()) {
-            return issueIdentifier;
-        }
-        return parseIssueDetails(client, note, "See in SonarQube", NOTE_MARKDOWN_LEGACY_SEE_LINK_PATTERN);
+    protected NoteIssueLinkParser getNoteIssueLinkParser() {
+        return NOTE_ISSUE_LINK_PARSER;
     }
 
 }
@@ -22,7 +22,9 @@ import static java.lang.String.format;
 import static java.util.stream.Collectors.toSet;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -32,7 +34,6 @@ import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
-import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.filter.IssueFilterRunner;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.filter.IssueFilterRunner.NoFilterIssueFilterRunner;
 import org.slf4j.Logger;
@@ -44,8 +45,12 @@ import org.sonar.db.alm.setting.ALM;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketClientFactory;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketCloudException;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketException;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.AnnotationUploadLimit;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.BuildStatus;
@@ -55,8 +60,12 @@ import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.DataValue;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.ReportData;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.ReportStatus;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.BoundedSubmissionExecutor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationReport;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationResult;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PullRequestBuildStatusDecorator;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.ScannerPropertyParser;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSummary;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisSummary;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator;
@@ -68,13 +77,27 @@ public class BitbucketPullRequestDecorator implements PullRequestBuildStatusDeco
 
     private static final DecorationResult DEFAULT_DECORATION_RESULT = DecorationResult.builder().build();
     private static final String REPORT_KEY = "com.sonarsource.sonarqube";
+    private static final int DEFAULT_SUBMISSION_PARALLELISM = 4;
+    private static final int MAX_UPLOAD_ATTEMPTS = 3;
+    private static final Duration DEFAULT_RETRY_BACKOFF = Duration.ofMillis(500);
 
     private final BitbucketClientFactory bitbucketClientFactory;
     private final ReportGenerator reportGenerator;
+    private final BoundedSubmissionExecutor submissionExecutor;
+    private final Duration retryBackoff;
+
+    @Autowired
+    public BitbucketPullRequestDecorator(BitbucketClientFactory bitbucketClientFactory, ReportGenerator reportGenerator,
+                                         BoundedSubmissionExecutor submissionExecutor) {
+        this(bitbucketClientFactory, reportGenerator, submissionExecutor, DEFAULT_RETRY_BACKOFF);
+    }
 
-    public BitbucketPullRequestDecorator(BitbucketClientFactory bitbucketClientFactory, ReportGenerator reportGenerator) {
+    BitbucketPullRequestDecorator(BitbucketClientFactory bitbucketClientFactory, ReportGenerator reportGenerator,
+                                  BoundedSubmissionExecutor submissionExecutor, Duration retryBackoff) {
         this.bitbucketClientFactory = bitbucketClientFactory;
         this.reportGenerator = reportGenerator;
+        this.submissionExecutor = submissionExecutor;
+        this.retryBackoff = retryBackoff;
     }
 
     @Override
@@ -87,7 +110,9 @@ public class BitbucketPullRequestDecorator implements PullRequestBuildStatusDeco
                 return DEFAULT_DECORATION_RESULT;
             }
 
-            AnalysisSummary analysisSummary = reportGenerator.createAnalysisSummary(analysisDetails);
+            AnalysisSummary analysisSummary = analysisDetails.getDecorationReport()
+                    .map(DecorationReport::getAnalysisSummary)
+                    .orElseGet(() -> reportGenerator.createAnalysisSummary(analysisDetails));
 
             CodeInsightsReport codeInsightsReport = client.createCodeInsightsReport(
                     toReport(client, analysisSummary),
@@ -101,11 +126,17 @@ public class BitbucketPullRequestDecorator implements PullRequestBuildStatusDeco
             String reportKey = Boolean.TRUE.equals(projectAlmSettingDto.getMonorepo()) ? analysisDetails.getAnalysisProjectKey() : REPORT_KEY;
 
             client.uploadReport(analysisDetails.getCommitSha(), codeInsightsReport, reportKey);
+            client.deleteAnnotations(analysisDetails.getCommitSha(), reportKey);
 
-            updateAnnotations(client, analysisDetails, reportKey, issueFilterRunner);
-
+            // the build status and each chunk of annotations only depend on the report existing, so are sent
+            // concurrently rather than each waiting on the previous request to complete
             BuildStatus buildStatus = new BuildStatus(analysisDetails.getQualityGateStatus() == QualityGate.Status.OK ? BuildStatus.State.SUCCESSFUL : BuildStatus.State.FAILED, reportKey, "SonarQube", analysisSummary.getDashboardUrl());
-            client.submitBuildStatus(analysisDetails.getCommitSha(),buildStatus);
+            List<Submission> submissions = new ArrayList<>();
+            submissions.add(() -> client.submitBuildStatus(analysisDetails.getCommitSha(), buildStatus));
+            for (Set<CodeInsightsAnnotation> annotations : createAnnotationChunks(client, analysisDetails, issueFilterRunner)) {
+                submissions.add(() -> uploadAnnotations(client, analysisDetails.getCommitSha(), annotations, reportKey));
+            }
+            submitAll(submissions, getSubmissionParallelism(analysisDetails));
         } catch (IOException e) {
             LOGGER.error("Could not decorate pull request for project {}", analysisDetails.getAnalysisProjectKey(), e);
         }
@@ -141,11 +172,9 @@ public class BitbucketPullRequestDecorator implements PullRequestBuildStatusDeco
         return count + (count == 1 ? " Issue" : " Issues");
     }
 
-    private void updateAnnotations(BitbucketClient client, AnalysisDetails analysisDetails, String reportKey, IssueFilterRunner issueFilterRunner) throws IOException {
+    private List<Set<CodeInsightsAnnotation>> createAnnotationChunks(BitbucketClient client, AnalysisDetails analysisDetails, IssueFilterRunner issueFilterRunner) throws IOException {
         final AtomicInteger chunkCounter = new AtomicInteger(0);
 
-        client.deleteAnnotations(analysisDetails.getCommitSha(), reportKey);
-
         AnnotationUploadLimit uploadLimit = client.getAnnotationUploadLimit();
 
         List<PostAnalysisIssueVisitor.ComponentIssue> issues =
@@ -164,26 +193,75 @@ public class BitbucketPullRequestDecorator implements PullRequestBuildStatusDeco
                             toBitbucketType(highestSeverity.getKey()));
                 }).collect(Collectors.groupingBy(s -> chunkCounter.getAndIncrement() / uploadLimit.getAnnotationBatchSize(), toSet()));
 
+        List<Set<CodeInsightsAnnotation>> uploadableChunks = new ArrayList<>(annotationChunks.size());
         int totalAnnotationsCounter = 1;
         for (Set<CodeInsightsAnnotation> annotations : annotationChunks.values()) {
-            try {
-                if (exceedsMaximumNumberOfAnnotations(totalAnnotationsCounter++, uploadLimit)) {
-                    LOGGER.warn("This project has too many issues. The provider only supports {}." +
-                            " The remaining annotations will be truncated.", uploadLimit.getTotalAllowedAnnotations());
-                    break;
-                }
+            if (exceedsMaximumNumberOfAnnotations(totalAnnotationsCounter++, uploadLimit)) {
+                LOGGER.warn("This project has too many issues. The provider only supports {}." +
+                        " The remaining annotations will be truncated.", uploadLimit.getTotalAllowedAnnotations());
+                break;
+            }
+            uploadableChunks.add(annotations);
+        }
+        return uploadableChunks;
+    }
 
-                client.uploadAnnotations(analysisDetails.getCommitSha(), annotations, reportKey);
+    private void uploadAnnotations(BitbucketClient client, String commitSha, Set<CodeInsightsAnnotation> annotations, String reportKey) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                client.uploadAnnotations(commitSha, annotations, reportKey);
+                return;
             } catch (BitbucketException e) {
                 if (e.isError(BitbucketException.PAYLOAD_TOO_LARGE)) {
                     LOGGER.warn("The annotations will be truncated since the maximum number of annotations for this report has been reached.");
-                } else {
+                    return;
+                }
+                if (!e.isRetryable() || attempt >= MAX_UPLOAD_ATTEMPTS) {
+                    throw e;
+                }
+                waitBeforeRetry(attempt, e);
+            } catch (BitbucketCloudException e) {
+                if (!e.isRetryable() || attempt >= MAX_UPLOAD_ATTEMPTS) {
                     throw e;
                 }
+                waitBeforeRetry(attempt, e);
             }
         }
     }
 
+    private void waitBeforeRetry(int attempt, RuntimeException cause) {
+        LOGGER.atDebug().setMessage("Annotation upload attempt {} failed, retrying").addArgument(attempt).setCause(cause).log();
+        try {
+            Thread.sleep(retryBackoff.toMillis() * attempt);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted whilst waiting to retry annotation upload", ex);
+        }
+    }
+
+    private void submitAll(List<Submission> submissions, int parallelism) throws IOException {
+        try {
+            submissionExecutor.submitAll(parallelism, submissions, submission -> {
+                try {
+                    submission.submit();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            IOException cause = ex.getCause();
+            for (Throwable suppressed : ex.getSuppressed()) {
+                cause.addSuppressed(suppressed);
+            }
+            throw cause;
+        }
+    }
+
+    private static int getSubmissionParallelism(AnalysisDetails analysisDetails) {
+        return ScannerPropertyParser.getInt(analysisDetails, CommunityBranchPlugin.PR_BITBUCKET_SUBMISSION_PARALLELISM,
+                DEFAULT_SUBMISSION_PARALLELISM, 1);
+    }
+
     private static Map.Entry<SoftwareQuality, Severity> findHighestSeverity(Map<SoftwareQuality, Severity> impacts) {
         return impacts.entrySet().stream()
                 .max(Map.Entry.comparingByValue())
@@ -220,6 +298,13 @@ public class BitbucketPullRequestDecorator implements PullRequestBuildStatusDeco
         }
     }
 
+    @FunctionalInterface
+    private interface Submission {
+
+        void submit() throws IOException;
+
+    }
+
     private static String reportDescription(AnalysisDetails details, AnalysisSummary analysisSummary) {
         String header = details.getQualityGateStatus() == QualityGate.Status.OK ? "Quality Gate passed" : "Quality Gate failed";
         String body = analysisSummary.getFailedQualityGateConditions().stream()
@@ -2,11 +2,13 @@ package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.filter;
 
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor.ComponentIssue;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class IssueFilterRunner {
     private final List<Predicate<ComponentIssue>> filters;
@@ -38,16 +40,28 @@ public class IssueFilterRunner {
         this.maxAmountOfIssues = maxAmountOfIssues;
     }
 
+    /**
+     * Retains the issues that pass all filters, ordered by severity and then type, with issues of equal severity and
+     * type remaining in the order they were provided in. The severity and type of each issue is only calculated once,
+     * and when the number of issues is limited then only the highest ranked issues are kept whilst the issues are being
+     * filtered, rather than sorting every issue and then discarding all but the first few.
+     */
     public List<ComponentIssue> filterIssues(
             List<ComponentIssue> issues) {
-        Stream<ComponentIssue> stream = issues
-                .stream()
-                .filter(filters.stream().reduce(issue -> true, Predicate::and))
-                .sorted(severityComparator.thenComparing(typeComparator));
-        if (maxAmountOfIssues != null && maxAmountOfIssues > 0) {
-            stream = stream.limit(maxAmountOfIssues);
+        Predicate<ComponentIssue> filter = filters.stream().reduce(issue -> true, Predicate::and);
+        if (maxAmountOfIssues != null && maxAmountOfIssues > 0 && maxAmountOfIssues < issues.size()) {
+            return selectHighestRanked(issues, filter, maxAmountOfIssues);
         }
-        return stream.collect(Collectors.toUnmodifiableList());
+
+        List<RankedIssue> rankedIssues = new ArrayList<>(issues.size());
+        for (int i = 0; i < issues.size(); i++) {
+            ComponentIssue issue = issues.get(i);
+            if (filter.test(issue)) {
+                rankedIssues.add(rank(issue, i));
+            }
+        }
+        rankedIssues.sort(RankedIssue.HIGHEST_RANK_FIRST);
+        return toIssues(rankedIssues);
     }
 
     public List<Predicate<ComponentIssue>> getFilters() {
@@ -58,6 +72,62 @@ public class IssueFilterRunner {
         return maxAmountOfIssues;
     }
 
+    private List<ComponentIssue> selectHighestRanked(List<ComponentIssue> issues, Predicate<ComponentIssue> filter, int limit) {
+        // the lowest ranked of the retained issues is at the head of the queue, so is the one removed when a higher
+        // ranked issue is found after the limit has been reached
+        PriorityQueue<RankedIssue> highestRanked = new PriorityQueue<>(limit + 1, RankedIssue.HIGHEST_RANK_FIRST.reversed());
+        for (int i = 0; i < issues.size(); i++) {
+            ComponentIssue issue = issues.get(i);
+            if (!filter.test(issue)) {
+                continue;
+            }
+            RankedIssue rankedIssue = rank(issue, i);
+            if (highestRanked.size() < limit) {
+                highestRanked.add(rankedIssue);
+            } else if (RankedIssue.HIGHEST_RANK_FIRST.compare(rankedIssue, highestRanked.peek()) < 0) {
+                highestRanked.poll();
+                highestRanked.add(rankedIssue);
+            }
+        }
+
+        List<RankedIssue> rankedIssues = new ArrayList<>(highestRanked);
+        rankedIssues.sort(RankedIssue.HIGHEST_RANK_FIRST);
+        return toIssues(rankedIssues);
+    }
+
+    private RankedIssue rank(ComponentIssue issue, int position) {
+        return new RankedIssue(issue, severityComparator.getRank(issue), typeComparator.getRank(issue), position);
+    }
+
+    private static List<ComponentIssue> toIssues(List<RankedIssue> rankedIssues) {
+        return rankedIssues.stream()
+                .map(RankedIssue::getIssue)
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    private static final class RankedIssue {
+
+        static final Comparator<RankedIssue> HIGHEST_RANK_FIRST = Comparator.comparingInt((RankedIssue rankedIssue) -> rankedIssue.severityRank).reversed()
+                .thenComparing(Comparator.comparingInt((RankedIssue rankedIssue) -> rankedIssue.typeRank).reversed())
+                .thenComparingInt(rankedIssue -> rankedIssue.position);
+
+        private final ComponentIssue issue;
+        private final int severityRank;
+        private final int typeRank;
+        private final int position;
+
+        private RankedIssue(ComponentIssue issue, int severityRank, int typeRank, int position) {
+            this.issue = issue;
+            this.severityRank = severityRank;
+            this.typeRank = typeRank;
+            this.position = position;
+        }
+
+        ComponentIssue getIssue() {
+            return issue;
+        }
+    }
+
     public static class NoFilterIssueFilterRunner extends IssueFilterRunner {
 
         public NoFilterIssueFilterRunner() {
@@ -10,9 +10,14 @@ import static org.sonar.api.issue.impact.Severity.HIGH;
 public class SeverityComparator implements Comparator<PostAnalysisIssueVisitor.ComponentIssue> {
     @Override
     public int compare(PostAnalysisIssueVisitor.ComponentIssue o1, PostAnalysisIssueVisitor.ComponentIssue o2) {
-        String s2 = getSeverity(o2);
-        String s1 = getSeverity(o1);
-        return Severity.ALL.indexOf(s2) - Severity.ALL.indexOf(s1);
+        return getRank(o2) - getRank(o1);
+    }
+
+    /**
+     * @return a value that sorts issues the same way as this comparator, with higher ranked issues being placed first
+     */
+    public int getRank(PostAnalysisIssueVisitor.ComponentIssue componentIssue) {
+        return Severity.ALL.indexOf(getSeverity(componentIssue));
     }
 
     static String getSeverity(PostAnalysisIssueVisitor.ComponentIssue componentIssue) {
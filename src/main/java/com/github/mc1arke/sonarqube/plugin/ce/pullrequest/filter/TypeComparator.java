@@ -7,6 +7,13 @@ import java.util.Comparator;
 public class TypeComparator implements Comparator<PostAnalysisIssueVisitor.ComponentIssue> {
     @Override
     public int compare(PostAnalysisIssueVisitor.ComponentIssue o1, PostAnalysisIssueVisitor.ComponentIssue o2) {
-        return o2.getIssue().getType().getDbConstant() - o1.getIssue().getType().getDbConstant();
+        return getRank(o2) - getRank(o1);
+    }
+
+    /**
+     * @return a value that sorts issues the same way as this comparator, with higher ranked issues being placed first
+     */
+    public int getRank(PostAnalysisIssueVisitor.ComponentIssue componentIssue) {
+        return componentIssue.getIssue().getType().getDbConstant();
     }
 }
@@ -20,6 +20,7 @@ package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.github;
 
 import java.io.IOException;
 import java.time.Clock;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -33,17 +34,23 @@ import org.kohsuke.github.GHIssueComment;
 import org.kohsuke.github.GHPullRequest;
 import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GitHub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.issue.impact.Severity;
 import org.sonar.db.alm.setting.ALM;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.GithubClientFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationReport;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationResult;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.NoteMarker;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PullRequestBuildStatusDecorator;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.ScannerPropertyParser;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.Bold;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.Document;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.MarkdownFormatterFactory;
@@ -53,18 +60,22 @@ import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator
 
 public class GithubPullRequestDecorator implements PullRequestBuildStatusDecorator {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(GithubPullRequestDecorator.class);
     private static final String DEFAULT_CHECK_RUN_NAME = "SonarQube Code Analysis";
+    private static final int MAX_ANNOTATIONS_PER_REQUEST = 50;
     private final GithubClientFactory githubClientFactory;
     private final ReportGenerator reportGenerator;
     private final MarkdownFormatterFactory markdownFormatterFactory;
     private final Clock clock;
+    private final GithubSummaryCommentCache summaryCommentCache;
 
     public GithubPullRequestDecorator(GithubClientFactory githubClientFactory, ReportGenerator reportGenerator,
-            MarkdownFormatterFactory markdownFormatterFactory, Clock clock) {
+            MarkdownFormatterFactory markdownFormatterFactory, Clock clock, GithubSummaryCommentCache summaryCommentCache) {
         this.githubClientFactory = githubClientFactory;
         this.reportGenerator = reportGenerator;
         this.markdownFormatterFactory = markdownFormatterFactory;
         this.clock = clock;
+        this.summaryCommentCache = summaryCommentCache;
     }
 
     @Override
@@ -99,14 +110,25 @@ public class GithubPullRequestDecorator implements PullRequestBuildStatusDecorat
 
     private GHPullRequest createCheckRun(GHRepository repository, AnalysisDetails analysisDetails,
             boolean isMonorepo, boolean postSummaryComment, IssueFilterRunner issueFilterRunner) throws IOException {
-        AnalysisSummary analysisSummary = reportGenerator.createAnalysisSummary(analysisDetails);
+        AnalysisSummary analysisSummary = analysisDetails.getDecorationReport()
+                .map(DecorationReport::getAnalysisSummary)
+                .orElseGet(() -> reportGenerator.createAnalysisSummary(analysisDetails));
         String summary = analysisSummary.format(markdownFormatterFactory);
+        String title = "Quality Gate " + (analysisDetails.getQualityGateStatus() == QualityGate.Status.OK ? "success" : "failed");
 
-        GHCheckRunBuilder.Output output = new GHCheckRunBuilder.Output("Quality Gate " + (analysisDetails.getQualityGateStatus() == QualityGate.Status.OK ? "success" : "failed"), summary);
         List<PostAnalysisIssueVisitor.ComponentIssue> issues =
                 issueFilterRunner.filterIssues(analysisDetails.getScmReportableIssues());
+        int annotationLimit = getAnnotationLimit(analysisDetails);
+        List<GHCheckRunBuilder.Annotation> annotations = new ArrayList<>(Math.min(issues.size(), annotationLimit));
         for (PostAnalysisIssueVisitor.ComponentIssue componentIssue : issues) {
-            output.add(new GHCheckRunBuilder.Annotation(
+            if (annotations.size() >= annotationLimit) {
+                LOGGER.atInfo().setMessage("Only the first {} of {} issues will be annotated on the check run")
+                        .addArgument(annotationLimit)
+                        .addArgument(issues.size())
+                        .log();
+                break;
+            }
+            annotations.add(new GHCheckRunBuilder.Annotation(
                     componentIssue.getScmPath().orElseThrow(),
                     Optional.ofNullable(componentIssue.getIssue().getLine()).orElse(0),
                     mapToGithubAnnotationLevel(componentIssue.getIssue().impacts().values()),
@@ -117,37 +139,168 @@ public class GithubPullRequestDecorator implements PullRequestBuildStatusDecorat
         String checkRunName = isMonorepo
                               ? String.format("[%s] %s", analysisDetails.getAnalysisProjectName(), DEFAULT_CHECK_RUN_NAME)
                               : DEFAULT_CHECK_RUN_NAME;
-        repository.createCheckRun(checkRunName, analysisDetails.getCommitSha())
+        int firstChunkEnd = Math.min(annotations.size(), MAX_ANNOTATIONS_PER_REQUEST);
+        GHCheckRun checkRun = repository.createCheckRun(checkRunName, analysisDetails.getCommitSha())
                 .withStartedAt(analysisDetails.getAnalysisDate())
                 .withCompletedAt(Date.from(clock.instant()))
                 .withStatus(GHCheckRun.Status.COMPLETED)
                 .withConclusion(analysisDetails.getQualityGateStatus() == QualityGate.Status.OK ? GHCheckRun.Conclusion.SUCCESS : GHCheckRun.Conclusion.FAILURE)
                 .withDetailsURL(analysisSummary.getDashboardUrl())
                 .withExternalID(analysisDetails.getAnalysisId())
-                .add(output)
+                .add(createOutput(title, summary, annotations.subList(0, firstChunkEnd)))
                 .create();
 
+        // Github only accepts 50 annotations per request, with any further annotations being appended to the check
+        // run through updates. Each update is sent once the previous one completes since concurrent writes against
+        // the same check run are likely to trip Github's secondary rate limits
+        for (int chunkStart = firstChunkEnd; chunkStart < annotations.size(); chunkStart += MAX_ANNOTATIONS_PER_REQUEST) {
+            int chunkEnd = Math.min(annotations.size(), chunkStart + MAX_ANNOTATIONS_PER_REQUEST);
+            checkRun = checkRun.update()
+                    .add(createOutput(title, summary, annotations.subList(chunkStart, chunkEnd)))
+                    .create();
+        }
+
         GHPullRequest pullRequest = repository.getPullRequest(Integer.parseInt(analysisDetails.getPullRequestId()));
         if (postSummaryComment) {
-            postSummaryComment(pullRequest, summary, analysisDetails.getAnalysisProjectKey());
+            boolean editSummaryComment = analysisDetails.getScannerProperty(CommunityBranchPlugin.PR_SUMMARY_NOTE_EDIT)
+                    .map(Boolean::parseBoolean)
+                    .orElse(false);
+            if (editSummaryComment) {
+                editOrPostSummaryComment(pullRequest, summary, analysisDetails.getAnalysisProjectKey());
+            } else {
+                postSummaryComment(pullRequest, summary, analysisDetails.getAnalysisProjectKey());
+            }
         }
         return pullRequest;
     }
 
+    private static GHCheckRunBuilder.Output createOutput(String title, String summary, List<GHCheckRunBuilder.Annotation> annotations) {
+        GHCheckRunBuilder.Output output = new GHCheckRunBuilder.Output(title, summary);
+        for (GHCheckRunBuilder.Annotation annotation : annotations) {
+            output.add(annotation);
+        }
+        return output;
+    }
+
+    private static int getAnnotationLimit(AnalysisDetails analysisDetails) {
+        return ScannerPropertyParser.getInt(analysisDetails, CommunityBranchPlugin.PR_GITHUB_ANNOTATION_LIMIT, Integer.MAX_VALUE, 0);
+    }
+
     private void postSummaryComment(GHPullRequest pullRequest, String summary, String projectId) throws IOException {
-        String projectCommentMarker = markdownFormatterFactory.documentFormatter().format(new Document(new Bold(new Text("Project ID:")), new Text(" " + projectId)));
+        List<GHIssueComment> existingSummaryComments = findSummaryComments(pullRequest, projectId);
+        GHIssueComment summaryComment = findUnchangedComment(existingSummaryComments, summary).orElse(null);
+
+        if (null == summaryComment) {
+            summaryComment = pullRequest.comment(NoteMarker.addMarker(projectId, NoteMarker.SUMMARY_NOTE_KEY, summary));
+        } else {
+            LOGGER.atDebug().setMessage("Summary comment for {} is unchanged, so is not being re-posted").addArgument(projectId).log();
+        }
+
+        deleteOtherSummaryComments(existingSummaryComments, summaryComment);
+    }
+
+    private void editOrPostSummaryComment(GHPullRequest pullRequest, String summary, String projectId) throws IOException {
+        Optional<GithubSummaryCommentCache.SummaryComment> cachedSummaryComment = summaryCommentCache.get(pullRequest.getUrl(), projectId);
+        if (cachedSummaryComment.isPresent()) {
+            Optional<GHIssueComment> summaryComment = findCachedSummaryComment(pullRequest, cachedSummaryComment.get(), projectId);
+            if (summaryComment.isPresent()) {
+                editSummaryComment(summaryComment.get(), summary, projectId);
+                summaryCommentCache.put(pullRequest.getUrl(), projectId, summaryComment.get().getId(), summaryComment.get().getUpdatedAt());
+                return;
+            }
+            LOGGER.atDebug().setMessage("Previous summary comment for {} could not be found, so searching all comments on the Pull Request")
+                    .addArgument(projectId)
+                    .log();
+            summaryCommentCache.invalidate(pullRequest.getUrl(), projectId);
+        }
+
+        List<GHIssueComment> existingSummaryComments = findSummaryComments(pullRequest, projectId);
+        GHIssueComment summaryComment = findUnchangedComment(existingSummaryComments, summary)
+                .orElse(existingSummaryComments.isEmpty() ? null : existingSummaryComments.get(existingSummaryComments.size() - 1));
+
+        if (null == summaryComment) {
+            summaryComment = pullRequest.comment(NoteMarker.addMarker(projectId, NoteMarker.SUMMARY_NOTE_KEY, summary));
+        } else {
+            editSummaryComment(summaryComment, summary, projectId);
+        }
+
+        deleteOtherSummaryComments(existingSummaryComments, summaryComment);
+        summaryCommentCache.put(pullRequest.getUrl(), projectId, summaryComment.getId(), summaryComment.getUpdatedAt());
+    }
 
-        GHIssueComment summaryComment = pullRequest.comment(summary);
+    private static Optional<GHIssueComment> findCachedSummaryComment(GHPullRequest pullRequest,
+            GithubSummaryCommentCache.SummaryComment cachedSummaryComment, String projectId) throws IOException {
+        if (cachedSummaryComment.getUpdatedAt().isEmpty()) {
+            return Optional.empty();
+        }
+        // only comments updated since the summary was last written are retrieved, which is usually a small fraction of
+        // the comments on a long-running Pull Request
+        for (GHIssueComment comment : pullRequest.queryComments().since(cachedSummaryComment.getUpdatedAt().get()).list().toList()) {
+            if (comment.getId() == cachedSummaryComment.getId()) {
+                return NoteMarker.read(comment.getBody())
+                        .filter(marker -> isSummaryMarkerForProject(marker, projectId))
+                        .map(marker -> comment);
+            }
+        }
+        return Optional.empty();
+    }
 
+    private static void editSummaryComment(GHIssueComment summaryComment, String summary, String projectId) throws IOException {
+        if (NoteMarker.hash(summary).equals(getContentHash(summaryComment.getBody()))) {
+            LOGGER.atDebug().setMessage("Summary comment for {} is unchanged, so is not being edited").addArgument(projectId).log();
+        } else {
+            summaryComment.update(NoteMarker.addMarker(projectId, NoteMarker.SUMMARY_NOTE_KEY, summary));
+        }
+    }
+
+    private List<GHIssueComment> findSummaryComments(GHPullRequest pullRequest, String projectId) throws IOException {
+        String projectCommentMarker = markdownFormatterFactory.documentFormatter().format(new Document(new Bold(new Text("Project ID:")), new Text(" " + projectId)));
+        List<GHIssueComment> summaryComments = new ArrayList<>();
         for (GHIssueComment comment : pullRequest.getComments()) {
-            if ("Bot".equalsIgnoreCase(comment.getUser().getType())
-                    && summaryComment.getUser().getId() == comment.getUser().getId()
-                    && (comment.getBody().contains(projectCommentMarker + "\n") || comment.getBody().contains(projectCommentMarker + "\r"))
+            if (isSummaryCommentForProject(comment, projectId, projectCommentMarker)) {
+                summaryComments.add(comment);
+            }
+        }
+        return summaryComments;
+    }
+
+    private static Optional<GHIssueComment> findUnchangedComment(List<GHIssueComment> summaryComments, String summary) {
+        String summaryHash = NoteMarker.hash(summary);
+        for (GHIssueComment comment : summaryComments) {
+            if (summaryHash.equals(getContentHash(comment.getBody()))) {
+                return Optional.of(comment);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static void deleteOtherSummaryComments(List<GHIssueComment> summaryComments, GHIssueComment summaryComment) throws IOException {
+        for (GHIssueComment comment : summaryComments) {
+            if (summaryComment.getUser().getId() == comment.getUser().getId()
                     && comment.getId() != summaryComment.getId()) {
                 comment.delete();
             }
         }
+    }
+
+    private static boolean isSummaryCommentForProject(GHIssueComment comment, String projectId, String projectCommentMarker) throws IOException {
+        if (!"Bot".equalsIgnoreCase(comment.getUser().getType())) {
+            return false;
+        }
+        String body = comment.getBody();
+        return NoteMarker.read(body)
+                .map(marker -> isSummaryMarkerForProject(marker, projectId))
+                .orElseGet(() -> body.contains(projectCommentMarker + "\n") || body.contains(projectCommentMarker + "\r"));
+    }
+
+    private static boolean isSummaryMarkerForProject(NoteMarker marker, String projectId) {
+        return projectId.equals(marker.getProjectKey()) && NoteMarker.SUMMARY_NOTE_KEY.equals(marker.getIssueKey());
+    }
 
+    private static String getContentHash(String body) {
+        return NoteMarker.read(body)
+                .map(NoteMarker::getContentHash)
+                .orElseGet(() -> NoteMarker.hash(body));
     }
 
     private static GHCheckRun.AnnotationLevel mapToGithubAnnotationLevel(Collection<Severity> sonarqubeSeverity) {
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.github;
+
+import org.sonar.api.ce.ComputeEngineSide;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Remembers which comment holds the summary for each project on a pull request, along with when that comment was last
+ * updated, so later analyses of the same pull request can find the comment by only listing comments updated since
+ * then, rather than retrieving every comment on the pull request. The remembered comment may have been deleted or
+ * edited outside of this plugin, so callers must check it still exists and fall back to searching all comments if not.
+ * The cache is bounded, with the least recently used pull requests being discarded first.
+ */
+@ComputeEngineSide
+public class GithubSummaryCommentCache {
+
+    private static final int MAX_CACHED_COMMENTS = 5000;
+
+    private final Map<String, SummaryComment> summaryComments;
+
+    public GithubSummaryCommentCache() {
+        this(MAX_CACHED_COMMENTS);
+    }
+
+    GithubSummaryCommentCache(int maxCachedComments) {
+        this.summaryComments = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SummaryComment> eldest) {
+                return size() > maxCachedComments;
+            }
+        });
+    }
+
+    /**
+     * @param pullRequestUrl the API URL of the pull request, which identifies both the Github instance and repository
+     * @param projectKey the key of the SonarQube project the summary is for, since monorepo projects each post their
+     *                   own summary on the same pull request
+     */
+    public Optional<SummaryComment> get(URL pullRequestUrl, String projectKey) {
+        return Optional.ofNullable(summaryComments.get(createKey(pullRequestUrl, projectKey)));
+    }
+
+    public void put(URL pullRequestUrl, String projectKey, long commentId, Date updatedAt) {
+        summaryComments.put(createKey(pullRequestUrl, projectKey), new SummaryComment(commentId, updatedAt));
+    }
+
+    public void invalidate(URL pullRequestUrl, String projectKey) {
+        summaryComments.remove(createKey(pullRequestUrl, projectKey));
+    }
+
+    private static String createKey(URL pullRequestUrl, String projectKey) {
+        return pullRequestUrl.toExternalForm() + '\n' + projectKey;
+    }
+
+    public static final class SummaryComment {
+
+        private final long id;
+        private final Date updatedAt;
+
+        private SummaryComment(long id, Date updatedAt) {
+            this.id = id;
+            this.updatedAt = updatedAt;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public Optional<Date> getUpdatedAt() {
+            return Optional.ofNullable(updatedAt);
+        }
+    }
+}
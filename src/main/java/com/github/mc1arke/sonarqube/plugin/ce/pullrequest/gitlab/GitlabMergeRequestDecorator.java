@@ -23,6 +23,7 @@ import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.GitlabClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.GitlabClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Commit;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.CommitNote;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.DiffRefs;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Discussion;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.MergeRequest;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.MergeRequestNote;
@@ -30,10 +31,11 @@ import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Note;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.PipelineStatus;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.User;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.BoundedSubmissionExecutor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DiscussionAwarePullRequestDecorator;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.ScannerPropertyParser;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.MarkdownFormatterFactory;
-import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSummary;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisSummary;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator;
 import org.sonar.api.ce.posttask.QualityGate;
@@ -57,12 +59,11 @@ public class GitlabMergeRequestDecorator extends DiscussionAwarePullRequestDecor
             "com.github.mc1arke.sonarqube.plugin.branch.pullrequest.gitlab.pipelineId";
 
     private final GitlabClientFactory gitlabClientFactory;
-    private final MarkdownFormatterFactory formatterFactory;
 
-    public GitlabMergeRequestDecorator(ScmInfoRepository scmInfoRepository, GitlabClientFactory gitlabClientFactory, ReportGenerator reportGenerator, MarkdownFormatterFactory formatterFactory) {
-        super(scmInfoRepository, reportGenerator);
+    public GitlabMergeRequestDecorator(ScmInfoRepository scmInfoRepository, GitlabClientFactory gitlabClientFactory, ReportGenerator reportGenerator,
+                                       MarkdownFormatterFactory formatterFactory, BoundedSubmissionExecutor submissionExecutor) {
+        super(scmInfoRepository, reportGenerator, formatterFactory, submissionExecutor);
         this.gitlabClientFactory = gitlabClientFactory;
-        this.formatterFactory = formatterFactory;
     }
 
     @Override
@@ -72,6 +73,11 @@ public class GitlabMergeRequestDecorator extends DiscussionAwarePullRequestDecor
                 .orElse(false);
     }
 
+    @Override
+    protected int getSubmissionParallelism(AnalysisDetails analysis) {
+        return ScannerPropertyParser.getInt(analysis, CommunityBranchPlugin.PR_GITLAB_SUBMISSION_PARALLELISM, DEFAULT_SUBMISSION_PARALLELISM, 1);
+    }
+
     @Override
     public List<ALM> alm() {
         return Collections.singletonList(ALM.GITLAB);
@@ -117,7 +123,12 @@ public class GitlabMergeRequestDecorator extends DiscussionAwarePullRequestDecor
     @Override
     protected List<String> getCommitIdsForPullRequest(GitlabClient gitlabClient, MergeRequest mergeRequest) {
         try {
-            return gitlabClient.getMergeRequestCommits(mergeRequest.getTargetProjectId(), mergeRequest.getIid()).stream()
+            // Gitlab doesn't return diff refs whilst it is still preparing the merge request's diff, in which case the
+            // commits can't be matched to a head and are requested without using the cache
+            String headSha = Optional.ofNullable(mergeRequest.getDiffRefs())
+                    .map(DiffRefs::getHeadSha)
+                    .orElse(null);
+            return gitlabClient.getMergeRequestCommits(mergeRequest.getTargetProjectId(), mergeRequest.getIid(), headSha).stream()
                     .map(Commit::getId)
                     .collect(Collectors.toList());
         } catch (IOException ex) {
@@ -150,12 +161,12 @@ public class GitlabMergeRequestDecorator extends DiscussionAwarePullRequestDecor
     }
 
     @Override
-    protected void submitCommitNoteForIssue(GitlabClient client, MergeRequest mergeRequest, PostAnalysisIssueVisitor.ComponentIssue issue, String path, AnalysisDetails analysis, AnalysisIssueSummary analysisIssueSummary) {
+    protected void submitCommitNoteForIssue(GitlabClient client, MergeRequest mergeRequest, PostAnalysisIssueVisitor.ComponentIssue issue, String path, AnalysisDetails analysis, String issueNote) {
         Integer line = Optional.ofNullable(issue.getIssue().getLine()).orElseThrow(() -> new IllegalStateException("No line is associated with this issue"));
 
         try {
             client.addMergeRequestDiscussion(mergeRequest.getTargetProjectId(), mergeRequest.getIid(),
-                    new CommitNote(analysisIssueSummary.format(formatterFactory),
+                    new CommitNote(issueNote,
                     mergeRequest.getDiffRefs().getBaseSha(),
                     mergeRequest.getDiffRefs().getStartSha(),
                     mergeRequest.getDiffRefs().getHeadSha(),
@@ -168,11 +179,11 @@ public class GitlabMergeRequestDecorator extends DiscussionAwarePullRequestDecor
     }
 
     @Override
-    protected void submitSummaryNote(GitlabClient client, MergeRequest mergeRequest, AnalysisDetails analysis, AnalysisSummary analysisSummary) {
+    protected void submitSummaryNote(GitlabClient client, MergeRequest mergeRequest, AnalysisDetails analysis, String summaryNote) {
         try {
             Discussion summaryComment = client.addMergeRequestDiscussion(mergeRequest.getTargetProjectId(),
                     mergeRequest.getIid(),
-                    new MergeRequestNote(analysisSummary.format(formatterFactory)));
+                    new MergeRequestNote(summaryNote));
             if (analysis.getQualityGateStatus() == QualityGate.Status.OK) {
                 client.resolveMergeRequestDiscussion(mergeRequest.getTargetProjectId(), mergeRequest.getIid(), summaryComment.getId());
             }
@@ -183,13 +194,13 @@ public class GitlabMergeRequestDecorator extends DiscussionAwarePullRequestDecor
     }
 
     @Override
-    protected void editSummaryNote(GitlabClient client, MergeRequest mergeRequest, Discussion discussion, AnalysisDetails analysis, AnalysisSummary analysisSummary) {
+    protected void editSummaryNote(GitlabClient client, MergeRequest mergeRequest, Discussion discussion, AnalysisDetails analysis, String summaryNote) {
         try {
             client.editMergeRequestDisscussionNote(mergeRequest.getTargetProjectId(),
                     mergeRequest.getIid(),
                     discussion.getId(),
                     discussion.getNotes().get(0).getId(),
-                    analysisSummary.format(formatterFactory));
+                    summaryNote);
             if (!isClosed(discussion, discussion.getNotes()) && analysis.getQualityGateStatus() == QualityGate.Status.OK) {
                 client.resolveMergeRequestDiscussion(mergeRequest.getTargetProjectId(), mergeRequest.getIid(), discussion.getId());
             }
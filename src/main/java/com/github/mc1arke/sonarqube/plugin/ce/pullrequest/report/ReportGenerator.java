@@ -31,7 +31,6 @@ import java.util.stream.Collectors;
 
 import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.config.Configuration;
-import org.sonar.api.issue.IssueStatus;
 import org.sonar.api.issue.impact.SoftwareQuality;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Metric;
@@ -100,7 +99,7 @@ public class ReportGenerator {
         int fixedIssues = findMeasure(CoreMetrics.PULL_REQUEST_FIXED_ISSUES_KEY)
             .map(Measure::getIntValue)
             .orElse(0);
-        long newIssues = analysisDetails.getIssues().stream().filter(i -> i.getIssue().issueStatus() == IssueStatus.OPEN).count();
+        long newIssues = analysisDetails.getOpenIssueCount();
         int acceptedIssues = findMeasure(CoreMetrics.ACCEPTED_ISSUES_KEY)
             .map(Measure::getIntValue)
             .orElse(0);
@@ -66,6 +66,15 @@ public class ScannerPullRequestPropertySensor implements Sensor {
                 .ifPresent(p -> sensorContext.addContextProperty(CommunityBranchPlugin.PR_FILTER_TYPE_EXCLUSION, p));
         sensorContext.config().get(CommunityBranchPlugin.PR_FILTER_MAXAMOUNT)
                 .ifPresent(p -> sensorContext.addContextProperty(CommunityBranchPlugin.PR_FILTER_MAXAMOUNT, p));
+
+        sensorContext.config().get(CommunityBranchPlugin.PR_GITLAB_SUBMISSION_PARALLELISM)
+                .ifPresent(p -> sensorContext.addContextProperty(CommunityBranchPlugin.PR_GITLAB_SUBMISSION_PARALLELISM, p));
+        sensorContext.config().get(CommunityBranchPlugin.PR_AZUREDEVOPS_SUBMISSION_PARALLELISM)
+                .ifPresent(p -> sensorContext.addContextProperty(CommunityBranchPlugin.PR_AZUREDEVOPS_SUBMISSION_PARALLELISM, p));
+        sensorContext.config().get(CommunityBranchPlugin.PR_BITBUCKET_SUBMISSION_PARALLELISM)
+                .ifPresent(p -> sensorContext.addContextProperty(CommunityBranchPlugin.PR_BITBUCKET_SUBMISSION_PARALLELISM, p));
+        sensorContext.config().get(CommunityBranchPlugin.PR_GITHUB_ANNOTATION_LIMIT)
+                .ifPresent(p -> sensorContext.addContextProperty(CommunityBranchPlugin.PR_GITHUB_ANNOTATION_LIMIT, p));
     }
 
 }
@@ -62,7 +62,7 @@ public class BitbucketValidator implements Validator {
         }
         boolean supportsCodeInsights;
         try {
-            supportsCodeInsights = bitbucketClient.supportsCodeInsights();
+            supportsCodeInsights = bitbucketClient.probeCodeInsightsSupport();
         } catch (RuntimeException ex) {
             throw new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "Could not check Bitbucket configuration - " + ex.getMessage(), ex);
         }
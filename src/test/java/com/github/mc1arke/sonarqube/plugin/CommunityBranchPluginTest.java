@@ -19,12 +19,23 @@
 package com.github.mc1arke.sonarqube.plugin;
 
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.DefaultLinkHeaderReader;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.GitlabResponseCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.PooledHttpClientProvider;
+import com.github.mc1arke.sonarqube.plugin.almclient.AuthenticatedUserCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.RateLimitScheduler;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.DefaultAzureDevopsClientFactory;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketCloudTokenCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketServerCapabilityCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.DefaultBitbucketClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.HttpClientBuilderFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.GithubClientFactory;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.GithubInstallationTokenCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.DefaultGitlabClientFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.CommunityReportAnalysisComponentProvider;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AlmHostBulkheads;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.BoundedSubmissionExecutor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PullRequestDecorationExecutor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.github.GithubSummaryCommentCache;
 import com.github.mc1arke.sonarqube.plugin.scanner.BranchConfigurationFactory;
 import com.github.mc1arke.sonarqube.plugin.scanner.CommunityBranchConfigurationLoader;
 import com.github.mc1arke.sonarqube.plugin.scanner.CommunityBranchParamsValidator;
@@ -114,7 +125,10 @@ class CommunityBranchPluginTest {
 
         testCase.load(context);
 
-        verify(context).addExtensions(CommunityReportAnalysisComponentProvider.class);
+        verify(context).addExtensions(CommunityReportAnalysisComponentProvider.class, RateLimitScheduler.class, PooledHttpClientProvider.class,
+                GithubInstallationTokenCache.class, BitbucketCloudTokenCache.class, GitlabResponseCache.class,
+                PullRequestDecorationExecutor.class, BoundedSubmissionExecutor.class, AlmHostBulkheads.class,
+                GithubSummaryCommentCache.class, AuthenticatedUserCache.class, BitbucketServerCapabilityCache.class);
         verify(context).addExtensions(any(PropertyDefinition.class), eq(MonoRepoFeature.class));
     }
 
@@ -143,12 +157,19 @@ class CommunityBranchPluginTest {
                 eq(GitLabReportAction.class),
                 eq(PullRequestWs.class),
                 eq(GithubValidator.class),
+                eq(RateLimitScheduler.class),
+                eq(PooledHttpClientProvider.class),
+                eq(GithubInstallationTokenCache.class),
                 eq(GithubClientFactory.class),
                 eq(DefaultLinkHeaderReader.class),
                 eq(HttpClientBuilderFactory.class),
+                eq(BitbucketCloudTokenCache.class),
+                eq(BitbucketServerCapabilityCache.class),
                 eq(DefaultBitbucketClientFactory.class),
                 eq(BitbucketValidator.class),
                 eq(GitlabValidator.class),
+                eq(GitlabResponseCache.class),
+                eq(AuthenticatedUserCache.class),
                 eq(DefaultGitlabClientFactory.class),
                 eq(DefaultAzureDevopsClientFactory.class),
                 eq(AzureDevopsValidator.class),
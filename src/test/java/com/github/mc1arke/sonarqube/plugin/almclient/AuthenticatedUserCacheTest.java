@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuthenticatedUserCacheTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1000000);
+
+    private final Clock clock = mock();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AuthenticatedUserCache underTest = new AuthenticatedUserCache(clock, Duration.ofMinutes(60));
+
+    @Test
+    void shouldRejectNegativeTimeToLive() {
+        Configuration configuration = mock();
+        when(configuration.getInt(AuthenticatedUserCache.TIME_TO_LIVE)).thenReturn(Optional.of(-1));
+
+        assertThatThrownBy(() -> new AuthenticatedUserCache(configuration))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage(AuthenticatedUserCache.TIME_TO_LIVE + " must not be negative");
+    }
+
+    @Test
+    void shouldReturnCachedUserForSameUrlAndToken() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+
+        String first = underTest.getUser("http://alm.url/api", "token", String.class, this::loadUser);
+        String second = underTest.getUser("http://alm.url/api", "token", String.class, this::loadUser);
+
+        assertThat(first).isEqualTo("user1");
+        assertThat(second).isEqualTo("user1");
+        assertThat(underTest.getHitCount()).isEqualTo(1);
+        assertThat(underTest.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRetrieveUserAgainWhenTokenOrUrlChanges() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+
+        underTest.getUser("http://alm.url/api", "token", String.class, this::loadUser);
+        String newToken = underTest.getUser("http://alm.url/api", "newToken", String.class, this::loadUser);
+        String newUrl = underTest.getUser("http://other.url/api", "newToken", String.class, this::loadUser);
+
+        assertThat(newToken).isEqualTo("user2");
+        assertThat(newUrl).isEqualTo("user3");
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void shouldRetrieveUserAgainOnceTimeToLiveHasPassed() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+        underTest.getUser("http://alm.url/api", "token", String.class, this::loadUser);
+
+        when(clock.instant()).thenReturn(NOW.plus(Duration.ofMinutes(59)));
+        String beforeExpiry = underTest.getUser("http://alm.url/api", "token", String.class, this::loadUser);
+        when(clock.instant()).thenReturn(NOW.plus(Duration.ofMinutes(60)));
+        String afterExpiry = underTest.getUser("http://alm.url/api", "token", String.class, this::loadUser);
+
+        assertThat(beforeExpiry).isEqualTo("user1");
+        assertThat(afterExpiry).isEqualTo("user2");
+    }
+
+    @Test
+    void shouldRetrieveUserAgainAfterInvalidation() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+        underTest.getUser("http://alm.url/api", "token", String.class, this::loadUser);
+
+        underTest.invalidate("http://alm.url/api", "token", String.class);
+        String result = underTest.getUser("http://alm.url/api", "token", String.class, this::loadUser);
+
+        assertThat(result).isEqualTo("user2");
+    }
+
+    @Test
+    void shouldNotCacheFailedRetrieval() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+
+        assertThatThrownBy(() -> underTest.getUser("http://alm.url/api", "token", String.class, () -> {
+            throw new IOException("dummy");
+        })).isExactlyInstanceOf(IOException.class).hasMessage("dummy");
+        String result = underTest.getUser("http://alm.url/api", "token", String.class, this::loadUser);
+
+        assertThat(result).isEqualTo("user1");
+    }
+
+    private String loadUser() {
+        return "user" + loads.incrementAndGet();
+    }
+}
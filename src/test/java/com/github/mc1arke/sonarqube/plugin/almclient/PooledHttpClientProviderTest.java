@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PooledHttpClientProviderTest {
+
+    private final List<String> createdPools = new ArrayList<>();
+    private final Function<String, CloseableHttpClient> httpClientCreator = host -> {
+        createdPools.add(host);
+        return mock();
+    };
+
+    @Test
+    void shouldReuseClientForUrlsOnSameHost() {
+        PooledHttpClientProvider underTest = new PooledHttpClientProvider(httpClientCreator);
+
+        CloseableHttpClient first = underTest.getHttpClient("https://gitlab.example.com/api/v4");
+        CloseableHttpClient second = underTest.getHttpClient("https://GITLAB.example.com:443/other/path");
+
+        assertThat(second).isSameAs(first);
+        assertThat(createdPools).containsExactly("https://gitlab.example.com:443");
+    }
+
+    @Test
+    void shouldCreateSeparateClientsForDifferentSchemesPortsAndHosts() {
+        PooledHttpClientProvider underTest = new PooledHttpClientProvider(httpClientCreator);
+
+        underTest.getHttpClient("https://gitlab.example.com/api/v4");
+        underTest.getHttpClient("http://gitlab.example.com/api/v4");
+        underTest.getHttpClient("https://gitlab.example.com:8443/api/v4");
+        underTest.getHttpClient("https://dev.azure.com/organisation");
+
+        assertThat(createdPools).containsExactly("https://gitlab.example.com:443", "http://gitlab.example.com:80",
+                "https://gitlab.example.com:8443", "https://dev.azure.com:443");
+    }
+
+    @Test
+    void shouldRejectRelativeUrl() {
+        PooledHttpClientProvider underTest = new PooledHttpClientProvider(httpClientCreator);
+
+        assertThatThrownBy(() -> underTest.getHttpClient("/api/v4"))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("URL must be absolute: /api/v4");
+    }
+
+    @Test
+    void shouldCloseAllClientsOnStopAndCreateNewClientsAfterwards() throws IOException {
+        PooledHttpClientProvider underTest = new PooledHttpClientProvider(httpClientCreator);
+        underTest.start();
+
+        CloseableHttpClient first = underTest.getHttpClient("https://gitlab.example.com");
+        CloseableHttpClient second = underTest.getHttpClient("https://dev.azure.com");
+        doThrow(new IOException("dummy")).when(first).close();
+
+        underTest.stop();
+
+        verify(first).close();
+        verify(second).close();
+        assertThat(underTest.getHttpClient("https://gitlab.example.com")).isNotSameAs(first);
+    }
+
+    @Test
+    void shouldCreatePooledClientFromConfiguration() throws IOException {
+        Configuration configuration = mock();
+        when(configuration.getInt(PooledHttpClientProvider.MAX_CONNECTIONS_PER_ROUTE)).thenReturn(Optional.of(2));
+        PooledHttpClientProvider underTest = new PooledHttpClientProvider(configuration, new RateLimitScheduler());
+
+        CloseableHttpClient httpClient = underTest.getHttpClient("https://gitlab.example.com");
+
+        assertThat(httpClient).isNotNull().isSameAs(underTest.getHttpClient("https://gitlab.example.com/api/v4"));
+        underTest.stop();
+    }
+
+    @Test
+    void shouldRejectNonPositiveMaximumConnections() {
+        Configuration configuration = mock();
+        when(configuration.getInt(PooledHttpClientProvider.MAX_CONNECTIONS_PER_ROUTE)).thenReturn(Optional.of(0));
+
+        assertThatThrownBy(() -> new PooledHttpClientProvider(configuration, new RateLimitScheduler()))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("com.github.mc1arke.sonarqube.plugin.almclient.http.maxConnectionsPerRoute must be greater than 0");
+    }
+
+    @Test
+    void shouldRejectNonPositiveIdleTimeout() {
+        Configuration configuration = mock();
+        when(configuration.getInt(PooledHttpClientProvider.IDLE_CONNECTION_TIMEOUT)).thenReturn(Optional.of(-1));
+
+        assertThatThrownBy(() -> new PooledHttpClientProvider(configuration, new RateLimitScheduler()))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("com.github.mc1arke.sonarqube.plugin.almclient.http.idleConnectionTimeoutSeconds must be greater than 0");
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.io.IOException;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RateLimitInterceptorTest {
+
+    @Test
+    void shouldAcquireBeforeRequestAndRecordResponseHeadersAgainstCredential() throws IOException {
+        RateLimitScheduler rateLimitScheduler = mock();
+        Interceptor.Chain chain = mock();
+        Request request = new Request.Builder().url("https://api.github.com/repos/owner/repo").header("Authorization", "token credential").build();
+        when(chain.request()).thenReturn(request);
+        Response response = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .header("X-RateLimit-Remaining", "10")
+                .build();
+        when(chain.proceed(request)).thenReturn(response);
+
+        Response result = new RateLimitInterceptor(rateLimitScheduler).intercept(chain);
+
+        assertThat(result).isSameAs(response);
+        InOrder inOrder = inOrder(rateLimitScheduler, chain);
+        inOrder.verify(rateLimitScheduler).acquire("https://api.github.com:443", "token credential");
+        inOrder.verify(chain).proceed(request);
+        inOrder.verify(rateLimitScheduler).update(eq("https://api.github.com:443"), eq("token credential"), any(UnaryOperator.class));
+    }
+}
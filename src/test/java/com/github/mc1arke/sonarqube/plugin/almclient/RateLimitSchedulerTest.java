@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RateLimitSchedulerTest {
+
+    private static final String HOST = "https://api.github.com:443";
+    private static final String CREDENTIAL = "token credential";
+    private static final Instant NOW = Instant.ofEpochSecond(1700000000);
+
+    private final Clock clock = mock();
+    private final List<Duration> delays = new ArrayList<>();
+    private final RateLimitScheduler underTest = new RateLimitScheduler(clock, delays::add);
+
+    RateLimitSchedulerTest() {
+        when(clock.instant()).thenReturn(NOW);
+    }
+
+    @Test
+    void shouldNotDelayRequestsToHostWithoutKnownBudget() throws InterruptedIOException {
+        underTest.acquire(HOST, CREDENTIAL);
+
+        assertThat(delays).isEmpty();
+        assertThat(underTest.getBudget(HOST, CREDENTIAL)).isEmpty();
+    }
+
+    @Test
+    void shouldNotDelayRequestsWhilstBudgetIsHealthy() throws InterruptedIOException {
+        underTest.update(HOST, CREDENTIAL, Map.of("X-RateLimit-Limit", "5000", "X-RateLimit-Remaining", "4000",
+                "X-RateLimit-Reset", String.valueOf(NOW.plusSeconds(600).getEpochSecond()))::get);
+
+        underTest.acquire(HOST, CREDENTIAL);
+        underTest.acquire(HOST, CREDENTIAL);
+
+        assertThat(delays).isEmpty();
+        assertThat(underTest.getBudget(HOST, CREDENTIAL)).hasValueSatisfying(budget -> {
+            assertThat(budget.getLimit()).contains(5000L);
+            assertThat(budget.getRemaining()).contains(3998L);
+            assertThat(budget.getResetAt()).contains(NOW.plusSeconds(600));
+            assertThat(budget.getBlockedUntil()).isEmpty();
+        });
+    }
+
+    @Test
+    void shouldSpreadRemainingBudgetUntilResetOnceBudgetIsLow() throws InterruptedIOException {
+        underTest.update(HOST, CREDENTIAL, Map.of("RateLimit-Limit", "100", "RateLimit-Remaining", "5",
+                "RateLimit-Reset", String.valueOf(NOW.plusSeconds(10).getEpochSecond()))::get);
+
+        underTest.acquire(HOST, CREDENTIAL);
+        underTest.acquire(HOST, CREDENTIAL);
+        underTest.acquire(HOST, CREDENTIAL);
+
+        assertThat(delays).containsExactly(Duration.ofSeconds(2), Duration.ofMillis(4500));
+    }
+
+    @Test
+    void shouldTrackBudgetSeparatelyForEachCredential() throws InterruptedIOException {
+        String reset = String.valueOf(NOW.plusSeconds(10).getEpochSecond());
+        underTest.update(HOST, CREDENTIAL, Map.of("RateLimit-Limit", "100", "RateLimit-Remaining", "5", "RateLimit-Reset", reset)::get);
+        underTest.update(HOST, "token other", Map.of("RateLimit-Limit", "100", "RateLimit-Remaining", "90", "RateLimit-Reset", reset)::get);
+
+        underTest.acquire(HOST, "token other");
+        underTest.acquire(HOST, null);
+        underTest.acquire(HOST, CREDENTIAL);
+        underTest.acquire(HOST, CREDENTIAL);
+
+        assertThat(delays).containsExactly(Duration.ofSeconds(2));
+        assertThat(underTest.getBudget(HOST, CREDENTIAL)).hasValueSatisfying(budget -> assertThat(budget.getRemaining()).contains(3L));
+        assertThat(underTest.getBudget(HOST, "token other")).hasValueSatisfying(budget -> assertThat(budget.getRemaining()).contains(89L));
+        assertThat(underTest.getBudget(HOST, null)).isEmpty();
+    }
+
+    @Test
+    void shouldHoldBackEveryCredentialForHostOnRetryAfter() throws InterruptedIOException {
+        underTest.update(HOST, CREDENTIAL, Map.of("Retry-After", "20")::get);
+
+        underTest.acquire(HOST, "token other");
+
+        assertThat(delays).containsExactly(Duration.ofSeconds(20));
+        assertThat(underTest.getBudget(HOST, "token other")).hasValueSatisfying(budget -> {
+            assertThat(budget.getRemaining()).isEmpty();
+            assertThat(budget.getBlockedUntil()).contains(NOW.plusSeconds(20));
+        });
+    }
+
+    @Test
+    void shouldFindCredentialFromAuthorizationOrGitlabTokenHeader() {
+        assertThat(RateLimitScheduler.findCredential(Map.of("Authorization", "Bearer token")::get)).isEqualTo("Bearer token");
+        assertThat(RateLimitScheduler.findCredential(Map.of("PRIVATE-TOKEN", "token")::get)).isEqualTo("token");
+        assertThat(RateLimitScheduler.findCredential(Map.of("Accept", "application/json")::get)).isNull();
+    }
+
+    @Test
+    void shouldWaitForResetWhenBudgetIsExhausted() throws InterruptedIOException {
+        underTest.update(HOST, CREDENTIAL, Map.of("RateLimit-Limit", "100", "RateLimit-Remaining", "0", "RateLimit-Reset", "30")::get);
+
+        underTest.acquire(HOST, CREDENTIAL);
+
+        assertThat(delays).containsExactly(Duration.ofSeconds(30));
+    }
+
+    @Test
+    void shouldHonourRetryAfterSeconds() throws InterruptedIOException {
+        underTest.update(HOST, CREDENTIAL, Map.of("Retry-After", "20")::get);
+
+        underTest.acquire(HOST, CREDENTIAL);
+
+        assertThat(delays).containsExactly(Duration.ofSeconds(20));
+        assertThat(underTest.getBudget(HOST, CREDENTIAL)).hasValueSatisfying(budget -> assertThat(budget.getBlockedUntil()).contains(NOW.plusSeconds(20)));
+    }
+
+    @Test
+    void shouldHonourRetryAfterDate() throws InterruptedIOException {
+        underTest.update(HOST, CREDENTIAL, Map.of("Retry-After", "Tue, 14 Nov 2023 22:13:40 GMT")::get);
+
+        underTest.acquire(HOST, CREDENTIAL);
+
+        assertThat(delays).containsExactly(Duration.ofSeconds(20));
+    }
+
+    @Test
+    void shouldNotWaitWhenDelayExceedsMaximum() throws InterruptedIOException {
+        underTest.update(HOST, CREDENTIAL, Map.of("Retry-After", "3600")::get);
+
+        underTest.acquire(HOST, CREDENTIAL);
+
+        assertThat(delays).isEmpty();
+    }
+
+    @Test
+    void shouldIgnoreUnparseableHeaders() throws InterruptedIOException {
+        underTest.update(HOST, CREDENTIAL, Map.of("X-RateLimit-Remaining", "lots", "Retry-After", "later")::get);
+
+        underTest.acquire(HOST, CREDENTIAL);
+
+        assertThat(delays).isEmpty();
+        assertThat(underTest.getBudget(HOST, CREDENTIAL)).isEmpty();
+    }
+
+    @Test
+    void shouldTrackBudgetSeparatelyForEachHost() throws InterruptedIOException {
+        underTest.update(HOST, CREDENTIAL, Map.of("Retry-After", "20")::get);
+
+        underTest.acquire("https://gitlab.example.com:443", CREDENTIAL);
+
+        assertThat(delays).isEmpty();
+    }
+
+    @Test
+    void shouldThrowInterruptedExceptionWhenInterruptedWhilstWaiting() {
+        RateLimitScheduler interruptingScheduler = new RateLimitScheduler(clock, duration -> {
+            throw new InterruptedException("dummy");
+        });
+        interruptingScheduler.update(HOST, CREDENTIAL, Map.of("Retry-After", "20")::get);
+
+        assertThatThrownBy(() -> interruptingScheduler.acquire(HOST, CREDENTIAL))
+                .isExactlyInstanceOf(InterruptedIOException.class)
+                .hasMessage("Interrupted whilst waiting for rate limit of " + HOST);
+        assertThat(Thread.interrupted()).isTrue();
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RefreshingCacheTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1000000);
+
+    private final Clock clock = mock();
+    private final List<Runnable> backgroundTasks = new ArrayList<>();
+    private final RefreshingCache<String, ExpiringValue> underTest = new RefreshingCache<>("test", clock,
+            ExpiringValue::getExpiry, Duration.ofMinutes(10), Duration.ofMinutes(2), backgroundTasks::add);
+
+    @Test
+    void shouldRejectRefreshAheadShorterThanMinimumValidity() {
+        Duration refreshAhead = Duration.ofMinutes(1);
+        Duration minimumValidity = Duration.ofMinutes(2);
+        assertThatThrownBy(() -> new RefreshingCache<String, ExpiringValue>("test", clock, ExpiringValue::getExpiry, refreshAhead, minimumValidity, Runnable::run))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Refresh ahead period must not be shorter than minimum validity period");
+    }
+
+    @Test
+    void shouldReturnCachedValueWhilstValid() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+        AtomicInteger loads = new AtomicInteger();
+
+        ExpiringValue first = underTest.get("key", () -> new ExpiringValue("value" + loads.incrementAndGet(), NOW.plusSeconds(3600)));
+        ExpiringValue second = underTest.get("key", () -> new ExpiringValue("value" + loads.incrementAndGet(), NOW.plusSeconds(3600)));
+
+        assertThat(second).isSameAs(first);
+        assertThat(loads).hasValue(1);
+        assertThat(underTest.getHitCount()).isEqualTo(1);
+        assertThat(underTest.getMissCount()).isEqualTo(1);
+        assertThat(backgroundTasks).isEmpty();
+    }
+
+    @Test
+    void shouldCacheValuesSeparatelyForEachKey() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+
+        underTest.get("key1", () -> new ExpiringValue("value1", NOW.plusSeconds(3600)));
+        ExpiringValue result = underTest.get("key2", () -> new ExpiringValue("value2", NOW.plusSeconds(3600)));
+
+        assertThat(result.getValue()).isEqualTo("value2");
+        assertThat(underTest.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldRefreshInBackgroundWhenApproachingExpiry() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+        underTest.get("key", () -> new ExpiringValue("value1", NOW.plus(Duration.ofMinutes(30))));
+
+        when(clock.instant()).thenReturn(NOW.plus(Duration.ofMinutes(25)));
+        ExpiringValue beforeRefresh = underTest.get("key", () -> new ExpiringValue("value2", NOW.plus(Duration.ofMinutes(90))));
+
+        assertThat(beforeRefresh.getValue()).isEqualTo("value1");
+        assertThat(backgroundTasks).hasSize(1);
+
+        backgroundTasks.get(0).run();
+        ExpiringValue afterRefresh = underTest.get("key", () -> new ExpiringValue("value3", NOW.plus(Duration.ofMinutes(90))));
+
+        assertThat(afterRefresh.getValue()).isEqualTo("value2");
+        assertThat(underTest.getRefreshCount()).isEqualTo(1);
+        assertThat(underTest.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldLoadSynchronouslyWhenWithinMinimumValidity() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+        underTest.get("key", () -> new ExpiringValue("value1", NOW.plus(Duration.ofMinutes(30))));
+
+        when(clock.instant()).thenReturn(NOW.plus(Duration.ofMinutes(29)));
+        ExpiringValue result = underTest.get("key", () -> new ExpiringValue("value2", NOW.plus(Duration.ofMinutes(90))));
+
+        assertThat(result.getValue()).isEqualTo("value2");
+        assertThat(underTest.getMissCount()).isEqualTo(2);
+        assertThat(backgroundTasks).isEmpty();
+    }
+
+    @Test
+    void shouldReloadAfterInvalidation() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+        underTest.get("key", () -> new ExpiringValue("value1", NOW.plusSeconds(3600)));
+
+        underTest.invalidate("key");
+        ExpiringValue result = underTest.get("key", () -> new ExpiringValue("value2", NOW.plusSeconds(3600)));
+
+        assertThat(result.getValue()).isEqualTo("value2");
+    }
+
+    @Test
+    void shouldOnlyReturnPresentValueWhilstValid() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+        assertThat(underTest.getIfPresent("key")).isEmpty();
+
+        ExpiringValue value = underTest.get("key", () -> new ExpiringValue("value", NOW.plus(Duration.ofMinutes(30))));
+        assertThat(underTest.getIfPresent("key")).containsSame(value);
+
+        when(clock.instant()).thenReturn(NOW.plus(Duration.ofMinutes(29)));
+        assertThat(underTest.getIfPresent("key")).isEmpty();
+        assertThat(underTest.getHitCount()).isZero();
+        assertThat(backgroundTasks).isEmpty();
+    }
+
+    @Test
+    void shouldPropagateLoadFailureAndNotCacheResult() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+
+        assertThatThrownBy(() -> underTest.get("key", () -> {
+            throw new IOException("dummy");
+        })).isExactlyInstanceOf(IOException.class).hasMessage("dummy");
+
+        ExpiringValue result = underTest.get("key", () -> new ExpiringValue("value", NOW.plusSeconds(3600)));
+        assertThat(result.getValue()).isEqualTo("value");
+        assertThat(underTest.getFailureCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldShareSingleLoadBetweenConcurrentCallers() throws Exception {
+        when(clock.instant()).thenReturn(NOW);
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        RefreshingCache.Loader<ExpiringValue> loader = () -> {
+            loads.incrementAndGet();
+            loadStarted.countDown();
+            try {
+                releaseLoad.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return new ExpiringValue("value", NOW.plusSeconds(3600));
+        };
+
+        CompletableFuture<ExpiringValue> first = CompletableFuture.supplyAsync(() -> getQuietly(loader));
+        assertThat(loadStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<ExpiringValue> second = CompletableFuture.supplyAsync(() -> getQuietly(loader));
+        Thread.sleep(50);
+        releaseLoad.countDown();
+
+        assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(first.get(5, TimeUnit.SECONDS));
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void shouldFailEveryCallerSharingLoadWhenLoaderThrowsError() throws Exception {
+        when(clock.instant()).thenReturn(NOW);
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        Error error = new Error("dummy");
+        RefreshingCache.Loader<ExpiringValue> loader = () -> {
+            loadStarted.countDown();
+            try {
+                releaseLoad.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            throw error;
+        };
+
+        CompletableFuture<ExpiringValue> first = CompletableFuture.supplyAsync(() -> getQuietly(loader));
+        assertThat(loadStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<ExpiringValue> second = CompletableFuture.supplyAsync(() -> getQuietly(loader));
+        Thread.sleep(50);
+        releaseLoad.countDown();
+
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class).hasCauseReference(error);
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class).hasCauseReference(error);
+        assertThat(underTest.getFailureCount()).isEqualTo(1);
+        assertThat(underTest.get("key", () -> new ExpiringValue("value", NOW.plusSeconds(3600))).getValue()).isEqualTo("value");
+    }
+
+    private ExpiringValue getQuietly(RefreshingCache.Loader<ExpiringValue> loader) {
+        try {
+            return underTest.get("key", loader);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static final class ExpiringValue {
+
+        private final String value;
+        private final Instant expiry;
+
+        ExpiringValue(String value, Instant expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+
+        String getValue() {
+            return value;
+        }
+
+        Instant getExpiry() {
+            return expiry;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.apache.http.NoHttpResponseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryPolicyTest {
+
+    private final List<Duration> delays = new ArrayList<>();
+    private final RetryPolicy underTest = new RetryPolicy(3, 10, Duration.ofMillis(100), Duration.ofMillis(300), delays::add, () -> 0.5);
+
+    @Test
+    void shouldRejectInvalidConfiguration() {
+        Duration delay = Duration.ZERO;
+        assertThatThrownBy(() -> new RetryPolicy(0, 10, delay, delay))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Maximum attempts must be at least 1");
+        assertThatThrownBy(() -> new RetryPolicy(1, -1, delay, delay))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Retry budget must not be negative");
+    }
+
+    @Test
+    void shouldReturnResultWithoutRetryingSuccessfulRequest() throws IOException {
+        assertThat(underTest.execute("request", () -> "result")).isEqualTo("result");
+
+        assertThat(delays).isEmpty();
+        assertThat(underTest.getRemainingBudget()).isEqualTo(10);
+    }
+
+    @Test
+    void shouldRetryTransientStatusWithJitteredExponentialBackoff() throws IOException {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = underTest.execute("request", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw RetryPolicy.classify(502, new IllegalStateException("dummy"));
+            }
+            return "result";
+        });
+
+        assertThat(result).isEqualTo("result");
+        assertThat(delays).containsExactly(Duration.ofMillis(75), Duration.ofMillis(150));
+        assertThat(underTest.getRemainingBudget()).isEqualTo(8);
+    }
+
+    @Test
+    void shouldCapBackoffAtMaximumDelay() {
+        RetryPolicy retryPolicy = new RetryPolicy(5, 10, Duration.ofMillis(100), Duration.ofMillis(300), delays::add, () -> 1.0);
+
+        assertThatThrownBy(() -> retryPolicy.execute("request", () -> {
+            throw new SocketTimeoutException("dummy");
+        })).isExactlyInstanceOf(SocketTimeoutException.class);
+
+        assertThat(delays).containsExactly(Duration.ofMillis(100), Duration.ofMillis(200), Duration.ofMillis(300), Duration.ofMillis(300));
+    }
+
+    @Test
+    void shouldThrowOriginalFailureOnceAttemptsAreExhausted() {
+        IllegalStateException failure = new IllegalStateException("dummy");
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> underTest.execute("request", () -> {
+            attempts.incrementAndGet();
+            throw RetryPolicy.classify(429, failure);
+        })).isSameAs(failure);
+
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    void shouldNotRetryPermanentFailures() {
+        IllegalStateException failure = new IllegalStateException("dummy");
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> underTest.execute("request", () -> {
+            attempts.incrementAndGet();
+            throw RetryPolicy.classify(404, failure);
+        })).isSameAs(failure);
+        assertThatThrownBy(() -> underTest.execute("request", () -> {
+            attempts.incrementAndGet();
+            throw new JsonParseException(null, "dummy");
+        })).isExactlyInstanceOf(JsonParseException.class);
+        assertThatThrownBy(() -> underTest.execute("request", () -> {
+            attempts.incrementAndGet();
+            throw new InterruptedIOException("dummy");
+        })).isExactlyInstanceOf(InterruptedIOException.class);
+        assertThatThrownBy(() -> underTest.execute("request", () -> {
+            attempts.incrementAndGet();
+            throw new IOException("dummy");
+        })).isExactlyInstanceOf(IOException.class);
+
+        assertThat(attempts).hasValue(4);
+        assertThat(delays).isEmpty();
+    }
+
+    @Test
+    void shouldRetryFailuresToReachOrHearFromAlm() throws IOException {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = underTest.execute("request", () -> {
+            switch (attempts.incrementAndGet()) {
+                case 1:
+                    throw new ConnectException("dummy");
+                case 2:
+                    throw new NoHttpResponseException("dummy");
+                default:
+                    return "result";
+            }
+        });
+
+        assertThat(result).isEqualTo("result");
+        assertThat(attempts).hasValue(3);
+        assertThat(delays).hasSize(2);
+    }
+
+    @Test
+    void shouldStopRetryingOnceBudgetIsUsed() {
+        RetryPolicy retryPolicy = new RetryPolicy(3, 1, Duration.ZERO, Duration.ZERO, delays::add, () -> 0.5);
+        AtomicInteger attempts = new AtomicInteger();
+        RetryPolicy.Attempt<String> failingAttempt = () -> {
+            attempts.incrementAndGet();
+            throw new ConnectException("dummy");
+        };
+
+        assertThatThrownBy(() -> retryPolicy.execute("first", failingAttempt)).isExactlyInstanceOf(ConnectException.class);
+        assertThatThrownBy(() -> retryPolicy.execute("second", failingAttempt)).isExactlyInstanceOf(ConnectException.class);
+
+        assertThat(attempts).hasValue(3);
+        assertThat(retryPolicy.getRemainingBudget()).isZero();
+    }
+
+    @Test
+    void shouldRepeatCreateWhenAlmDidNotProcessOriginalRequest() throws IOException {
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicInteger lookups = new AtomicInteger();
+
+        String result = underTest.executeCreate("create", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw RetryPolicy.classify(503, new IllegalStateException("dummy"));
+            }
+            return "created";
+        }, () -> {
+            lookups.incrementAndGet();
+            return Optional.empty();
+        });
+
+        assertThat(result).isEqualTo("created");
+        assertThat(attempts).hasValue(2);
+        assertThat(lookups).hasValue(0);
+    }
+
+    @Test
+    void shouldReturnExistingResultWhenAmbiguousFailureHadBeenProcessed() throws IOException {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = underTest.executeCreate("create", () -> {
+            attempts.incrementAndGet();
+            throw new SocketTimeoutException("dummy");
+        }, () -> Optional.of("existing"));
+
+        assertThat(result).isEqualTo("existing");
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void shouldRepeatCreateWhenLookupFindsNoExistingResult() throws IOException {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = underTest.executeCreate("create", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw RetryPolicy.classify(504, new IllegalStateException("dummy"));
+            }
+            return "created";
+        }, Optional::empty);
+
+        assertThat(result).isEqualTo("created");
+        assertThat(attempts).hasValue(2);
+    }
+
+    @Test
+    void shouldNotRepeatCreateAfterAmbiguousFailureWithoutLookup() {
+        IllegalStateException failure = new IllegalStateException("dummy");
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> underTest.executeCreate("create", () -> {
+            attempts.incrementAndGet();
+            throw RetryPolicy.classify(502, failure);
+        }, null)).isSameAs(failure);
+
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void shouldStopRetryingWhenInterruptedWhilstWaiting() {
+        RetryPolicy retryPolicy = new RetryPolicy(3, 10, Duration.ZERO, Duration.ZERO, duration -> {
+            throw new InterruptedException("dummy");
+        }, () -> 0.5);
+        ConnectException failure = new ConnectException("dummy");
+
+        assertThatThrownBy(() -> retryPolicy.execute("request", () -> {
+            throw failure;
+        })).isSameAs(failure);
+        assertThat(Thread.interrupted()).isTrue();
+    }
+}
@@ -19,6 +19,13 @@
 package com.github.mc1arke.sonarqube.plugin.almclient.azuredevops;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.AuthenticatedUserCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.RetryPolicy;
+import com.github.mc1arke.sonarqube.plugin.almclient.UnexpectedStatusException;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Comment;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CommentThread;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CommentThreadResponse;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.ConnectionData;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CreateCommentRequest;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.GitPullRequestStatus;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.GitStatusContext;
@@ -36,12 +43,15 @@ import org.mockito.ArgumentCaptor;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -49,10 +59,11 @@ class AzureDevopsRestClientTest {
 
     private final ObjectMapper objectMapper = mock();
     private final CloseableHttpClient closeableHttpClient = mock();
+    private final AuthenticatedUserCache authenticatedUserCache = new AuthenticatedUserCache(mock());
 
     @Test
     void checkErrorThrownOnNonSuccessResponseStatus() throws IOException {
-        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://url.test/api", "token", objectMapper, () -> closeableHttpClient);
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://url.test/api", "token", objectMapper, () -> closeableHttpClient, new RetryPolicy(), authenticatedUserCache);
 
         CloseableHttpResponse closeableHttpResponse = mock();
         StatusLine statusLine = mock();
@@ -63,9 +74,11 @@ class AzureDevopsRestClientTest {
 
         GitPullRequestStatus gitPullRequestStatus = mock();
         assertThatThrownBy(() -> underTest.submitPullRequestStatus("project", "repo", 101, gitPullRequestStatus))
-                .isExactlyInstanceOf(IllegalStateException.class)
+                .isExactlyInstanceOf(UnexpectedStatusException.class)
                 .hasMessage("An unexpected response code was returned from the Azure Devops API - Expected: 200, Got: 500")
-                .hasNoCause();
+                .hasNoCause()
+                .extracting(ex -> ((UnexpectedStatusException) ex).getStatusCode())
+                .isEqualTo(500);
 
         ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.captor();
         verify(closeableHttpClient).execute(requestArgumentCaptor.capture());
@@ -79,7 +92,7 @@ class AzureDevopsRestClientTest {
 
     @Test
     void checkSubmitPullRequestStatusSubmitsCorrectContent() throws IOException {
-        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://url.test/api", "token", objectMapper, () -> closeableHttpClient);
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://url.test/api", "token", objectMapper, () -> closeableHttpClient, new RetryPolicy(), authenticatedUserCache);
 
         CloseableHttpResponse closeableHttpResponse = mock();
         StatusLine statusLine = mock();
@@ -102,7 +115,7 @@ class AzureDevopsRestClientTest {
 
     @Test
     void checkAddCommentToThreadSubmitsCorrectContent() throws IOException {
-        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", objectMapper, () -> closeableHttpClient);
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", objectMapper, () -> closeableHttpClient, new RetryPolicy(), authenticatedUserCache);
 
         CloseableHttpResponse closeableHttpResponse = mock();
         StatusLine statusLine = mock();
@@ -125,7 +138,7 @@ class AzureDevopsRestClientTest {
 
     @Test
     void checkRetrievePullRequestReturnsCorrectContent() throws IOException {
-        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", objectMapper, () -> closeableHttpClient);
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", objectMapper, () -> closeableHttpClient, new RetryPolicy(), authenticatedUserCache);
 
         CloseableHttpResponse closeableHttpResponse = mock();
         StatusLine statusLine = mock();
@@ -148,4 +161,66 @@ class AzureDevopsRestClientTest {
         assertThat(request.getEntity()).isNull();
         assertThat(result).isSameAs(pullRequest);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldRetrieveConnectionDataAgainOnceTokenIsRejected() throws IOException {
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", objectMapper, () -> closeableHttpClient, new RetryPolicy(), authenticatedUserCache);
+
+        CloseableHttpResponse connectionDataResponse = mock();
+        StatusLine connectionDataStatusLine = mock();
+        when(connectionDataStatusLine.getStatusCode()).thenReturn(200);
+        when(connectionDataResponse.getStatusLine()).thenReturn(connectionDataStatusLine);
+        when(connectionDataResponse.getEntity()).thenReturn(new StringEntity("connectionData", StandardCharsets.UTF_8));
+        CloseableHttpResponse forbiddenResponse = mock();
+        StatusLine forbiddenStatusLine = mock();
+        when(forbiddenStatusLine.getStatusCode()).thenReturn(403);
+        when(forbiddenResponse.getStatusLine()).thenReturn(forbiddenStatusLine);
+        when(closeableHttpClient.execute(any())).thenReturn(connectionDataResponse, forbiddenResponse, connectionDataResponse);
+        ConnectionData firstConnectionData = mock();
+        ConnectionData secondConnectionData = mock();
+        when(objectMapper.readValue("connectionData", ConnectionData.class)).thenReturn(firstConnectionData, secondConnectionData);
+
+        ConnectionData before = underTest.getConnectionData();
+        assertThatThrownBy(() -> underTest.retrievePullRequest("project", "repo", 101))
+                .isExactlyInstanceOf(UnexpectedStatusException.class);
+        ConnectionData after = underTest.getConnectionData();
+
+        assertThat(before).isSameAs(firstConnectionData);
+        assertThat(after).isSameAs(secondConnectionData);
+        verify(closeableHttpClient, times(3)).execute(any());
+    }
+
+    @Test
+    void shouldNotRepeatCommentThatWasAddedDespiteGatewayFailure() throws IOException {
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", objectMapper, () -> closeableHttpClient, new RetryPolicy(3, 10, Duration.ZERO, Duration.ZERO), authenticatedUserCache);
+
+        CloseableHttpResponse gatewayResponse = mock();
+        StatusLine gatewayStatusLine = mock();
+        when(gatewayStatusLine.getStatusCode()).thenReturn(502);
+        when(gatewayResponse.getStatusLine()).thenReturn(gatewayStatusLine);
+        CloseableHttpResponse threadsResponse = mock();
+        StatusLine threadsStatusLine = mock();
+        when(threadsStatusLine.getStatusCode()).thenReturn(200);
+        when(threadsResponse.getStatusLine()).thenReturn(threadsStatusLine);
+        when(threadsResponse.getEntity()).thenReturn(new StringEntity("threads", StandardCharsets.UTF_8));
+        when(closeableHttpClient.execute(any())).thenReturn(gatewayResponse, threadsResponse);
+        when(objectMapper.writeValueAsString(any())).thenReturn("json");
+
+        Comment comment = mock();
+        when(comment.getContent()).thenReturn("comment");
+        CommentThread commentThread = mock();
+        when(commentThread.getId()).thenReturn(1);
+        when(commentThread.getComments()).thenReturn(List.of(comment));
+        CommentThreadResponse commentThreadResponse = mock();
+        when(commentThreadResponse.getValue()).thenReturn(List.of(commentThread));
+        when(objectMapper.readValue("threads", CommentThreadResponse.class)).thenReturn(commentThreadResponse);
+
+        underTest.addCommentToThread("project", "repo", 101, 1, new CreateCommentRequest("comment"));
+
+        ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.captor();
+        verify(closeableHttpClient, times(2)).execute(requestArgumentCaptor.capture());
+        assertThat(requestArgumentCaptor.getAllValues())
+                .extracting(HttpUriRequest::getMethod)
+                .containsExactly("post", "get");
+    }
+}
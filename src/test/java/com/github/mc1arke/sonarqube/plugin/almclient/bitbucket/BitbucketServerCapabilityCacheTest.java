@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.ServerProperties;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BitbucketServerCapabilityCacheTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1000000);
+
+    private final Clock clock = mock();
+    private final ExecutorService refreshExecutor = mock();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final BitbucketServerCapabilityCache underTest = new BitbucketServerCapabilityCache(clock, refreshExecutor);
+
+    @Test
+    void shouldCacheCapabilitiesAgainstServerUrl() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+
+        BitbucketServerCapabilityCache.ServerCapabilities first = underTest.getCapabilities("https://bitbucket.example.com", () -> loadProperties("7.21"));
+        BitbucketServerCapabilityCache.ServerCapabilities second = underTest.getCapabilities("https://Bitbucket.example.com/", () -> loadProperties("8.0"));
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.getVersion()).isEqualTo("7.21");
+        assertThat(first.isCodeInsightsSupported()).isTrue();
+        assertThat(first.getAnnotationUploadLimit().getAnnotationBatchSize()).isEqualTo(1000);
+        assertThat(first.getAnnotationUploadLimit().getTotalAllowedAnnotations()).isEqualTo(1000);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void shouldOnlyReturnAlreadyCachedCapabilitiesWithoutLoading() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+        assertThat(underTest.getCachedCapabilities("https://bitbucket.example.com")).isEmpty();
+
+        BitbucketServerCapabilityCache.ServerCapabilities capabilities = underTest.getCapabilities("https://bitbucket.example.com", () -> loadProperties("7.21"));
+
+        assertThat(underTest.getCachedCapabilities("https://bitbucket.example.com")).containsSame(capabilities);
+    }
+
+    @Test
+    void shouldRefreshSupportedServerInBackgroundBeforeDayHasPassed() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+        underTest.getCapabilities("https://bitbucket.example.com", () -> loadProperties("7.21"));
+
+        when(clock.instant()).thenReturn(NOW.plus(Duration.ofHours(22)));
+        underTest.getCapabilities("https://bitbucket.example.com", () -> loadProperties("7.21"));
+        verify(refreshExecutor, never()).execute(any());
+
+        when(clock.instant()).thenReturn(NOW.plus(Duration.ofHours(23)));
+        underTest.getCapabilities("https://bitbucket.example.com", () -> loadProperties("7.21"));
+        verify(refreshExecutor).execute(any());
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void shouldCheckUnsupportedServerAgainSooner() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+        BitbucketServerCapabilityCache.ServerCapabilities before = underTest.getCapabilities("https://bitbucket.example.com", () -> loadProperties("5.0"));
+
+        when(clock.instant()).thenReturn(NOW.plus(Duration.ofHours(2)));
+        BitbucketServerCapabilityCache.ServerCapabilities after = underTest.getCapabilities("https://bitbucket.example.com", () -> loadProperties("7.21"));
+
+        assertThat(before.isCodeInsightsSupported()).isFalse();
+        assertThat(after.isCodeInsightsSupported()).isTrue();
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void shouldLoadAgainAfterInvalidation() throws IOException {
+        when(clock.instant()).thenReturn(NOW);
+        underTest.getCapabilities("https://bitbucket.example.com", () -> loadProperties("7.21"));
+
+        underTest.invalidate("https://bitbucket.example.com/");
+        BitbucketServerCapabilityCache.ServerCapabilities result = underTest.getCapabilities("https://bitbucket.example.com", () -> loadProperties("5.0"));
+
+        assertThat(result.getVersion()).isEqualTo("5.0");
+        assertThat(underTest.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldStopRefreshExecutorOnStop() {
+        underTest.stop();
+
+        verify(refreshExecutor).shutdownNow();
+    }
+
+    private ServerProperties loadProperties(String version) {
+        loads.incrementAndGet();
+        return new ServerProperties(version);
+    }
+}
@@ -20,6 +20,7 @@ package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.mc1arke.sonarqube.plugin.almclient.RetryPolicy;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.AnnotationUploadLimit;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.BuildStatus;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.CodeInsightsAnnotation;
@@ -43,6 +44,7 @@ import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
+import java.time.Clock;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Set;
@@ -57,6 +59,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -64,7 +67,8 @@ class BitbucketServerClientUnitTest {
 
     private final ObjectMapper mapper = spy();
     private final OkHttpClient client = mock();
-    private final BitbucketServerClient underTest = new BitbucketServerClient(new BitbucketServerConfiguration("project", "repository", "https://my-server.org"), mapper, client);
+    private final BitbucketServerCapabilityCache capabilityCache = new BitbucketServerCapabilityCache(Clock.systemUTC(), mock());
+    private final BitbucketServerClient underTest = new BitbucketServerClient(new BitbucketServerConfiguration("project", "repository", "https://my-server.org"), mapper, client, new RetryPolicy(), capabilityCache);
 
     @Test
     void testSupportsCodeInsightsIsFalse() throws IOException {
@@ -161,6 +165,137 @@ class BitbucketServerClientUnitTest {
         assertFalse(result);
     }
 
+    @Test
+    void shouldOnlyRequestServerPropertiesOnceForEachServer() throws IOException {
+        // given
+        Call call = mock();
+        Response response = mock();
+        ObjectReader reader = mock();
+        ResponseBody responseBody = mock();
+
+        when(client.newCall(any())).thenReturn(call);
+        when(call.execute()).thenReturn(response);
+        when(response.isSuccessful()).thenReturn(true);
+        when(response.body()).thenReturn(responseBody);
+        when(responseBody.string()).thenReturn("test");
+
+        when(mapper.reader()).thenReturn(reader);
+        when(reader.forType(ServerProperties.class)).thenReturn(reader);
+        when(reader.readValue(any(String.class))).thenReturn(new ServerProperties("7.0"));
+
+        BitbucketServerClient otherClient = new BitbucketServerClient(new BitbucketServerConfiguration("other", "repository", "https://MY-SERVER.org/"), mapper, client, new RetryPolicy(), capabilityCache);
+
+        // when
+        boolean result = underTest.supportsCodeInsights();
+        boolean otherResult = otherClient.supportsCodeInsights();
+        AnnotationUploadLimit annotationUploadLimit = otherClient.getAnnotationUploadLimit();
+
+        // then
+        assertTrue(result);
+        assertTrue(otherResult);
+        assertEquals(1000, annotationUploadLimit.getTotalAllowedAnnotations());
+        verify(client).newCall(any());
+    }
+
+    @Test
+    void shouldRequestServerPropertiesAgainWhenCodeInsightsResourceIsNotFound() throws IOException {
+        // given
+        CodeInsightsReport report = mock();
+        Call call = mock();
+        Response propertiesResponse = mock();
+        Response notFoundResponse = mock();
+        ObjectReader reader = mock();
+        ResponseBody responseBody = mock();
+
+        when(client.newCall(any())).thenReturn(call);
+        when(call.execute()).thenReturn(propertiesResponse, notFoundResponse, propertiesResponse);
+        when(propertiesResponse.isSuccessful()).thenReturn(true);
+        when(propertiesResponse.body()).thenReturn(responseBody);
+        when(responseBody.string()).thenReturn("test");
+        when(notFoundResponse.isSuccessful()).thenReturn(false);
+        when(notFoundResponse.code()).thenReturn(404);
+
+        when(mapper.reader()).thenReturn(reader);
+        when(reader.forType(ServerProperties.class)).thenReturn(reader);
+        when(reader.readValue(any(String.class))).thenReturn(new ServerProperties("7.0"), new ServerProperties("5.0"));
+        when(mapper.writeValueAsString(report)).thenReturn("{payload}");
+
+        // when
+        boolean before = underTest.supportsCodeInsights();
+        assertThatThrownBy(() -> underTest.uploadReport("commit", report, "reportKey"))
+                .isInstanceOf(BitbucketException.class);
+        boolean after = underTest.supportsCodeInsights();
+
+        // then
+        assertTrue(before);
+        assertFalse(after);
+        verify(call, times(4)).execute();
+    }
+
+    @Test
+    void shouldRetainServerCapabilitiesWhenResourceIsNotFoundOnUnchangedServer() throws IOException {
+        // given
+        CodeInsightsReport report = mock();
+        Call call = mock();
+        Response propertiesResponse = mock();
+        Response notFoundResponse = mock();
+        ObjectReader reader = mock();
+        ResponseBody responseBody = mock();
+
+        when(client.newCall(any())).thenReturn(call);
+        when(call.execute()).thenReturn(propertiesResponse, notFoundResponse, propertiesResponse);
+        when(propertiesResponse.isSuccessful()).thenReturn(true);
+        when(propertiesResponse.body()).thenReturn(responseBody);
+        when(responseBody.string()).thenReturn("test");
+        when(notFoundResponse.isSuccessful()).thenReturn(false);
+        when(notFoundResponse.code()).thenReturn(404);
+
+        when(mapper.reader()).thenReturn(reader);
+        when(reader.forType(ServerProperties.class)).thenReturn(reader);
+        when(reader.readValue(any(String.class))).thenReturn(new ServerProperties("7.0"));
+        when(mapper.writeValueAsString(report)).thenReturn("{payload}");
+
+        // when
+        boolean before = underTest.supportsCodeInsights();
+        assertThatThrownBy(() -> underTest.uploadReport("commit", report, "reportKey"))
+                .isInstanceOf(BitbucketException.class);
+        boolean after = underTest.supportsCodeInsights();
+
+        // then
+        assertTrue(before);
+        assertTrue(after);
+        verify(call, times(3)).execute();
+        assertEquals(1, capabilityCache.getMissCount());
+    }
+
+    @Test
+    void shouldProbeServerPropertiesEvenWhenCapabilitiesAreCached() throws IOException {
+        // given
+        Call call = mock();
+        Response response = mock();
+        ObjectReader reader = mock();
+        ResponseBody responseBody = mock();
+
+        when(client.newCall(any())).thenReturn(call);
+        when(call.execute()).thenReturn(response);
+        when(response.isSuccessful()).thenReturn(true);
+        when(response.body()).thenReturn(responseBody);
+        when(responseBody.string()).thenReturn("test");
+
+        when(mapper.reader()).thenReturn(reader);
+        when(reader.forType(ServerProperties.class)).thenReturn(reader);
+        when(reader.readValue(any(String.class))).thenReturn(new ServerProperties("7.0"), new ServerProperties("5.0"));
+
+        // when
+        boolean cached = underTest.supportsCodeInsights();
+        boolean probed = underTest.probeCodeInsightsSupport();
+
+        // then
+        assertTrue(cached);
+        assertFalse(probed);
+        verify(call, times(2)).execute();
+    }
+
     @Test
     void testGetServerProperties() throws IOException {
         // given
@@ -290,6 +425,60 @@ class BitbucketServerClientUnitTest {
                 .isEqualTo(true);
     }
 
+    @Test
+    void shouldReportStatusWhenErrorResponseIsNotJson() throws IOException {
+        Response response = mock();
+        ResponseBody responseBody = mock();
+        when(response.isSuccessful()).thenReturn(false);
+        when(response.code()).thenReturn(502);
+        when(response.body()).thenReturn(responseBody);
+        when(responseBody.string()).thenReturn("<html><body><h1>502 Bad Gateway</h1></body></html>");
+
+        assertThatThrownBy(() -> underTest.validate(response))
+                .isInstanceOf(BitbucketException.class)
+                .hasMessage("Bitbucket responded with an error status (502)")
+                .extracting(e -> ((BitbucketException) e).isRetryable())
+                .isEqualTo(true);
+    }
+
+    @Test
+    void shouldReportStatusWhenErrorResponseIsEmpty() throws IOException {
+        Response response = mock();
+        ResponseBody responseBody = mock();
+        when(response.isSuccessful()).thenReturn(false);
+        when(response.code()).thenReturn(503);
+        when(response.body()).thenReturn(responseBody);
+        when(responseBody.string()).thenReturn("");
+
+        assertThatThrownBy(() -> underTest.validate(response))
+                .isInstanceOf(BitbucketException.class)
+                .hasMessage("Bitbucket responded with an error status (503)")
+                .extracting(e -> ((BitbucketException) e).isError(503))
+                .isEqualTo(true);
+    }
+
+    @Test
+    void shouldRetryGatewayErrorWithHtmlResponse() throws IOException {
+        CodeInsightsReport report = mock();
+        Call call = mock();
+        Response failedResponse = mock();
+        ResponseBody responseBody = mock();
+        Response response = mock();
+
+        when(client.newCall(any())).thenReturn(call);
+        when(call.execute()).thenReturn(failedResponse, response);
+        when(failedResponse.isSuccessful()).thenReturn(false);
+        when(failedResponse.code()).thenReturn(504);
+        when(failedResponse.body()).thenReturn(responseBody);
+        when(responseBody.string()).thenReturn("<html><body>Gateway Timeout</body></html>");
+        when(response.isSuccessful()).thenReturn(true);
+        when(mapper.writeValueAsString(report)).thenReturn("{payload}");
+
+        underTest.uploadReport("commit", report, "reportKey");
+
+        verify(call, times(2)).execute();
+    }
+
     @Test
     void testUploadAnnotations() throws IOException {
         // given
@@ -18,9 +18,11 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.RateLimitScheduler;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.Response;
 import okhttp3.ResponseBody;
 
 import org.junit.jupiter.api.Test;
@@ -33,6 +35,8 @@ import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
 import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
@@ -43,9 +47,14 @@ import static org.mockito.Mockito.when;
 
 class DefaultBitbucketClientFactoryUnitTest {
 
+    private final Clock clock = mock();
+    private final BitbucketCloudTokenCache bitbucketCloudTokenCache = new BitbucketCloudTokenCache(clock, mock());
+    private final BitbucketServerCapabilityCache bitbucketServerCapabilityCache = new BitbucketServerCapabilityCache(clock, mock());
+
     @Test
     void testCreateClientIsCloudIfCloudConfig() throws IOException {
         // given
+        when(clock.instant()).thenReturn(Instant.ofEpochSecond(1000000));
         AlmSettingDto almSettingDto = new AlmSettingDto().setAlm(ALM.BITBUCKET_CLOUD)
                 .setClientId("clientId")
                 .setAppId("appId")
@@ -54,6 +63,7 @@ class DefaultBitbucketClientFactoryUnitTest {
                 .setAlmRepo("almRepo");
         OkHttpClient.Builder builder = mock(OkHttpClient.Builder.class, Mockito.RETURNS_DEEP_STUBS);
         when(builder.addInterceptor(any())).thenReturn(builder);
+        when(builder.addNetworkInterceptor(any())).thenReturn(builder);
 
         ResponseBody responseBody = mock();
         when(responseBody.string()).thenReturn("{\"access_token\": \"dummy\"}");
@@ -66,7 +76,7 @@ class DefaultBitbucketClientFactoryUnitTest {
         when(settings.getEncryption()).thenReturn(encryption);
         HttpClientBuilderFactory httpClientBuilderFactory = mock();
         when(httpClientBuilderFactory.createClientBuilder()).then(i -> builder);
-        BitbucketClient client = new DefaultBitbucketClientFactory(settings, httpClientBuilderFactory).createClient(projectAlmSettingDto, almSettingDto);
+        BitbucketClient client = new DefaultBitbucketClientFactory(settings, httpClientBuilderFactory, bitbucketCloudTokenCache, new RateLimitScheduler(), bitbucketServerCapabilityCache).createClient(projectAlmSettingDto, almSettingDto);
 
         // then
         assertThat(client).isInstanceOf(BitbucketCloudClient.class);
@@ -83,6 +93,9 @@ class DefaultBitbucketClientFactoryUnitTest {
 
         Request request2 = mock();
         when(requestBuilder.build()).thenReturn(request2);
+        Response response = mock();
+        when(response.code()).thenReturn(200);
+        when(chain.proceed(request2)).thenReturn(response);
 
         interceptorArgumentCaptor.getValue().intercept(chain);
 
@@ -108,11 +121,117 @@ class DefaultBitbucketClientFactoryUnitTest {
         when(settings.getEncryption()).thenReturn(encryption);
         HttpClientBuilderFactory httpClientBuilderFactory = mock();
         when(httpClientBuilderFactory.createClientBuilder()).then(i -> mock(OkHttpClient.Builder.class, Mockito.RETURNS_DEEP_STUBS));
-        BitbucketClient client = new DefaultBitbucketClientFactory(settings, httpClientBuilderFactory).createClient(projectAlmSettingDto, almSettingDto);
+        BitbucketClient client = new DefaultBitbucketClientFactory(settings, httpClientBuilderFactory, bitbucketCloudTokenCache, new RateLimitScheduler(), bitbucketServerCapabilityCache).createClient(projectAlmSettingDto, almSettingDto);
 
         // then
         assertThat(client).isInstanceOf(BitbucketServerClient.class);
     }
 
+    @Test
+    void shouldReuseBearerTokenForSubsequentCloudClients() throws IOException {
+        when(clock.instant()).thenReturn(Instant.ofEpochSecond(1000000));
+        OkHttpClient.Builder builder = mock(OkHttpClient.Builder.class, Mockito.RETURNS_DEEP_STUBS);
+        when(builder.addInterceptor(any())).thenReturn(builder);
+        when(builder.addNetworkInterceptor(any())).thenReturn(builder);
+
+        ResponseBody responseBody = mock();
+        when(responseBody.string()).thenReturn("{\"access_token\": \"dummy\", \"expires_in\": 7200}");
+        when(builder.build().newCall(any()).execute().body()).thenReturn(responseBody);
+
+        Settings settings = mock();
+        when(settings.getEncryption()).thenReturn(mock());
+        HttpClientBuilderFactory httpClientBuilderFactory = mock();
+        when(httpClientBuilderFactory.createClientBuilder()).then(i -> builder);
+        DefaultBitbucketClientFactory underTest = new DefaultBitbucketClientFactory(settings, httpClientBuilderFactory, bitbucketCloudTokenCache, new RateLimitScheduler(), bitbucketServerCapabilityCache);
+
+        underTest.createClient(createCloudProjectAlmSettingDto(), createCloudAlmSettingDto());
+        underTest.createClient(createCloudProjectAlmSettingDto(), createCloudAlmSettingDto());
+
+        verify(responseBody).string();
+        assertThat(bitbucketCloudTokenCache.getHitCount()).isEqualTo(1);
+        assertThat(bitbucketCloudTokenCache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNegotiateNewBearerTokenWhenClientSecretChanges() throws IOException {
+        when(clock.instant()).thenReturn(Instant.ofEpochSecond(1000000));
+        OkHttpClient.Builder builder = mock(OkHttpClient.Builder.class, Mockito.RETURNS_DEEP_STUBS);
+        when(builder.addInterceptor(any())).thenReturn(builder);
+        when(builder.addNetworkInterceptor(any())).thenReturn(builder);
+
+        ResponseBody responseBody = mock();
+        when(responseBody.string()).thenReturn("{\"access_token\": \"dummy\", \"expires_in\": 7200}");
+        when(builder.build().newCall(any()).execute().body()).thenReturn(responseBody);
+
+        Settings settings = mock();
+        when(settings.getEncryption()).thenReturn(mock());
+        HttpClientBuilderFactory httpClientBuilderFactory = mock();
+        when(httpClientBuilderFactory.createClientBuilder()).then(i -> builder);
+        DefaultBitbucketClientFactory underTest = new DefaultBitbucketClientFactory(settings, httpClientBuilderFactory, bitbucketCloudTokenCache, new RateLimitScheduler(), bitbucketServerCapabilityCache);
+
+        underTest.createClient(createCloudProjectAlmSettingDto(), createCloudAlmSettingDto());
+        underTest.createClient(createCloudProjectAlmSettingDto(), createCloudAlmSettingDto().setClientSecret("rotatedClientSecret"));
+
+        verify(responseBody, times(2)).string();
+        assertThat(bitbucketCloudTokenCache.getHitCount()).isZero();
+        assertThat(bitbucketCloudTokenCache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNegotiateNewBearerTokenWhenCachedTokenIsRejected() throws IOException {
+        when(clock.instant()).thenReturn(Instant.ofEpochSecond(1000000));
+        OkHttpClient.Builder builder = mock(OkHttpClient.Builder.class, Mockito.RETURNS_DEEP_STUBS);
+        when(builder.addInterceptor(any())).thenReturn(builder);
+        when(builder.addNetworkInterceptor(any())).thenReturn(builder);
+
+        ResponseBody responseBody = mock();
+        when(responseBody.string()).thenReturn("{\"access_token\": \"revoked\", \"expires_in\": 7200}", "{\"access_token\": \"dummy\", \"expires_in\": 7200}");
+        when(builder.build().newCall(any()).execute().body()).thenReturn(responseBody);
+
+        Settings settings = mock();
+        when(settings.getEncryption()).thenReturn(mock());
+        HttpClientBuilderFactory httpClientBuilderFactory = mock();
+        when(httpClientBuilderFactory.createClientBuilder()).then(i -> builder);
+        new DefaultBitbucketClientFactory(settings, httpClientBuilderFactory, bitbucketCloudTokenCache, new RateLimitScheduler(), bitbucketServerCapabilityCache).createClient(createCloudProjectAlmSettingDto(), createCloudAlmSettingDto());
+
+        ArgumentCaptor<Interceptor> interceptorArgumentCaptor = ArgumentCaptor.captor();
+        verify(builder, times(2)).addInterceptor(interceptorArgumentCaptor.capture());
+
+        Interceptor.Chain chain = mock();
+        Request request = mock();
+        when(chain.request()).thenReturn(request);
+        Request.Builder requestBuilder = mock();
+        when(requestBuilder.addHeader(any(), any())).thenReturn(requestBuilder);
+        when(request.newBuilder()).thenReturn(requestBuilder);
+        Request rejectedRequest = mock();
+        Request retriedRequest = mock();
+        when(requestBuilder.build()).thenReturn(rejectedRequest, retriedRequest);
+        Response unauthorisedResponse = mock();
+        when(unauthorisedResponse.code()).thenReturn(401);
+        when(chain.proceed(rejectedRequest)).thenReturn(unauthorisedResponse);
+        Response successfulResponse = mock();
+        when(successfulResponse.code()).thenReturn(200);
+        when(chain.proceed(retriedRequest)).thenReturn(successfulResponse);
+
+        Response result = interceptorArgumentCaptor.getValue().intercept(chain);
+
+        assertThat(result).isSameAs(successfulResponse);
+        verify(unauthorisedResponse).close();
+        verify(requestBuilder).addHeader("Authorization", "Bearer revoked");
+        verify(requestBuilder).addHeader("Authorization", "Bearer dummy");
+        verify(responseBody, times(2)).string();
+    }
+
+    private static AlmSettingDto createCloudAlmSettingDto() {
+        return new AlmSettingDto().setAlm(ALM.BITBUCKET_CLOUD)
+                .setClientId("clientId")
+                .setAppId("appId")
+                .setClientSecret("clientSecret");
+    }
+
+    private static ProjectAlmSettingDto createCloudProjectAlmSettingDto() {
+        return new ProjectAlmSettingDto()
+                .setAlmRepo("almRepo");
+    }
 
 }
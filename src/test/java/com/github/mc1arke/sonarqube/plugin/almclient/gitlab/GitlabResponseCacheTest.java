@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GitlabResponseCacheTest {
+
+    @Test
+    void shouldDiscardLeastRecentlyUsedPagesOnceSizeLimitIsExceeded() {
+        GitlabResponseCache underTest = new GitlabResponseCache(10, 1);
+        underTest.putPage("page1", "etag1", new byte[4], null);
+        underTest.putPage("page2", "etag2", new byte[4], "page3");
+        underTest.getPage("page1");
+
+        underTest.putPage("page3", "etag3", new byte[4], null);
+
+        assertThat(underTest.getPage("page1")).hasValueSatisfying(page -> assertThat(page.getEtag()).isEqualTo("etag1"));
+        assertThat(underTest.getPage("page2")).isEmpty();
+        assertThat(underTest.getPage("page3")).hasValueSatisfying(page -> assertThat(page.getContent()).hasSize(4));
+        assertThat(underTest.getCachedPageBytes()).isEqualTo(8);
+    }
+
+    @Test
+    void shouldReplaceExistingPageWithoutCountingItTwice() {
+        GitlabResponseCache underTest = new GitlabResponseCache(10, 1);
+        underTest.putPage("page1", "etag1", new byte[6], null);
+
+        underTest.putPage("page1", "etag2", new byte[8], null);
+
+        assertThat(underTest.getPage("page1")).hasValueSatisfying(page -> assertThat(page.getEtag()).isEqualTo("etag2"));
+        assertThat(underTest.getCachedPageBytes()).isEqualTo(8);
+    }
+
+    @Test
+    void shouldNotCachePageLargerThanSizeLimit() {
+        GitlabResponseCache underTest = new GitlabResponseCache(10, 1);
+        underTest.putPage("page1", "etag1", new byte[4], null);
+        underTest.putPage("page2", "etag1", new byte[4], null);
+
+        underTest.putPage("page2", "etag2", new byte[11], null);
+
+        assertThat(underTest.getPage("page1")).isPresent();
+        assertThat(underTest.getPage("page2")).isEmpty();
+        assertThat(underTest.getCachedPageBytes()).isEqualTo(4);
+    }
+}
@@ -18,23 +18,41 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.AuthenticatedUserCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.RetryPolicy;
+import com.github.mc1arke.sonarqube.plugin.almclient.UnexpectedStatusException;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Commit;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Discussion;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.MergeRequestNote;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.User;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.StatusLine;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -43,10 +61,12 @@ class GitlabRestClientTest {
     private final CloseableHttpClient closeableHttpClient = mock();
     private final LinkHeaderReader linkHeaderReader = mock();
     private final ObjectMapper objectMapper = mock();
+    private final GitlabResponseCache responseCache = new GitlabResponseCache();
+    private final AuthenticatedUserCache authenticatedUserCache = new AuthenticatedUserCache(mock());
 
     @Test
     void checkErrorThrownOnNonSuccessResponseStatus() throws IOException {
-        GitlabRestClient underTest = new GitlabRestClient("http://url.test/api", "token", linkHeaderReader, objectMapper, () -> closeableHttpClient);
+        GitlabRestClient underTest = new GitlabRestClient("http://url.test/api", "token", linkHeaderReader, objectMapper, () -> closeableHttpClient, responseCache, new RetryPolicy(), authenticatedUserCache);
 
         CloseableHttpResponse closeableHttpResponse = mock();
         StatusLine statusLine = mock();
@@ -58,9 +78,11 @@ class GitlabRestClientTest {
         when(mergeRequestNote.getContent()).thenReturn("note");
 
         assertThatThrownBy(() -> underTest.addMergeRequestDiscussion(101, 99, mergeRequestNote))
-                .isExactlyInstanceOf(IllegalStateException.class)
+                .isExactlyInstanceOf(UnexpectedStatusException.class)
                 .hasMessage("An unexpected response code was returned from the Gitlab API - Expected: 201, Got: 500")
-                .hasNoCause();
+                .hasNoCause()
+                .extracting(ex -> ((UnexpectedStatusException) ex).getStatusCode())
+                .isEqualTo(500);
 
         ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.captor();
         verify(closeableHttpClient).execute(requestArgumentCaptor.capture());
@@ -84,7 +106,7 @@ class GitlabRestClientTest {
 
         MergeRequestNote mergeRequestNote = new MergeRequestNote("Merge request note");
 
-        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, objectMapper, () -> closeableHttpClient);
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, objectMapper, () -> closeableHttpClient, responseCache, new RetryPolicy(), authenticatedUserCache);
         underTest.addMergeRequestDiscussion(123, 321, mergeRequestNote);
 
         ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.captor();
@@ -97,4 +119,231 @@ class GitlabRestClientTest {
         assertThat(request.getEntity().getContent()).hasContent("body=Merge+request+note");
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldReleaseResponseWithoutClosingSharedClient() throws IOException {
+        CloseableHttpResponse closeableHttpResponse = mock();
+        StatusLine statusLine = mock();
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
+        when(closeableHttpClient.execute(any())).thenReturn(closeableHttpResponse);
+
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, objectMapper, () -> closeableHttpClient, responseCache, new RetryPolicy(), authenticatedUserCache);
+        underTest.resolveMergeRequestDiscussion(123, 321, "discussionId");
+
+        verify(closeableHttpResponse).close();
+        verify(closeableHttpClient, never()).close();
+    }
+
+    @Test
+    void shouldRequestEachPageInTurnAndReleasePreviousResponse() throws IOException {
+        CloseableHttpResponse firstPage = createPageResponse("[{\"id\": \"commit1\", \"title\": \"ignored\"}, {\"id\": \"commit2\"}]", "<http://api.url/page2>; rel=\"next\"");
+        CloseableHttpResponse secondPage = createPageResponse("[{\"id\": \"commit3\"}]", null);
+        when(closeableHttpClient.execute(any())).thenReturn(firstPage, secondPage);
+        when(linkHeaderReader.findNextLink("<http://api.url/page2>; rel=\"next\"")).thenReturn(Optional.of("http://api.url/page2?per_page=100&page=2"));
+
+        ObjectMapper realObjectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, realObjectMapper, () -> closeableHttpClient, responseCache, new RetryPolicy(), authenticatedUserCache);
+        List<Commit> commits = underTest.getMergeRequestCommits(123, 321, null);
+
+        assertThat(commits).extracting(Commit::getId).containsExactly("commit1", "commit2", "commit3");
+
+        ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.captor();
+        verify(closeableHttpClient, times(2)).execute(requestArgumentCaptor.capture());
+        assertThat(requestArgumentCaptor.getAllValues())
+                .extracting(request -> request.getRequestLine().getUri())
+                .containsExactly("http://api.url/projects/123/merge_requests/321/commits?per_page=100", "http://api.url/page2?per_page=100&page=2");
+        assertThat(requestArgumentCaptor.getAllValues())
+                .allSatisfy(request -> assertThat(request.getFirstHeader("PRIVATE-TOKEN").getValue()).isEqualTo("token"));
+        verify(firstPage).close();
+        verify(secondPage).close();
+    }
+
+    @Test
+    void shouldReleaseResponseAndStopPagingWhenPageCannotBeParsed() throws IOException {
+        CloseableHttpResponse firstPage = createPageResponse("[{\"id\": \"commit1\"}, {\"id\": ", "<http://api.url/page2>; rel=\"next\"");
+        when(closeableHttpClient.execute(any())).thenReturn(firstPage);
+        when(linkHeaderReader.findNextLink(any())).thenReturn(Optional.of("http://api.url/page2"));
+
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, new ObjectMapper(), () -> closeableHttpClient, responseCache, new RetryPolicy(), authenticatedUserCache);
+
+        assertThatThrownBy(() -> underTest.getMergeRequestCommits(123, 321, null)).isInstanceOf(IOException.class);
+        verify(closeableHttpClient).execute(any());
+        verify(firstPage).close();
+    }
+
+    @Test
+    void shouldReuseCachedPageWhenGitlabReportsItIsUnchanged() throws IOException {
+        CloseableHttpResponse firstResponse = createPageResponse("[{\"id\": \"commit1\"}]", null);
+        when(firstResponse.getFirstHeader("ETag")).thenReturn(new BasicHeader("ETag", "W/\"etag1\""));
+        CloseableHttpResponse notModifiedResponse = mock();
+        StatusLine statusLine = mock();
+        when(statusLine.getStatusCode()).thenReturn(304);
+        when(notModifiedResponse.getStatusLine()).thenReturn(statusLine);
+        when(closeableHttpClient.execute(any())).thenReturn(firstResponse, notModifiedResponse);
+
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, new ObjectMapper(), () -> closeableHttpClient, responseCache, new RetryPolicy(), authenticatedUserCache);
+        underTest.getMergeRequestCommits(123, 321, null);
+        List<Commit> commits = underTest.getMergeRequestCommits(123, 321, null);
+
+        assertThat(commits).extracting(Commit::getId).containsExactly("commit1");
+        ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.captor();
+        verify(closeableHttpClient, times(2)).execute(requestArgumentCaptor.capture());
+        assertThat(requestArgumentCaptor.getAllValues().get(0).getFirstHeader("If-None-Match")).isNull();
+        assertThat(requestArgumentCaptor.getAllValues().get(1).getFirstHeader("If-None-Match").getValue()).isEqualTo("W/\"etag1\"");
+        verify(notModifiedResponse).close();
+    }
+
+    @Test
+    void shouldNotCachePageWithoutEtag() throws IOException {
+        when(closeableHttpClient.execute(any())).then(i -> createPageResponse("[{\"id\": \"commit1\"}]", null));
+
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, new ObjectMapper(), () -> closeableHttpClient, responseCache, new RetryPolicy(), authenticatedUserCache);
+        underTest.getMergeRequestCommits(123, 321, null);
+        List<Commit> commits = underTest.getMergeRequestCommits(123, 321, null);
+
+        assertThat(commits).extracting(Commit::getId).containsExactly("commit1");
+        assertThat(responseCache.getCachedPageBytes()).isZero();
+        ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.captor();
+        verify(closeableHttpClient, times(2)).execute(requestArgumentCaptor.capture());
+        assertThat(requestArgumentCaptor.getAllValues()).allSatisfy(request -> assertThat(request.getFirstHeader("If-None-Match")).isNull());
+    }
+
+    @Test
+    void shouldStreamPageOfUnknownLengthThatIsTooLargeToCache() throws IOException {
+        when(closeableHttpClient.execute(any())).then(i -> {
+            CloseableHttpResponse response = createStatusResponse(200);
+            byte[] body = "[{\"id\": \"commit1\"}, {\"id\": \"commit2\"}]".getBytes(StandardCharsets.UTF_8);
+            when(response.getEntity()).thenReturn(new InputStreamEntity(new ByteArrayInputStream(body), -1, ContentType.APPLICATION_JSON));
+            when(response.getFirstHeader("ETag")).thenReturn(new BasicHeader("ETag", "W/\"etag1\""));
+            return response;
+        });
+        GitlabResponseCache smallResponseCache = new GitlabResponseCache(16, 10);
+
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, new ObjectMapper(), () -> closeableHttpClient, smallResponseCache, new RetryPolicy(), authenticatedUserCache);
+        underTest.getMergeRequestCommits(123, 321, null);
+        List<Commit> commits = underTest.getMergeRequestCommits(123, 321, null);
+
+        assertThat(commits).extracting(Commit::getId).containsExactly("commit1", "commit2");
+        assertThat(smallResponseCache.getCachedPageBytes()).isZero();
+        ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.captor();
+        verify(closeableHttpClient, times(2)).execute(requestArgumentCaptor.capture());
+        assertThat(requestArgumentCaptor.getAllValues()).allSatisfy(request -> assertThat(request.getFirstHeader("If-None-Match")).isNull());
+    }
+
+    @Test
+    void shouldReuseCommitsForUnchangedHeadSha() throws IOException {
+        when(closeableHttpClient.execute(any())).then(i -> createPageResponse("[{\"id\": \"commit1\"}]", null));
+
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, new ObjectMapper(), () -> closeableHttpClient, responseCache, new RetryPolicy(), authenticatedUserCache);
+        underTest.getMergeRequestCommits(123, 321, "sha1");
+        List<Commit> commits = underTest.getMergeRequestCommits(123, 321, "sha1");
+        underTest.getMergeRequestCommits(123, 321, "sha2");
+
+        assertThat(commits).extracting(Commit::getId).containsExactly("commit1");
+        verify(closeableHttpClient, times(2)).execute(any());
+    }
+
+    @Test
+    void shouldRetryIdempotentRequestAfterTransientFailure() throws IOException {
+        CloseableHttpResponse unavailableResponse = createStatusResponse(503);
+        CloseableHttpResponse successResponse = createStatusResponse(200);
+        when(closeableHttpClient.execute(any())).thenReturn(unavailableResponse, successResponse);
+
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, objectMapper, () -> closeableHttpClient, responseCache, new RetryPolicy(3, 10, Duration.ZERO, Duration.ZERO), authenticatedUserCache);
+        underTest.resolveMergeRequestDiscussion(123, 321, "discussionId");
+
+        verify(closeableHttpClient, times(2)).execute(any());
+        verify(unavailableResponse).close();
+        verify(successResponse).close();
+    }
+
+    @Test
+    void shouldReturnExistingDiscussionRatherThanCreatingDuplicateAfterGatewayFailure() throws IOException {
+        CloseableHttpResponse gatewayResponse = createStatusResponse(502);
+        CloseableHttpResponse discussionsPage = createPageResponse("[{\"id\": \"other\", \"notes\": [{\"id\": 1, \"body\": \"other note\"}]}, "
+                + "{\"id\": \"created\", \"notes\": [{\"id\": 2, \"body\": \"note\"}]}]", null);
+        when(closeableHttpClient.execute(any())).thenReturn(gatewayResponse, discussionsPage);
+
+        ObjectMapper realObjectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, realObjectMapper, () -> closeableHttpClient, responseCache, new RetryPolicy(3, 10, Duration.ZERO, Duration.ZERO), authenticatedUserCache);
+        Discussion discussion = underTest.addMergeRequestDiscussion(123, 321, new MergeRequestNote("note"));
+
+        assertThat(discussion.getId()).isEqualTo("created");
+        ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.captor();
+        verify(closeableHttpClient, times(2)).execute(requestArgumentCaptor.capture());
+        assertThat(requestArgumentCaptor.getAllValues())
+                .extracting(request -> request.getRequestLine().getMethod())
+                .containsExactly("POST", "GET");
+    }
+
+    @Test
+    void shouldRepeatCreateOnceLookupFindsNoMatchAfterGatewayTimeout() throws IOException {
+        CloseableHttpResponse gatewayResponse = createStatusResponse(504);
+        CloseableHttpResponse emptyDiscussionsPage = createPageResponse("[]", null);
+        CloseableHttpResponse createdResponse = createStatusResponse(201);
+        when(closeableHttpClient.execute(any())).thenReturn(gatewayResponse, emptyDiscussionsPage, createdResponse);
+
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, new ObjectMapper(), () -> closeableHttpClient, responseCache, new RetryPolicy(3, 10, Duration.ZERO, Duration.ZERO), authenticatedUserCache);
+        underTest.addMergeRequestDiscussionNote(123, 321, "discussionId", "note");
+
+        ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.captor();
+        verify(closeableHttpClient, times(3)).execute(requestArgumentCaptor.capture());
+        assertThat(requestArgumentCaptor.getAllValues())
+                .extracting(request -> request.getRequestLine().getMethod())
+                .containsExactly("POST", "GET", "POST");
+    }
+
+    @Test
+    void shouldOnlyRetrieveCurrentUserOnceForEachToken() throws IOException {
+        when(closeableHttpClient.execute(any())).thenAnswer(invocation -> createPageResponse("{\"username\": \"sonarqube\"}", null));
+
+        ObjectMapper realObjectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        User firstUser = new GitlabRestClient("http://api.url", "token", linkHeaderReader, realObjectMapper, () -> closeableHttpClient, responseCache, new RetryPolicy(), authenticatedUserCache).getCurrentUser();
+        User secondUser = new GitlabRestClient("http://api.url", "token", linkHeaderReader, realObjectMapper, () -> closeableHttpClient, responseCache, new RetryPolicy(), authenticatedUserCache).getCurrentUser();
+        new GitlabRestClient("http://api.url", "otherToken", linkHeaderReader, realObjectMapper, () -> closeableHttpClient, responseCache, new RetryPolicy(), authenticatedUserCache).getCurrentUser();
+
+        assertThat(firstUser.getUsername()).isEqualTo("sonarqube");
+        assertThat(secondUser).isSameAs(firstUser);
+        verify(closeableHttpClient, times(2)).execute(any());
+    }
+
+    @Test
+    void shouldRetrieveCurrentUserAgainOnceTokenIsRejected() throws IOException {
+        CloseableHttpResponse unauthorisedResponse = createStatusResponse(401);
+        when(closeableHttpClient.execute(any())).thenAnswer(invocation -> createPageResponse("{\"username\": \"sonarqube\"}", null))
+                .thenReturn(unauthorisedResponse)
+                .thenAnswer(invocation -> createPageResponse("{\"username\": \"other\"}", null));
+
+        ObjectMapper realObjectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, realObjectMapper, () -> closeableHttpClient, responseCache, new RetryPolicy(), authenticatedUserCache);
+        User firstUser = underTest.getCurrentUser();
+        assertThatThrownBy(() -> underTest.getMergeRequest("project", 123))
+                .isExactlyInstanceOf(UnexpectedStatusException.class);
+        User secondUser = underTest.getCurrentUser();
+
+        assertThat(firstUser.getUsername()).isEqualTo("sonarqube");
+        assertThat(secondUser.getUsername()).isEqualTo("other");
+        verify(closeableHttpClient, times(3)).execute(any());
+    }
+
+    private static CloseableHttpResponse createStatusResponse(int status) {
+        CloseableHttpResponse closeableHttpResponse = mock();
+        StatusLine statusLine = mock();
+        when(statusLine.getStatusCode()).thenReturn(status);
+        when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
+        return closeableHttpResponse;
+    }
+
+    private static CloseableHttpResponse createPageResponse(String body, String linkHeader) {
+        CloseableHttpResponse closeableHttpResponse = mock();
+        StatusLine statusLine = mock();
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
+        when(closeableHttpResponse.getEntity()).thenReturn(new StringEntity(body, ContentType.APPLICATION_JSON));
+        if (null != linkHeader) {
+            when(closeableHttpResponse.getFirstHeader("Link")).thenReturn(new BasicHeader("Link", linkHeader));
+        }
+        return closeableHttpResponse;
+    }
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
+import com.github.mc1arke.sonarqube.plugin.almclient.UnexpectedStatusException;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+import org.sonar.db.alm.setting.ALM;
+import org.sonar.db.alm.setting.AlmSettingDto;
+
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AlmHostBulkheadsTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1000000);
+
+    private final Clock clock = mock();
+
+    AlmHostBulkheadsTest() {
+        when(clock.instant()).thenReturn(NOW);
+    }
+
+    @Test
+    void shouldRejectInvalidConfiguration() {
+        Configuration configuration = mock();
+        when(configuration.getInt(AlmHostBulkheads.MAX_CONCURRENT)).thenReturn(Optional.of(0));
+
+        assertThatThrownBy(() -> new AlmHostBulkheads(configuration))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage(AlmHostBulkheads.MAX_CONCURRENT + " must be greater than 0");
+    }
+
+    @Test
+    void shouldRunDecorationAgainstHealthyHost() {
+        AlmHostBulkheads underTest = new AlmHostBulkheads(1, 0, 2, Duration.ofSeconds(60), Duration.ofSeconds(120), Duration.ZERO, clock);
+        AtomicInteger runs = new AtomicInteger();
+
+        underTest.run(almSetting(ALM.GITHUB, "https://api.github.com"), runs::incrementAndGet);
+        underTest.run(almSetting(ALM.GITHUB, "https://api.github.com"), runs::incrementAndGet);
+
+        assertThat(runs).hasValue(2);
+        assertThat(underTest.getDeferredCount()).isZero();
+    }
+
+    @Test
+    void shouldOpenCircuitAfterConsecutiveFailuresAndDeferFurtherDecorations() {
+        AlmHostBulkheads underTest = new AlmHostBulkheads(1, 0, 2, Duration.ofSeconds(60), Duration.ofSeconds(120), Duration.ZERO, clock);
+        AlmSettingDto almSetting = almSetting(ALM.BITBUCKET, "https://bitbucket.example.com/");
+        AtomicInteger runs = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> underTest.run(almSetting, () -> {
+                throw hostFailure();
+            })).hasMessage("dummy");
+        }
+
+        assertThat(underTest.isCircuitOpen(almSetting)).isTrue();
+        assertThatThrownBy(() -> underTest.run(almSetting, runs::incrementAndGet))
+                .isExactlyInstanceOf(DecorationDeferredException.class)
+                .hasMessage("Decorations against https://bitbucket.example.com are suspended until " + NOW.plusSeconds(120) + " after repeated failures")
+                .satisfies(ex -> assertThat(((DecorationDeferredException) ex).getRetryAfter()).isEqualTo(Duration.ofSeconds(120)));
+        assertThat(runs).hasValue(0);
+        assertThat(underTest.getCircuitOpenCount()).isEqualTo(1);
+        assertThat(underTest.getDeferredCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotDeferDecorationsAgainstOtherHostsWhenCircuitIsOpen() {
+        AlmHostBulkheads underTest = new AlmHostBulkheads(1, 0, 1, Duration.ofSeconds(60), Duration.ofSeconds(120), Duration.ZERO, clock);
+        AlmSettingDto unhealthyAlm = almSetting(ALM.BITBUCKET, "https://bitbucket.example.com");
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThatThrownBy(() -> underTest.run(unhealthyAlm, () -> {
+            throw hostFailure();
+        })).hasMessage("dummy");
+        underTest.run(almSetting(ALM.GITHUB, "https://api.github.com"), runs::incrementAndGet);
+        underTest.run(almSetting(ALM.BITBUCKET_CLOUD, null), runs::incrementAndGet);
+
+        assertThat(underTest.isCircuitOpen(unhealthyAlm)).isTrue();
+        assertThat(runs).hasValue(2);
+    }
+
+    @Test
+    void shouldTreatSlowDecorationsAsFailures() {
+        AlmHostBulkheads underTest = new AlmHostBulkheads(1, 0, 1, Duration.ofSeconds(30), Duration.ofSeconds(120), Duration.ZERO, clock);
+        AlmSettingDto almSetting = almSetting(ALM.GITLAB, "https://gitlab.example.com");
+
+        underTest.run(almSetting, () -> when(clock.instant()).thenReturn(NOW.plusSeconds(31)));
+
+        assertThat(underTest.isCircuitOpen(almSetting)).isTrue();
+    }
+
+    @Test
+    void shouldCloseCircuitOnceTrialDecorationSucceeds() {
+        AlmHostBulkheads underTest = new AlmHostBulkheads(1, 0, 1, Duration.ofSeconds(60), Duration.ofSeconds(120), Duration.ZERO, clock);
+        AlmSettingDto almSetting = almSetting(ALM.AZURE_DEVOPS, "https://dev.azure.com/org");
+        AtomicInteger runs = new AtomicInteger();
+        assertThatThrownBy(() -> underTest.run(almSetting, () -> {
+            throw hostFailure();
+        })).hasMessage("dummy");
+
+        when(clock.instant()).thenReturn(NOW.plusSeconds(121));
+        underTest.run(almSetting, runs::incrementAndGet);
+        underTest.run(almSetting, runs::incrementAndGet);
+
+        assertThat(runs).hasValue(2);
+        assertThat(underTest.isCircuitOpen(almSetting)).isFalse();
+    }
+
+    @Test
+    void shouldReopenCircuitWhenTrialDecorationFails() {
+        AlmHostBulkheads underTest = new AlmHostBulkheads(1, 0, 3, Duration.ofSeconds(60), Duration.ofSeconds(120), Duration.ZERO, clock);
+        AlmSettingDto almSetting = almSetting(ALM.GITLAB, "https://gitlab.example.com");
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> underTest.run(almSetting, () -> {
+                throw hostFailure();
+            })).hasMessage("dummy");
+        }
+
+        when(clock.instant()).thenReturn(NOW.plusSeconds(121));
+        assertThatThrownBy(() -> underTest.run(almSetting, () -> {
+            throw hostFailure();
+        })).hasMessage("dummy");
+
+        assertThat(underTest.isCircuitOpen(almSetting)).isTrue();
+        assertThat(underTest.getCircuitOpenCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldDeferDecorationsWhenBulkheadAndQueueAreFull() throws Exception {
+        AlmHostBulkheads underTest = new AlmHostBulkheads(1, 0, 5, Duration.ofSeconds(60), Duration.ofSeconds(120), Duration.ofSeconds(5), clock);
+        AlmSettingDto almSetting = almSetting(ALM.BITBUCKET, "https://bitbucket.example.com");
+        AtomicInteger runs = new AtomicInteger();
+
+        runWhilstHostIsBusy(underTest, almSetting, () -> assertThatThrownBy(() -> underTest.run(almSetting, runs::incrementAndGet))
+                .isExactlyInstanceOf(DecorationDeferredException.class)
+                .hasMessage("Too many decorations are already waiting on https://bitbucket.example.com"));
+
+        assertThat(runs).hasValue(0);
+        assertThat(underTest.getDeferredCount()).isEqualTo(1);
+        assertThat(underTest.isCircuitOpen(almSetting)).isFalse();
+    }
+
+    @Test
+    void shouldDeferQueuedDecorationsWhenNoSlotBecomesFree() throws Exception {
+        AlmHostBulkheads underTest = new AlmHostBulkheads(1, 1, 5, Duration.ofSeconds(60), Duration.ofSeconds(120), Duration.ofMillis(10), clock);
+        AlmSettingDto almSetting = almSetting(ALM.BITBUCKET, "https://bitbucket.example.com");
+        AtomicInteger runs = new AtomicInteger();
+
+        runWhilstHostIsBusy(underTest, almSetting, () -> assertThatThrownBy(() -> underTest.run(almSetting, runs::incrementAndGet))
+                .isExactlyInstanceOf(DecorationDeferredException.class)
+                .hasMessage("Timed out waiting for a free decoration slot for https://bitbucket.example.com"));
+        underTest.run(almSetting, runs::incrementAndGet);
+
+        assertThat(runs).hasValue(1);
+    }
+
+    private static void runWhilstHostIsBusy(AlmHostBulkheads underTest, AlmSettingDto almSetting, Runnable action) throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> busyDecoration = CompletableFuture.runAsync(() -> underTest.run(almSetting, () -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        try {
+            action.run();
+        } finally {
+            release.countDown();
+            busyDecoration.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void shouldNotOpenCircuitForFailuresThatDoNotShowHostIsUnhealthy() {
+        AlmHostBulkheads underTest = new AlmHostBulkheads(1, 0, 1, Duration.ofSeconds(60), Duration.ofSeconds(120), Duration.ZERO, clock);
+        AlmSettingDto almSetting = almSetting(ALM.GITLAB, "https://gitlab.example.com");
+        List<RuntimeException> failures = List.of(
+                new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "dummy"),
+                new UnexpectedStatusException("dummy", 404),
+                new IllegalStateException("dummy", new UnexpectedStatusException("dummy", 403)),
+                new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "dummy", new ConnectException("dummy")),
+                new IllegalStateException("dummy"));
+
+        for (RuntimeException failure : failures) {
+            assertThatThrownBy(() -> underTest.run(almSetting, () -> {
+                throw failure;
+            })).isSameAs(failure);
+        }
+
+        assertThat(underTest.isCircuitOpen(almSetting)).isFalse();
+        assertThat(underTest.getCircuitOpenCount()).isZero();
+    }
+
+    @Test
+    void shouldOpenCircuitForFailuresThatShowHostIsUnhealthy() {
+        List<RuntimeException> failures = List.of(
+                new UnexpectedStatusException("dummy", 500),
+                new UnexpectedStatusException("dummy", 429),
+                new IllegalStateException("dummy", new SocketTimeoutException("dummy")),
+                new UncheckedIOException(new ConnectException("dummy")));
+
+        for (RuntimeException failure : failures) {
+            AlmHostBulkheads underTest = new AlmHostBulkheads(1, 0, 1, Duration.ofSeconds(60), Duration.ofSeconds(120), Duration.ZERO, clock);
+            AlmSettingDto almSetting = almSetting(ALM.GITLAB, "https://gitlab.example.com");
+
+            assertThatThrownBy(() -> underTest.run(almSetting, () -> {
+                throw failure;
+            })).isSameAs(failure);
+
+            assertThat(underTest.isCircuitOpen(almSetting)).isTrue();
+        }
+    }
+
+    @Test
+    void shouldLeaveCircuitHalfOpenWhenTrialFailsForReasonUnrelatedToHost() {
+        AlmHostBulkheads underTest = new AlmHostBulkheads(1, 0, 1, Duration.ofSeconds(60), Duration.ofSeconds(120), Duration.ZERO, clock);
+        AlmSettingDto almSetting = almSetting(ALM.GITLAB, "https://gitlab.example.com");
+        AtomicInteger runs = new AtomicInteger();
+        assertThatThrownBy(() -> underTest.run(almSetting, () -> {
+            throw hostFailure();
+        })).hasMessage("dummy");
+
+        when(clock.instant()).thenReturn(NOW.plusSeconds(121));
+        assertThatThrownBy(() -> underTest.run(almSetting, () -> {
+            throw new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "dummy");
+        })).isExactlyInstanceOf(InvalidConfigurationException.class);
+        underTest.run(almSetting, runs::incrementAndGet);
+
+        assertThat(runs).hasValue(1);
+        assertThat(underTest.isCircuitOpen(almSetting)).isFalse();
+        assertThat(underTest.getCircuitOpenCount()).isEqualTo(1);
+    }
+
+    private static RuntimeException hostFailure() {
+        return new IllegalStateException("dummy", new ConnectException("Connection refused"));
+    }
+
+    private static AlmSettingDto almSetting(ALM alm, String url) {
+        AlmSettingDto almSettingDto = mock();
+        when(almSettingDto.getAlm()).thenReturn(alm);
+        when(almSettingDto.getUrl()).thenReturn(url);
+        return almSettingDto;
+    }
+}
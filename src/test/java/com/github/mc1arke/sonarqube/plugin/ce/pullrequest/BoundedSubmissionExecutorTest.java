@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedSubmissionExecutorTest {
+
+    private final BoundedSubmissionExecutor underTest = new BoundedSubmissionExecutor(4);
+
+    @AfterEach
+    void tearDown() {
+        underTest.stop();
+    }
+
+    @Test
+    void shouldRejectParallelismLowerThanOne() {
+        List<Integer> items = List.of(1, 2);
+        assertThatThrownBy(() -> underTest.submitAll(0, items, item -> {}))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Parallelism must be at least 1");
+    }
+
+    @Test
+    void shouldRejectMaximumThreadsLowerThanOne() {
+        assertThatThrownBy(() -> new BoundedSubmissionExecutor(0))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Maximum threads must be at least 1");
+    }
+
+    @Test
+    void shouldRunOnCallingThreadWhenParallelismIsOne() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        underTest.submitAll(1, List.of(1, 2, 3), item -> threads.add(Thread.currentThread()));
+
+        assertThat(threads).containsExactly(Thread.currentThread());
+    }
+
+    @Test
+    void shouldNeverExceedConfiguredParallelism() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Set<Integer> processed = ConcurrentHashMap.newKeySet();
+        List<Integer> items = IntStream.range(0, 50).boxed().collect(Collectors.toList());
+
+        underTest.submitAll(3, items, item -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            processed.add(item);
+            inFlight.decrementAndGet();
+        });
+
+        assertThat(processed).hasSize(50);
+        assertThat(maxInFlight.get()).isBetween(1, 3);
+    }
+
+    @Test
+    void shouldSubmitConcurrently() {
+        CountDownLatch latch = new CountDownLatch(2);
+
+        underTest.submitAll(2, List.of(1, 2), item -> {
+            latch.countDown();
+            try {
+                if (!latch.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Submissions were not run concurrently");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertThat(latch.getCount()).isZero();
+    }
+
+    @Test
+    void shouldAttemptAllItemsAndThrowFailuresInSubmissionOrder() {
+        Set<Integer> processed = ConcurrentHashMap.newKeySet();
+        List<Integer> items = List.of(1, 2, 3, 4, 5, 6);
+
+        assertThatThrownBy(() -> underTest.submitAll(4, items, item -> {
+            if (item == 2) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            processed.add(item);
+            if (item % 2 == 0) {
+                throw new IllegalStateException("Failure " + item);
+            }
+        }))
+                .isExactlyInstanceOf(IllegalStateException.class)
+                .hasMessage("Failure 2")
+                .satisfies(ex -> assertThat(ex.getSuppressed()).extracting(Throwable::getMessage).containsExactly("Failure 4", "Failure 6"));
+
+        assertThat(processed).containsExactlyInAnyOrder(1, 2, 3, 4, 5, 6);
+    }
+
+    @Test
+    void shouldCollectFailuresWhenRunningSequentially() {
+        assertThatThrownBy(() -> underTest.submitAll(1, List.of(1, 2, 3), item -> {
+            throw new IllegalStateException("Failure " + item);
+        }))
+                .hasMessage("Failure 1")
+                .satisfies(ex -> assertThat(ex.getSuppressed()).extracting(Throwable::getMessage).containsExactly("Failure 2", "Failure 3"));
+    }
+
+    @Test
+    void shouldShareBoundedThreadsBetweenSubmissions() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        List<Integer> items = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+
+        underTest.submitAll(8, items, item -> threads.add(Thread.currentThread()));
+        underTest.submitAll(8, items, item -> threads.add(Thread.currentThread()));
+
+        assertThat(threads).hasSizeBetween(1, 4).allSatisfy(thread -> assertThat(thread.isDaemon()).isTrue());
+    }
+
+    @Test
+    void shouldRunOnCallingThreadOnceStopped() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        underTest.stop();
+
+        underTest.submitAll(2, List.of(1, 2, 3), item -> threads.add(Thread.currentThread()));
+
+        assertThat(threads).containsExactly(Thread.currentThread());
+    }
+
+}
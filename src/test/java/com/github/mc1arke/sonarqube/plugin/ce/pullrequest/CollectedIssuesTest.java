@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.Test;
+import org.sonar.api.issue.IssueStatus;
+import org.sonar.ce.task.projectanalysis.component.Component;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CollectedIssuesTest {
+
+    @Test
+    void shouldGroupIssuesWhenCollected() {
+        Component firstFile = mock();
+        Component secondFile = mock();
+        Component directory = mock();
+
+        PostAnalysisIssueVisitor.ComponentIssue firstFileIssue = componentIssue(firstFile, IssueStatus.OPEN, null, "first");
+        PostAnalysisIssueVisitor.ComponentIssue secondFileIssue = componentIssue(secondFile, IssueStatus.OPEN, null, "second");
+        PostAnalysisIssueVisitor.ComponentIssue anotherFirstFileIssue = componentIssue(firstFile, IssueStatus.OPEN, null, "first");
+        PostAnalysisIssueVisitor.ComponentIssue directoryIssue = componentIssue(directory, IssueStatus.OPEN, null, null);
+        PostAnalysisIssueVisitor.ComponentIssue resolvedIssue = componentIssue(firstFile, IssueStatus.OPEN, "FIXED", "first");
+        PostAnalysisIssueVisitor.ComponentIssue acceptedIssue = componentIssue(secondFile, IssueStatus.ACCEPTED, null, "second");
+
+        List<PostAnalysisIssueVisitor.ComponentIssue> issues = List.of(firstFileIssue, secondFileIssue, anotherFirstFileIssue,
+                directoryIssue, resolvedIssue, acceptedIssue);
+        CollectedIssues underTest = CollectedIssues.of(issues);
+
+        assertThat(underTest.getIssues()).isEqualTo(issues);
+        assertThat(underTest.getOpenIssueCount()).isEqualTo(5);
+        assertThat(underTest.getScmReportableIssues()).containsExactly(firstFileIssue, secondFileIssue, anotherFirstFileIssue);
+        assertThat(underTest.getScmReportableIssuesByComponent()).containsOnlyKeys(firstFile, secondFile);
+        assertThat(underTest.getScmReportableIssuesByComponent().get(firstFile)).containsExactly(firstFileIssue, anotherFirstFileIssue);
+        assertThat(underTest.getScmReportableIssuesByComponent().get(secondFile)).containsExactly(secondFileIssue);
+    }
+
+    @Test
+    void shouldReturnEmptyGroupsWhenNoIssuesCollected() {
+        CollectedIssues underTest = CollectedIssues.of(List.of());
+
+        assertThat(underTest.getIssues()).isEmpty();
+        assertThat(underTest.getOpenIssueCount()).isZero();
+        assertThat(underTest.getScmReportableIssues()).isEmpty();
+        assertThat(underTest.getScmReportableIssuesByComponent()).isEmpty();
+    }
+
+    private static PostAnalysisIssueVisitor.ComponentIssue componentIssue(Component component, IssueStatus issueStatus,
+                                                                           String resolution, String scmPath) {
+        PostAnalysisIssueVisitor.LightIssue lightIssue = mock();
+        when(lightIssue.issueStatus()).thenReturn(issueStatus);
+        when(lightIssue.resolution()).thenReturn(resolution);
+        PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock();
+        when(componentIssue.getComponent()).thenReturn(component);
+        when(componentIssue.getIssue()).thenReturn(lightIssue);
+        when(componentIssue.getScmPath()).thenReturn(Optional.ofNullable(scmPath));
+        return componentIssue;
+    }
+}
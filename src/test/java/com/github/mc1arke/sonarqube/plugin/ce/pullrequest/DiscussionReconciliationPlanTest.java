@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DiscussionReconciliationPlanTest {
+
+    @Test
+    void shouldKeepDiscussionsForOpenIssuesAndOnlyCommentOnNewIssues() {
+        PostAnalysisIssueVisitor.ComponentIssue existingIssue = createIssue("issue1", 10);
+        PostAnalysisIssueVisitor.ComponentIssue newIssue = createIssue("issue2", 20);
+        DiscussionReconciliationPlan.ExistingDiscussion<String, String> discussion = createDiscussion("discussion1", "issue1", false, false);
+
+        DiscussionReconciliationPlan<String, String> underTest = DiscussionReconciliationPlan.create(List.of(discussion), List.of(existingIssue, newIssue), Optional.empty());
+
+        assertThat(underTest.getKeptIssueKeys()).containsExactly("issue1");
+        assertThat(underTest.getIssuesToComment()).containsExactly(newIssue);
+        assertThat(underTest.getDiscussionActions()).isEmpty();
+    }
+
+    @Test
+    void shouldNotCommentOnIssuesWithoutLine() {
+        PostAnalysisIssueVisitor.ComponentIssue fileIssue = createIssue("issue1", null);
+
+        DiscussionReconciliationPlan<String, String> underTest = DiscussionReconciliationPlan.create(List.of(), List.of(fileIssue), Optional.empty());
+
+        assertThat(underTest.getIssuesToComment()).isEmpty();
+    }
+
+    @Test
+    void shouldResolveOrCommentOnDiscussionsForClosedIssues() {
+        DiscussionReconciliationPlan.ExistingDiscussion<String, String> discussion1 = createDiscussion("discussion1", "issue1", false, false);
+        DiscussionReconciliationPlan.ExistingDiscussion<String, String> discussion2 = createDiscussion("discussion2", "issue2", false, true);
+        DiscussionReconciliationPlan.ExistingDiscussion<String, String> discussion3 = createDiscussion("discussion3", "issue3", true, true);
+
+        DiscussionReconciliationPlan<String, String> underTest = DiscussionReconciliationPlan.create(List.of(discussion1, discussion2, discussion3), List.of(), Optional.empty());
+
+        assertThat(underTest.getDiscussionActions())
+                .extracting(action -> action.getExistingDiscussion().getDiscussion(), DiscussionReconciliationPlan.DiscussionAction::getActionType)
+                .containsExactly(tuple("discussion1", DiscussionReconciliationPlan.ActionType.RESOLVE),
+                        tuple("discussion2", DiscussionReconciliationPlan.ActionType.FINAL_COMMENT_ON_ISSUE));
+        assertThat(underTest.getKeptIssueKeys()).isEmpty();
+    }
+
+    @Test
+    void shouldDeleteOrCommentOnSummaryDiscussionsWhenNotRetained() {
+        DiscussionReconciliationPlan.ExistingDiscussion<String, String> discussion1 = createDiscussion("discussion1", "decorator-summary-comment", false, false);
+        DiscussionReconciliationPlan.ExistingDiscussion<String, String> discussion2 = createDiscussion("discussion2", "decorator-summary-comment", false, true);
+
+        DiscussionReconciliationPlan<String, String> underTest = DiscussionReconciliationPlan.create(List.of(discussion1, discussion2), List.of(), Optional.empty());
+
+        assertThat(underTest.getDiscussionActions())
+                .extracting(action -> action.getExistingDiscussion().getDiscussion(), DiscussionReconciliationPlan.DiscussionAction::getActionType)
+                .containsExactly(tuple("discussion1", DiscussionReconciliationPlan.ActionType.DELETE),
+                        tuple("discussion2", DiscussionReconciliationPlan.ActionType.FINAL_COMMENT_ON_SUMMARY));
+    }
+
+    @Test
+    void shouldLeaveSummaryDiscussionWhenRetained() {
+        DiscussionReconciliationPlan.ExistingDiscussion<String, String> discussion = createDiscussion("discussion1", "decorator-summary-comment", false, false);
+
+        DiscussionReconciliationPlan<String, String> underTest = DiscussionReconciliationPlan.create(List.of(discussion), List.of(), Optional.of("discussion1"));
+
+        assertThat(underTest.getDiscussionActions()).isEmpty();
+        assertThat(underTest.getKeptIssueKeys()).isEmpty();
+    }
+
+    @Test
+    void shouldOnlyLeaveRetainedSummaryDiscussion() {
+        DiscussionReconciliationPlan.ExistingDiscussion<String, String> discussion1 = createDiscussion("discussion1", "decorator-summary-comment", false, false);
+        DiscussionReconciliationPlan.ExistingDiscussion<String, String> discussion2 = createDiscussion("discussion2", "decorator-summary-comment", false, false);
+        DiscussionReconciliationPlan.ExistingDiscussion<String, String> discussion3 = createDiscussion("discussion3", "decorator-summary-comment", false, true);
+
+        DiscussionReconciliationPlan<String, String> underTest = DiscussionReconciliationPlan.create(List.of(discussion1, discussion2, discussion3), List.of(), Optional.of("discussion2"));
+
+        assertThat(underTest.getDiscussionActions())
+                .extracting(action -> action.getExistingDiscussion().getDiscussion(), DiscussionReconciliationPlan.DiscussionAction::getActionType)
+                .containsExactly(tuple("discussion1", DiscussionReconciliationPlan.ActionType.DELETE),
+                        tuple("discussion3", DiscussionReconciliationPlan.ActionType.FINAL_COMMENT_ON_SUMMARY));
+    }
+
+    private static DiscussionReconciliationPlan.ExistingDiscussion<String, String> createDiscussion(String discussion, String issueKey,
+                                                                                                 boolean resolved, boolean notesFromOtherUsers) {
+        return new DiscussionReconciliationPlan.ExistingDiscussion<>(discussion, List.of("note"),
+                new DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier("project", issueKey), resolved, notesFromOtherUsers);
+    }
+
+    private static PostAnalysisIssueVisitor.ComponentIssue createIssue(String key, Integer line) {
+        PostAnalysisIssueVisitor.LightIssue lightIssue = mock();
+        when(lightIssue.key()).thenReturn(key);
+        when(lightIssue.getLine()).thenReturn(line);
+        PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock();
+        when(componentIssue.getIssue()).thenReturn(lightIssue);
+        return componentIssue;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DiscussionSnapshotTest {
+
+    @Test
+    void shouldLoadNotesForEachDiscussionOnce() {
+        Map<String, List<String>> notes = Map.of("discussion1", List.of("note1", "note2"), "discussion2", List.of("note3"));
+        AtomicInteger loads = new AtomicInteger();
+
+        DiscussionSnapshot<String, String> underTest = DiscussionSnapshot.load(List.of("discussion1", "discussion2"), discussion -> {
+            loads.incrementAndGet();
+            return notes.get(discussion);
+        }, note -> note, note -> Optional.empty());
+
+        assertThat(underTest.getDiscussions()).containsExactly("discussion1", "discussion2");
+        assertThat(underTest.getNotes("discussion1")).containsExactly("note1", "note2");
+        assertThat(underTest.getNotes("discussion1")).containsExactly("note1", "note2");
+        assertThat(underTest.getNotes("discussion2")).containsExactly("note3");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void shouldRejectDiscussionFromOutsideSnapshot() {
+        DiscussionSnapshot<String, String> underTest = DiscussionSnapshot.load(List.of("discussion1"), discussion -> List.of(), note -> note, note -> Optional.empty());
+
+        assertThatThrownBy(() -> underTest.getNotes("discussion2"))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Discussion is not part of this snapshot");
+    }
+
+    @Test
+    void shouldRetainNoteContentAndIssueDetailsAfterFirstUse() {
+        AtomicInteger contentLoads = new AtomicInteger();
+        AtomicInteger parses = new AtomicInteger();
+        DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier identifier = new DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier("project", "issue");
+
+        DiscussionSnapshot<String, String> underTest = DiscussionSnapshot.load(List.of("discussion1"), discussion -> List.of("note1", "note2"), note -> {
+            contentLoads.incrementAndGet();
+            return "note2".equals(note) ? null : "content";
+        }, note -> {
+            parses.incrementAndGet();
+            return Optional.of(identifier);
+        });
+
+        assertThat(underTest.getNoteContent("note1")).isEqualTo("content");
+        assertThat(underTest.getNoteContent("note1")).isEqualTo("content");
+        assertThat(underTest.getNoteContent("note2")).isNull();
+        assertThat(underTest.getNoteContent("note2")).isNull();
+        assertThat(underTest.getIssueIdentifier("note1")).contains(identifier);
+        assertThat(underTest.getIssueIdentifier("note1")).contains(identifier);
+
+        assertThat(contentLoads).hasValue(2);
+        assertThat(parses).hasValue(1);
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NoteIssueLinkParserTest {
+
+    private final NoteIssueLinkParser underTest = new NoteIssueLinkParser("View in SonarQube", "See in SonarQube");
+
+    @Test
+    void shouldRejectParserWithoutLabels() {
+        assertThatThrownBy(NoteIssueLinkParser::new)
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage("At least one link label must be provided");
+    }
+
+    @Test
+    void shouldParseIssueLink() {
+        Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier> result = underTest.parse("**Message:** Remove this\n\n"
+                + "[View in SonarQube](https://sonarqube.example.com/project/issues?id=project&pullRequest=123&issues=AY-issue&open=AY-issue)");
+
+        assertThat(result).hasValueSatisfying(identifier -> {
+            assertThat(identifier.getProjectKey()).isEqualTo("project");
+            assertThat(identifier.getIssueKey()).isEqualTo("AY-issue");
+            assertThat(identifier.isSummary()).isFalse();
+        });
+    }
+
+    @Test
+    void shouldIdentifyNoteFromMarkerWithoutLink() {
+        Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier> result = underTest.parse(
+                NoteMarker.addMarker("project", "AY-issue", "**Message:** Remove this"));
+
+        assertThat(result).hasValueSatisfying(identifier -> {
+            assertThat(identifier.getProjectKey()).isEqualTo("project");
+            assertThat(identifier.getIssueKey()).isEqualTo("AY-issue");
+            assertThat(identifier.getContentHash()).contains(NoteMarker.hash("**Message:** Remove this"));
+        });
+    }
+
+    @Test
+    void shouldFallBackToLinkWhenMarkerIsInvalid() {
+        Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier> result = underTest.parse("<!-- sonarqube-community-branch-plugin project=project -->\n"
+                + "[View in SonarQube](https://sonarqube.example.com/project/issues?id=project&issues=issue)");
+
+        assertThat(result).hasValueSatisfying(identifier -> {
+            assertThat(identifier.getIssueKey()).isEqualTo("issue");
+            assertThat(identifier.getContentHash()).isEmpty();
+        });
+    }
+
+    @Test
+    void shouldParseSecurityHotspotLink() {
+        Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier> result = underTest.parse(
+                "[View in SonarQube](https://sonarqube.example.com/security_hotspots?id=project&pullRequest=123&hotspots=AY-hotspot&issues=other)");
+
+        assertThat(result).hasValueSatisfying(identifier -> assertThat(identifier.getIssueKey()).isEqualTo("AY-hotspot"));
+    }
+
+    @Test
+    void shouldParseSummaryLink() {
+        Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier> result = underTest.parse(
+                "### Quality Gate passed\r\n\r\n[View in SonarQube](https://sonarqube.example.com/dashboard?id=project&pullRequest=123)\r\n");
+
+        assertThat(result).hasValueSatisfying(identifier -> {
+            assertThat(identifier.getProjectKey()).isEqualTo("project");
+            assertThat(identifier.isSummary()).isTrue();
+        });
+    }
+
+    @Test
+    void shouldDecodeEncodedParameterValues() {
+        Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier> result = underTest.parse(
+                "[View in SonarQube](https://sonarqube.example.com/project/issues?id=my%3Aproject+key;issues=issue%2F1#fragment)");
+
+        assertThat(result).hasValueSatisfying(identifier -> {
+            assertThat(identifier.getProjectKey()).isEqualTo("my:project key");
+            assertThat(identifier.getIssueKey()).isEqualTo("issue/1");
+        });
+    }
+
+    @Test
+    void shouldPreferCurrentLabelOverLegacyLabel() {
+        Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier> result = underTest.parse(
+                "[See in SonarQube](https://sonarqube.example.com/project/issues?id=project&issues=legacy)\n"
+                        + "[View in SonarQube](https://sonarqube.example.com/project/issues?id=project&issues=current)");
+
+        assertThat(result).hasValueSatisfying(identifier -> assertThat(identifier.getIssueKey()).isEqualTo("current"));
+    }
+
+    @Test
+    void shouldFallBackToLegacyLabel() {
+        Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier> result = underTest.parse(
+                "[See in SonarQube](https://sonarqube.example.com/project/issues?id=project&issues=legacy)\n"
+                        + "[See in SonarQube](https://sonarqube.example.com/project/issues?id=project&issues=second)");
+
+        assertThat(result).hasValueSatisfying(identifier -> assertThat(identifier.getIssueKey()).isEqualTo("legacy"));
+    }
+
+    @Test
+    void shouldSkipInvalidLinkAndUseLaterLink() {
+        Optional<DiscussionAwarePullRequestDecorator.ProjectIssueIdentifier> result = underTest.parse(
+                "[View in SonarQube](https://sonarqube.example.com/project/issues?pullRequest=123)\n"
+                        + "[View in SonarQube](https://sonarqube.example.com/project/issues?id=project&issues=issue)");
+
+        assertThat(result).hasValueSatisfying(identifier -> assertThat(identifier.getIssueKey()).isEqualTo("issue"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "A comment from another user",
+            "[View in SonarQube]()",
+            "[View in SonarQube](https://sonarqube.example.com/project/issues)",
+            "[View in SonarQube](https://sonarqube.example.com/project/issues?id=project)",
+            "[View in SonarQube](https://sonarqube.example.com/project/issues?id=project&issues=%zz)",
+            "[View in SonarQube](https://sonarqube.example.com/project/issues#?id=project&issues=issue)",
+            "[View in SonarQube](https://sonarqube.example.com/project/issues?id&issues=issue)",
+            "See [View in SonarQube](https://sonarqube.example.com/project/issues?id=project&issues=issue)",
+            "[View in SonarQube](https://sonarqube.example.com/project/issues?id=project&issues=issue) for details",
+            "[Open in SonarQube](https://sonarqube.example.com/project/issues?id=project&issues=issue)"
+    })
+    void shouldReturnEmptyForNoteWithoutValidLink(String noteContent) {
+        assertThat(underTest.parse(noteContent)).isEmpty();
+    }
+
+    @Test
+    void shouldReturnEmptyForNullContent() {
+        assertThat(underTest.parse(null)).isEmpty();
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NoteMarkerTest {
+
+    @Test
+    void shouldReadMarkerAddedToNote() {
+        String note = NoteMarker.addMarker("project key", "issue-->key", "**Message:** Remove this\n\n[View in SonarQube](https://sonarqube.example.com)");
+
+        assertThat(note).startsWith("<!-- sonarqube-community-branch-plugin project=project+key issue=issue--%3Ekey hash=")
+                .endsWith(" -->\n**Message:** Remove this\n\n[View in SonarQube](https://sonarqube.example.com)");
+        assertThat(NoteMarker.read(note)).hasValueSatisfying(marker -> {
+            assertThat(marker.getProjectKey()).isEqualTo("project key");
+            assertThat(marker.getIssueKey()).isEqualTo("issue-->key");
+            assertThat(marker.getContentHash()).isEqualTo(NoteMarker.hash("**Message:** Remove this\n\n[View in SonarQube](https://sonarqube.example.com)"));
+            assertThat(marker.getPluginVersion()).isNotEmpty();
+        });
+    }
+
+    @Test
+    void shouldCreateStableHashForSameContent() {
+        assertThat(NoteMarker.hash("content"))
+                .isEqualTo(NoteMarker.hash("content"))
+                .isNotEqualTo(NoteMarker.hash("other content"))
+                .hasSize(16)
+                .matches("[0-9a-f]+");
+    }
+
+    @Test
+    void shouldIgnoreUnknownFields() {
+        assertThat(NoteMarker.read("<!-- sonarqube-community-branch-plugin future=value project=project issue=issue hash=abc -->\ncontent"))
+                .hasValueSatisfying(marker -> {
+                    assertThat(marker.getProjectKey()).isEqualTo("project");
+                    assertThat(marker.getIssueKey()).isEqualTo("issue");
+                    assertThat(marker.getContentHash()).isEqualTo("abc");
+                    assertThat(marker.getPluginVersion()).isNull();
+                });
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "content",
+            "content\n<!-- sonarqube-community-branch-plugin project=project issue=issue hash=abc -->",
+            "<!-- sonarqube-community-branch-plugin project=project issue=issue hash=abc",
+            "<!-- sonarqube-community-branch-plugin project=project issue=issue\nhash=abc -->",
+            "<!-- sonarqube-community-branch-plugin project=project hash=abc -->",
+            "<!-- sonarqube-community-branch-plugin project=%zz issue=issue hash=abc -->"
+    })
+    void shouldNotReadInvalidMarker(String noteContent) {
+        assertThat(NoteMarker.read(noteContent)).isEmpty();
+    }
+
+    @Test
+    void shouldNotReadMarkerFromNullContent() {
+        assertThat(NoteMarker.read(null)).isEmpty();
+    }
+
+}
@@ -21,11 +21,13 @@ package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -35,9 +37,11 @@ import org.sonar.api.issue.IssueStatus;
 import org.sonar.api.issue.impact.Severity;
 import org.sonar.api.issue.impact.SoftwareQuality;
 import org.sonar.api.rule.RuleKey;
+import org.sonar.ce.task.projectanalysis.analysis.AnalysisMetadataHolder;
 import org.sonar.ce.task.projectanalysis.component.Component;
 import org.sonar.ce.task.projectanalysis.component.ReportAttributes;
 import org.sonar.core.issue.DefaultIssue;
+import org.sonar.db.protobuf.DbCommons;
 import org.sonar.db.protobuf.DbIssues;
 
 class PostAnalysisIssueVisitorTest {
@@ -49,15 +53,20 @@ class PostAnalysisIssueVisitorTest {
     private static final Map<SoftwareQuality, Severity> EXAMPLE_IMPACTS = Map.of(SoftwareQuality.RELIABILITY, Severity.HIGH);
     private static final IssueStatus EXAMPLE_ISSUE_STATUS = IssueStatus.OPEN;
     private static final RuleKey EXAMPLE_ISSUE_RULEKEY = RuleKey.of("repo", "rule");
-    private static final DbIssues.Locations EXAMPLE_ISSUE_LOCATIONS = DbIssues.Locations.getDefaultInstance();
+    private static final DbCommons.TextRange EXAMPLE_ISSUE_TEXT_RANGE = DbCommons.TextRange.newBuilder().setStartLine(1000).setEndLine(1001).build();
+    private static final DbIssues.Locations EXAMPLE_ISSUE_LOCATIONS = DbIssues.Locations.newBuilder().setTextRange(EXAMPLE_ISSUE_TEXT_RANGE).build();
+
+    private final AnalysisMetadataHolder analysisMetadataHolder = mock();
 
     @Test
     void checkAllIssuesCollected() {
-        PostAnalysisIssueVisitor testCase = new PostAnalysisIssueVisitor();
+        when(analysisMetadataHolder.isPullRequest()).thenReturn(true);
+        PostAnalysisIssueVisitor testCase = new PostAnalysisIssueVisitor(analysisMetadataHolder);
 
         List<PostAnalysisIssueVisitor.ComponentIssue> expected = new ArrayList<>();
         for (int i = 0; i < 100; i++) {
             DefaultIssue issue = mock();
+            when(issue.issueStatus()).thenReturn(IssueStatus.OPEN);
             Component component = mock();
             expected.add(new PostAnalysisIssueVisitor.ComponentIssue(component, new PostAnalysisIssueVisitor.LightIssue(issue)));
 
@@ -92,7 +101,8 @@ class PostAnalysisIssueVisitorTest {
         Component component = mock();
 
         // map the DefaultIssue into a LightIssue (using PostAnalysisIssueVisitor to workaround private constructor)
-        PostAnalysisIssueVisitor visitor = new PostAnalysisIssueVisitor();
+        when(analysisMetadataHolder.isPullRequest()).thenReturn(true);
+        PostAnalysisIssueVisitor visitor = new PostAnalysisIssueVisitor(analysisMetadataHolder);
         visitor.onIssue(component, defaultIssue);
         PostAnalysisIssueVisitor.LightIssue lightIssue = visitor.getIssues().get(0).getIssue();
 
@@ -105,7 +115,7 @@ class PostAnalysisIssueVisitorTest {
             assertThat(lightIssue.impacts()).isEqualTo(EXAMPLE_IMPACTS);
             assertThat(lightIssue.issueStatus()).isEqualTo(EXAMPLE_ISSUE_STATUS);
             assertThat(lightIssue.getRuleKey()).isEqualTo(EXAMPLE_ISSUE_RULEKEY);
-            assertThat(lightIssue.getLocations()).isEqualTo(EXAMPLE_ISSUE_LOCATIONS);
+            assertThat(lightIssue.getTextRange()).isEqualTo(EXAMPLE_ISSUE_TEXT_RANGE);
         }
 
         // check DefaultIssue getters have been called _exactly once_
@@ -127,7 +137,8 @@ class PostAnalysisIssueVisitorTest {
         Component component = mock();
 
         // map the DefaultIssue into two equal LightIssues
-        PostAnalysisIssueVisitor visitor = new PostAnalysisIssueVisitor();
+        when(analysisMetadataHolder.isPullRequest()).thenReturn(true);
+        PostAnalysisIssueVisitor visitor = new PostAnalysisIssueVisitor(analysisMetadataHolder);
         visitor.onIssue(component, defaultIssue);
         visitor.onIssue(component, defaultIssue);
         PostAnalysisIssueVisitor.LightIssue lightIssue1 = visitor.getIssues().get(0).getIssue();
@@ -148,7 +159,8 @@ class PostAnalysisIssueVisitorTest {
         Component component = mock();
 
         // map the DefaultIssue into a first LightIssue
-        PostAnalysisIssueVisitor visitor = new PostAnalysisIssueVisitor();
+        when(analysisMetadataHolder.isPullRequest()).thenReturn(true);
+        PostAnalysisIssueVisitor visitor = new PostAnalysisIssueVisitor(analysisMetadataHolder);
         visitor.onIssue(component, defaultIssue);
         PostAnalysisIssueVisitor.LightIssue lightIssue1 = visitor.getIssues().get(0).getIssue();
 
@@ -167,6 +179,55 @@ class PostAnalysisIssueVisitorTest {
         
     }
 
+    @Test
+    void shouldIgnoreIssuesWhenAnalysisIsNotForPullRequest() {
+        when(analysisMetadataHolder.isPullRequest()).thenReturn(false);
+        PostAnalysisIssueVisitor visitor = new PostAnalysisIssueVisitor(analysisMetadataHolder);
+
+        visitor.onIssue(mock(), exampleDefaultIssue());
+
+        assertThat(visitor.getIssues()).isEmpty();
+    }
+
+    @Test
+    void shouldOnlyCollectOpenIssues() {
+        when(analysisMetadataHolder.isPullRequest()).thenReturn(true);
+        PostAnalysisIssueVisitor visitor = new PostAnalysisIssueVisitor(analysisMetadataHolder);
+        DefaultIssue openIssue = exampleDefaultIssue();
+        DefaultIssue acceptedIssue = exampleDefaultIssue();
+        when(acceptedIssue.issueStatus()).thenReturn(IssueStatus.ACCEPTED);
+        DefaultIssue fixedIssue = exampleDefaultIssue();
+        when(fixedIssue.issueStatus()).thenReturn(IssueStatus.FIXED);
+
+        visitor.onIssue(mock(), acceptedIssue);
+        visitor.onIssue(mock(), openIssue);
+        visitor.onIssue(mock(), fixedIssue);
+
+        assertThat(visitor.getIssues()).hasSize(1);
+        verify(acceptedIssue, never()).key();
+        verify(fixedIssue, never()).key();
+    }
+
+    @Test
+    void shouldShareRuleKeyAndImpactsBetweenIssues() {
+        when(analysisMetadataHolder.isPullRequest()).thenReturn(true);
+        PostAnalysisIssueVisitor visitor = new PostAnalysisIssueVisitor(analysisMetadataHolder);
+        DefaultIssue firstIssue = exampleDefaultIssue();
+        DefaultIssue secondIssue = exampleDefaultIssue();
+        when(secondIssue.getRuleKey()).thenReturn(RuleKey.of("repo", "rule"));
+        when(secondIssue.impacts()).thenReturn(new HashMap<>(EXAMPLE_IMPACTS));
+        when(secondIssue.getLine()).thenReturn(null);
+
+        visitor.onIssue(mock(), firstIssue);
+        visitor.onIssue(mock(), secondIssue);
+
+        PostAnalysisIssueVisitor.LightIssue first = visitor.getIssues().get(0).getIssue();
+        PostAnalysisIssueVisitor.LightIssue second = visitor.getIssues().get(1).getIssue();
+        assertThat(second.getRuleKey()).isSameAs(first.getRuleKey());
+        assertThat(second.impacts()).isSameAs(first.impacts()).isEqualTo(EXAMPLE_IMPACTS);
+        assertThat(second.getLine()).isNull();
+    }
+
     @Test
     void shouldReturnScmInfoForFileComponent() {
         Component component = mock();
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PullRequestDecorationExecutorTest {
+
+    private final ScheduledExecutorService executorService = Executors.newScheduledThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void shouldRunOnCallingThreadWhenAsynchronousDecorationDisabled() {
+        Configuration configuration = mock();
+        PullRequestDecorationExecutor underTest = new PullRequestDecorationExecutor(configuration);
+        DecorationJob job = mock();
+        doThrow(new IllegalStateException("dummy")).when(job).run();
+
+        assertThat(underTest.isAsynchronous()).isFalse();
+        assertThatThrownBy(() -> underTest.execute(job)).isExactlyInstanceOf(IllegalStateException.class).hasMessage("dummy");
+    }
+
+    @Test
+    void shouldSkipDeferredDecorationOnCallingThread() {
+        Configuration configuration = mock();
+        PullRequestDecorationExecutor underTest = new PullRequestDecorationExecutor(configuration);
+        DecorationJob job = mock();
+        doThrow(new DecorationDeferredException("dummy", Duration.ZERO)).when(job).run();
+
+        underTest.execute(job);
+
+        verify(job).run();
+        assertThat(underTest.getDeferredCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectInvalidConfiguration() {
+        Configuration configuration = mock();
+        when(configuration.getInt(PullRequestDecorationExecutor.MAX_ATTEMPTS)).thenReturn(Optional.of(0));
+
+        assertThatThrownBy(() -> new PullRequestDecorationExecutor(configuration))
+                .isExactlyInstanceOf(IllegalArgumentException.class)
+                .hasMessage(PullRequestDecorationExecutor.MAX_ATTEMPTS + " must be greater than 0");
+    }
+
+    @Test
+    void shouldRunJobOnPoolAndRecordCompletion() throws InterruptedException {
+        PullRequestDecorationExecutor underTest = new PullRequestDecorationExecutor(true, 10, 3, Duration.ZERO, Clock.systemUTC(), executorService);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        DecorationJob job = mockJob("project", "1");
+        doAnswer(invocation -> {
+            runs.incrementAndGet();
+            assertThat(Thread.currentThread().getName()).doesNotContain("main");
+            return null;
+        }).when(job).run();
+
+        underTest.execute(job);
+        executorService.execute(finished::countDown);
+
+        assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+        awaitOutstandingJobs(underTest);
+        assertThat(runs).hasValue(1);
+        assertThat(underTest.getCompletedCount()).isEqualTo(1);
+        assertThat(underTest.getFailedCount()).isZero();
+        assertThat(underTest.getQueueDepth()).isZero();
+    }
+
+    @Test
+    void shouldRetryFailedJobsUntilAttemptsExhausted() throws InterruptedException {
+        PullRequestDecorationExecutor underTest = new PullRequestDecorationExecutor(true, 10, 3, Duration.ZERO, Clock.systemUTC(), executorService);
+        DecorationJob failingJob = mockJob("project", "1");
+        doThrow(new IllegalStateException("dummy")).when(failingJob).run();
+        DecorationJob recoveringJob = mockJob("project", "2");
+        AtomicInteger recoveringAttempts = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (recoveringAttempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("dummy");
+            }
+            return null;
+        }).when(recoveringJob).run();
+
+        underTest.execute(failingJob);
+        underTest.execute(recoveringJob);
+        awaitOutstandingJobs(underTest);
+
+        verify(failingJob, times(3)).run();
+        assertThat(recoveringAttempts).hasValue(2);
+        assertThat(underTest.getFailedCount()).isEqualTo(1);
+        assertThat(underTest.getCompletedCount()).isEqualTo(1);
+        assertThat(underTest.getRetryCount()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldRunOnCallingThreadWhenQueueIsFull() throws InterruptedException {
+        PullRequestDecorationExecutor underTest = new PullRequestDecorationExecutor(true, 1, 1, Duration.ZERO, Clock.systemUTC(), executorService);
+        CountDownLatch releaseFirstJob = new CountDownLatch(1);
+        DecorationJob blockingJob = mockJob("project", "1");
+        doAnswer(invocation -> releaseFirstJob.await(5, TimeUnit.SECONDS)).when(blockingJob).run();
+        DecorationJob secondJob = mockJob("project", "2");
+        Thread callingThread = Thread.currentThread();
+        AtomicInteger secondJobOnCallingThread = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (Thread.currentThread() == callingThread) {
+                secondJobOnCallingThread.incrementAndGet();
+            }
+            return null;
+        }).when(secondJob).run();
+
+        underTest.execute(blockingJob);
+        underTest.execute(secondJob);
+        releaseFirstJob.countDown();
+        awaitOutstandingJobs(underTest);
+
+        assertThat(secondJobOnCallingThread).hasValue(1);
+        assertThat(underTest.getRejectedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldOnlyDecorateNewestAnalysisWaitingBehindRunningDecoration() throws InterruptedException {
+        PullRequestDecorationExecutor underTest = new PullRequestDecorationExecutor(true, 10, 1, Duration.ZERO, Clock.systemUTC(), executorService);
+        CountDownLatch firstJobStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstJob = new CountDownLatch(1);
+        List<String> decorations = new CopyOnWriteArrayList<>();
+        DecorationJob firstJob = mockJob("project", "1");
+        doAnswer(invocation -> {
+            firstJobStarted.countDown();
+            releaseFirstJob.await(5, TimeUnit.SECONDS);
+            decorations.add("first");
+            return null;
+        }).when(firstJob).run();
+        DecorationJob supersededJob = mockJob("project", "1");
+        doAnswer(invocation -> decorations.add("superseded")).when(supersededJob).run();
+        DecorationJob newestJob = mockJob("project", "1");
+        doAnswer(invocation -> decorations.add("newest")).when(newestJob).run();
+
+        underTest.execute(firstJob);
+        assertThat(firstJobStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        underTest.execute(supersededJob);
+        underTest.execute(newestJob);
+        releaseFirstJob.countDown();
+        awaitOutstandingJobs(underTest);
+
+        assertThat(decorations).containsExactly("first", "newest");
+        assertThat(underTest.getSupersededCount()).isEqualTo(1);
+        assertThat(underTest.getCompletedCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotCoalesceDecorationsOfDifferentPullRequests() throws InterruptedException {
+        PullRequestDecorationExecutor underTest = new PullRequestDecorationExecutor(true, 10, 1, Duration.ZERO, Clock.systemUTC(), executorService);
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        DecorationJob firstJob = mockJob("project", "1");
+        DecorationJob secondJob = mockJob("other-project", "1");
+        doAnswer(invocation -> {
+            bothRunning.countDown();
+            return bothRunning.await(5, TimeUnit.SECONDS);
+        }).when(firstJob).run();
+        doAnswer(invocation -> {
+            bothRunning.countDown();
+            return bothRunning.await(5, TimeUnit.SECONDS);
+        }).when(secondJob).run();
+
+        underTest.execute(firstJob);
+        underTest.execute(secondJob);
+        awaitOutstandingJobs(underTest);
+
+        assertThat(bothRunning.getCount()).isZero();
+        assertThat(underTest.getSupersededCount()).isZero();
+        assertThat(underTest.getCompletedCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotRetryFailedDecorationWhenNewerAnalysisIsWaiting() throws InterruptedException {
+        PullRequestDecorationExecutor underTest = new PullRequestDecorationExecutor(true, 10, 3, Duration.ZERO, Clock.systemUTC(), executorService);
+        CountDownLatch firstJobStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstJob = new CountDownLatch(1);
+        DecorationJob failingJob = mockJob("project", "1");
+        doAnswer(invocation -> {
+            firstJobStarted.countDown();
+            releaseFirstJob.await(5, TimeUnit.SECONDS);
+            throw new IllegalStateException("dummy");
+        }).when(failingJob).run();
+        DecorationJob newerJob = mockJob("project", "1");
+
+        underTest.execute(failingJob);
+        assertThat(firstJobStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        underTest.execute(newerJob);
+        releaseFirstJob.countDown();
+        awaitOutstandingJobs(underTest);
+
+        verify(failingJob).run();
+        verify(newerJob).run();
+        assertThat(underTest.getRetryCount()).isZero();
+        assertThat(underTest.getFailedCount()).isEqualTo(1);
+        assertThat(underTest.getCompletedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRetryDeferredDecorationNoSoonerThanRequested() {
+        ScheduledExecutorService mockExecutorService = mock();
+        List<Long> delays = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            delays.add(invocation.getArgument(1));
+            if (delays.size() < 3) {
+                invocation.<Runnable>getArgument(0).run();
+            }
+            return null;
+        }).when(mockExecutorService).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+        PullRequestDecorationExecutor underTest = new PullRequestDecorationExecutor(true, 10, 3, Duration.ofSeconds(1), Clock.systemUTC(), mockExecutorService);
+        DecorationJob deferredJob = mockJob("project", "1");
+        doThrow(new DecorationDeferredException("dummy", Duration.ofSeconds(90)))
+                .doThrow(new DecorationDeferredException("dummy", Duration.ZERO))
+                .when(deferredJob).run();
+
+        underTest.execute(deferredJob);
+
+        verify(deferredJob, times(2)).run();
+        assertThat(delays).containsExactly(0L, 90000L, 2000L);
+        assertThat(underTest.getDeferredCount()).isEqualTo(2);
+        assertThat(underTest.getRetryCount()).isEqualTo(2);
+    }
+
+    private static DecorationJob mockJob(String projectKey, String pullRequestId) {
+        AnalysisDetails analysisDetails = mock();
+        when(analysisDetails.getAnalysisProjectKey()).thenReturn(projectKey);
+        when(analysisDetails.getPullRequestId()).thenReturn(pullRequestId);
+        DecorationJob job = mock();
+        when(job.getAnalysisDetails()).thenReturn(analysisDetails);
+        return job;
+    }
+
+    private static void awaitOutstandingJobs(PullRequestDecorationExecutor underTest) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (underTest.getCompletedCount() + underTest.getFailedCount() + underTest.getRejectedCount() == 0
+                || underTest.getQueueDepth() + underTest.getRunningCount() > 0) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Decorations did not complete");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+}
@@ -18,6 +18,8 @@
  */
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
 
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisSummary;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -27,6 +29,10 @@ import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
 import org.sonar.api.ce.posttask.Project;
 import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.ce.posttask.ScannerContext;
+import org.sonar.api.issue.IssueStatus;
+import org.sonar.ce.task.projectanalysis.component.Component;
+import org.sonar.ce.task.projectanalysis.scm.ScmInfo;
+import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.alm.setting.ALM;
@@ -50,11 +56,14 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 class PullRequestPostAnalysisTaskTest {
@@ -69,11 +78,16 @@ class PullRequestPostAnalysisTaskTest {
     private final DbClient dbClient = mock();
     private final Project project = mock();
     private final PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock();
+    private final PostAnalysisIssueVisitor.LightIssue lightIssue = mock();
     private final List<PostAnalysisIssueVisitor.ComponentIssue> componentIssues = List.of(componentIssue);
 
+    private final PullRequestDecorationExecutor decorationExecutor = mock();
+    private final ScmInfoRepository scmInfoRepository = mock();
+    private final ReportGenerator reportGenerator = mock();
+
     private final PullRequestPostAnalysisTask testCase =
-            new PullRequestPostAnalysisTask(pullRequestBuildStatusDecorators,
-                    postAnalysisIssueVisitor, dbClient);
+            new PullRequestPostAnalysisTask(pullRequestBuildStatusDecorators, postAnalysisIssueVisitor, dbClient,
+                    decorationExecutor, scmInfoRepository, reportGenerator, new AlmHostBulkheads(mock()));
 
     @BeforeEach
     void init() {
@@ -83,7 +97,14 @@ class PullRequestPostAnalysisTaskTest {
         doReturn(projectAnalysis).when(context).getProjectAnalysis();
         doReturn(project).when(projectAnalysis).getProject();
         doReturn("uuid").when(project).getUuid();
-        doReturn(componentIssues).when(postAnalysisIssueVisitor).getIssues();
+        doReturn(IssueStatus.OPEN).when(lightIssue).issueStatus();
+        doReturn(lightIssue).when(componentIssue).getIssue();
+        doReturn(Optional.of("path")).when(componentIssue).getScmPath();
+        doAnswer(invocation -> CollectedIssues.of(componentIssues)).when(postAnalysisIssueVisitor).getCollectedIssues();
+        doAnswer(invocation -> {
+            invocation.<DecorationJob>getArgument(0).run();
+            return null;
+        }).when(decorationExecutor).execute(any());
     }
 
     @Test
@@ -494,6 +515,71 @@ class PullRequestPostAnalysisTaskTest {
         assertThat(analysisDetailsArgumentCaptor.getValue()).usingRecursiveComparison().isEqualTo(analysisDetails);
     }
 
+    @Test
+    void shouldReadFromTaskRepositoriesBeforeHandingOffAsynchronousDecoration() {
+        doReturn(Branch.Type.PULL_REQUEST).when(branch).getType();
+        doReturn(Optional.of("pull-request")).when(branch).getName();
+
+        Analysis analysis = mock();
+        doReturn(Optional.of("revision")).when(analysis).getRevision();
+        doReturn(Optional.of(analysis)).when(projectAnalysis).getAnalysis();
+        doReturn(mock(QualityGate.class)).when(projectAnalysis).getQualityGate();
+
+        Component component = mock();
+        doReturn(component).when(componentIssue).getComponent();
+        Component componentWithoutScmInfo = mock();
+        PostAnalysisIssueVisitor.ComponentIssue componentIssueWithoutScmInfo = mock();
+        doReturn(componentWithoutScmInfo).when(componentIssueWithoutScmInfo).getComponent();
+        doReturn(lightIssue).when(componentIssueWithoutScmInfo).getIssue();
+        doReturn(Optional.of("other-path")).when(componentIssueWithoutScmInfo).getScmPath();
+        doAnswer(invocation -> CollectedIssues.of(List.of(componentIssue, componentIssueWithoutScmInfo)))
+                .when(postAnalysisIssueVisitor).getCollectedIssues();
+
+        ScmInfo scmInfo = mock();
+        doReturn(Optional.of(scmInfo)).when(scmInfoRepository).getScmInfo(component);
+        AnalysisSummary analysisSummary = mock();
+        doReturn(analysisSummary).when(reportGenerator).createAnalysisSummary(any());
+
+        PullRequestBuildStatusDecorator decorator = mock();
+        doReturn(DecorationResult.builder().build()).when(decorator).decorateQualityGateStatus(any(), any(), any(), any());
+        doReturn(Collections.singletonList(ALM.GITLAB)).when(decorator).alm();
+        pullRequestBuildStatusDecorators.add(decorator);
+
+        AlmSettingDto almSettingDto = mock();
+        doReturn(ALM.GITLAB).when(almSettingDto).getAlm();
+        when(dbClient.openSession(anyBoolean())).thenReturn(mock());
+        AlmSettingDao almSettingDao = mock();
+        when(almSettingDao.selectByUuid(any(), any())).thenReturn(Optional.of(almSettingDto));
+        when(dbClient.almSettingDao()).thenReturn(almSettingDao);
+        ProjectAlmSettingDao projectAlmSettingDao = mock();
+        when(projectAlmSettingDao.selectByProject(any(), anyString())).thenReturn(Optional.of(mock(ProjectAlmSettingDto.class)));
+        when(dbClient.projectAlmSettingDao()).thenReturn(projectAlmSettingDao);
+
+        doReturn(true).when(decorationExecutor).isAsynchronous();
+        doAnswer(invocation -> null).when(decorationExecutor).execute(any());
+
+        testCase.finished(context);
+
+        verify(scmInfoRepository).getScmInfo(component);
+        verify(scmInfoRepository).getScmInfo(componentWithoutScmInfo);
+        verify(reportGenerator).createAnalysisSummary(any());
+        ArgumentCaptor<DecorationJob> decorationJobArgumentCaptor = ArgumentCaptor.forClass(DecorationJob.class);
+        verify(decorationExecutor).execute(decorationJobArgumentCaptor.capture());
+        verify(decorator, never()).decorateQualityGateStatus(any(), any(), any(), any());
+
+        // the job is run once the task's container has stopped, so must only use what was read from it beforehand
+        clearInvocations(scmInfoRepository, reportGenerator);
+        decorationJobArgumentCaptor.getValue().run();
+
+        verifyNoInteractions(scmInfoRepository, reportGenerator);
+        ArgumentCaptor<AnalysisDetails> analysisDetailsArgumentCaptor = ArgumentCaptor.forClass(AnalysisDetails.class);
+        verify(decorator).decorateQualityGateStatus(analysisDetailsArgumentCaptor.capture(), any(), any(), any());
+        DecorationReport decorationReport = analysisDetailsArgumentCaptor.getValue().getDecorationReport().orElseThrow();
+        assertThat(decorationReport.getAnalysisSummary()).isSameAs(analysisSummary);
+        assertThat(decorationReport.getScmInfo(component)).contains(scmInfo);
+        assertThat(decorationReport.getScmInfo(componentWithoutScmInfo)).isEmpty();
+    }
+
     @Test
     void testCorrectDescriptionReturnedForTask() {
         assertThat(testCase.getDescription()).isEqualTo("Pull Request Decoration");
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ScannerPropertyParserTest {
+
+    private final AnalysisDetails analysisDetails = mock();
+
+    @Test
+    void shouldReturnDefaultWhenPropertyNotSet() {
+        assertThat(ScannerPropertyParser.getInt(analysisDetails, "property", 4, 1)).isEqualTo(4);
+    }
+
+    @Test
+    void shouldReturnConfiguredValue() {
+        when(analysisDetails.getScannerProperty("property")).thenReturn(Optional.of(" 8 "));
+
+        assertThat(ScannerPropertyParser.getInt(analysisDetails, "property", 4, 1)).isEqualTo(8);
+    }
+
+    @Test
+    void shouldReturnDefaultWhenValueIsNotAnInteger() {
+        when(analysisDetails.getScannerProperty("property")).thenReturn(Optional.of("four"));
+
+        assertThat(ScannerPropertyParser.getInt(analysisDetails, "property", 4, 1)).isEqualTo(4);
+    }
+
+    @Test
+    void shouldReturnDefaultWhenValueIsBelowMinimum() {
+        when(analysisDetails.getScannerProperty("property")).thenReturn(Optional.of("0"));
+
+        assertThat(ScannerPropertyParser.getInt(analysisDetails, "property", 4, 1)).isEqualTo(4);
+    }
+
+    @Test
+    void shouldAcceptMinimumValue() {
+        when(analysisDetails.getScannerProperty("property")).thenReturn(Optional.of("1"));
+
+        assertThat(ScannerPropertyParser.getInt(analysisDetails, "property", 4, 1)).isEqualTo(1);
+    }
+}
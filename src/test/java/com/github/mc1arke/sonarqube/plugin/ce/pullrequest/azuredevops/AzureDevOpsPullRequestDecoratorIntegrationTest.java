@@ -48,11 +48,16 @@ import org.sonar.ce.task.projectanalysis.scm.ScmInfo;
 import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
-import org.sonar.db.protobuf.DbIssues;
+import org.sonar.db.protobuf.DbCommons;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AuthenticatedUserCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.PooledHttpClientProvider;
+import com.github.mc1arke.sonarqube.plugin.almclient.RateLimitScheduler;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.DefaultAzureDevopsClientFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.BoundedSubmissionExecutor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationResult;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.NoteMarker;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.MarkdownFormatterFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSummary;
@@ -81,7 +86,7 @@ class AzureDevOpsPullRequestDecoratorIntegrationTest {
     private final Encryption encryption = mock();
     private final ReportGenerator reportGenerator = mock();
     private final MarkdownFormatterFactory formatterFactory = mock();
-    private final AzureDevOpsPullRequestDecorator pullRequestDecorator = new AzureDevOpsPullRequestDecorator(scmInfoRepository, new DefaultAzureDevopsClientFactory(settings), reportGenerator, formatterFactory);
+    private final AzureDevOpsPullRequestDecorator pullRequestDecorator = new AzureDevOpsPullRequestDecorator(scmInfoRepository, new DefaultAzureDevopsClientFactory(settings, new PooledHttpClientProvider(mock(), new RateLimitScheduler()), new AuthenticatedUserCache(mock())), reportGenerator, formatterFactory, new BoundedSubmissionExecutor());
     private final AnalysisDetails analysisDetails = mock();
 
     private final PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock();
@@ -114,7 +119,7 @@ class AzureDevOpsPullRequestDecoratorIntegrationTest {
         when(reportGenerator.createAnalysisSummary(any())).thenReturn(analysisSummary);
         when(reportGenerator.createAnalysisIssueSummary(any(), any())).thenReturn(analysisIssueSummary);
 
-        DbIssues.Locations locate = DbIssues.Locations.newBuilder().build();
+        DbCommons.TextRange textRange = DbCommons.TextRange.newBuilder().build();
         RuleKey ruleKey = mock();
         when(componentIssue.getIssue()).thenReturn(defaultIssue);
         when(componentIssue.getComponent()).thenReturn(component);
@@ -122,7 +127,7 @@ class AzureDevOpsPullRequestDecoratorIntegrationTest {
         when(defaultIssue.issueStatus()).thenReturn(IssueStatus.OPEN);
         int lineNumber = 5;
         when(defaultIssue.getLine()).thenReturn(lineNumber);
-        when(defaultIssue.getLocations()).thenReturn(locate);
+        when(defaultIssue.getTextRange()).thenReturn(textRange);
         String issueMessage = "issueMessage";
         when(defaultIssue.getMessage()).thenReturn(issueMessage);
         when(defaultIssue.getRuleKey()).thenReturn(ruleKey);
@@ -403,7 +408,7 @@ class AzureDevOpsPullRequestDecoratorIntegrationTest {
                 .withHeader("Accept", equalTo("application/json"))
                 .withHeader("Content-Type", equalTo("application/json; charset=UTF-8"))
                 .withHeader("Authorization", equalTo(authHeader))
-                .withRequestBody(equalTo("{\"comments\":[{\"content\":\"analysis summary\"}],\"status\":\"active\"}"))
+                .withRequestBody(equalTo("{\"comments\":[{\"content\":\"" + jsonEscapedNote(sonarProject, "decorator-summary-comment", "analysis summary") + "\"}],\"status\":\"active\"}"))
                 .willReturn(aResponse().withStatus(200).withBody("{" + System.lineSeparator() +
                         "  \"pullRequestThreadContext\": {" + System.lineSeparator() +
                         "    \"iterationContext\": {" + System.lineSeparator() +
@@ -460,7 +465,7 @@ class AzureDevOpsPullRequestDecoratorIntegrationTest {
                 .withHeader("Accept", equalTo("application/json"))
                 .withHeader("Content-Type", equalTo("application/json; charset=UTF-8"))
                 .withHeader("Authorization", equalTo(authHeader))
-                .withRequestBody(equalTo("{\"threadContext\":{\"filePath\":\"/scmPath\",\"rightFileStart\":{\"line\":0,\"offset\":1},\"rightFileEnd\":{\"line\":0,\"offset\":1}},\"comments\":[{\"content\":\"issue summary\"}],\"status\":\"active\"}"))
+                .withRequestBody(equalTo("{\"threadContext\":{\"filePath\":\"/scmPath\",\"rightFileStart\":{\"line\":0,\"offset\":1},\"rightFileEnd\":{\"line\":0,\"offset\":1}},\"comments\":[{\"content\":\"" + jsonEscapedNote(sonarProject, issueKeyVal, "issue summary") + "\"}],\"status\":\"active\"}"))
                 .willReturn(aResponse().withStatus(200).withBody("{" + System.lineSeparator() +
                         "  \"pullRequestThreadContext\": {" + System.lineSeparator() +
                         "    \"iterationContext\": {" + System.lineSeparator() +
@@ -542,4 +547,7 @@ class AzureDevOpsPullRequestDecoratorIntegrationTest {
         assertThat(result.getPullRequestUrl()).isEqualTo(Optional.of(String.format("%s/%s/_git/%s/pullRequest/%s", wireMockExtension.getRuntimeInfo().getHttpBaseUrl(), azureProject, azureRepository, pullRequestId)));
     }
 
+    private static String jsonEscapedNote(String projectKey, String issueKey, String content) {
+        return NoteMarker.addMarker(projectKey, issueKey, content).replace("\n", "\\n");
+    }
 }
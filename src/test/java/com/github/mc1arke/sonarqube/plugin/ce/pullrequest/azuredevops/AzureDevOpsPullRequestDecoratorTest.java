@@ -52,6 +52,7 @@ import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.PullReque
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Repository;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.enums.CommentType;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.BoundedSubmissionExecutor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.MarkdownFormatterFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisSummary;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator;
@@ -74,7 +75,7 @@ class AzureDevOpsPullRequestDecoratorTest {
         when(analysisDetails.getPullRequestId()).thenReturn("123");
         when(projectAlmSettingDto.getAlmRepo()).thenReturn("repo");
 
-        AzureDevOpsPullRequestDecorator pullRequestDecorator = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory);
+        AzureDevOpsPullRequestDecorator pullRequestDecorator = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory, new BoundedSubmissionExecutor());
 
         assertThatThrownBy(() -> pullRequestDecorator.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto))
             .hasMessage("Repository slug must be provided")
@@ -88,7 +89,7 @@ class AzureDevOpsPullRequestDecoratorTest {
         when(projectAlmSettingDto.getAlmRepo()).thenReturn("repo");
         when(projectAlmSettingDto.getAlmSlug()).thenReturn("slug");
 
-        AzureDevOpsPullRequestDecorator pullRequestDecorator = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory);
+        AzureDevOpsPullRequestDecorator pullRequestDecorator = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory, new BoundedSubmissionExecutor());
 
         assertThatThrownBy(() -> pullRequestDecorator.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto))
             .hasMessage("Could not parse Pull Request Key")
@@ -103,7 +104,7 @@ class AzureDevOpsPullRequestDecoratorTest {
         when(projectAlmSettingDto.getAlmSlug()).thenReturn("prj");
         when(projectAlmSettingDto.getAlmRepo()).thenReturn("repo");
 
-        AzureDevOpsPullRequestDecorator pullRequestDecorator = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory);
+        AzureDevOpsPullRequestDecorator pullRequestDecorator = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory, new BoundedSubmissionExecutor());
 
         assertThatThrownBy(() -> pullRequestDecorator.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto))
             .hasMessage("Could not parse Pull Request Key")
@@ -112,7 +113,7 @@ class AzureDevOpsPullRequestDecoratorTest {
 
     @Test
     void shouldRemoveUserInfoFromRepositoryUrlForLinking() {
-        AzureDevOpsPullRequestDecorator underTest = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory);
+        AzureDevOpsPullRequestDecorator underTest = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory, new BoundedSubmissionExecutor());
 
         Repository repository = mock();
         when(repository.getRemoteUrl()).thenReturn("https://user@domain.com/path/to/repo");
@@ -126,7 +127,7 @@ class AzureDevOpsPullRequestDecoratorTest {
 
     @Test
     void testName() {
-        assertThat(new AzureDevOpsPullRequestDecorator(mock(), mock(), mock(), mock()).alm()).isEqualTo(Collections.singletonList(ALM.AZURE_DEVOPS));
+        assertThat(new AzureDevOpsPullRequestDecorator(mock(), mock(), mock(), mock(), mock()).alm()).isEqualTo(Collections.singletonList(ALM.AZURE_DEVOPS));
     }
 
     @Test
@@ -136,7 +137,7 @@ class AzureDevOpsPullRequestDecoratorTest {
         when(analysisDetails.getPullRequestId()).thenReturn("123");
         when(projectAlmSettingDto.getAlmSlug()).thenReturn("prj");
 
-        AzureDevOpsPullRequestDecorator pullRequestDecorator = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory);
+        AzureDevOpsPullRequestDecorator pullRequestDecorator = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory, new BoundedSubmissionExecutor());
 
         assertThatThrownBy(() -> pullRequestDecorator.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto))
             .hasMessage("Repository name must be provided")
@@ -150,7 +151,9 @@ class AzureDevOpsPullRequestDecoratorTest {
         int pullRequestId = 321;
 
         AnalysisSummary analysisSummary = mock();
+        when(analysisSummary.format(any())).thenReturn("Summary comment");
         when(reportGenerator.createAnalysisSummary(any())).thenReturn(analysisSummary);
+        when(analysisDetails.getAnalysisProjectKey()).thenReturn("projectKey");
 
         when(analysisDetails.getPullRequestId()).thenReturn(Integer.toString(pullRequestId));
         when(projectAlmSettingDto.getAlmSlug()).thenReturn(azureProject);
@@ -178,7 +181,7 @@ class AzureDevOpsPullRequestDecoratorTest {
         when(connectionData.getAuthenticatedUser()).thenReturn(authenticatedUser);
         when(azureDevopsClient.getConnectionData()).thenReturn(connectionData);
 
-        AzureDevOpsPullRequestDecorator underTest = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory);
+        AzureDevOpsPullRequestDecorator underTest = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory, new BoundedSubmissionExecutor());
 
         IdentityRef sonarqubeUser = mock();
         when(sonarqubeUser.getId()).thenReturn("sonarqube");
@@ -211,7 +214,9 @@ class AzureDevOpsPullRequestDecoratorTest {
         int pullRequestId = 321;
 
         AnalysisSummary analysisSummary = mock();
+        when(analysisSummary.format(any())).thenReturn("Summary comment");
         when(reportGenerator.createAnalysisSummary(any())).thenReturn(analysisSummary);
+        when(analysisDetails.getAnalysisProjectKey()).thenReturn("projectKey");
 
         when(analysisDetails.getPullRequestId()).thenReturn(Integer.toString(pullRequestId));
         when(projectAlmSettingDto.getAlmSlug()).thenReturn(azureProject);
@@ -233,7 +238,7 @@ class AzureDevOpsPullRequestDecoratorTest {
         when(repository.getRemoteUrl()).thenReturn("https://remote.url/path/to/repo");
         when(repository.getName()).thenReturn(azureRepository);
 
-        AzureDevOpsPullRequestDecorator underTest = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory);
+        AzureDevOpsPullRequestDecorator underTest = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory, new BoundedSubmissionExecutor());
 
         IdentityRef sonarqubeUser = mock();
         when(sonarqubeUser.getId()).thenReturn("sonarqube");
@@ -283,7 +288,9 @@ class AzureDevOpsPullRequestDecoratorTest {
         int pullRequestId = 321;
 
         AnalysisSummary analysisSummary = mock();
+        when(analysisSummary.format(any())).thenReturn("Summary comment");
         when(reportGenerator.createAnalysisSummary(any())).thenReturn(analysisSummary);
+        when(analysisDetails.getAnalysisProjectKey()).thenReturn("projectKey");
 
         when(analysisDetails.getPullRequestId()).thenReturn(Integer.toString(pullRequestId));
         when(projectAlmSettingDto.getAlmSlug()).thenReturn(azureProject);
@@ -307,7 +314,7 @@ class AzureDevOpsPullRequestDecoratorTest {
         when(repository.getRemoteUrl()).thenReturn("https://remote.url/path/to/repo");
         when(repository.getName()).thenReturn(azureRepository);
 
-        AzureDevOpsPullRequestDecorator underTest = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory);
+        AzureDevOpsPullRequestDecorator underTest = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory, new BoundedSubmissionExecutor());
 
         IdentityRef sonarqubeUser = mock();
         when(sonarqubeUser.getId()).thenReturn("sonarqube");
@@ -19,26 +19,34 @@
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.bitbucket;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.issue.IssueStatus;
 import org.sonar.api.issue.impact.Severity;
@@ -48,14 +56,19 @@ import org.sonar.ce.task.projectanalysis.component.ReportAttributes;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketClientFactory;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketCloudException;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketException;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.AnnotationUploadLimit;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.BuildStatus;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.CodeInsightsAnnotation;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.DataValue;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.ReportData;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.ReportStatus;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.BoundedSubmissionExecutor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSummary;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisSummary;
@@ -78,7 +91,7 @@ class BitbucketPullRequestDecoratorTest {
     private final ReportGenerator reportGenerator = mock();
     private final BitbucketClient client = mock();
     private final BitbucketClientFactory bitbucketClientFactory = mock();
-    private final BitbucketPullRequestDecorator underTest = new BitbucketPullRequestDecorator(bitbucketClientFactory, reportGenerator);
+    private final BitbucketPullRequestDecorator underTest = new BitbucketPullRequestDecorator(bitbucketClientFactory, reportGenerator, new BoundedSubmissionExecutor(), Duration.ZERO);
 
     private final AlmSettingDto almSettingDto = mock();
     private final ProjectAlmSettingDto projectAlmSettingDto = mock();
@@ -162,6 +175,111 @@ class BitbucketPullRequestDecoratorTest {
                         new ReportData("Analysis details", null)));
     }
 
+    @Test
+    void shouldStillUploadAnnotationsWhenSubmissionParallelismIsInvalid() throws IOException {
+        when(client.supportsCodeInsights()).thenReturn(true);
+        when(client.getAnnotationUploadLimit()).thenReturn(new AnnotationUploadLimit(1, 1000));
+        mockValidAnalysis();
+        mockIssueMetrics();
+        when(analysisDetails.getScannerProperty(CommunityBranchPlugin.PR_BITBUCKET_SUBMISSION_PARALLELISM)).thenReturn(Optional.of("many"));
+        CodeInsightsAnnotation annotation = mock();
+        when(client.createCodeInsightsAnnotation(any(), anyInt(), any(), any(), any(), any(), any())).thenReturn(annotation);
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(client).uploadAnnotations(COMMIT, Set.of(annotation), REPORT_KEY);
+        verify(client).submitBuildStatus(eq(COMMIT), any());
+    }
+
+    @Test
+    void shouldUploadEachAnnotationChunkAndBuildStatus() throws IOException {
+        when(client.supportsCodeInsights()).thenReturn(true);
+        when(client.getAnnotationUploadLimit()).thenReturn(new AnnotationUploadLimit(1, 1000));
+        mockValidAnalysis();
+        mockIssueMetrics();
+        PostAnalysisIssueVisitor.ComponentIssue componentIssue = analysisDetails.getScmReportableIssues().get(0);
+        when(analysisDetails.getScmReportableIssues()).thenReturn(List.of(componentIssue, componentIssue, componentIssue));
+        when(analysisDetails.getScannerProperty(CommunityBranchPlugin.PR_BITBUCKET_SUBMISSION_PARALLELISM)).thenReturn(Optional.of("2"));
+        CodeInsightsAnnotation annotation1 = mock();
+        CodeInsightsAnnotation annotation2 = mock();
+        CodeInsightsAnnotation annotation3 = mock();
+        when(client.createCodeInsightsAnnotation(any(), anyInt(), any(), any(), any(), any(), any())).thenReturn(annotation1, annotation2, annotation3);
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        InOrder inOrder = inOrder(client);
+        inOrder.verify(client).uploadReport(eq(COMMIT), any(), eq(REPORT_KEY));
+        inOrder.verify(client).deleteAnnotations(COMMIT, REPORT_KEY);
+        verify(client).uploadAnnotations(COMMIT, Set.of(annotation1), REPORT_KEY);
+        verify(client).uploadAnnotations(COMMIT, Set.of(annotation2), REPORT_KEY);
+        verify(client).uploadAnnotations(COMMIT, Set.of(annotation3), REPORT_KEY);
+        verify(client).submitBuildStatus(eq(COMMIT), any());
+    }
+
+    @Test
+    void shouldRetryAnnotationUploadWhenBitbucketReportsRetryableFailure() throws IOException {
+        when(client.supportsCodeInsights()).thenReturn(true);
+        when(client.getAnnotationUploadLimit()).thenReturn(new AnnotationUploadLimit(1000, 1000));
+        mockValidAnalysis();
+        mockIssueMetrics();
+        BitbucketException retryableException = mock();
+        when(retryableException.isRetryable()).thenReturn(true);
+        doThrow(retryableException).doNothing().when(client).uploadAnnotations(any(), any(), any());
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(client, times(2)).uploadAnnotations(any(), any(), any());
+        verify(client).submitBuildStatus(eq(COMMIT), any());
+    }
+
+    @Test
+    void shouldStopRetryingAnnotationUploadAfterMaximumAttempts() throws IOException {
+        when(client.supportsCodeInsights()).thenReturn(true);
+        when(client.getAnnotationUploadLimit()).thenReturn(new AnnotationUploadLimit(1000, 1000));
+        mockValidAnalysis();
+        mockIssueMetrics();
+        BitbucketCloudException retryableException = mock();
+        when(retryableException.isRetryable()).thenReturn(true);
+        doThrow(retryableException).when(client).uploadAnnotations(any(), any(), any());
+
+        assertThatThrownBy(() -> underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto))
+                .isSameAs(retryableException);
+
+        verify(client, times(3)).uploadAnnotations(any(), any(), any());
+        verify(client).submitBuildStatus(eq(COMMIT), any());
+    }
+
+    @Test
+    void shouldNotRetryAnnotationUploadWhenFailureIsNotRetryable() throws IOException {
+        when(client.supportsCodeInsights()).thenReturn(true);
+        when(client.getAnnotationUploadLimit()).thenReturn(new AnnotationUploadLimit(1000, 1000));
+        mockValidAnalysis();
+        mockIssueMetrics();
+        BitbucketException nonRetryableException = mock();
+        doThrow(nonRetryableException).when(client).uploadAnnotations(any(), any(), any());
+
+        assertThatThrownBy(() -> underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto))
+                .isSameAs(nonRetryableException);
+
+        verify(client).uploadAnnotations(any(), any(), any());
+    }
+
+    @Test
+    void shouldContinueWhenAnnotationChunkIsTooLarge() throws IOException {
+        when(client.supportsCodeInsights()).thenReturn(true);
+        when(client.getAnnotationUploadLimit()).thenReturn(new AnnotationUploadLimit(1000, 1000));
+        mockValidAnalysis();
+        mockIssueMetrics();
+        BitbucketException payloadTooLargeException = mock();
+        when(payloadTooLargeException.isError(BitbucketException.PAYLOAD_TOO_LARGE)).thenReturn(true);
+        doThrow(payloadTooLargeException).when(client).uploadAnnotations(any(), any(), any());
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(client).uploadAnnotations(any(), any(), any());
+        verify(client).submitBuildStatus(eq(COMMIT), any());
+    }
+
     @ParameterizedTest(name = "{arguments}")
     @CsvSource({"100, 1000, 2",
             "1000, 1000, 1",
@@ -177,6 +295,12 @@ class BitbucketPullRequestDecoratorTest {
         assertFalse(result);
     }
 
+    private void mockIssueMetrics() {
+        when(analysisSummary.getAcceptedIssues()).thenReturn(new AnalysisSummary.UrlIconMetric<>("acceptedIssuesUrl", "acceptedIssuesImageUrl", 0));
+        when(analysisSummary.getFixedIssues()).thenReturn(new AnalysisSummary.UrlIconMetric<>("fixedIssuesUrl", "fixedIssuesImageUrl", 0));
+        when(analysisSummary.getNewIssues()).thenReturn(new AnalysisSummary.UrlIconMetric<>("newIssuesUrl", "newIssuesImageUrl", 3L));
+    }
+
     private void mockValidAnalysis() {
         when(analysisDetails.getCommitSha()).thenReturn(COMMIT);
         when(analysisDetails.getQualityGateStatus()).thenReturn(QualityGate.Status.OK);
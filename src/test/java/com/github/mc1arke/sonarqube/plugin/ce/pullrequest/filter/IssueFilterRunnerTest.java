@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.filter;
+
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor.ComponentIssue;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor.LightIssue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.sonar.api.issue.impact.Severity;
+import org.sonar.api.issue.impact.SoftwareQuality;
+import org.sonar.api.rules.RuleType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IssueFilterRunnerTest {
+
+    private final List<ComponentIssue> issues = createIssues(200);
+
+    @ParameterizedTest
+    @ValueSource(ints = {-1, 0, 1, 5, 50, 199, 200, 500})
+    void shouldReturnSameIssuesAsFullSortForAnyLimit(int limit) {
+        IssueFilterRunner underTest = new IssueFilterRunner(List.of(), limit);
+
+        List<ComponentIssue> expected = issues.stream()
+                .sorted(new SeverityComparator().thenComparing(new TypeComparator()))
+                .limit(limit > 0 ? limit : Long.MAX_VALUE)
+                .collect(Collectors.toList());
+
+        assertThat(underTest.filterIssues(issues)).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void shouldSortAllIssuesWhenNoLimitSet() {
+        IssueFilterRunner underTest = new IssueFilterRunner(List.of(), null);
+
+        List<ComponentIssue> expected = issues.stream()
+                .sorted(new SeverityComparator().thenComparing(new TypeComparator()))
+                .collect(Collectors.toList());
+
+        assertThat(underTest.filterIssues(issues)).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void shouldOnlyReturnIssuesMatchingAllFilters() {
+        Predicate<ComponentIssue> notBug = issue -> issue.getIssue().getType() != RuleType.BUG;
+        Predicate<ComponentIssue> notBlocker = new SeverityExclusionFilter("BLOCKER");
+        IssueFilterRunner underTest = new IssueFilterRunner(List.of(notBug, notBlocker), 10);
+
+        List<ComponentIssue> expected = issues.stream()
+                .filter(notBug.and(notBlocker))
+                .sorted(new SeverityComparator().thenComparing(new TypeComparator()))
+                .limit(10)
+                .collect(Collectors.toList());
+
+        assertThat(underTest.filterIssues(issues))
+                .hasSize(10)
+                .containsExactlyElementsOf(expected);
+    }
+
+    private static List<ComponentIssue> createIssues(int count) {
+        Random random = new Random(1234);
+        Severity[] severities = Severity.values();
+        RuleType[] types = RuleType.values();
+        List<ComponentIssue> issues = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LightIssue lightIssue = mock();
+            when(lightIssue.impacts()).thenReturn(Map.of(SoftwareQuality.MAINTAINABILITY, severities[random.nextInt(severities.length)]));
+            when(lightIssue.getType()).thenReturn(types[random.nextInt(types.length)]);
+            ComponentIssue componentIssue = mock();
+            when(componentIssue.getIssue()).thenReturn(lightIssue);
+            when(componentIssue.toString()).thenReturn("issue-" + i);
+            issues.add(componentIssue);
+        }
+        return issues;
+    }
+}
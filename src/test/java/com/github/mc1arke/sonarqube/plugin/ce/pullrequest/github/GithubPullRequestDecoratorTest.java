@@ -25,6 +25,7 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -46,10 +47,12 @@ import org.junit.jupiter.api.Test;
 import org.kohsuke.github.GHCheckRun;
 import org.kohsuke.github.GHCheckRunBuilder;
 import org.kohsuke.github.GHIssueComment;
+import org.kohsuke.github.GHIssueCommentQueryBuilder;
 import org.kohsuke.github.GHPullRequest;
 import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GHUser;
 import org.kohsuke.github.GitHub;
+import org.kohsuke.github.PagedIterable;
 import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.sonar.api.ce.posttask.QualityGate;
@@ -60,9 +63,11 @@ import org.sonar.db.alm.setting.ALM;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.GithubClientFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationResult;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.NoteMarker;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.Document;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.Formatter;
@@ -75,9 +80,10 @@ class GithubPullRequestDecoratorTest {
     private final AnalysisDetails analysisDetails = mock();
     private final GithubClientFactory githubClientFactory = mock();
     private final ReportGenerator reportGenerator = mock();
+    private final GithubSummaryCommentCache summaryCommentCache = new GithubSummaryCommentCache();
     private final MarkdownFormatterFactory markdownFormatterFactory = mock();
     private final Clock clock = Clock.fixed(Instant.ofEpochSecond(102030405), ZoneId.of("UTC"));
-    private final GithubPullRequestDecorator testCase = new GithubPullRequestDecorator(githubClientFactory, reportGenerator, markdownFormatterFactory, clock);
+    private final GithubPullRequestDecorator testCase = new GithubPullRequestDecorator(githubClientFactory, reportGenerator, markdownFormatterFactory, clock, summaryCommentCache);
     private final ProjectAlmSettingDto projectAlmSettingDto = mock();
     private final AlmSettingDto almSettingDto = mock();
     private final AnalysisSummary analysisSummary = mock();
@@ -94,18 +100,7 @@ class GithubPullRequestDecoratorTest {
         when(analysisDetails.getAnalysisProjectName()).thenReturn("Project Name");
         when(analysisDetails.getQualityGateStatus()).thenReturn(QualityGate.Status.OK);
         when(analysisDetails.getCommitSha()).thenReturn("commit-sha");
-        List<PostAnalysisIssueVisitor.ComponentIssue> reportableIssues = IntStream.range(0, 20).mapToObj(i -> {
-            PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock();
-            Component component = mock();
-            when(componentIssue.getScmPath()).thenReturn(Optional.of("path" + i));
-            when(componentIssue.getComponent()).thenReturn(component);
-            PostAnalysisIssueVisitor.LightIssue lightIssue = mock();
-            when(lightIssue.getMessage()).thenReturn("issue message " + i);
-            when(lightIssue.getLine()).thenReturn(i);
-            when(lightIssue.impacts()).thenReturn(Map.of(SoftwareQuality.values()[i % SoftwareQuality.values().length], Severity.values()[i % Severity.values().length]));
-            when(componentIssue.getIssue()).thenReturn(lightIssue);
-            return componentIssue;
-        }).collect(Collectors.toList());
+        List<PostAnalysisIssueVisitor.ComponentIssue> reportableIssues = createIssues(20);
         when(analysisDetails.getScmReportableIssues()).thenReturn(reportableIssues);
 
         when(reportGenerator.createAnalysisSummary(any())).thenReturn(analysisSummary);
@@ -192,13 +187,64 @@ class GithubPullRequestDecoratorTest {
         verify(comment5, never()).delete();
         verify(summaryComment, never()).delete();
 
-        verify(pullRequest).comment("report summary");
+        verify(pullRequest).comment(NoteMarker.addMarker("project-key", NoteMarker.SUMMARY_NOTE_KEY, "report summary"));
         verify(pullRequest).getHtmlUrl();
         verify(pullRequest).getComments();
         verifyNoMoreInteractions(pullRequest);
     }
 
 
+    @Test
+    void shouldKeepExistingSummaryCommentWhenContentIsUnchanged() throws IOException {
+        when(projectAlmSettingDto.getSummaryCommentEnabled()).thenReturn(true);
+        GHRepository repository = mock();
+        when(gitHub.getRepository(any())).thenReturn(repository);
+        GHCheckRunBuilder checkRunBuilder = mock(InvocationOnMock::getMock);
+        doReturn(null).when(checkRunBuilder).create();
+        when(repository.createCheckRun(any(), any())).thenReturn(checkRunBuilder);
+        GHPullRequest pullRequest = mock();
+        GHIssueComment outdatedComment = createComment(NoteMarker.addMarker("project-key", NoteMarker.SUMMARY_NOTE_KEY, "outdated summary"), "Bot", 123, 1);
+        GHIssueComment otherProjectComment = createComment(NoteMarker.addMarker("other-project", NoteMarker.SUMMARY_NOTE_KEY, "report summary"), "Bot", 123, 2);
+        GHIssueComment unchangedComment = createComment(NoteMarker.addMarker("project-key", NoteMarker.SUMMARY_NOTE_KEY, "report summary"), "Bot", 123, 3);
+        when(pullRequest.getComments()).thenReturn(List.of(outdatedComment, otherProjectComment, unchangedComment));
+        when(repository.getPullRequest(anyInt())).thenReturn(pullRequest);
+        when(pullRequest.getHtmlUrl()).thenReturn(new URL("http://url.of/pull/request"));
+        Formatter<Document> documentFormatter = mock();
+        when(documentFormatter.format(any())).thenReturn("**Project ID:** project-key");
+        when(markdownFormatterFactory.documentFormatter()).thenReturn(documentFormatter);
+
+        testCase.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(outdatedComment).delete();
+        verify(otherProjectComment, never()).delete();
+        verify(unchangedComment, never()).delete();
+        verify(pullRequest, never()).comment(any(String.class));
+    }
+
+    @Test
+    void shouldKeepExistingSummaryCommentWithoutMarkerWhenContentIsUnchanged() throws IOException {
+        when(projectAlmSettingDto.getSummaryCommentEnabled()).thenReturn(true);
+        when(analysisSummary.format(any())).thenReturn("report summary\n**Project ID:** project-key\n");
+        GHRepository repository = mock();
+        when(gitHub.getRepository(any())).thenReturn(repository);
+        GHCheckRunBuilder checkRunBuilder = mock(InvocationOnMock::getMock);
+        doReturn(null).when(checkRunBuilder).create();
+        when(repository.createCheckRun(any(), any())).thenReturn(checkRunBuilder);
+        GHPullRequest pullRequest = mock();
+        GHIssueComment unchangedComment = createComment("report summary\n**Project ID:** project-key\n", "Bot", 123, 1);
+        when(pullRequest.getComments()).thenReturn(List.of(unchangedComment));
+        when(repository.getPullRequest(anyInt())).thenReturn(pullRequest);
+        when(pullRequest.getHtmlUrl()).thenReturn(new URL("http://url.of/pull/request"));
+        Formatter<Document> documentFormatter = mock();
+        when(documentFormatter.format(any())).thenReturn("**Project ID:** project-key");
+        when(markdownFormatterFactory.documentFormatter()).thenReturn(documentFormatter);
+
+        testCase.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(unchangedComment, never()).delete();
+        verify(pullRequest, never()).comment(any(String.class));
+    }
+
     @Test
     void shouldDecoratePullRequestWithCorrectAnalysisAndNoSummaryCommentWhenDisabled() throws IOException {
         when(projectAlmSettingDto.getSummaryCommentEnabled()).thenReturn(false);
@@ -250,6 +296,231 @@ class GithubPullRequestDecoratorTest {
         verifyNoMoreInteractions(pullRequest);
     }
 
+    @Test
+    void shouldEditLatestSummaryCommentInPlaceWhenEditingIsEnabled() throws IOException {
+        when(projectAlmSettingDto.getSummaryCommentEnabled()).thenReturn(true);
+        when(analysisDetails.getScannerProperty(CommunityBranchPlugin.PR_SUMMARY_NOTE_EDIT)).thenReturn(Optional.of("true"));
+        GHRepository repository = mock();
+        when(gitHub.getRepository(any())).thenReturn(repository);
+        GHCheckRunBuilder checkRunBuilder = mock(InvocationOnMock::getMock);
+        doReturn(null).when(checkRunBuilder).create();
+        when(repository.createCheckRun(any(), any())).thenReturn(checkRunBuilder);
+        GHPullRequest pullRequest = mock();
+        when(pullRequest.getUrl()).thenReturn(new URL("http://api.url/repos/owner/repo/pulls/123"));
+        GHIssueComment olderComment = createComment(NoteMarker.addMarker("project-key", NoteMarker.SUMMARY_NOTE_KEY, "older summary"), "Bot", 123, 1);
+        GHIssueComment latestComment = createComment(NoteMarker.addMarker("project-key", NoteMarker.SUMMARY_NOTE_KEY, "outdated summary"), "Bot", 123, 2);
+        Date updatedAt = new Date(1000);
+        when(latestComment.getUpdatedAt()).thenReturn(updatedAt);
+        when(pullRequest.getComments()).thenReturn(List.of(olderComment, latestComment));
+        when(repository.getPullRequest(anyInt())).thenReturn(pullRequest);
+        when(pullRequest.getHtmlUrl()).thenReturn(new URL("http://url.of/pull/request"));
+        Formatter<Document> documentFormatter = mock();
+        when(documentFormatter.format(any())).thenReturn("**Project ID:** project-key");
+        when(markdownFormatterFactory.documentFormatter()).thenReturn(documentFormatter);
+
+        testCase.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(latestComment).update(NoteMarker.addMarker("project-key", NoteMarker.SUMMARY_NOTE_KEY, "report summary"));
+        verify(latestComment, never()).delete();
+        verify(olderComment).delete();
+        verify(pullRequest, never()).comment(any(String.class));
+        assertThat(summaryCommentCache.get(new URL("http://api.url/repos/owner/repo/pulls/123"), "project-key"))
+                .hasValueSatisfying(summaryComment -> {
+                    assertThat(summaryComment.getId()).isEqualTo(2);
+                    assertThat(summaryComment.getUpdatedAt()).contains(updatedAt);
+                });
+    }
+
+    @Test
+    void shouldEditCachedSummaryCommentWithoutRetrievingAllComments() throws IOException {
+        when(projectAlmSettingDto.getSummaryCommentEnabled()).thenReturn(true);
+        when(analysisDetails.getScannerProperty(CommunityBranchPlugin.PR_SUMMARY_NOTE_EDIT)).thenReturn(Optional.of("true"));
+        GHRepository repository = mock();
+        when(gitHub.getRepository(any())).thenReturn(repository);
+        GHCheckRunBuilder checkRunBuilder = mock(InvocationOnMock::getMock);
+        doReturn(null).when(checkRunBuilder).create();
+        when(repository.createCheckRun(any(), any())).thenReturn(checkRunBuilder);
+        GHPullRequest pullRequest = mock();
+        URL pullRequestUrl = new URL("http://api.url/repos/owner/repo/pulls/123");
+        when(pullRequest.getUrl()).thenReturn(pullRequestUrl);
+        Date previousUpdatedAt = new Date(1000);
+        summaryCommentCache.put(pullRequestUrl, "project-key", 2, previousUpdatedAt);
+        GHIssueComment otherComment = createComment("review comment", "User", 321, 1);
+        GHIssueComment summaryComment = createComment(NoteMarker.addMarker("project-key", NoteMarker.SUMMARY_NOTE_KEY, "outdated summary"), "Bot", 123, 2);
+        Date updatedAt = new Date(2000);
+        when(summaryComment.getUpdatedAt()).thenReturn(updatedAt);
+        GHIssueCommentQueryBuilder queryBuilder = mock();
+        when(pullRequest.queryComments()).thenReturn(queryBuilder);
+        when(queryBuilder.since(previousUpdatedAt)).thenReturn(queryBuilder);
+        PagedIterable<GHIssueComment> comments = mock();
+        when(queryBuilder.list()).thenReturn(comments);
+        when(comments.toList()).thenReturn(List.of(otherComment, summaryComment));
+        when(repository.getPullRequest(anyInt())).thenReturn(pullRequest);
+        when(pullRequest.getHtmlUrl()).thenReturn(new URL("http://url.of/pull/request"));
+
+        testCase.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(summaryComment).update(NoteMarker.addMarker("project-key", NoteMarker.SUMMARY_NOTE_KEY, "report summary"));
+        verify(pullRequest, never()).getComments();
+        verify(pullRequest, never()).comment(any(String.class));
+        assertThat(summaryCommentCache.get(pullRequestUrl, "project-key"))
+                .hasValueSatisfying(cachedComment -> assertThat(cachedComment.getUpdatedAt()).contains(updatedAt));
+    }
+
+    @Test
+    void shouldSearchAllCommentsWhenCachedSummaryCommentNoLongerExists() throws IOException {
+        when(projectAlmSettingDto.getSummaryCommentEnabled()).thenReturn(true);
+        when(analysisDetails.getScannerProperty(CommunityBranchPlugin.PR_SUMMARY_NOTE_EDIT)).thenReturn(Optional.of("true"));
+        GHRepository repository = mock();
+        when(gitHub.getRepository(any())).thenReturn(repository);
+        GHCheckRunBuilder checkRunBuilder = mock(InvocationOnMock::getMock);
+        doReturn(null).when(checkRunBuilder).create();
+        when(repository.createCheckRun(any(), any())).thenReturn(checkRunBuilder);
+        GHPullRequest pullRequest = mock();
+        URL pullRequestUrl = new URL("http://api.url/repos/owner/repo/pulls/123");
+        when(pullRequest.getUrl()).thenReturn(pullRequestUrl);
+        summaryCommentCache.put(pullRequestUrl, "project-key", 2, new Date(1000));
+        GHIssueCommentQueryBuilder queryBuilder = mock();
+        when(pullRequest.queryComments()).thenReturn(queryBuilder);
+        when(queryBuilder.since(any(Date.class))).thenReturn(queryBuilder);
+        PagedIterable<GHIssueComment> comments = mock();
+        when(queryBuilder.list()).thenReturn(comments);
+        when(comments.toList()).thenReturn(List.of());
+        when(pullRequest.getComments()).thenReturn(List.of());
+        GHIssueComment newComment = createComment(NoteMarker.addMarker("project-key", NoteMarker.SUMMARY_NOTE_KEY, "report summary"), "Bot", 123, 3);
+        Date updatedAt = new Date(3000);
+        when(newComment.getUpdatedAt()).thenReturn(updatedAt);
+        when(pullRequest.comment(any(String.class))).thenReturn(newComment);
+        when(repository.getPullRequest(anyInt())).thenReturn(pullRequest);
+        when(pullRequest.getHtmlUrl()).thenReturn(new URL("http://url.of/pull/request"));
+        Formatter<Document> documentFormatter = mock();
+        when(documentFormatter.format(any())).thenReturn("**Project ID:** project-key");
+        when(markdownFormatterFactory.documentFormatter()).thenReturn(documentFormatter);
+
+        testCase.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(pullRequest).getComments();
+        verify(pullRequest).comment(NoteMarker.addMarker("project-key", NoteMarker.SUMMARY_NOTE_KEY, "report summary"));
+        assertThat(summaryCommentCache.get(pullRequestUrl, "project-key"))
+                .hasValueSatisfying(summaryComment -> {
+                    assertThat(summaryComment.getId()).isEqualTo(3);
+                    assertThat(summaryComment.getUpdatedAt()).contains(updatedAt);
+                });
+    }
+
+    @Test
+    void shouldAddAnnotationsBeyondFirstFiftyThroughCheckRunUpdates() throws IOException {
+        List<PostAnalysisIssueVisitor.ComponentIssue> reportableIssues = createIssues(120);
+        when(analysisDetails.getScmReportableIssues()).thenReturn(reportableIssues);
+        GHRepository repository = mock();
+        when(gitHub.getRepository(any())).thenReturn(repository);
+        GHCheckRun checkRun = mock();
+        GHCheckRunBuilder checkRunBuilder = mock(InvocationOnMock::getMock);
+        doReturn(checkRun).when(checkRunBuilder).create();
+        when(repository.createCheckRun(any(), any())).thenReturn(checkRunBuilder);
+        GHCheckRunBuilder updateBuilder = mock(InvocationOnMock::getMock);
+        doReturn(checkRun).when(updateBuilder).create();
+        when(checkRun.update()).thenReturn(updateBuilder);
+        GHPullRequest pullRequest = mock();
+        when(repository.getPullRequest(anyInt())).thenReturn(pullRequest);
+        when(pullRequest.getHtmlUrl()).thenReturn(new URL("http://url.of/pull/request"));
+
+        testCase.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        ArgumentCaptor<GHCheckRunBuilder.Output> createOutputCaptor = ArgumentCaptor.captor();
+        verify(checkRunBuilder).add(createOutputCaptor.capture());
+        verify(checkRunBuilder).create();
+        ArgumentCaptor<GHCheckRunBuilder.Output> updateOutputCaptor = ArgumentCaptor.captor();
+        verify(updateBuilder, times(2)).add(updateOutputCaptor.capture());
+        verify(updateBuilder, times(2)).create();
+
+        assertThat(createOutputCaptor.getValue()).usingRecursiveComparison().isEqualTo(createExpectedOutput(0, 50));
+        assertThat(updateOutputCaptor.getAllValues()).usingRecursiveFieldByFieldElementComparator()
+                .containsExactly(createExpectedOutput(50, 100), createExpectedOutput(100, 120));
+    }
+
+    @Test
+    void shouldLimitAnnotationsToConfiguredMaximum() throws IOException {
+        List<PostAnalysisIssueVisitor.ComponentIssue> reportableIssues = createIssues(120);
+        when(analysisDetails.getScmReportableIssues()).thenReturn(reportableIssues);
+        when(analysisDetails.getScannerProperty(CommunityBranchPlugin.PR_GITHUB_ANNOTATION_LIMIT)).thenReturn(Optional.of("60"));
+        GHRepository repository = mock();
+        when(gitHub.getRepository(any())).thenReturn(repository);
+        GHCheckRun checkRun = mock();
+        GHCheckRunBuilder checkRunBuilder = mock(InvocationOnMock::getMock);
+        doReturn(checkRun).when(checkRunBuilder).create();
+        when(repository.createCheckRun(any(), any())).thenReturn(checkRunBuilder);
+        GHCheckRunBuilder updateBuilder = mock(InvocationOnMock::getMock);
+        doReturn(checkRun).when(updateBuilder).create();
+        when(checkRun.update()).thenReturn(updateBuilder);
+        GHPullRequest pullRequest = mock();
+        when(repository.getPullRequest(anyInt())).thenReturn(pullRequest);
+        when(pullRequest.getHtmlUrl()).thenReturn(new URL("http://url.of/pull/request"));
+
+        testCase.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        ArgumentCaptor<GHCheckRunBuilder.Output> createOutputCaptor = ArgumentCaptor.captor();
+        verify(checkRunBuilder).add(createOutputCaptor.capture());
+        ArgumentCaptor<GHCheckRunBuilder.Output> updateOutputCaptor = ArgumentCaptor.captor();
+        verify(updateBuilder).add(updateOutputCaptor.capture());
+        verify(updateBuilder).create();
+
+        assertThat(createOutputCaptor.getValue()).usingRecursiveComparison().isEqualTo(createExpectedOutput(0, 50));
+        assertThat(updateOutputCaptor.getValue()).usingRecursiveComparison().isEqualTo(createExpectedOutput(50, 60));
+    }
+
+    @Test
+    void shouldAnnotateAllIssuesWhenAnnotationLimitIsInvalid() throws IOException {
+        List<PostAnalysisIssueVisitor.ComponentIssue> reportableIssues = createIssues(60);
+        when(analysisDetails.getScmReportableIssues()).thenReturn(reportableIssues);
+        when(analysisDetails.getScannerProperty(CommunityBranchPlugin.PR_GITHUB_ANNOTATION_LIMIT)).thenReturn(Optional.of("-1"));
+        GHRepository repository = mock();
+        when(gitHub.getRepository(any())).thenReturn(repository);
+        GHCheckRun checkRun = mock();
+        GHCheckRunBuilder checkRunBuilder = mock(InvocationOnMock::getMock);
+        doReturn(checkRun).when(checkRunBuilder).create();
+        when(repository.createCheckRun(any(), any())).thenReturn(checkRunBuilder);
+        GHCheckRunBuilder updateBuilder = mock(InvocationOnMock::getMock);
+        doReturn(checkRun).when(updateBuilder).create();
+        when(checkRun.update()).thenReturn(updateBuilder);
+        GHPullRequest pullRequest = mock();
+        when(repository.getPullRequest(anyInt())).thenReturn(pullRequest);
+        when(pullRequest.getHtmlUrl()).thenReturn(new URL("http://url.of/pull/request"));
+
+        testCase.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        ArgumentCaptor<GHCheckRunBuilder.Output> updateOutputCaptor = ArgumentCaptor.captor();
+        verify(updateBuilder).add(updateOutputCaptor.capture());
+        assertThat(updateOutputCaptor.getValue()).usingRecursiveComparison().isEqualTo(createExpectedOutput(50, 60));
+    }
+
+    private static GHCheckRunBuilder.Output createExpectedOutput(int start, int end) {
+        GHCheckRunBuilder.Output output = new GHCheckRunBuilder.Output("Quality Gate success", "report summary");
+        for (int i = start; i < end; i++) {
+            output.add(new GHCheckRunBuilder.Annotation(
+                "path" + i,
+                i,
+                GHCheckRun.AnnotationLevel.values()[i % Severity.values().length < 2 ? 0 : i % Severity.values().length > 2 ? 2 : 1],
+                "issue message " + i));
+        }
+        return output;
+    }
+
+    private static List<PostAnalysisIssueVisitor.ComponentIssue> createIssues(int count) {
+        return IntStream.range(0, count).mapToObj(i -> {
+            PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock();
+            Component component = mock();
+            when(componentIssue.getScmPath()).thenReturn(Optional.of("path" + i));
+            when(componentIssue.getComponent()).thenReturn(component);
+            PostAnalysisIssueVisitor.LightIssue lightIssue = mock();
+            when(lightIssue.getMessage()).thenReturn("issue message " + i);
+            when(lightIssue.getLine()).thenReturn(i);
+            when(lightIssue.impacts()).thenReturn(Map.of(SoftwareQuality.values()[i % SoftwareQuality.values().length], Severity.values()[i % Severity.values().length]));
+            when(componentIssue.getIssue()).thenReturn(lightIssue);
+            return componentIssue;
+        }).collect(Collectors.toList());
+    }
+
     private static GHIssueComment createComment(String body, String userType, long userId, long commentId) throws IOException {
         GHIssueComment comment = mock();
         when(comment.getBody()).thenReturn(body);
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.github;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GithubSummaryCommentCacheTest {
+
+    @Test
+    void shouldReturnCommentForMatchingPullRequestAndProject() throws MalformedURLException {
+        GithubSummaryCommentCache underTest = new GithubSummaryCommentCache();
+        URL pullRequestUrl = new URL("https://api.github.com/repos/owner/repo/pulls/1");
+        underTest.put(pullRequestUrl, "project", 12, new Date(1000));
+
+        assertThat(underTest.get(pullRequestUrl, "project")).hasValueSatisfying(summaryComment -> {
+            assertThat(summaryComment.getId()).isEqualTo(12);
+            assertThat(summaryComment.getUpdatedAt()).contains(new Date(1000));
+        });
+        assertThat(underTest.get(pullRequestUrl, "other-project")).isEmpty();
+        assertThat(underTest.get(new URL("https://api.github.com/repos/owner/repo/pulls/2"), "project")).isEmpty();
+    }
+
+    @Test
+    void shouldRemoveInvalidatedComment() throws MalformedURLException {
+        GithubSummaryCommentCache underTest = new GithubSummaryCommentCache();
+        URL pullRequestUrl = new URL("https://api.github.com/repos/owner/repo/pulls/1");
+        underTest.put(pullRequestUrl, "project", 12, new Date(1000));
+
+        underTest.invalidate(pullRequestUrl, "project");
+
+        assertThat(underTest.get(pullRequestUrl, "project")).isEmpty();
+    }
+
+    @Test
+    void shouldDiscardLeastRecentlyUsedCommentsOnceFull() throws MalformedURLException {
+        GithubSummaryCommentCache underTest = new GithubSummaryCommentCache(2);
+        URL pullRequestUrl = new URL("https://api.github.com/repos/owner/repo/pulls/1");
+        underTest.put(pullRequestUrl, "project1", 1, new Date(1000));
+        underTest.put(pullRequestUrl, "project2", 2, new Date(1000));
+        underTest.get(pullRequestUrl, "project1");
+
+        underTest.put(pullRequestUrl, "project3", 3, new Date(1000));
+
+        assertThat(underTest.get(pullRequestUrl, "project1")).isPresent();
+        assertThat(underTest.get(pullRequestUrl, "project2")).isEmpty();
+        assertThat(underTest.get(pullRequestUrl, "project3")).isPresent();
+    }
+}
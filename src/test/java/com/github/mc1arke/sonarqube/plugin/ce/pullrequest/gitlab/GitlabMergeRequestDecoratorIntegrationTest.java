@@ -55,9 +55,15 @@ import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AuthenticatedUserCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.PooledHttpClientProvider;
+import com.github.mc1arke.sonarqube.plugin.almclient.RateLimitScheduler;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.DefaultGitlabClientFactory;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.GitlabResponseCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.LinkHeaderReader;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.BoundedSubmissionExecutor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.NoteMarker;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSummary;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisSummary;
@@ -220,19 +226,21 @@ class GitlabMergeRequestDecoratorIntegrationTest {
                 .willReturn(created()));
 
         wireMockExtension.stubFor(post(urlPathEqualTo("/api/v4/projects/" + sourceProjectId + "/merge_requests/" + mergeRequestIid + "/discussions"))
-                .withRequestBody(equalTo("body=summary+comm%C3%A9nt%0A%0A%5Blink+text%5D"))
+                .withRequestBody(equalTo("body=" + urlEncode(NoteMarker.addMarker(projectKey, "decorator-summary-comment", "summary commént\n\n[link text]"))))
                 .willReturn(created().withBody(discussionPostResponseBody(discussionId, discussionNote(noteId, user, "summary comment", true, false)))));
 
-        wireMockExtension.stubFor(post(urlPathEqualTo("/api/v4/projects/" + sourceProjectId + "/merge_requests/" + mergeRequestIid + "/discussions"))
-                .withRequestBody(equalTo("body=issu%C3%A9&" +
-                        urlEncode("position[base_sha]") + "=d6a420d043dfe85e7c240fd136fc6e197998b10a&" +
-                        urlEncode("position[start_sha]") + "=d6a420d043dfe85e7c240fd136fc6e197998b10a&" +
-                        urlEncode("position[head_sha]") + "=" + commitSha + "&" +
-                        urlEncode("position[old_path]") + "=" + urlEncode(filePath) + "&" +
-                        urlEncode("position[new_path]") + "=" + urlEncode(filePath) + "&" +
-                        urlEncode("position[new_line]") + "=" + lineNumber + "&" +
-                        urlEncode("position[position_type]") + "=text"))
-                .willReturn(created().withBody(discussionPostResponseBody(discussionId, discussionNote(noteId, user, "issue",true, false)))));
+        for (int i = 0; i < 2; i++) {
+            wireMockExtension.stubFor(post(urlPathEqualTo("/api/v4/projects/" + sourceProjectId + "/merge_requests/" + mergeRequestIid + "/discussions"))
+                    .withRequestBody(equalTo("body=" + urlEncode(NoteMarker.addMarker(projectKey, "issueKey" + i, "issué")) + "&" +
+                            urlEncode("position[base_sha]") + "=d6a420d043dfe85e7c240fd136fc6e197998b10a&" +
+                            urlEncode("position[start_sha]") + "=d6a420d043dfe85e7c240fd136fc6e197998b10a&" +
+                            urlEncode("position[head_sha]") + "=" + commitSha + "&" +
+                            urlEncode("position[old_path]") + "=" + urlEncode(filePath) + "&" +
+                            urlEncode("position[new_path]") + "=" + urlEncode(filePath) + "&" +
+                            urlEncode("position[new_line]") + "=" + lineNumber + "&" +
+                            urlEncode("position[position_type]") + "=text"))
+                    .willReturn(created().withBody(discussionPostResponseBody(discussionId, discussionNote(noteId, user, "issue",true, false)))));
+        }
 
         wireMockExtension.stubFor(put(urlPathEqualTo("/api/v4/projects/" + sourceProjectId + "/merge_requests/" + mergeRequestIid + "/discussions/" + discussionId))
                 .withQueryParam("resolved", equalTo("true"))
@@ -249,7 +257,7 @@ class GitlabMergeRequestDecoratorIntegrationTest {
         Encryption encryption = mock();
         when(settings.getEncryption()).thenReturn(encryption);
         GitlabMergeRequestDecorator pullRequestDecorator =
-                new GitlabMergeRequestDecorator(scmInfoRepository, new DefaultGitlabClientFactory(linkHeaderReader, settings), reportGenerator, mock());
+                new GitlabMergeRequestDecorator(scmInfoRepository, new DefaultGitlabClientFactory(linkHeaderReader, settings, new PooledHttpClientProvider(mock(), new RateLimitScheduler()), new GitlabResponseCache(), new AuthenticatedUserCache(mock())), reportGenerator, mock(), new BoundedSubmissionExecutor());
 
 
         assertThat(pullRequestDecorator.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto).getPullRequestUrl()).isEqualTo(Optional.of("http://gitlab.example.com/my-group/my-project/merge_requests/1"));
@@ -28,6 +28,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
@@ -36,6 +37,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -52,6 +54,7 @@ import org.sonar.db.alm.setting.ALM;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.GitlabClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.GitlabClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Commit;
@@ -64,7 +67,10 @@ import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Note;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.PipelineStatus;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.User;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.BoundedSubmissionExecutor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationReport;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationResult;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.NoteMarker;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.MarkdownFormatterFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSummary;
@@ -101,7 +107,7 @@ class GitlabMergeRequestDecoratorTest {
     private final MarkdownFormatterFactory markdownFormatterFactory = mock();
     private final AnalysisSummary analysisSummary = mock();
 
-    private final GitlabMergeRequestDecorator underTest = new GitlabMergeRequestDecorator(scmInfoRepository, gitlabClientFactory, reportGenerator, markdownFormatterFactory);
+    private final GitlabMergeRequestDecorator underTest = new GitlabMergeRequestDecorator(scmInfoRepository, gitlabClientFactory, reportGenerator, markdownFormatterFactory, new BoundedSubmissionExecutor());
 
     @BeforeEach
     void setUp() throws IOException {
@@ -123,7 +129,7 @@ class GitlabMergeRequestDecoratorTest {
         when(diffRefs.getHeadSha()).thenReturn(HEAD_SHA);
         when(diffRefs.getStartSha()).thenReturn(START_SHA);
         when(gitlabClient.getMergeRequest(PROJECT_PATH, MERGE_REQUEST_IID)).thenReturn(mergeRequest);
-        when(gitlabClient.getMergeRequestCommits(PROJECT_ID, MERGE_REQUEST_IID)).thenReturn(Arrays.stream(new String[]{"ABC", "DEF", "GHI", "JKL"})
+        when(gitlabClient.getMergeRequestCommits(PROJECT_ID, MERGE_REQUEST_IID, HEAD_SHA)).thenReturn(Arrays.stream(new String[]{"ABC", "DEF", "GHI", "JKL"})
                 .map(Commit::new)
                 .collect(Collectors.toList()));
         when(sonarqubeUser.getUsername()).thenReturn(SONARQUBE_USERNAME);
@@ -138,6 +144,18 @@ class GitlabMergeRequestDecoratorTest {
         assertThat(underTest.alm()).containsOnly(ALM.GITLAB);
     }
 
+    @Test
+    void shouldUseConfiguredSubmissionParallelism() {
+        when(analysisDetails.getScannerProperty(CommunityBranchPlugin.PR_GITLAB_SUBMISSION_PARALLELISM)).thenReturn(Optional.of("8"));
+
+        assertThat(underTest.getSubmissionParallelism(analysisDetails)).isEqualTo(8);
+    }
+
+    @Test
+    void shouldUseDefaultSubmissionParallelismWhenNotConfigured() {
+        assertThat(underTest.getSubmissionParallelism(analysisDetails)).isEqualTo(4);
+    }
+
     @Test
     void shouldThrowErrorWhenPullRequestKeyNotNumeric() {
         when(analysisDetails.getPullRequestId()).thenReturn("non-MR-IID");
@@ -167,13 +185,21 @@ class GitlabMergeRequestDecoratorTest {
 
     @Test
     void shouldThrowErrorWhenGitlabMergeRequestCommitsRetrievalFails() throws IOException {
-        when(gitlabClient.getMergeRequestCommits(anyLong(), anyLong())).thenThrow(new IOException("dummy"));
+        when(gitlabClient.getMergeRequestCommits(anyLong(), anyLong(), any())).thenThrow(new IOException("dummy"));
 
         assertThatThrownBy(() -> underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto))
                 .isInstanceOf(IllegalStateException.class)
                 .hasMessage("Could not retrieve commit details for Merge Request");
     }
 
+    @Test
+    void shouldRetrieveCommitsWithoutHeadShaWhenMergeRequestHasNoDiffRefs() throws IOException {
+        when(mergeRequest.getDiffRefs()).thenReturn(null);
+        when(gitlabClient.getMergeRequestCommits(PROJECT_ID, MERGE_REQUEST_IID, null)).thenReturn(List.of(new Commit("ABC")));
+
+        assertThat(underTest.getCommitIdsForPullRequest(gitlabClient, mergeRequest)).containsExactly("ABC");
+    }
+
     @Test
     void shouldThrowErrorWhenGitlabMergeRequestDiscussionRetrievalFails() throws IOException {
         when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenThrow(new IOException("dummy"));
@@ -475,7 +501,7 @@ class GitlabMergeRequestDecoratorTest {
 
         assertThat(mergeRequestNoteArgumentCaptor.getValue())
                 .usingRecursiveComparison()
-                .isEqualTo(new CommitNote("Issue Summary", BASE_SHA, START_SHA, HEAD_SHA, "path-to-file", "path-to-file", 999));
+                .isEqualTo(new CommitNote(NoteMarker.addMarker(PROJECT_KEY, "issueKey1", "Issue Summary"), BASE_SHA, START_SHA, HEAD_SHA, "path-to-file", "path-to-file", 999));
     }
 
     @Test
@@ -513,10 +539,52 @@ class GitlabMergeRequestDecoratorTest {
 
         assertThat(mergeRequestNoteArgumentCaptor.getAllValues().get(0))
                 .usingRecursiveComparison()
-                .isEqualTo(new CommitNote("Issue Summary", BASE_SHA, START_SHA, HEAD_SHA, "path-to-file", "path-to-file", 999));
+                .isEqualTo(new CommitNote(NoteMarker.addMarker(PROJECT_KEY, "issueKey1", "Issue Summary"), BASE_SHA, START_SHA, HEAD_SHA, "path-to-file", "path-to-file", 999));
         assertThat(mergeRequestNoteArgumentCaptor.getAllValues().get(1)).isNotInstanceOf(CommitNote.class);
     }
 
+    @Test
+    void shouldUseDecorationReportInPlaceOfTaskRepositoriesWhenPresent() throws IOException {
+        PostAnalysisIssueVisitor.LightIssue lightIssue = mock();
+        when(lightIssue.key()).thenReturn("issueKey1");
+        when(lightIssue.issueStatus()).thenReturn(IssueStatus.OPEN);
+        when(lightIssue.getLine()).thenReturn(999);
+
+        Component component = mock();
+
+        PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock();
+        when(componentIssue.getIssue()).thenReturn(lightIssue);
+        when(componentIssue.getComponent()).thenReturn(component);
+        when(componentIssue.getScmPath()).thenReturn(Optional.of("path-to-file"));
+
+        when(analysisDetails.getScmReportableIssues()).thenReturn(Collections.singletonList(componentIssue));
+        when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(new ArrayList<>());
+
+        Changeset changeset = mock();
+        when(changeset.getRevision()).thenReturn("DEF");
+
+        ScmInfo scmInfo = mock();
+        when(scmInfo.hasChangesetForLine(999)).thenReturn(true);
+        when(scmInfo.getChangesetForLine(999)).thenReturn(changeset);
+
+        AnalysisSummary reportedAnalysisSummary = mock();
+        when(reportedAnalysisSummary.format(any())).thenReturn("Reported summary comment");
+        when(analysisDetails.getDecorationReport()).thenReturn(Optional.of(new DecorationReport(reportedAnalysisSummary, Map.of(component, scmInfo))));
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(reportGenerator, never()).createAnalysisSummary(any());
+        verifyNoInteractions(scmInfoRepository);
+
+        ArgumentCaptor<MergeRequestNote> mergeRequestNoteArgumentCaptor = ArgumentCaptor.captor();
+        verify(gitlabClient, times(2)).addMergeRequestDiscussion(eq(PROJECT_ID), eq(MERGE_REQUEST_IID), mergeRequestNoteArgumentCaptor.capture());
+
+        assertThat(mergeRequestNoteArgumentCaptor.getAllValues().get(0))
+                .usingRecursiveComparison()
+                .isEqualTo(new CommitNote(NoteMarker.addMarker(PROJECT_KEY, "issueKey1", "Issue Summary"), BASE_SHA, START_SHA, HEAD_SHA, "path-to-file", "path-to-file", 999));
+        assertThat(mergeRequestNoteArgumentCaptor.getAllValues().get(1).getContent()).contains("Reported summary comment");
+    }
+
     @Test
     void shouldNotStartNewDiscussionForIssueWithExistingCommentFromCommitInMergeRequest() throws IOException {
         PostAnalysisIssueVisitor.LightIssue lightIssue = mock();
@@ -612,7 +680,7 @@ class GitlabMergeRequestDecoratorTest {
 
         assertThat(mergeRequestNoteArgumentCaptor.getValue())
                 .usingRecursiveComparison()
-                .isEqualTo(new MergeRequestNote("Summary comment"));
+                .isEqualTo(new MergeRequestNote(NoteMarker.addMarker(PROJECT_KEY, "decorator-summary-comment", "Summary comment")));
         assertThat(pipelineStatusArgumentCaptor.getValue())
                 .usingRecursiveComparison()
                 .isEqualTo(new PipelineStatus("SonarQube", "SonarQube Status",
@@ -643,7 +711,7 @@ class GitlabMergeRequestDecoratorTest {
 
         assertThat(mergeRequestNoteArgumentCaptor.getValue())
                 .usingRecursiveComparison()
-                .isEqualTo(new MergeRequestNote("Different Summary comment"));
+                .isEqualTo(new MergeRequestNote(NoteMarker.addMarker(PROJECT_KEY, "decorator-summary-comment", "Different Summary comment")));
         assertThat(pipelineStatusArgumentCaptor.getValue())
                 .usingRecursiveComparison()
                 .isEqualTo(new PipelineStatus("SonarQube", "SonarQube Status",
@@ -677,7 +745,7 @@ class GitlabMergeRequestDecoratorTest {
 
         assertThat(mergeRequestNoteArgumentCaptor.getValue())
                 .usingRecursiveComparison()
-                .isEqualTo(new MergeRequestNote("Different Summary comment"));
+                .isEqualTo(new MergeRequestNote(NoteMarker.addMarker(PROJECT_KEY, "decorator-summary-comment", "Different Summary comment")));
         assertThat(pipelineStatusArgumentCaptor.getValue())
                 .usingRecursiveComparison()
                 .isEqualTo(new PipelineStatus("SonarQube", "SonarQube Status",
@@ -708,7 +776,7 @@ class GitlabMergeRequestDecoratorTest {
 
         assertThat(mergeRequestNoteArgumentCaptor.getValue())
                 .usingRecursiveComparison()
-                .isEqualTo(new MergeRequestNote("Different Summary comment"));
+                .isEqualTo(new MergeRequestNote(NoteMarker.addMarker(PROJECT_KEY, "decorator-summary-comment", "Different Summary comment")));
     }
 
     @Test
@@ -803,4 +871,123 @@ class GitlabMergeRequestDecoratorTest {
         verify(gitlabClient, never()).deleteMergeRequestDiscussionNote(anyLong(), anyLong(), any(), anyLong());
         verify(gitlabClient).getMergeRequestDiscussions(PROJECT_ID, MERGE_REQUEST_IID);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldEditSummaryNoteWhenContentHasChanged() throws IOException {
+        when(analysisDetails.getQualityGateStatus()).thenReturn(QualityGate.Status.ERROR);
+        when(analysisDetails.getScannerProperty(CommunityBranchPlugin.PR_SUMMARY_NOTE_EDIT)).thenReturn(Optional.of("true"));
+        when(analysisSummary.format(any())).thenReturn("Updated Summary comment");
+
+        Note summaryNote = new Note(1234, false, sonarqubeUser, NoteMarker.addMarker(PROJECT_KEY, "decorator-summary-comment", "Summary comment"), false, true);
+        Discussion discussion = mock();
+        when(discussion.getId()).thenReturn("discussion-id");
+        when(discussion.getNotes()).thenReturn(List.of(summaryNote));
+        when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(List.of(discussion));
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(gitlabClient).editMergeRequestDisscussionNote(PROJECT_ID, MERGE_REQUEST_IID, "discussion-id", 1234L,
+                NoteMarker.addMarker(PROJECT_KEY, "decorator-summary-comment", "Updated Summary comment"));
+        verify(gitlabClient, never()).addMergeRequestDiscussion(anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void shouldNotEditSummaryNoteWhenContentIsUnchanged() throws IOException {
+        when(analysisDetails.getQualityGateStatus()).thenReturn(QualityGate.Status.ERROR);
+        when(analysisDetails.getScannerProperty(CommunityBranchPlugin.PR_SUMMARY_NOTE_EDIT)).thenReturn(Optional.of("true"));
+        when(analysisSummary.format(any())).thenReturn("Summary comment");
+
+        Note summaryNote = new Note(1234, false, sonarqubeUser, NoteMarker.addMarker(PROJECT_KEY, "decorator-summary-comment", "Summary comment"), false, true);
+        Discussion discussion = mock();
+        when(discussion.getId()).thenReturn("discussion-id");
+        when(discussion.getNotes()).thenReturn(List.of(summaryNote));
+        when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(List.of(discussion));
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(gitlabClient, never()).editMergeRequestDisscussionNote(anyLong(), anyLong(), any(), anyLong(), any());
+        verify(gitlabClient, never()).addMergeRequestDiscussion(anyLong(), anyLong(), any());
+        verify(gitlabClient, never()).deleteMergeRequestDiscussionNote(anyLong(), anyLong(), any(), anyLong());
+    }
+
+    @Test
+    void shouldRetainUnchangedSummaryNoteWhenEditingIsDisabled() throws IOException {
+        when(analysisDetails.getQualityGateStatus()).thenReturn(QualityGate.Status.ERROR);
+        when(analysisDetails.getScannerProperty(CommunityBranchPlugin.PR_SUMMARY_NOTE_EDIT)).thenReturn(Optional.of("false"));
+        when(analysisSummary.format(any())).thenReturn("Summary comment");
+
+        Note summaryNote = new Note(1234, false, sonarqubeUser, NoteMarker.addMarker(PROJECT_KEY, "decorator-summary-comment", "Summary comment"), false, true);
+        Discussion discussion = mock();
+        when(discussion.getId()).thenReturn("discussion-id");
+        when(discussion.getNotes()).thenReturn(List.of(summaryNote));
+        when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(List.of(discussion));
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(gitlabClient, never()).addMergeRequestDiscussion(anyLong(), anyLong(), any());
+        verify(gitlabClient, never()).deleteMergeRequestDiscussionNote(anyLong(), anyLong(), any(), anyLong());
+    }
+
+    @Test
+    void shouldNotWriteSummaryNoteWhenPassingQualityGateIsReanalysedWithIdenticalContent() throws IOException {
+        when(analysisDetails.getQualityGateStatus()).thenReturn(QualityGate.Status.OK);
+        when(analysisSummary.format(any())).thenReturn("Summary comment");
+
+        Note summaryNote = new Note(1234, false, sonarqubeUser, NoteMarker.addMarker(PROJECT_KEY, "decorator-summary-comment", "Summary comment"), true, true);
+        Discussion discussion = mock();
+        when(discussion.getId()).thenReturn("discussion-id");
+        when(discussion.getNotes()).thenReturn(List.of(summaryNote));
+        when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(List.of(discussion));
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(gitlabClient, never()).addMergeRequestDiscussion(anyLong(), anyLong(), any());
+        verify(gitlabClient, never()).addMergeRequestDiscussionNote(anyLong(), anyLong(), any(), any());
+        verify(gitlabClient, never()).editMergeRequestDisscussionNote(anyLong(), anyLong(), any(), anyLong(), any());
+        verify(gitlabClient, never()).deleteMergeRequestDiscussionNote(anyLong(), anyLong(), any(), anyLong());
+        verify(gitlabClient, never()).resolveMergeRequestDiscussion(anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void shouldEditResolvedSummaryNoteWhenContentHasChanged() throws IOException {
+        when(analysisDetails.getQualityGateStatus()).thenReturn(QualityGate.Status.OK);
+        when(analysisDetails.getScannerProperty(CommunityBranchPlugin.PR_SUMMARY_NOTE_EDIT)).thenReturn(Optional.of("true"));
+        when(analysisSummary.format(any())).thenReturn("Updated Summary comment");
+
+        Note summaryNote = new Note(1234, false, sonarqubeUser, NoteMarker.addMarker(PROJECT_KEY, "decorator-summary-comment", "Summary comment"), true, true);
+        Discussion discussion = mock();
+        when(discussion.getId()).thenReturn("discussion-id");
+        when(discussion.getNotes()).thenReturn(List.of(summaryNote));
+        when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(List.of(discussion));
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(gitlabClient).editMergeRequestDisscussionNote(PROJECT_ID, MERGE_REQUEST_IID, "discussion-id", 1234L,
+                NoteMarker.addMarker(PROJECT_KEY, "decorator-summary-comment", "Updated Summary comment"));
+        verify(gitlabClient, never()).addMergeRequestDiscussion(anyLong(), anyLong(), any());
+        verify(gitlabClient, never()).resolveMergeRequestDiscussion(anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void shouldOnlyRetainFirstSummaryNoteEvenWhenResolved() throws IOException {
+        when(analysisDetails.getQualityGateStatus()).thenReturn(QualityGate.Status.OK);
+        when(analysisDetails.getScannerProperty(CommunityBranchPlugin.PR_SUMMARY_NOTE_EDIT)).thenReturn(Optional.of("false"));
+        when(analysisSummary.format(any())).thenReturn("Summary comment");
+
+        Note summaryNote = new Note(1234, false, sonarqubeUser, NoteMarker.addMarker(PROJECT_KEY, "decorator-summary-comment", "Summary comment"), true, true);
+        Discussion discussion = mock();
+        when(discussion.getId()).thenReturn("discussion-id");
+        when(discussion.getNotes()).thenReturn(List.of(summaryNote));
+        Note duplicateSummaryNote = new Note(5678, false, sonarqubeUser, NoteMarker.addMarker(PROJECT_KEY, "decorator-summary-comment", "Summary comment"), false, true);
+        Discussion duplicateDiscussion = mock();
+        when(duplicateDiscussion.getId()).thenReturn("duplicate-discussion-id");
+        when(duplicateDiscussion.getNotes()).thenReturn(List.of(duplicateSummaryNote));
+        when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(List.of(discussion, duplicateDiscussion));
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(gitlabClient).deleteMergeRequestDiscussionNote(PROJECT_ID, MERGE_REQUEST_IID, "duplicate-discussion-id", 5678L);
+        verify(gitlabClient, never()).deleteMergeRequestDiscussionNote(PROJECT_ID, MERGE_REQUEST_IID, "discussion-id", 1234L);
+        verify(gitlabClient, never()).addMergeRequestDiscussion(anyLong(), anyLong(), any());
+    }
+}
@@ -94,6 +94,8 @@ class ReportGeneratorTest {
             return componentIssue;
         }).collect(Collectors.toList());
         when(analysisDetails.getIssues()).thenReturn(issues);
+        // every issue other than the fixed issue1 is open
+        when(analysisDetails.getOpenIssueCount()).thenReturn(5L);
 
         QualityGate.Condition condition1 = mock();
         when(condition1.getStatus()).thenReturn(QualityGate.EvaluationStatus.ERROR);
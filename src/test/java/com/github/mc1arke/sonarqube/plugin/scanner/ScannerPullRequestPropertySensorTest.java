@@ -18,6 +18,7 @@
  */
 package com.github.mc1arke.sonarqube.plugin.scanner;
 
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
 import org.junit.jupiter.api.Test;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
@@ -79,4 +80,40 @@ class ScannerPullRequestPropertySensorTest {
 
         assertThat(properties).hasSize(2);
     }
+
+    @Test
+    void shouldForwardSubmissionParallelismProperties() throws IOException {
+        Path temp = Files.createTempDirectory("sensor");
+        SensorContextTester context = SensorContextTester.create(temp);
+        context.settings().setProperty(CommunityBranchPlugin.PR_GITLAB_SUBMISSION_PARALLELISM, "8");
+        context.settings().setProperty(CommunityBranchPlugin.PR_AZUREDEVOPS_SUBMISSION_PARALLELISM, "2");
+
+        sensor.execute(context);
+
+        assertThat(context.getContextProperties())
+                .containsEntry(CommunityBranchPlugin.PR_GITLAB_SUBMISSION_PARALLELISM, "8")
+                .containsEntry(CommunityBranchPlugin.PR_AZUREDEVOPS_SUBMISSION_PARALLELISM, "2");
+    }
+
+    @Test
+    void shouldForwardGithubAnnotationLimit() throws IOException {
+        Path temp = Files.createTempDirectory("sensor");
+        SensorContextTester context = SensorContextTester.create(temp);
+        context.settings().setProperty(CommunityBranchPlugin.PR_GITHUB_ANNOTATION_LIMIT, "500");
+
+        sensor.execute(context);
+
+        assertThat(context.getContextProperties()).containsEntry(CommunityBranchPlugin.PR_GITHUB_ANNOTATION_LIMIT, "500");
+    }
+
+    @Test
+    void shouldForwardBitbucketSubmissionParallelism() throws IOException {
+        Path temp = Files.createTempDirectory("sensor");
+        SensorContextTester context = SensorContextTester.create(temp);
+        context.settings().setProperty(CommunityBranchPlugin.PR_BITBUCKET_SUBMISSION_PARALLELISM, "6");
+
+        sensor.execute(context);
+
+        assertThat(context.getContextProperties()).containsEntry(CommunityBranchPlugin.PR_BITBUCKET_SUBMISSION_PARALLELISM, "6");
+    }
 }
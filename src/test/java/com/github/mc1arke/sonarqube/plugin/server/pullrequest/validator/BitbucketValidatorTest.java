@@ -84,7 +84,7 @@ class BitbucketValidatorTest {
     void testInvalidConfigurationExceptionThrownIfCodeInsightsCheckFails() {
         BitbucketValidator underTest = new BitbucketValidator(bitbucketClientFactory);
         BitbucketClient bitbucketClient = mock();
-        when(bitbucketClient.supportsCodeInsights()).thenThrow(new IllegalStateException("dummy"));
+        when(bitbucketClient.probeCodeInsightsSupport()).thenThrow(new IllegalStateException("dummy"));
         when(bitbucketClientFactory.createClient(any(), any())).thenReturn(bitbucketClient);
         assertThatThrownBy(() -> underTest.validate(projectAlmSettingDto, almSettingDto))
                 .isInstanceOf(InvalidConfigurationException.class)
@@ -96,7 +96,7 @@ class BitbucketValidatorTest {
     void testInvalidConfigurationExceptionThrownIfCodeInsightsIsFalse() {
         BitbucketValidator underTest = new BitbucketValidator(bitbucketClientFactory);
         BitbucketClient bitbucketClient = mock();
-        when(bitbucketClient.supportsCodeInsights()).thenReturn(false);
+        when(bitbucketClient.probeCodeInsightsSupport()).thenReturn(false);
         when(bitbucketClientFactory.createClient(any(), any())).thenReturn(bitbucketClient);
         assertThatThrownBy(() -> underTest.validate(projectAlmSettingDto, almSettingDto))
                 .isInstanceOf(InvalidConfigurationException.class)
@@ -108,11 +108,11 @@ class BitbucketValidatorTest {
     void testHappyPath() {
         BitbucketValidator underTest = new BitbucketValidator(bitbucketClientFactory);
         BitbucketClient bitbucketClient = mock();
-        when(bitbucketClient.supportsCodeInsights()).thenReturn(true);
+        when(bitbucketClient.probeCodeInsightsSupport()).thenReturn(true);
         when(bitbucketClientFactory.createClient(any(), any())).thenReturn(bitbucketClient);
 
         underTest.validate(projectAlmSettingDto, almSettingDto);
 
-        verify(bitbucketClient).supportsCodeInsights();
+        verify(bitbucketClient).probeCodeInsightsSupport();
     }
 }